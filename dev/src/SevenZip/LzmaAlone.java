@@ -10,6 +10,8 @@ public class LzmaAlone
 		
 		public int Command = -1;
 		public int NumBenchmarkPasses = 10;
+		public String BenchmarkFile;
+		public int NumThreads = Runtime.getRuntime().availableProcessors();
 		
 		public int DictionarySize = 1 << 23;
 		public boolean DictionarySizeIsDefined = false;
@@ -51,6 +53,12 @@ public class LzmaAlone
 				Pb = Integer.parseInt(s.substring(2));
 			else if (s.startsWith("eos"))
 				Eos = true;
+			else if (s.startsWith("mt"))
+			{
+				NumThreads = Integer.parseInt(s.substring(2));
+				if (NumThreads < 1)
+					return false;
+			}
 			else if (s.startsWith("mf"))
 			{
 				String mfs = s.substring(2);
@@ -131,7 +139,12 @@ public class LzmaAlone
 						InFile = s;
 				}
 				else if(pos == 2)
-					OutFile = s;
+				{
+					if (Command == kBenchmak)
+						BenchmarkFile = s;
+					else
+						OutFile = s;
+				}
 				else
 					return false;
 				pos++;
@@ -148,7 +161,7 @@ public class LzmaAlone
 				"\nUsage:  LZMA <e|d> [<switches>...] inputFile outputFile\n" +
 				"  e: encode file\n" +
 				"  d: decode file\n" +
-				"  b: Benchmark\n" +
+				"  b: Benchmark, b [<passes> [<peakListFile>]] times chunked encoding on a file\n" +
 				"<Switches>\n" +
 				// "  -a{N}:  set compression mode - [0, 1], default: 1 (max)\n" +
 				"  -d{N}:  set dictionary - [0,28], default: 23 (8MB)\n" +
@@ -157,7 +170,8 @@ public class LzmaAlone
 				"  -lp{N}: set number of literal pos bits - [0, 4], default: 0\n" +
 				"  -pb{N}: set number of pos bits - [0, 4], default: 2\n" +
 				"  -mf{MF_ID}: set Match Finder: [bt2, bt4], default: bt4\n" +
-				"  -eos:   write End Of Stream marker\n"
+				"  -eos:   write End Of Stream marker\n" +
+				"  -mt{N}: set most threads for the peak list benchmark, default: processors\n"
 				);
 	}
 	
@@ -185,7 +199,10 @@ public class LzmaAlone
 				dictionary = params.DictionarySize;
 			if (params.MatchFinder > 1)
 				throw new Exception("Unsupported match finder");
-			SevenZip.LzmaBench.LzmaBenchmark(params.NumBenchmarkPasses, dictionary);
+			if (params.BenchmarkFile != null)
+				SevenZip.LzmaBench.PeakListBenchmark(params.NumBenchmarkPasses, params.BenchmarkFile, params.NumThreads);
+			else
+				SevenZip.LzmaBench.LzmaBenchmark(params.NumBenchmarkPasses, dictionary);
 		}
 		else if (params.Command == CommandLine.kEncode || params.Command == CommandLine.kDecode)
 		{
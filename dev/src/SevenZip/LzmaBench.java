@@ -389,4 +389,86 @@ public class LzmaBench
 		System.out.println("    Average");
 		return 0;
 	}
+	
+	static void PrintChunkResults(String name, long encodeTime, long decodeTime, long size, long compressedSize)
+	{
+		System.out.print(name);
+		PrintValue(MyMultDiv64(size, encodeTime) / 1024);
+		System.out.print(" KB/s  ");
+		PrintValue(MyMultDiv64(size, decodeTime) / 1024);
+		System.out.print(" KB/s  ");
+		PrintValue(compressedSize * 1000 / size);
+		System.out.println(" /1000");
+	}
+	
+	// encodes and decodes a file as a single .lzma stream and as chunks on 1 to numThreads threads
+	static public int PeakListBenchmark(int numIterations, String fileName, int numThreads) throws Exception
+	{
+		if (numIterations <= 0)
+			return 0;
+		java.io.File file = new java.io.File(fileName);
+		if (file.length() == 0 || file.length() > (1 << 30))
+		{
+			System.out.println("\nError: file for benchmark must be from 1 byte to 1 GB");
+			return 1;
+		}
+		byte[] data = new byte[(int)file.length()];
+		java.io.DataInputStream fileStream = new java.io.DataInputStream(new java.io.FileInputStream(file));
+		try
+		{
+			fileStream.readFully(data);
+		}
+		finally
+		{
+			fileStream.close();
+		}
+		CRC crc = new CRC();
+		crc.Init();
+		crc.Update(data, 0, data.length);
+		
+		System.out.println("\n" + fileName + ", " + data.length + " bytes");
+		System.out.print("\n         Encoding    Decoding    Compressed\n\n");
+		for (int i = 0; i < numIterations; i++)
+		{
+			// one stream, as LZMAPeakListWriter writes without threads
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+			long startTime = System.currentTimeMillis();
+			org.proteomecommons.io.lzma.LZMAPeakListWriter.encode(new ByteArrayInputStream(data), compressed);
+			long encodeTime = System.currentTimeMillis() - startTime;
+			CrcOutStream crcOutStream = new CrcOutStream();
+			crcOutStream.Init();
+			startTime = System.currentTimeMillis();
+			org.proteomecommons.io.lzma.LZMAPeakListReaderFactory.decode(new ByteArrayInputStream(compressed.toByteArray()), crcOutStream);
+			long decodeTime = System.currentTimeMillis() - startTime;
+			if (crcOutStream.GetDigest() != crc.GetDigest())
+				throw (new Exception("CRC Error"));
+			PrintChunkResults("stream ", encodeTime, decodeTime, data.length, compressed.size());
+			
+			// chunks on twice as many threads each time, ending with numThreads
+			for (int threads = 1; threads <= numThreads; threads = (threads < numThreads) ? Math.min(threads * 2, numThreads) : threads + 1)
+			{
+				compressed.reset();
+				startTime = System.currentTimeMillis();
+				java.io.OutputStream out = new org.proteomecommons.io.lzma.ParallelLZMAOutputStream(compressed, threads, org.proteomecommons.io.lzma.ParallelLZMAOutputStream.DEFAULT_CHUNK_SIZE);
+				out.write(data);
+				out.close();
+				encodeTime = System.currentTimeMillis() - startTime;
+				
+				crcOutStream.Init();
+				startTime = System.currentTimeMillis();
+				java.io.InputStream in = new org.proteomecommons.io.lzma.ParallelLZMAInputStream(new ByteArrayInputStream(compressed.toByteArray()), threads);
+				byte[] buf = new byte[64 * 1024];
+				for (int read = in.read(buf); read != -1; read = in.read(buf))
+					crcOutStream.write(buf, 0, read);
+				in.close();
+				decodeTime = System.currentTimeMillis() - startTime;
+				if (crcOutStream.GetDigest() != crc.GetDigest())
+					throw (new Exception("CRC Error"));
+				String name = "mt" + threads + "     ";
+				PrintChunkResults(name.substring(0, 7), encodeTime, decodeTime, data.length, compressed.size());
+			}
+			System.out.println();
+		}
+		return 0;
+	}
 }
@@ -0,0 +1,86 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+import java.util.List;
+
+/**
+ * The information that every peak list has besides its peaks: a name, the parent peak, the parent peak list and the tandem count. GenericPeakList keeps its peaks in a list of Peak objects and ArrayPeakList keeps them in arrays of primitives.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public abstract class AbstractPeakList implements PeakList {
+    private PeakList parentPeakList = null;
+    private Peak parentPeak;
+    private int tandemCount = PeakList.UNKNOWN_TANDEM_COUNT;
+    
+    /**
+     * An Arbitrary name for the peak list
+     */
+    private String name = "Unnamed Peak List";
+    
+    /**
+     * Replaces the peaks of this peak list.
+     * @param peaks The new peaks.
+     */
+    public abstract void setPeaks(Peak[] peaks);
+    
+    /**
+     * Returns the peaks as a list.
+     */
+    public abstract List<Peak> getPeaksAsList();
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Returns the arbitrary name for this peak list. There is no garuntee that
+     * this name will be unique.
+     *
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    public PeakList getParentPeakList() {
+        return parentPeakList;
+    }
+
+    public void setParentPeakList(PeakList parentPeakList) {
+        this.parentPeakList = parentPeakList;
+    }
+
+    public Peak getParentPeak() {
+        return parentPeak;
+    }
+
+    public void setParentPeak(Peak parentPeak) {
+        this.parentPeak = parentPeak;
+    }
+
+    public int getTandemCount() {
+        if (tandemCount == PeakList.UNKNOWN_TANDEM_COUNT && parentPeak != null) {
+            return 2;
+        }
+        return tandemCount;
+    }
+
+    public void setTandemCount(int tandemCount) {
+        this.tandemCount = tandemCount;
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A peak list that keeps its peaks as parallel arrays of primitives instead of one Peak object per peak. The m/z and intensity values are always stored, charge and the centroided/averaged/monoisotopic/deisotoped flags are only allocated once a peak carries that information.</p>
+ *
+ * <p>High performance code should use size() and the bulk accessors, e.g. getMassOverChargeArray() and getIntensityArray(). Legacy code that invokes getPeaks() still works: each call makes new Peak objects that are copies of the arrays, so they stay the same when the list is changed, cleared or reused. Changing one of the copies doesn't change the list, use setPeaks() for that.</p>
+ *
+ * <p>Every method that reads or changes the peaks is synchronized on the list, so a list that is being filled, e.g. by decoding lazy peaks, is never seen half done. The backing arrays that the bulk accessors return aren't guarded, so a list should only have one writer, and other threads should only use the arrays once it is done.</p>
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ArrayPeakList extends AbstractPeakList implements MutablePeakList {
+    // flag encoding, two bits per flag
+    private static final int FLAG_UNKNOWN = 0;
+    private static final int FLAG_YES = 1;
+    private static final int FLAG_NO = 2;
+    private static final int CENTROIDED_SHIFT = 0;
+    private static final int AVERAGED_SHIFT = 2;
+    private static final int MONOISOTOPIC_SHIFT = 4;
+    private static final int DEISOTOPED_SHIFT = 6;
+
+    // the peak data
+    private double[] massOverCharge;
+    private double[] intensity;
+    private int[] charge = null;
+    private byte[] flags = null;
+    private int size = 0;
+
+    // peaks that haven't been decoded yet
+    private LazyPeaks lazyPeaks = null;
+
+    /**
+     * Makes an empty peak list with a small default capacity.
+     */
+    public ArrayPeakList() {
+        this(16);
+    }
+
+    /**
+     * Makes an empty peak list that can hold the given number of peaks before having to grow.
+     * @param capacity The initial number of peaks to allocate space for.
+     */
+    public ArrayPeakList(int capacity) {
+        massOverCharge = new double[capacity];
+        intensity = new double[capacity];
+    }
+
+    /**
+     * Returns the number of peaks in this peak list.
+     * @return The number of peaks in this peak list.
+     */
+    public synchronized int size() {
+        decodeLazyPeaks();
+        return size;
+    }
+
+    /**
+     * Returns the backing array of m/z values. Only the first size() values are valid.
+     * @return The backing array of m/z values.
+     */
+    public synchronized double[] getMassOverChargeArray() {
+        decodeLazyPeaks();
+        return massOverCharge;
+    }
+
+    /**
+     * Returns the backing array of intensity values. Only the first size() values are valid.
+     * @return The backing array of intensity values.
+     */
+    public synchronized double[] getIntensityArray() {
+        decodeLazyPeaks();
+        return intensity;
+    }
+
+    /**
+     * Returns the backing array of charge values. Only the first size() values are valid.
+     * @return The backing array of charge values or null if no peak has a known charge.
+     */
+    public synchronized int[] getChargeArray() {
+        decodeLazyPeaks();
+        return charge;
+    }
+
+    public synchronized double getMassOverCharge(int index) {
+        decodeLazyPeaks();
+        return massOverCharge[index];
+    }
+
+    public synchronized void setMassOverCharge(int index, double value) {
+        decodeLazyPeaks();
+        massOverCharge[index] = value;
+    }
+
+    public synchronized double getIntensity(int index) {
+        decodeLazyPeaks();
+        return intensity[index];
+    }
+
+    public synchronized void setIntensity(int index, double value) {
+        decodeLazyPeaks();
+        intensity[index] = value;
+    }
+
+    public synchronized int getCharge(int index) {
+        decodeLazyPeaks();
+        if (charge == null) {
+            return Peak.UNKNOWN_CHARGE;
+        }
+        return charge[index];
+    }
+
+    public synchronized void setCharge(int index, int value) {
+        decodeLazyPeaks();
+        // only allocate charges once one is known
+        if (charge == null) {
+            if (value == Peak.UNKNOWN_CHARGE) {
+                return;
+            }
+            charge = new int[massOverCharge.length];
+            Arrays.fill(charge, Peak.UNKNOWN_CHARGE);
+        }
+        charge[index] = value;
+    }
+
+    public synchronized int getCentroided(int index) {
+        decodeLazyPeaks();
+        return getFlag(index, CENTROIDED_SHIFT);
+    }
+
+    public synchronized void setCentroided(int index, int value) {
+        decodeLazyPeaks();
+        setFlag(index, CENTROIDED_SHIFT, value);
+    }
+
+    public synchronized int getAveraged(int index) {
+        decodeLazyPeaks();
+        return getFlag(index, AVERAGED_SHIFT);
+    }
+
+    public synchronized void setAveraged(int index, int value) {
+        decodeLazyPeaks();
+        setFlag(index, AVERAGED_SHIFT, value);
+    }
+
+    public synchronized int getMonoisotopic(int index) {
+        decodeLazyPeaks();
+        return getFlag(index, MONOISOTOPIC_SHIFT);
+    }
+
+    public synchronized void setMonoisotopic(int index, int value) {
+        decodeLazyPeaks();
+        setFlag(index, MONOISOTOPIC_SHIFT, value);
+    }
+
+    public synchronized int getDeisotoped(int index) {
+        decodeLazyPeaks();
+        return getFlag(index, DEISOTOPED_SHIFT);
+    }
+
+    public synchronized void setDeisotoped(int index, int value) {
+        decodeLazyPeaks();
+        setFlag(index, DEISOTOPED_SHIFT, value);
+    }
+
+    /**
+     * Adds a peak with only m/z and intensity information.
+     * @param mz The m/z of the peak.
+     * @param inten The intensity of the peak.
+     */
+    public synchronized void addPeak(double mz, double inten) {
+        decodeLazyPeaks();
+        ensureCapacity(size+1);
+        massOverCharge[size] = mz;
+        intensity[size] = inten;
+        if (charge != null) {
+            charge[size] = Peak.UNKNOWN_CHARGE;
+        }
+        if (flags != null) {
+            flags[size] = FLAG_UNKNOWN;
+        }
+        size++;
+    }
+
+    /**
+     * Adds a peak with m/z, intensity and charge information.
+     * @param mz The m/z of the peak.
+     * @param inten The intensity of the peak.
+     * @param z The charge of the peak or Peak.UNKNOWN_CHARGE.
+     */
+    public synchronized void addPeak(double mz, double inten, int z) {
+        addPeak(mz, inten);
+        setCharge(size-1, z);
+    }
+
+    /**
+     * Adds a peak along with all of the information that the Peak interface carries.
+     */
+    public synchronized void addPeak(double mz, double inten, int z, int centroided, int averaged, int monoisotopic, int deisotoped) {
+        addPeak(mz, inten, z);
+        int index = size-1;
+        setCentroided(index, centroided);
+        setAveraged(index, averaged);
+        setMonoisotopic(index, monoisotopic);
+        setDeisotoped(index, deisotoped);
+    }
+
+    /**
+     * Adds a copy of the information in the given peak.
+     * @param peak The peak to copy.
+     */
+    public synchronized void addPeak(Peak peak) {
+        int deisotoped = Peak.UNKNOWN_DEISOTOPED;
+        if (peak instanceof GenericPeak) {
+            deisotoped = ((GenericPeak)peak).getDeisotoped();
+        }
+        addPeak(peak.getMassOverCharge(), peak.getIntensity(), peak.getCharge(), peak.getCentroided(), peak.getAveraged(), peak.getMonoisotopic(), deisotoped);
+    }
+
+    /**
+     * Removes all peaks. The allocated arrays are kept so that they can be reused.
+     */
+    public synchronized void clear() {
+        lazyPeaks = null;
+        size = 0;
+    }
+
+    /**
+     * Makes sure that the backing arrays can hold at least the given number of peaks.
+     * @param capacity The minimum number of peaks to allocate space for.
+     */
+    public synchronized void ensureCapacity(int capacity) {
+        decodeLazyPeaks();
+        // skip if there is already space
+        if (capacity <= massOverCharge.length) {
+            return;
+        }
+        // grow by half again
+        int newCapacity = Math.max(capacity, massOverCharge.length + (massOverCharge.length >> 1) + 1);
+        resize(newCapacity);
+    }
+
+    /**
+     * Shrinks the backing arrays so that their length is the same as size().
+     */
+    public synchronized void trimToSize() {
+        decodeLazyPeaks();
+        if (massOverCharge.length != size) {
+            resize(size);
+        }
+    }
+
+    /**
+     * Makes Peak objects that are copies of the peaks in this peak list.
+     */
+    public synchronized Peak[] getPeaks() {
+        decodeLazyPeaks();
+        Peak[] peaks = new Peak[size];
+        for (int i=0;i<size;i++) {
+            GenericPeak peak = new GenericPeak();
+            peak.setMassOverCharge(massOverCharge[i]);
+            peak.setIntensity(intensity[i]);
+            // setting a charge also marks the peak centroided and not averaged, so it goes before the flags
+            if (charge != null && charge[i] != Peak.UNKNOWN_CHARGE) {
+                peak.setCharge(charge[i]);
+            }
+            peak.setCentroided(getFlag(i, CENTROIDED_SHIFT));
+            peak.setAveraged(getFlag(i, AVERAGED_SHIFT));
+            peak.setMonoisotopic(getFlag(i, MONOISOTOPIC_SHIFT));
+            peak.setDeisotoped(getFlag(i, DEISOTOPED_SHIFT));
+            peaks[i] = peak;
+        }
+        return peaks;
+    }
+
+    /**
+     * Returns a new list of copies of the peaks, see getPeaks(). Unlike GenericPeakList's, changing the list doesn't change this peak list.
+     */
+    public synchronized List<Peak> getPeaksAsList() {
+        return new ArrayList<Peak>(Arrays.asList(getPeaks()));
+    }
+
+    public synchronized void setPeaks(Peak[] peaks) {
+        // copy in to new arrays in case the peaks are views of this list
+        double[] newMassOverCharge = new double[peaks.length];
+        double[] newIntensity = new double[peaks.length];
+        int[] newCharge = null;
+        byte[] newFlags = null;
+        for (int i=0;i<peaks.length;i++) {
+            newMassOverCharge[i] = peaks[i].getMassOverCharge();
+            newIntensity[i] = peaks[i].getIntensity();
+            // handle charge
+            int z = peaks[i].getCharge();
+            if (z != Peak.UNKNOWN_CHARGE) {
+                if (newCharge == null) {
+                    newCharge = new int[peaks.length];
+                    Arrays.fill(newCharge, Peak.UNKNOWN_CHARGE);
+                }
+                newCharge[i] = z;
+            }
+            // handle the flags
+            int deisotoped = Peak.UNKNOWN_DEISOTOPED;
+            if (peaks[i] instanceof GenericPeak) {
+                deisotoped = ((GenericPeak)peaks[i]).getDeisotoped();
+            }
+            int f = encode(peaks[i].getCentroided()) << CENTROIDED_SHIFT
+                    | encode(peaks[i].getAveraged()) << AVERAGED_SHIFT
+                    | encode(peaks[i].getMonoisotopic()) << MONOISOTOPIC_SHIFT
+                    | encode(deisotoped) << DEISOTOPED_SHIFT;
+            if (f != FLAG_UNKNOWN) {
+                if (newFlags == null) {
+                    newFlags = new byte[peaks.length];
+                }
+                newFlags[i] = (byte)f;
+            }
+        }
+        // swap in the new values
+        lazyPeaks = null;
+        massOverCharge = newMassOverCharge;
+        intensity = newIntensity;
+        charge = newCharge;
+        flags = newFlags;
+        size = peaks.length;
+    }
+
+    /**
+     * Removes all peaks and sets peaks that are decoded the first time any peak information is asked for. Readers use this so that code that only wants the rest of a peak list's information, e.g. the parent peak, never pays for decoding the peaks.
+     * @param lazyPeaks The encoded peaks.
+     */
+    public synchronized void setLazyPeaks(LazyPeaks lazyPeaks) {
+        clear();
+        this.lazyPeaks = lazyPeaks;
+    }
+
+    /**
+     * Returns true if the peaks are still waiting to be decoded, see setLazyPeaks().
+     */
+    public synchronized boolean hasLazyPeaks() {
+        return lazyPeaks != null;
+    }
+
+    // helper to decode lazy peaks before they're used, synchronized like setLazyPeaks() so that other threads wait for the whole decode
+    private synchronized void decodeLazyPeaks() {
+        if (lazyPeaks != null) {
+            LazyPeaks temp = lazyPeaks;
+            lazyPeaks = null;
+            temp.addPeaksTo(this);
+        }
+    }
+
+    // helper to resize all of the backing arrays
+    private void resize(int capacity) {
+        double[] newMassOverCharge = new double[capacity];
+        System.arraycopy(massOverCharge, 0, newMassOverCharge, 0, size);
+        massOverCharge = newMassOverCharge;
+        double[] newIntensity = new double[capacity];
+        System.arraycopy(intensity, 0, newIntensity, 0, size);
+        intensity = newIntensity;
+        if (charge != null) {
+            int[] newCharge = new int[capacity];
+            System.arraycopy(charge, 0, newCharge, 0, size);
+            Arrays.fill(newCharge, size, capacity, Peak.UNKNOWN_CHARGE);
+            charge = newCharge;
+        }
+        if (flags != null) {
+            byte[] newFlags = new byte[capacity];
+            System.arraycopy(flags, 0, newFlags, 0, size);
+            flags = newFlags;
+        }
+    }
+
+    // helper to get one of the flags
+    private int getFlag(int index, int shift) {
+        if (flags == null) {
+            return decode(FLAG_UNKNOWN);
+        }
+        return decode((flags[index] >> shift) & 3);
+    }
+
+    // helper to set one of the flags
+    private void setFlag(int index, int shift, int value) {
+        int code = encode(value);
+        // only allocate flags once one is known
+        if (flags == null) {
+            if (code == FLAG_UNKNOWN) {
+                return;
+            }
+            flags = new byte[massOverCharge.length];
+        }
+        flags[index] = (byte)((flags[index] & ~(3 << shift)) | (code << shift));
+    }
+
+    // the yes/no constants are the same for all flags, e.g. Peak.CENTROIDED and Peak.MONOISOTOPIC
+    private static int encode(int value) {
+        if (value == Peak.CENTROIDED) {
+            return FLAG_YES;
+        }
+        if (value == Peak.NOT_CENTROIDED) {
+            return FLAG_NO;
+        }
+        return FLAG_UNKNOWN;
+    }
+
+    private static int decode(int code) {
+        if (code == FLAG_YES) {
+            return Peak.CENTROIDED;
+        }
+        if (code == FLAG_NO) {
+            return Peak.NOT_CENTROIDED;
+        }
+        return Peak.UNKNOWN_CENTROIDED;
+    }
+}
@@ -15,7 +15,17 @@
  */
 package org.proteomecommons.io;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.proteomecommons.io.util.ThreadedOutputStream;
+
 /**
+ * A writer that compresses the output of an embedded writer. If the embedded format can be written to a stream, the embedded writer writes straight in to a pipe and the data is compressed on a background thread while the peak lists are written. Otherwise a normal file is written, then compressed when the writer is closed, then deleted.
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
@@ -23,18 +33,90 @@ public abstract class CompressedPeakListWriter implements PeakListWriter {
     private PeakListWriter embedded;
     private String filename;
     
+    // the pipe to the compressor, null if a temp file is used
+    private ThreadedOutputStream pipe = null;
+    // the uncompressed file, null if the pipe is used
+    private File tempFile = null;
+    
     public CompressedPeakListWriter(String filename) {
         this.setFilename(filename);
     }
     
+    /**
+     * Makes the embedded writer for the uncompressed data.
+     * @param name The name of the uncompressed file, which picks the format.
+     */
+    protected void setEmbedded(String name) {
+        PeakListWriterFactory factory = GenericPeakListWriter.getPeakListWriterFactory(name);
+        if (factory instanceof StreamPeakListWriterFactory) {
+            pipe = new ThreadedOutputStream(getClass().getSimpleName()+" compressor", new ThreadedOutputStream.Consumer() {
+                public void consume(InputStream in) throws IOException {
+                    compress(in);
+                }
+            });
+            try {
+                setEmbedded(((StreamPeakListWriterFactory)factory).newInstance(pipe, name));
+            } catch (RuntimeException e) {
+                try { pipe.close(); } catch (Exception ex){}
+                throw e;
+            }
+            return;
+        }
+        
+        // fall back on a temp file that is compressed on close
+        File file = new File(name);
+        tempFile = new File(file.getParentFile(), "_todelete."+file.getName());
+        tempFile.deleteOnExit();
+        setEmbedded(factory.newInstance(tempFile.getAbsolutePath()));
+    }
+    
+    /**
+     * Compresses the uncompressed data in to the file. This is done on a background thread if the data is piped.
+     */
+    protected abstract void compress(InputStream in) throws IOException;
+    
+    /**
+     * Helper method to open the compressed file.
+     */
+    protected OutputStream openFile() throws IOException {
+        File file = new File(getFilename());
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        return new BufferedOutputStream(new FileOutputStream(file), 64*1024);
+    }
+    
     public void write(PeakList peaklist) {
         getEmbedded().write(peaklist);
     }
     
     /**
-     * This is where the magic happens. A normal file is written then a compressed is made then the normal is deleted.
+     * Closes the embedded writer and finishes the compressed file.
      */
-    public abstract void close();
+    public void close() {
+        // close the embedded, which ends the piped data
+        getEmbedded().close();
+        try {
+            if (pipe != null) {
+                // wait for the compressor
+                pipe.close();
+            } else if (tempFile != null) {
+                InputStream in = new FileInputStream(tempFile);
+                try {
+                    compress(in);
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can't write compressed file "+getFilename(), e);
+        } finally {
+            // most importantly delete the file
+            if (tempFile != null && !tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+    }
     
     public PeakListWriter getEmbedded() {
         return embedded;
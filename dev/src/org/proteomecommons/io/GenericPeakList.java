@@ -23,14 +23,10 @@ import java.util.List;
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class GenericPeakList implements PeakList {
+public class GenericPeakList extends AbstractPeakList {
     // keep peaks as a list
     ArrayList<Peak> peaks = new ArrayList();
     
-    private PeakList parentPeakList = null;
-    private Peak parentPeak;
-    private int tandemCount = PeakList.UNKNOWN_TANDEM_COUNT;
-    
     public Peak[] getPeaks() {
         return peaks.toArray(new Peak[0]);
     }
@@ -49,54 +45,7 @@ public class GenericPeakList implements PeakList {
         this.peaks.trimToSize();
     }
     
-    /**
-     * An Arbitrary name for the peak list
-     */
-    private String name = "Unnamed Peak List";
-    
-    
-    public void setName(String name) {
-        this.name = name;
-    }
-    
-    /**
-     * Returns the arbitrary name for this peak list. There is no garuntee that
-     * this name will be unique.
-     *
-     * @return
-     */
-    public String getName() {
-        return name;
-    }
-
-    public PeakList getParentPeakList() {
-        return parentPeakList;
-    }
-
-    public void setParentPeakList(PeakList parentPeakList) {
-        this.parentPeakList = parentPeakList;
-    }
-
-    public Peak getParentPeak() {
-        return parentPeak;
-    }
-
-    public void setParentPeak(Peak parentPeak) {
-        this.parentPeak = parentPeak;
-    }
-
-    public int getTandemCount() {
-        if (tandemCount == PeakList.UNKNOWN_TANDEM_COUNT && parentPeak != null) {
-            return 2;
-        }
-        return tandemCount;
-    }
-
-    public void setTandemCount(int tandemCount) {
-        this.tandemCount = tandemCount;
-    }
-    
-    public static void copyPeakListInformation(PeakList copyFrom, GenericPeakList copyTo) {
+    public static void copyPeakListInformation(PeakList copyFrom, AbstractPeakList copyTo) {
         copyTo.setParentPeak(copyFrom.getParentPeak());
         copyTo.setParentPeakList(copyFrom.getParentPeakList());
         copyTo.setTandemCount(copyFrom.getTandemCount());
@@ -15,6 +15,13 @@
  */
 package org.proteomecommons.io;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.regex.*;
 import java.util.*;
 import org.proteomecommons.io.bzip2.BZIP2PeakListReaderFactory;
@@ -31,8 +38,10 @@ import org.proteomecommons.io.msp.MSPPeakListReaderFactory;
 import org.proteomecommons.io.pkl.*;
 import org.proteomecommons.io.wiff.*;
 import org.proteomecommons.io.raw.RawViaReadwFactory;
+import org.proteomecommons.io.tar.TarPeakListReaderFactory;
 import org.proteomecommons.io.lzma.LZMAPeakListReaderFactory;
 import org.proteomecommons.io.txt.PlainTextPeakListReaderFactory;
+import org.proteomecommons.io.util.DeleteFilesPeakListReaderWrapper;
 import org.proteomecommons.io.xml.GenericXMLPeakListReaderFactory;
 import org.proteomecommons.io.yep.YEPPeakListReaderFactory;
 import org.proteomecommons.io.zip.*;
@@ -101,6 +110,9 @@ public abstract class GenericPeakListReader implements PeakListReader {
         setPeakListReader(new LZMAPeakListReaderFactory(), ".*\\.lzma");
         // add support for a known format that is bzip2 compressed
         setPeakListReader(new BZIP2PeakListReaderFactory(), ".*\\.bzip2");
+        // add support for TARs of known formats, e.g. ".tar.gz" is inflated by the gzip reader and read as a TAR
+        TarPeakListReaderFactory tar = new TarPeakListReaderFactory();
+        setPeakListReader(tar, tar.getRegularExpression());
         
         // t2d reader (optional library)
         loadReaderClass("org.proteomecommons.io.t2d.T2DPeakListReaderFactory",".*T2D|.*t2d");
@@ -164,11 +176,11 @@ public abstract class GenericPeakListReader implements PeakListReader {
     }
     
     /**
-     * Helper method to get an appropriate reader based on a filename.
+     * Helper method to get an appropriate reader based on a filename. Only the factory lookup is synchronized, so readers of several files can be made at once, e.g. while external converters run.
      *
      * @param name
      */
-    public synchronized static PeakListReader getPeakListReader(String filename) throws UnknownFileFormatException{
+    public static PeakListReader getPeakListReader(String filename) throws UnknownFileFormatException{
         // get the appropriate factory
         PeakListReaderFactory factory = (PeakListReaderFactory) getPeakListReaderFactory(filename);
         
@@ -203,6 +215,66 @@ public abstract class GenericPeakListReader implements PeakListReader {
         throw new UnknownFileFormatException("Can't find a PeakListReaderFactory for "+filename);
     }
     
+    /**
+     * Helper method to get an appropriate reader for a stream. The factory is picked by name, the same as for a file.
+     *
+     * @param in The data to parse.
+     * @param name The name of the data, e.g. "example.mgf".
+     */
+    public static PeakListReader getPeakListReader(InputStream in, String name) throws UnknownFileFormatException {
+        return getPeakListReader(getPeakListReaderFactory(name), in, name);
+    }
+    
+    /**
+     * Helper method to get an appropriate reader for a channel. The factory is picked by name, the same as for a file.
+     *
+     * @param channel The data to parse.
+     * @param name The name of the data, e.g. "example.mgf".
+     */
+    public static PeakListReader getPeakListReader(ReadableByteChannel channel, String name) throws UnknownFileFormatException {
+        return getPeakListReader(Channels.newInputStream(channel), name);
+    }
+    
+    /**
+     * Helper method to make a reader for a stream with the given factory. If the factory can't read streams, the stream is copied to a temporary file that is deleted when the reader is closed.
+     *
+     * @param factory The factory to use.
+     * @param in The data to parse.
+     * @param name The name of the data, e.g. "example.mgf".
+     */
+    public static PeakListReader getPeakListReader(PeakListReaderFactory factory, InputStream in, String name) {
+        if (factory instanceof StreamPeakListReaderFactory) {
+            return ((StreamPeakListReaderFactory)factory).newInstance(in, name);
+        }
+        
+        // fall back on a temporary file, keeping the name's extension so that the factory knows the format
+        File file = null;
+        try {
+            file = File.createTempFile("stream", "-"+new File(name).getName());
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buf = new byte[64*1024];
+                for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                    out.write(buf, 0, read);
+                }
+            } finally {
+                out.close();
+                in.close();
+            }
+            PeakListReader plr = new DeleteFilesPeakListReaderWrapper(factory.newInstance(file.getCanonicalPath()), new File[]{file});
+            plr.setName(name);
+            return plr;
+        } catch (IOException e) {
+            if (file != null) {
+                file.delete();
+            }
+            throw new RuntimeException("Can't read "+name, e);
+        } catch (RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+    }
+    
     /**
      * Sets the name of this PeakListReader. If you are parsing a file, and you
      * are using one of the helper methods of this class, the name is
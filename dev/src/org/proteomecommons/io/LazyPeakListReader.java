@@ -0,0 +1,45 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+/**
+ * A reader that can skip work for code that only needs some of a file, e.g. only the scan information or only the MS/MS scans.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public interface LazyPeakListReader extends PeakListReader {
+    /**
+     * Sets if peaks are kept encoded until a peak list's peaks are first used, see ArrayPeakList.setLazyPeaks(). Code that only reads the rest of each peak list's information never decodes the peaks.
+     * @param lazy True to decode peaks only when they're used.
+     */
+    public void setLazy(boolean lazy);
+    
+    /**
+     * Returns true if peaks are decoded only when they're used.
+     */
+    public boolean isLazy();
+    
+    /**
+     * Sets the MS levels to read, e.g. {2} for only MS/MS scans. Peak lists with other levels are skipped without decoding their peaks. Peak lists with an unknown level are always read.
+     * @param msLevels The levels to read or null to read all peak lists.
+     */
+    public void setMsLevels(int[] msLevels);
+    
+    /**
+     * Returns the MS levels to read or null if all peak lists are read.
+     */
+    public int[] getMsLevels();
+}
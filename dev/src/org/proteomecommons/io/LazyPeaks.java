@@ -0,0 +1,29 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+/**
+ * Peaks that are kept in their encoded form until they're needed, e.g. the Base64 text of a scan. See ArrayPeakList.setLazyPeaks().
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public interface LazyPeaks {
+    /**
+     * Decodes the peaks and adds them to the given peak list.
+     * @param target The peak list to add the peaks to.
+     */
+    public void addPeaksTo(MutablePeakList target);
+}
@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+/**
+ * A peak list that a ReusablePeakListReader can fill in over and over again. See ArrayPeakList for the standard implementation.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public interface MutablePeakList extends PeakList {
+    /**
+     * Removes all of the peaks. Implementations should keep any allocated space so that it can be reused by the next peak list.
+     */
+    public void clear();
+    
+    /**
+     * Returns the number of peaks in this peak list.
+     * @return The number of peaks in this peak list.
+     */
+    public int size();
+    
+    /**
+     * Makes sure that there is space for at least the given number of peaks. Readers that know how many peaks are coming should call this before adding them.
+     * @param capacity The minimum number of peaks to allocate space for.
+     */
+    public void ensureCapacity(int capacity);
+    
+    /**
+     * Adds a peak with only m/z and intensity information.
+     * @param mz The m/z of the peak.
+     * @param intensity The intensity of the peak.
+     */
+    public void addPeak(double mz, double intensity);
+    
+    /**
+     * Adds a peak along with all of the information that the Peak interface carries.
+     */
+    public void addPeak(double mz, double intensity, int charge, int centroided, int averaged, int monoisotopic, int deisotoped);
+    
+    /**
+     * Sets the parent peak.
+     * @param parentPeak The parent peak or null if there is no parent peak.
+     */
+    public void setParentPeak(Peak parentPeak);
+    
+    /**
+     * Sets the number of collisions used to obtain this peak list, see PeakList.getTandemCount().
+     * @param tandemCount The tandem count or PeakList.UNKNOWN_TANDEM_COUNT.
+     */
+    public void setTandemCount(int tandemCount);
+}
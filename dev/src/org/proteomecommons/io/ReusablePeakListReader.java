@@ -0,0 +1,31 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+/**
+ * An interface representing readers that can fill in an existing peak list instead of making a new one for each call to getPeakList(). Reading a large file in to the same MutablePeakList avoids allocating new peak storage for every peak list.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public interface ReusablePeakListReader extends PeakListReader {
+    /**
+     * Reads the next peak list in to the given target. All previous peaks in the target are removed, and its parent peak and tandem count are replaced. If the target is the reader's own peak list type, e.g. a MascotGenericFormatPeakList for MGF, the format specific meta-information is also set.
+     *
+     * @param target The peak list to fill in.
+     * @return true if a peak list was read, false if there are no more peak lists.
+     */
+    public boolean readInto(MutablePeakList target);
+}
@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+import java.io.InputStream;
+
+/**
+ * A PeakListReaderFactory that can also read peak lists from a stream instead of a named file. This lets peak lists be parsed straight from decompressors, pipes or in-memory buffers without first being written to disk. Use GenericPeakListReader.getPeakListReader(InputStream, String) to pick a factory by name.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public interface StreamPeakListReaderFactory extends PeakListReaderFactory {
+    /**
+     * Requests a new PeakListReader instance that reads from the given stream. Closing the reader closes the stream.
+     *
+     * @param in The data to parse.
+     * @param name The name of the data, usually the name of the file it came from. It is a hint for the format and becomes the reader's name.
+     * @return A reader for the stream.
+     */
+    public PeakListReader newInstance(InputStream in, String name);
+}
@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+import java.io.OutputStream;
+
+/**
+ * A PeakListWriterFactory that can also write peak lists to a stream instead of a named file. This lets peak lists be written straight in to compressors or pipes without first being written to disk.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public interface StreamPeakListWriterFactory extends PeakListWriterFactory {
+    /**
+     * Requests a new PeakListWriter instance that writes to the given stream. Closing the writer closes the stream.
+     *
+     * @param out The stream to write to.
+     * @param name The name of the data, usually the name of the file it will end up in.
+     * @return A writer for the stream.
+     */
+    public PeakListWriter newInstance(OutputStream out, String name);
+}
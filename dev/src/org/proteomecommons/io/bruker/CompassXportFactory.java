@@ -16,24 +16,33 @@
 package org.proteomecommons.io.bruker;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.FileNotFoundException;
 import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.util.ConversionCache;
+import org.proteomecommons.io.util.ConverterInputStream;
 
 /**
- * Factory for creating Bruker file format readers for .baf, fid, and .yep.
+ * Factory for creating Bruker file format readers for .baf, fid, and .yep. CompassXport's mzXML is either written to a file and read once CompassXport is done, or read from its standard output or a named pipe while it runs, see setOutput(). If there is a ConversionCache, files that were converted before aren't converted again.
  * @author Jayson Falkner - jfalkner@umich.edu
  *
  */
 public abstract class CompassXportFactory implements PeakListReaderFactory {
     // config for where the ReAdW.exe is
     private static File compassXportLocation = new File("C:/Program Files/ProteomeCommons.org/IO/CompassXport.exe");
+    // how CompassXport's output is read, the "compassxport.output" system property: "file", "stdout" or "pipe"
+    private static int output = ConverterInputStream.getMode("compassxport.output");
     
     public PeakListReader newInstance(String filename) {
         try {
             File inputFile = new File(filename);
             
+            // skip the conversion if it was done before
+            File cached = ConversionCache.get(inputFile);
+            if (cached != null) {
+                return new CompassXportPeakListReader(cached.getCanonicalPath(), new File[0]);
+            }
+            
             // pick a file for the conversion
             String path = inputFile.getCanonicalPath();
             String[] split = path.split("\\.");
@@ -56,26 +65,25 @@ public abstract class CompassXportFactory implements PeakListReaderFactory {
             }
             
             // use CompassXport to convert to mzXML
-            String[] commands = new String[]{compassXportLocation.getCanonicalPath(), "-log all", "-a", inputFile.getCanonicalPath(), "-o", outputFile.getCanonicalPath()};
-            // execute
-            Runtime r = Runtime.getRuntime();
-            Process p = r.exec(commands);
+            String[] commands = new String[]{compassXportLocation.getCanonicalPath(), "-log all", "-a", inputFile.getCanonicalPath(), "-o", ConverterInputStream.getOutputArgument(outputFile, getOutput())};
             
-//            // debug output
-//            InputStream pipeIn = p.getInputStream();
-//            try {
-//                for (int i=pipeIn.read();i!=-1;i=pipeIn.read()) {
-//                    System.out.print((char)i);
-//                }
-//            } finally {
-//                pipeIn.close();
-//            }
+            // parse the mzXML as CompassXport makes it
+            if (getOutput() != ConverterInputStream.FILE) {
+                return new CompassXportPeakListReader(ConversionCache.cacheWhileReading(inputFile, ConverterInputStream.open(commands, outputFile, getOutput())), outputFile.getName());
+            }
             
             // wait for it....
-            p.waitFor();
+            int exitCode = ConverterInputStream.run(commands);
             
-            // return a mzXML reader
-            FileInputStream fis = new FileInputStream(outputFile);
+            // check that the output file exists
+            if (!outputFile.exists()) {
+                throw new FileNotFoundException(outputFile.getCanonicalPath());
+            }
+            // keep the mzXML for next time
+            if (exitCode == 0 && ConversionCache.isEnabled()) {
+                cached = ConversionCache.put(inputFile, outputFile);
+                return new CompassXportPeakListReader(cached.getCanonicalPath(), new File[0]);
+            }
             // send the resources and politely ask for them to be deleted
             return new CompassXportPeakListReader(outputFile.getCanonicalPath(), new File[]{outputFile});
             
@@ -93,4 +101,16 @@ public abstract class CompassXportFactory implements PeakListReaderFactory {
     public static void setCompassXportLocation(File aCompassXportLocation) {
         compassXportLocation = aCompassXportLocation;
     }
+    
+    public static int getOutput() {
+        return output;
+    }
+    
+    /**
+     * Sets how CompassXport's output is read by new readers.
+     * @param aOutput ConverterInputStream.FILE, STDOUT or NAMED_PIPE.
+     */
+    public static void setOutput(int aOutput) {
+        output = aOutput;
+    }
 }
\ No newline at end of file
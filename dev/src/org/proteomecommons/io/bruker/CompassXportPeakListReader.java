@@ -17,8 +17,10 @@
 package org.proteomecommons.io.bruker;
 
 import java.io.File;
+import java.io.InputStream;
 import org.proteomecommons.io.IntermediateFilePeakListReader;
 import org.proteomecommons.io.mzxml.MzXMLPeakListReader;
+import org.proteomecommons.io.util.ConversionCache;
 
 /**
  *<p>A custom Bruker file reader that uses the CompassXport converter.</p>
@@ -27,10 +29,24 @@ import org.proteomecommons.io.mzxml.MzXMLPeakListReader;
  */
 public class CompassXportPeakListReader extends MzXMLPeakListReader implements IntermediateFilePeakListReader {
     private File[] toDeleteOnClose;
+    // the mzXML, null if it was streamed
+    private File intermediateFile = null;
+    // the mzXML to give back to the conversion cache, null once it is or if it was streamed
+    private File cached = null;
     
     public CompassXportPeakListReader(String filename, File[] toDeleteOnClose) {
         super(filename);
         this.toDeleteOnClose = toDeleteOnClose;
+        this.intermediateFile = new File(filename);
+        this.cached = intermediateFile;
+    }
+    
+    /**
+     * Reads CompassXport's output as it is made, there is no intermediate file.
+     */
+    public CompassXportPeakListReader(InputStream in, String name) {
+        super(in, name);
+        this.toDeleteOnClose = new File[0];
     }
     
     public void close() {
@@ -40,13 +56,25 @@ public class CompassXportPeakListReader extends MzXMLPeakListReader implements I
         for (File f : toDeleteOnClose) {
             try { f.delete(); } catch (Exception e){}
         }
+        // let the cache delete the mzXML if it came from there
+        if (cached != null) {
+            ConversionCache.release(cached);
+            cached = null;
+        }
     }
 
+    /**
+     * Returns the mzXML file, which may be in the conversion cache, or null if CompassXport's output was streamed.
+     */
     public File getIntermediateFile() {
-        return toDeleteOnClose[0];
+        return intermediateFile;
     }
 
     public String getIntermediateExtension() {
+        // cached mzXML may be compressed
+        if (intermediateFile != null && intermediateFile.getName().endsWith(".gz")) {
+            return ".mzXML.gz";
+        }
         return ".mzXML";
     }
     
@@ -15,55 +15,47 @@
  */
 package org.proteomecommons.io.bzip2;
 
-import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import org.apache.tools.bzip2.CBZip2InputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 import org.proteomecommons.io.*;
-import org.proteomecommons.io.util.DeleteFilesPeakListReaderWrapper;
+import org.proteomecommons.io.util.ThreadedInputStream;
 
 /**
- * This is a helper PeakListReaderFactory class that knows how to automatically decompress GZIP encoded peak lists.
+ * This is a helper PeakListReaderFactory class that knows how to automatically decompress BZIP2 encoded peak lists. The data is decompressed on its own thread and parsed as it is decompressed, nothing is written to disk. Files written by several threads are decompressed by several threads.
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class BZIP2PeakListReaderFactory implements PeakListReaderFactory {
+public class BZIP2PeakListReaderFactory implements StreamPeakListReaderFactory {
     
     /**
      * @see org.proteomecommons.io.PeakListReaderFactory#newInstance(java.io.InputStream)
      */
     public PeakListReader newInstance(String filename) {
         try {
-            // unzip the files to that directory
-            FileInputStream is = new FileInputStream(filename);
-            // read the input stream as ZIP
-            CBZip2InputStream compressedInputStream = new CBZip2InputStream(is);
-            
+            return newInstance(new FileInputStream(filename), filename);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+     */
+    public PeakListReader newInstance(InputStream in, String name) {
+        try {
             // figure our the real name
-            String realName = filename.split("\\.bzip2")[0];
-            
-            // send the output to disk
-            FileOutputStream fos = new FileOutputStream(realName);
-            try {
-                byte[] buffer = new byte[10000];
-                for (int bytesRead = compressedInputStream.read(buffer);bytesRead != -1;bytesRead = compressedInputStream.read(buffer)) {
-                    fos.write(buffer, 0, bytesRead);
-                }
-            } finally {
-                try { compressedInputStream.close(); } catch (Exception e){}
-                try { is.close(); } catch (Exception e){}
-                try { fos.flush(); } catch (Exception e){}
-                try { fos.close(); } catch (Exception e){}
-            }
+            String realName = name.split("\\.bzip2")[0];
             
-            // return the peak list reader
-            PeakListReader plr = GenericPeakListReader.getPeakListReader(realName);
-            DeleteFilesPeakListReaderWrapper plrw = new DeleteFilesPeakListReaderWrapper(plr, new File[]{new File(realName)});
+            // try to get a peak list reader factory
+            PeakListReaderFactory plrf = GenericPeakListReader.getPeakListReaderFactory(realName);
             
-            // return the wrapped peak list
-            return plrw;
+            // decompress in the background
+            InputStream decompressed = ThreadedInputStream.readAhead("BZIP2 reader", new ParallelBZip2InputStream(in));
+            return GenericPeakListReader.getPeakListReader(plrf, decompressed, realName);
         } catch (Exception e) {
+            try { in.close(); } catch (Exception ex){}
             throw new RuntimeException(e);
         }
     }
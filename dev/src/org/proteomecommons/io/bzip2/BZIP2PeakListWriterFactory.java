@@ -23,10 +23,24 @@ import org.proteomecommons.io.PeakListWriterFactory;
  * @author Jayson Falkner - jfalkner@umich.edu
  */
 public class BZIP2PeakListWriterFactory implements PeakListWriterFactory {
+    // threads compressing blocks, the "bzip2.threads" system property, 0 writes a single BZIP2 stream
+    private static int threads = Integer.getInteger("bzip2.threads", 0).intValue();
+    
     public PeakListWriter newInstance(String filename) {
         return new BZIP2PeakListWriter(filename);
     }
     
+    public static int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the number of threads that new writers compress with. Less than 1, the default, writes a single BZIP2 stream on the writer's compression thread, which every BZIP2 reader can read. Otherwise a series of BZIP2 streams is written, and readers built on CBZip2InputStream, including older releases of this library, stop after the first one.
+     */
+    public static void setThreads(int threads) {
+        BZIP2PeakListWriterFactory.threads = threads;
+    }
+    
     public String getName() {
         return "BZIP2 (Compression Format)";
     }
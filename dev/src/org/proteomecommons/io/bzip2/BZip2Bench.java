@@ -0,0 +1,114 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.apache.tools.bzip2.CBZip2InputStream;
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.proteomecommons.io.mgf.MascotGenericFormatBench;
+
+/**
+ * A benchmark that compares single threaded BZIP2 with ParallelBZip2OutputStream and ParallelBZip2InputStream at 1, 2, 4, 8 and a thread per processor. Pass a peak list file to time it, or nothing to time a generated MGF file. Everything is done in memory so that the disk isn't timed.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class BZip2Bench {
+
+    public static void main(String[] args) throws Exception {
+        File file = null;
+        if (args.length > 0) {
+            file = new File(args[0]);
+        } else {
+            // make up a file, ~20MB
+            file = File.createTempFile("bench", ".mgf");
+            file.deleteOnExit();
+            System.out.println("Writing a test file to " + file + "...");
+            MascotGenericFormatBench.writeTestFile(file, 5000, 200);
+        }
+        byte[] data = readAll(new FileInputStream(file));
+        System.out.println("File: " + file + ", " + data.length + " bytes");
+
+        // the thread counts to try
+        int processors = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = processors > 8 ? new int[] {1, 2, 4, 8, processors} : new int[] {1, 2, 4, 8};
+
+        // single threaded
+        long start = System.currentTimeMillis();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream out = new CBZip2OutputStream(baos);
+        out.write(data);
+        out.close();
+        long singleCompress = report("CBZip2OutputStream             ", data.length, start, 0);
+        byte[] single = baos.toByteArray();
+        start = System.currentTimeMillis();
+        check(data, readAll(new CBZip2InputStream(new ByteArrayInputStream(single))));
+        long singleDecompress = report("CBZip2InputStream              ", data.length, start, 0);
+
+        // multi-threaded
+        for (int threads : threadCounts) {
+            start = System.currentTimeMillis();
+            baos = new ByteArrayOutputStream();
+            out = new ParallelBZip2OutputStream(baos, threads, 9);
+            out.write(data);
+            out.close();
+            report("ParallelBZip2OutputStream, " + pad(threads), data.length, start, singleCompress);
+            byte[] parallel = baos.toByteArray();
+            start = System.currentTimeMillis();
+            check(data, readAll(new ParallelBZip2InputStream(new ByteArrayInputStream(parallel), threads)));
+            report("ParallelBZip2InputStream, " + pad(threads) + " ", data.length, start, singleDecompress);
+            System.out.println("  compressed to " + parallel.length + " bytes, single threaded is " + single.length + " bytes");
+        }
+    }
+
+    // helper to print the throughput, and the speedup over a time if one is given
+    private static long report(String name, long bytes, long start, long baseline) {
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        double mbPerSecond = (bytes / (1024.0 * 1024.0)) / (millis / 1000.0);
+        String speedup = baseline > 0 ? ", " + Math.round(baseline * 10.0 / millis) / 10.0 + "x" : "";
+        System.out.println(name + ": " + millis + " ms, " + Math.round(mbPerSecond * 10) / 10.0 + " MB/s" + speedup);
+        return millis;
+    }
+
+    private static String pad(int threads) {
+        return threads < 10 ? " " + threads + " threads" : threads + " threads";
+    }
+
+    private static void check(byte[] expected, byte[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            throw new RuntimeException("Decompressed data doesn't match.");
+        }
+    }
+
+    // helper to read all of a stream
+    private static byte[] readAll(InputStream in) throws Exception {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[64 * 1024];
+            for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                baos.write(buf, 0, read);
+            }
+            return baos.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
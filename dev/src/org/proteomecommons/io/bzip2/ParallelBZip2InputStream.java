@@ -0,0 +1,306 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.apache.tools.bzip2.CBZip2InputStream;
+
+/**
+ * Decompresses BZIP2 with several threads. A file written by ParallelBZip2OutputStream is a series of BZIP2 streams, each starting on a byte boundary with "h", the block size digit and the 48-bit block magic. The boundaries are found by scanning the compressed bytes, a candidate only counts if the bytes before it end with the end of stream marker, and each stream is decompressed by CBZip2InputStream on its own thread, a few streams ahead of the reader.
+ *
+ * The blocks inside a single stream aren't byte aligned and can't be found this way. A stream that grows past MAX_STREAM_SIZE without a boundary, e.g. a file written by CBZip2OutputStream, is decompressed on the reader's thread instead.
+ *
+ * Like CBZip2InputStream, the "BZ" file header must already have been read, if there is one.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelBZip2InputStream extends InputStream {
+    /**
+     * The most compressed bytes buffered while looking for the end of a stream.
+     */
+    public static final int MAX_STREAM_SIZE = 2 * 1024 * 1024;
+    
+    // the block magic, 0x314159265359, that follows "h" and the block size
+    private static final byte[] BLOCK_MAGIC = new byte[] {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+    // the end of stream magic, which is followed by the stream's CRC and then padded to a byte
+    private static final long END_MAGIC = 0x177245385090L;
+    
+    // the compressed data, and the bytes read but not yet handed to a thread
+    private InputStream in;
+    private byte[] buffer = new byte[64 * 1024];
+    private int buffered = 0;
+    // how much of the buffer has been searched for a boundary
+    private int searched = 1;
+    private boolean endOfInput = false;
+    
+    // the threads and the streams they are decompressing, in file order
+    private ExecutorService pool;
+    private LinkedList<Future<byte[]>> pending = new LinkedList();
+    private int maxPending;
+    
+    // decompresses a stream with no boundary on the reader's thread
+    private InputStream sequential = null;
+    private boolean tooBig = false;
+    
+    // the data being read
+    private byte[] current = null;
+    private int position = 0;
+    
+    /**
+     * Make a stream that decompresses with a thread per processor.
+     */
+    public ParallelBZip2InputStream(InputStream in) {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Make a new stream.
+     * @param threads The number of threads decompressing streams.
+     */
+    public ParallelBZip2InputStream(InputStream in, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+        this.in = in;
+        this.maxPending = threads * 2;
+        // daemon threads so that an unclosed stream doesn't keep the JVM running
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BZIP2 decompressor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+    
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+    
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+    
+    public int available() {
+        if (current == null) {
+            return 0;
+        }
+        return current.length - position;
+    }
+    
+    public void close() throws IOException {
+        pool.shutdownNow();
+        pending.clear();
+        current = null;
+        in.close();
+    }
+    
+    // helper to make sure there is data left in the current chunk, false at the end of the data
+    private boolean nextChunk() throws IOException {
+        while (current == null || position >= current.length) {
+            position = 0;
+            readAhead();
+            if (!pending.isEmpty()) {
+                try {
+                    current = pending.removeFirst().get();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted decompressing a block.");
+                } catch (ExecutionException e) {
+                    IOException ioe = new IOException("Can't decompress a block.");
+                    ioe.initCause(e.getCause());
+                    throw ioe;
+                }
+                continue;
+            }
+            if (!tooBig) {
+                return false;
+            }
+            
+            // every earlier stream has been read, decompress this one here
+            if (sequential == null) {
+                sequential = new CBZip2InputStream(new SequenceInputStream(new ByteArrayInputStream(buffer, 0, buffered), new FilterInputStream(in) {
+                    // CBZip2InputStream closes its input at the end of the stream
+                    public void close() {
+                    }
+                }));
+                buffer = new byte[64 * 1024];
+                buffered = 0;
+                searched = 1;
+            }
+            current = new byte[64 * 1024];
+            int read = readFully(sequential, current);
+            if (read < current.length) {
+                // the end of the stream, look for more streams
+                sequential = null;
+                tooBig = false;
+                byte[] rest = new byte[read];
+                System.arraycopy(current, 0, rest, 0, read);
+                current = rest;
+            }
+        }
+        return true;
+    }
+    
+    // helper to queue up streams to decompress
+    private void readAhead() throws IOException {
+        while (!tooBig && pending.size() < maxPending) {
+            final byte[] stream = nextStream();
+            if (stream == null) {
+                return;
+            }
+            pending.add(pool.submit(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return decompress(stream);
+                }
+            }));
+        }
+    }
+    
+    // helper to read the compressed bytes of the next stream, null at the end of the input or if the stream is too big
+    private byte[] nextStream() throws IOException {
+        while (true) {
+            // look for the start of the next stream
+            int end = findBoundary();
+            if (end != -1) {
+                return take(end);
+            }
+            if (endOfInput) {
+                return buffered > 0 ? take(buffered) : null;
+            }
+            if (buffered >= MAX_STREAM_SIZE) {
+                tooBig = true;
+                return null;
+            }
+            // read more
+            if (buffered == buffer.length) {
+                byte[] bigger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, bigger, 0, buffered);
+                buffer = bigger;
+            }
+            int read = in.read(buffer, buffered, buffer.length - buffered);
+            if (read == -1) {
+                endOfInput = true;
+            } else {
+                buffered += read;
+            }
+        }
+    }
+    
+    // helper to find the start of a second stream in the buffer, -1 if there isn't one
+    private int findBoundary() {
+        int last = buffered - BLOCK_MAGIC.length - 2;
+        for (int i = searched; i <= last; i++) {
+            if (buffer[i] == 'h' && buffer[i + 1] >= '1' && buffer[i + 1] <= '9' && isBlockMagic(i + 2) && isEndOfStream(i)) {
+                searched = 1;
+                return i;
+            }
+        }
+        searched = Math.max(1, last + 1);
+        return -1;
+    }
+    
+    private boolean isBlockMagic(int offset) {
+        for (int i = 0; i < BLOCK_MAGIC.length; i++) {
+            if (buffer[offset + i] != BLOCK_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // helper to check that the bytes before an offset end with the end of stream magic, the CRC and 0 to 7 bits of padding, so that a match inside the compressed data isn't taken for a boundary
+    private boolean isEndOfStream(int offset) {
+        // the magic and CRC take 80 bits
+        if (offset < 11) {
+            return false;
+        }
+        long bits = offset * 8L;
+        for (int padding = 0; padding < 8; padding++) {
+            if (readBits(bits - padding, padding) == 0 && readBits(bits - padding - 32 - 48, 48) == END_MAGIC) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // helper to read bits from the buffer, most significant first
+    private long readBits(long start, int count) {
+        long value = 0;
+        for (long bit = start; bit < start + count; bit++) {
+            value = (value << 1) | ((buffer[(int) (bit >>> 3)] >>> (7 - (int) (bit & 7))) & 1);
+        }
+        return value;
+    }
+    
+    // helper to remove the first bytes of the buffer
+    private byte[] take(int length) {
+        byte[] stream = new byte[length];
+        System.arraycopy(buffer, 0, stream, 0, length);
+        System.arraycopy(buffer, length, buffer, 0, buffered - length);
+        buffered -= length;
+        return stream;
+    }
+    
+    /**
+     * Decompresses a complete BZIP2 stream, without the "BZ" header.
+     */
+    public static byte[] decompress(byte[] stream) throws IOException {
+        CBZip2InputStream bzip2 = new CBZip2InputStream(new ByteArrayInputStream(stream));
+        ByteArrayOutputStream data = new ByteArrayOutputStream(stream.length * 4);
+        byte[] buf = new byte[64 * 1024];
+        for (int read = readFully(bzip2, buf); read > 0; read = readFully(bzip2, buf)) {
+            data.write(buf, 0, read);
+        }
+        return data.toByteArray();
+    }
+    
+    // helper to fill a buffer, returns the number of bytes read
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int read = 0;
+        while (read < buf.length) {
+            int r = in.read(buf, read, buf.length - read);
+            if (r == -1) {
+                break;
+            }
+            read += r;
+        }
+        return read;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.bzip2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.apache.tools.bzip2.CBZip2OutputStream;
+
+/**
+ * Compresses BZIP2 with several threads, the same way pbzip2 does. The data is split in to chunks the size of a BZIP2 block and each chunk is compressed as its own BZIP2 stream by CBZip2OutputStream, so the Burrows-Wheeler transform and Huffman coding of several blocks run at once. The streams are written in order, one after the other.
+ *
+ * Like CBZip2OutputStream, the "BZ" file header isn't written, not even before the first stream. ParallelBZip2InputStream reads the streams back in parallel.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelBZip2OutputStream extends OutputStream {
+    private OutputStream out;
+    private int blockSize100k;
+    
+    // the chunk being filled
+    private byte[] chunk;
+    private int size = 0;
+    
+    // the threads and the streams they are compressing, in file order
+    private ExecutorService pool;
+    private LinkedList<Future<byte[]>> pending = new LinkedList();
+    private int maxPending;
+    private boolean closed = false;
+    
+    /**
+     * Make a stream that compresses 900k blocks with a thread per processor.
+     */
+    public ParallelBZip2OutputStream(OutputStream out) {
+        this(out, Runtime.getRuntime().availableProcessors(), 9);
+    }
+    
+    /**
+     * Make a new stream.
+     * @param threads The number of threads compressing blocks.
+     * @param blockSize100k The BZIP2 block size, 1 to 9 times 100k.
+     */
+    public ParallelBZip2OutputStream(OutputStream out, int threads, int blockSize100k) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+        if (blockSize100k < 1 || blockSize100k > 9) {
+            throw new IllegalArgumentException("Block size must be 1 to 9.");
+        }
+        this.out = out;
+        this.blockSize100k = blockSize100k;
+        // the same space CBZip2OutputStream allows for a block
+        this.chunk = new byte[blockSize100k * 100000 - 20];
+        this.maxPending = threads * 2;
+        // daemon threads so that an unclosed stream doesn't keep the JVM running
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BZIP2 compressor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+    
+    public void write(int b) throws IOException {
+        if (size == chunk.length) {
+            sendChunk();
+        }
+        chunk[size++] = (byte) b;
+    }
+    
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (size == chunk.length) {
+                sendChunk();
+            }
+            int count = Math.min(len, chunk.length - size);
+            System.arraycopy(b, off, chunk, size, count);
+            size += count;
+            off += count;
+            len -= count;
+        }
+    }
+    
+    /**
+     * Does nothing, each stream must hold a whole chunk for the compression to be as good as CBZip2OutputStream's. Everything is written by close().
+     */
+    public void flush() {
+    }
+    
+    /**
+     * Compresses the rest of the data, then closes the underlying stream.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // an empty file is still one stream
+            if (size > 0 || pending.isEmpty()) {
+                sendChunk();
+            }
+            while (!pending.isEmpty()) {
+                writeStream();
+            }
+        } finally {
+            pool.shutdownNow();
+            out.close();
+        }
+    }
+    
+    // helper to hand the current chunk to the threads
+    private void sendChunk() throws IOException {
+        final byte[] data = chunk;
+        final int length = size;
+        pending.add(pool.submit(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                return compress(data, length, blockSize100k);
+            }
+        }));
+        chunk = new byte[chunk.length];
+        size = 0;
+        // don't get too far ahead of the file
+        while (pending.size() >= maxPending) {
+            writeStream();
+        }
+    }
+    
+    // helper to write the oldest compressed stream
+    private void writeStream() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted compressing a block.");
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Can't compress a block.");
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+    
+    /**
+     * Compresses bytes as a complete BZIP2 stream, without the "BZ" header.
+     */
+    public static byte[] compress(byte[] data, int length, int blockSize100k) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+        CBZip2OutputStream bzip2 = new CBZip2OutputStream(compressed, blockSize100k);
+        bzip2.write(data, 0, length);
+        bzip2.close();
+        return compressed.toByteArray();
+    }
+}
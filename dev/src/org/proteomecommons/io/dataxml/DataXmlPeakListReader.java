@@ -15,151 +15,323 @@
  */
 package org.proteomecommons.io.dataxml;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.nio.ByteOrder;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.proteomecommons.io.ArrayPeakList;
 import org.proteomecommons.io.GenericPeak;
-import org.proteomecommons.io.GenericPeakList;
 import org.proteomecommons.io.GenericPeakListReader;
-import org.proteomecommons.io.Peak;
+import org.proteomecommons.io.MutablePeakList;
 import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.ReusablePeakListReader;
+import org.proteomecommons.io.mzxml.Base64PeakDecoder;
 
 /**
+ * Reads dataXML a spectrum at a time with a StAX parser, so memory use doesn't depend on the size of the file. By default the spectra are read straight off of the parser and the binary arrays are Base64 decoded in to reused buffers. Optionally each &lt;spectrum&gt; element can instead be unmarshalled on its own with JAXB, which gives the same peaks but costs a Spectrum object graph per peak list.
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class DataXmlPeakListReader extends GenericPeakListReader {
-    File file;
-    // the element
-    DataXML dataXML;
-    // index to the list
-    int index = -1;
-    List<Spectrum> spectra;
+public class DataXmlPeakListReader extends GenericPeakListReader implements ReusablePeakListReader {
+    // one context for every reader, they're expensive to make
+    private static JAXBContext jaxbContext = null;
+
+    // the parser
+    private InputStream in;
+    private XMLStreamReader parser;
+    // the JAXB unmarshaller, null unless spectra are unmarshalled
+    private Unmarshaller unmarshaller = null;
+
+    // decodes the binary arrays of a spectrum
+    private Base64PeakDecoder decoder = new Base64PeakDecoder();
+    // the decoded arrays, reused between spectra
+    private double[] mzValues = new double[0];
+    private double[] intensityValues = new double[0];
+    private int mzCount = 0;
+    private int intensityCount = 0;
+
+    /**
+     * Make a reader that reads spectra straight off of the parser.
+     */
     public DataXmlPeakListReader(String filename) {
-        super(filename);
-        // make the file
-        this.file = new File(filename);
+        this(filename, false);
+    }
+
+    /**
+     * Make a new reader.
+     * @param unmarshal True if each spectrum should be unmarshalled with JAXB.
+     */
+    public DataXmlPeakListReader(String filename, boolean unmarshal) {
+        this(openFile(filename), filename, unmarshal);
+    }
+
+    /**
+     * Make a reader for dataXML in a stream.
+     * @param stream The stream to read, closed when the reader is closed.
+     * @param name The name of the stream, usually the name of the file it came from.
+     * @param unmarshal True if each spectrum should be unmarshalled with JAXB.
+     */
+    public DataXmlPeakListReader(InputStream stream, String name, boolean unmarshal) {
+        super(name);
+        try {
+            in = new BufferedInputStream(stream);
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            parser = factory.createXMLStreamReader(in);
+            if (unmarshal) {
+                unmarshaller = getJAXBContext().createUnmarshaller();
+            }
+        } catch (Exception e) {
+            close();
+            throw new RuntimeException("Can't load dataXML file!", e);
+        }
+    }
+
+    // helper to open a file for the file constructors
+    private static InputStream openFile(String filename) {
         try {
-            // load the data
-            JAXBContext jaxbContext = JAXBContext.newInstance("org.proteomecommons.io.dataxml");
-            Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-            JAXBElement<DataXML> bookingElement = (JAXBElement<DataXML>) unmarshaller.unmarshal(file);
-            // set the root node
-            dataXML = bookingElement.getValue();
-            // set the spectra
-            spectra = dataXML.getSpectrumList().getSpectrum();
-        } catch (JAXBException ex) {
-            throw new RuntimeException("Can't load dataXML file!", ex);
+            return new FileInputStream(filename);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't load dataXML file!", e);
         }
     }
-    
+
     public PeakList getPeakList() {
-        // increment the index
-        index++;
-        // if out of index, throw null
-        if (index >= spectra.size()) {
+        ArrayPeakList peaklist = new ArrayPeakList();
+        if (!readInto(peaklist)) {
             return null;
         }
-        // make a peak list out of the next spectra
-        Spectrum s = spectra.get(index);
-        SpectrumData sd = s.getSpectrumData();
-        List<BinaryDataArray> binaryData = sd.getBinaryData();
-        
-        // get the m/z and intensity values
-        BinaryDataArray mz = null;
-        BinaryDataArray intensities = null;
-        for (BinaryDataArray bda : binaryData) {
-            // get the mz array
-            if (bda.getCvParam().get(0).getValue().equals("MassToChargeRatioArray")) {
-                mz = bda;
+        // free up any unused space
+        peaklist.trimToSize();
+        return peaklist;
+    }
+
+    /**
+     * @see org.proteomecommons.io.ReusablePeakListReader#readInto(MutablePeakList)
+     */
+    public boolean readInto(MutablePeakList target) {
+        try {
+            // find the next spectrum, the parser may already be on it if JAXB read the last one
+            while (parser.getEventType() != XMLStreamConstants.END_DOCUMENT) {
+                if (parser.getEventType() == XMLStreamConstants.START_ELEMENT && parser.getLocalName().equals("spectrum")) {
+                    GenericPeak parent = unmarshaller != null ? unmarshalSpectrum() : parseSpectrum();
+
+                    // copy the peaks to the target
+                    target.clear();
+                    target.setParentPeak(parent);
+                    target.setTandemCount(PeakList.UNKNOWN_TANDEM_COUNT);
+                    int count = Math.min(mzCount, intensityCount);
+                    target.ensureCapacity(count);
+                    for (int i=0;i<count;i++) {
+                        target.addPeak(mzValues[i], intensityValues[i]);
+                    }
+                    return true;
+                }
+                parser.next();
+            }
+            return false;
+        } catch (Exception e) {
+            throw new RuntimeException("Can't read dataXML file!", e);
+        }
+    }
+
+    // helper to read a spectrum element off of the parser, leaves the parser after the end of the spectrum
+    private GenericPeak parseSpectrum() throws XMLStreamException {
+        mzCount = 0;
+        intensityCount = 0;
+        GenericPeak parent = null;
+        // only the first precursor's ion selection is used
+        boolean inIonSelection = false;
+        boolean precursorDone = false;
+        // the binary array being read
+        boolean inBinaryData = false;
+        boolean inBinary = false;
+        String precision = null;
+        String compressionType = null;
+        String contentType = null;
+
+        for (int event = parser.next(); ; event = parser.next()) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = parser.getLocalName();
+                if (name.equals("ionSelection") && !precursorDone) {
+                    inIonSelection = true;
+                    parent = new GenericPeak();
+                } else if (name.equals("binaryData")) {
+                    inBinaryData = true;
+                    precision = parser.getAttributeValue(null, "precision");
+                    compressionType = parser.getAttributeValue(null, "compressionType");
+                    contentType = null;
+                    decoder.reset();
+                } else if (name.equals("binary") && inBinaryData) {
+                    inBinary = true;
+                } else if (name.equals("cvParam")) {
+                    if (inIonSelection) {
+                        setParentValue(parent, parser.getAttributeValue(null, "name"), parser.getAttributeValue(null, "value"));
+                    } else if (inBinaryData && contentType == null) {
+                        contentType = parser.getAttributeValue(null, "value");
+                    }
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS && inBinary) {
+                decoder.decode(parser.getTextCharacters(), parser.getTextStart(), parser.getTextLength());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = parser.getLocalName();
+                if (name.equals("ionSelection") && inIonSelection) {
+                    inIonSelection = false;
+                    precursorDone = true;
+                } else if (name.equals("binary")) {
+                    inBinary = false;
+                } else if (name.equals("binaryData")) {
+                    inBinaryData = false;
+                    decodeArray(decoder.getBytes(), precision, compressionType, contentType);
+                } else if (name.equals("spectrum")) {
+                    parser.next();
+                    return parent;
+                }
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                throw new RuntimeException("Unexpected end of file in a spectrum.");
             }
-            // get the intensity array
-            if (bda.getCvParam().get(0).getValue().equals("IntensityArray")) {
-                intensities = bda;
+        }
+    }
+
+    // helper to unmarshal a spectrum element with JAXB, leaves the parser after the end of the spectrum
+    private GenericPeak unmarshalSpectrum() throws JAXBException, IOException {
+        Spectrum s = unmarshaller.unmarshal(parser, Spectrum.class).getValue();
+        mzCount = 0;
+        intensityCount = 0;
+
+        // decode the m/z and intensity values
+        if (s.getSpectrumData() != null) {
+            for (BinaryDataArray bda : s.getSpectrumData().getBinaryData()) {
+                String contentType = bda.getCvParam().size() > 0 ? bda.getCvParam().get(0).getValue() : null;
+                decodeArray(ByteBuffer.wrap(bda.getBinary()), bda.getPrecision(), bda.getCompressionType(), contentType);
             }
         }
-        
-        // convert to a peak list
-        double[] mzValues = decode(mz);
-        double[] intensityValues = decode(intensities);
-        
-        // start making the peak list
-        GenericPeakList gpl = new GenericPeakList();
-        
+
         // try to get precursor info
+        if (s.getSpectrumHeader() == null || s.getSpectrumHeader().getPrecursorList() == null) {
+            return null;
+        }
         List<Precursor> precursors = s.getSpectrumHeader().getPrecursorList().getPrecursor();
-        if (precursors.size() > 0) {
-            // make a parent peak
-            GenericPeak parent = new GenericPeak();
-            Precursor pre = precursors.get(0);
-            ParamGroup ionSelect = pre.getIonSelection();
-            // get all the params
-            List<CVParam> params = ionSelect.getCvParam();
-            for (CVParam param : params) {
-                if (param.getName().equals("MassToChargeRatio"))
-                    parent.setMassOverCharge(Double.parseDouble(param.getValue()));
-                if (param.getName().equals("ChargeState"))
-                    parent.setCharge(Integer.parseInt(param.getValue()));
-                if (param.getName().equals("Intensity"))
-                    parent.setIntensity(Double.parseDouble(param.getValue()));
-            }
-            // add to the peak list
-            gpl.setParentPeak(parent);
-            
-        }
-        
-        // make a peak list
-        ArrayList<Peak> peaks = new ArrayList();
-        for (int i=0;i<mzValues.length;i++) {
-            GenericPeak gp = new GenericPeak();
-            gp.setIntensity(intensityValues[i]);
-            gp.setMassOverCharge(mzValues[i]);
-            peaks.add(gp);
-        }
-        gpl.setPeaks(peaks.toArray(new Peak[0]));
-        
-        // return the newly made peak list
-        return gpl;
+        if (precursors.size() == 0 || precursors.get(0).getIonSelection() == null) {
+            return null;
+        }
+        // make a parent peak
+        GenericPeak parent = new GenericPeak();
+        for (CVParam param : precursors.get(0).getIonSelection().getCvParam()) {
+            setParentValue(parent, param.getName(), param.getValue());
+        }
+        return parent;
     }
-    
-    private double[] decode(BinaryDataArray bda) {
-        // figure out how many floats are in there
-        double[] toReturn = new double[bda.getArrayLength().intValue()/8];
+
+    // helper to set a parent peak value from an ion selection cvParam
+    private static void setParentValue(GenericPeak parent, String name, String value) {
+        if (name == null || value == null) {
+            return;
+        }
+        if (name.equals("MassToChargeRatio"))
+            parent.setMassOverCharge(Double.parseDouble(value));
+        if (name.equals("ChargeState"))
+            parent.setCharge(Integer.parseInt(value));
+        if (name.equals("Intensity"))
+            parent.setIntensity(Double.parseDouble(value));
+    }
+
+    // helper to decode a binary array straight in to the m/z or intensity buffer
+    private void decodeArray(ByteBuffer bytes, String precision, String compressionType, String contentType) {
+        if (contentType == null) {
+            return;
+        }
+        boolean isMz = contentType.equals("MassToChargeRatioArray");
+        if (!isMz && !contentType.equals("IntensityArray")) {
+            return;
+        }
         try {
-            // get the data
-            byte[] bytes = bda.getBinary();
-            // optionally decompress GZIP
-            if (bda.getCompressionType().equals("GZIP")) {
-                // assume GZIP for now
-                GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(bytes));
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                for (int i=gis.read();i!=-1;i=gis.read()) {
-                    baos.write((byte)i);
-                }
-                bytes = baos.toByteArray();
-            }
-            // make a data input stream
-            ByteBuffer bb = ByteBuffer.wrap(bytes);
-            for (int i=0;i<toReturn.length;i++) {
-                toReturn[i] = bb.getDouble();
+            // optionally decompress
+            if (compressionType != null && (compressionType.equalsIgnoreCase("GZIP") || compressionType.equalsIgnoreCase("zlib"))) {
+                byte[] compressed = new byte[bytes.remaining()];
+                bytes.get(compressed);
+                InputStream is = new ByteArrayInputStream(compressed);
+                is = compressionType.equalsIgnoreCase("GZIP") ? new GZIPInputStream(is) : new InflaterInputStream(is);
+                bytes = ByteBuffer.wrap(readFully(is));
             }
         } catch (IOException ex) {
             throw new RuntimeException("Can't decode the data.", ex);
         }
-        
-        return toReturn;
+        // the arrays are big endian, 64-bit unless stated otherwise
+        bytes.order(ByteOrder.BIG_ENDIAN);
+        boolean is32Bit = precision != null && precision.trim().equals("32");
+        int count = bytes.remaining() / (is32Bit ? 4 : 8);
+        double[] values = isMz ? mzValues : intensityValues;
+        if (values.length < count) {
+            values = new double[count];
+        }
+        if (is32Bit) {
+            for (int i=0;i<count;i++) {
+                values[i] = bytes.getFloat();
+            }
+        } else {
+            bytes.asDoubleBuffer().get(values, 0, count);
+        }
+        if (isMz) {
+            mzValues = values;
+            mzCount = count;
+        } else {
+            intensityValues = values;
+            intensityCount = count;
+        }
     }
-    
+
+    // helper to read all of a stream
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            byte[] buf = new byte[8192];
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            for (int read = is.read(buf); read != -1; read = is.read(buf)) {
+                baos.write(buf, 0, read);
+            }
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Returns the JAXB context of the dataXML classes, made the first time it is needed.
+     */
+    public static synchronized JAXBContext getJAXBContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance("org.proteomecommons.io.dataxml");
+        }
+        return jaxbContext;
+    }
+
     public void close() {
-        // noop
+        try {
+            if (parser != null) {
+                parser.close();
+            }
+        } catch (Exception e) {
+            // noop
+        }
+        try {
+            if (in != null) {
+                in.close();
+            }
+        } catch (Exception e) {
+            // noop
+        }
     }
 }
@@ -15,16 +15,34 @@
  */
 package org.proteomecommons.io.dataxml;
 
+import java.io.InputStream;
 import org.proteomecommons.io.PeakListReader;
-import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 
 /**
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class DataXmlPeakListReaderFactory implements PeakListReaderFactory {
+public class DataXmlPeakListReaderFactory implements StreamPeakListReaderFactory {
+    // unmarshal each spectrum with JAXB, off unless the "dataxml.unmarshal" system property is true
+    private static boolean unmarshal = Boolean.getBoolean("dataxml.unmarshal");
+    
     public PeakListReader newInstance(String filename) {
-        return new DataXmlPeakListReader(filename);
+        return new DataXmlPeakListReader(filename, unmarshal);
+    }
+    
+    public PeakListReader newInstance(InputStream in, String name) {
+        return new DataXmlPeakListReader(in, name, unmarshal);
     }
     
+    public static boolean isUnmarshal() {
+        return unmarshal;
+    }
+    
+    /**
+     * Sets if new readers unmarshal each spectrum with JAXB instead of reading it straight off of the parser.
+     */
+    public static void setUnmarshal(boolean unmarshal) {
+        DataXmlPeakListReaderFactory.unmarshal = unmarshal;
+    }
 }
@@ -16,16 +16,22 @@
 package org.proteomecommons.io.dataxml;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.proteomecommons.io.ArrayPeakList;
 import org.proteomecommons.io.GenericPeakListReader;
 import org.proteomecommons.io.Peak;
 import org.proteomecommons.io.PeakList;
@@ -33,16 +39,51 @@ import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.PeakListWriter;
 
 /**
+ * Writes dataXML. By default the document is streamed: the admin, softwareList and dataProcessingList elements are written when the writer is made, each spectrum is marshalled as a fragment when it is written, and the document is ended on close, so only one spectrum is ever in memory. Otherwise every spectrum is kept and the whole document is marshalled on close.
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
 public class DataXmlPeakListWriter implements PeakListWriter {
+    // the dataXML namespace
+    private static final String NAMESPACE = "http://sashimi.sourceforge.net/schema_revision/DataXML_0.1";
+    
     String filename;
     // keep a data structure for the file
     DataXML dataXML = new DataXML();
     
+    // true if spectra are written as they are given
+    private boolean streaming;
+    // the stream to write to instead of the file, if any
+    private OutputStream stream = null;
+    private OutputStream out = null;
+    private XMLStreamWriter xmlw = null;
+    private Marshaller marshaller = null;
+    
+    /**
+     * Make a writer that streams the document.
+     */
     public DataXmlPeakListWriter(String filename) {
+        this(filename, true);
+    }
+    
+    /**
+     * Make a new writer.
+     * @param streaming True if spectra should be written as they are given, false to write the whole document on close.
+     */
+    public DataXmlPeakListWriter(String filename, boolean streaming) {
+        this(null, filename, streaming);
+    }
+    
+    /**
+     * Make a writer that writes to a stream.
+     * @param stream The stream to write to, closed when the writer is closed. If null the named file is written.
+     * @param filename The name of the data.
+     * @param streaming True if spectra should be written as they are given, false to write the whole document on close.
+     */
+    public DataXmlPeakListWriter(OutputStream stream, String filename, boolean streaming) {
+        this.stream = stream;
         this.filename = filename;
+        this.streaming = streaming;
         // set up the data XML
         dataXML.setSpectrumList(new SpectrumList());
         
@@ -85,6 +126,42 @@ public class DataXmlPeakListWriter implements PeakListWriter {
         dp.setId(s.getId());
         dp.setOrder(1);
         dataProcessing.add(dp);
+        
+        // write everything before the spectra
+        if (streaming) {
+            try {
+                startDocument();
+            } catch (Exception e) {
+                close();
+                throw new RuntimeException("Can't create dataXML file!", e);
+            }
+        }
+    }
+    
+    // helper to write the start of the document, up to the spectrumList element
+    private void startDocument() throws IOException, JAXBException, XMLStreamException {
+        out = new BufferedOutputStream(stream != null ? stream : new FileOutputStream(filename), 64 * 1024);
+        xmlw = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        marshaller = DataXmlPeakListReader.getJAXBContext().createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        
+        xmlw.writeStartDocument("UTF-8", "1.0");
+        xmlw.writeCharacters("\n");
+        xmlw.writeStartElement("x", "dataXML", NAMESPACE);
+        xmlw.writeNamespace("x", NAMESPACE);
+        xmlw.writeCharacters("\n");
+        writeFragment("admin", Admin.class, dataXML.admin);
+        writeFragment("softwareList", SoftwareList.class, dataXML.softwareList);
+        writeFragment("dataProcessingList", DataProcessingList.class, dataXML.dataProcessingList);
+        // the spectrum count isn't known yet, it's optional
+        xmlw.writeStartElement("spectrumList");
+        xmlw.writeCharacters("\n");
+    }
+    
+    // helper to marshal an element of the document on its own
+    private void writeFragment(String name, Class type, Object value) throws JAXBException, XMLStreamException {
+        marshaller.marshal(new JAXBElement(new QName(name), type, value), xmlw);
+        xmlw.writeCharacters("\n");
     }
     
     public void write(PeakList peaklist) {
@@ -131,22 +208,31 @@ public class DataXmlPeakListWriter implements PeakListWriter {
             // make up the data
             SpectrumData data = new SpectrumData();
             List<BinaryDataArray> bds = data.getBinaryData();
-            // make a binary array for the intensities and m/z values
-            Peak[] peaks = peaklist.getPeaks();
-            ByteArrayOutputStream mzOut = new ByteArrayOutputStream();
-            ByteArrayOutputStream intensityOut = new ByteArrayOutputStream();
-            DataOutputStream a = new DataOutputStream(mzOut);
-            DataOutputStream b = new DataOutputStream(intensityOut);
-            for (int i=0;i<peaks.length;i++) {
-                a.writeDouble(peaks[i].getMassOverCharge());
-                b.writeDouble(peaks[i].getIntensity());
+            // make a binary array for the intensities and m/z values, big endian doubles
+            ByteBuffer mzOut;
+            ByteBuffer intensityOut;
+            if (peaklist instanceof ArrayPeakList) {
+                // bulk copy the primitive arrays
+                ArrayPeakList apl = (ArrayPeakList) peaklist;
+                mzOut = ByteBuffer.allocate(apl.size() * 8);
+                intensityOut = ByteBuffer.allocate(apl.size() * 8);
+                mzOut.asDoubleBuffer().put(apl.getMassOverChargeArray(), 0, apl.size());
+                intensityOut.asDoubleBuffer().put(apl.getIntensityArray(), 0, apl.size());
+            } else {
+                Peak[] peaks = peaklist.getPeaks();
+                mzOut = ByteBuffer.allocate(peaks.length * 8);
+                intensityOut = ByteBuffer.allocate(peaks.length * 8);
+                for (int i=0;i<peaks.length;i++) {
+                    mzOut.putDouble(peaks[i].getMassOverCharge());
+                    intensityOut.putDouble(peaks[i].getIntensity());
+                }
             }
             // make the arrays
             BinaryDataArray mz = new BinaryDataArray();
             mz.setCompressionType("NONE");
-            mz.setBinary(mzOut.toByteArray());
-            mz.setArrayLength(mzOut.size());
-            mz.setEncodedLength(mzOut.size());
+            mz.setBinary(mzOut.array());
+            mz.setArrayLength(mzOut.capacity());
+            mz.setEncodedLength(mzOut.capacity());
             data.getBinaryData().add(mz);
             // add the cv param
             CVParam mzParam = new CVParam();
@@ -159,9 +245,9 @@ public class DataXmlPeakListWriter implements PeakListWriter {
             // make the intensity array too
             BinaryDataArray intensities = new BinaryDataArray();
             intensities.setCompressionType("NONE");
-            intensities.setBinary(intensityOut.toByteArray());
-            intensities.setArrayLength(intensityOut.size());
-            intensities.setEncodedLength(intensityOut.size());
+            intensities.setBinary(intensityOut.array());
+            intensities.setArrayLength(intensityOut.capacity());
+            intensities.setEncodedLength(intensityOut.capacity());
             data.getBinaryData().add(intensities);
             // add the cv param
             CVParam intensityParam = new CVParam();
@@ -173,26 +259,34 @@ public class DataXmlPeakListWriter implements PeakListWriter {
             intensities.getCvParam().add(intensityParam);
             // add the data
             spectrum.setSpectrumData(data);
-            // add the spectrum
-            dataXML.getSpectrumList().getSpectrum().add(spectrum);
-        } catch (IOException ex) {
+            // write or keep the spectrum
+            if (streaming) {
+                writeFragment("spectrum", Spectrum.class, spectrum);
+            } else {
+                dataXML.getSpectrumList().getSpectrum().add(spectrum);
+            }
+        } catch (Exception ex) {
             throw new RuntimeException("Can't write peak list in dataXML format.", ex);
         }
     }
     
     public void close() {
+        if (streaming) {
+            endDocument();
+            return;
+        }
         try {
             // serialize the whole thing
-            JAXBContext jaxbContext = JAXBContext.newInstance("org.proteomecommons.io.dataxml");
+            JAXBContext jaxbContext = DataXmlPeakListReader.getJAXBContext();
             Marshaller marshaller = jaxbContext.createMarshaller();
             JAXBElement<DataXML> data = (new ObjectFactory()).createDataXML(dataXML);
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             
             // write out to the file
-            FileOutputStream fos = null;
+            OutputStream fos = null;
             BufferedOutputStream bos = null;
             try {
-                fos = new FileOutputStream(filename);
+                fos = stream != null ? stream : new FileOutputStream(filename);
                 bos = new BufferedOutputStream(fos);
                 marshaller.marshal(data, bos);
                 bos.flush();
@@ -209,7 +303,32 @@ public class DataXmlPeakListWriter implements PeakListWriter {
         }
     }
     
-    
+    // helper to end a streamed document
+    private void endDocument() {
+        try {
+            if (xmlw != null) {
+                // spectrumList and dataXML
+                xmlw.writeEndElement();
+                xmlw.writeCharacters("\n");
+                xmlw.writeEndElement();
+                xmlw.writeEndDocument();
+                xmlw.flush();
+                xmlw.close();
+                xmlw = null;
+            }
+        } catch (XMLStreamException ex) {
+            throw new RuntimeException("Can't create dataXML file!", ex);
+        } finally {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (Exception e) {
+                // noop
+            }
+            out = null;
+        }
+    }
     
     public static void main(String[] args) throws Exception {
         // read in the example peak list
@@ -15,16 +15,35 @@
  */
 package org.proteomecommons.io.dataxml;
 
+import java.io.OutputStream;
 import org.proteomecommons.io.PeakListWriter;
-import org.proteomecommons.io.PeakListWriterFactory;
+import org.proteomecommons.io.StreamPeakListWriterFactory;
 
 /**
  *A factory class for generating instances of dataXML peak list writers.
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class DataXmlPeakListWriterFactory implements PeakListWriterFactory {
+public class DataXmlPeakListWriterFactory implements StreamPeakListWriterFactory {
+    // stream spectra to the file, on unless the "dataxml.buffered" system property is true
+    private static boolean streaming = !Boolean.getBoolean("dataxml.buffered");
+    
     public PeakListWriter newInstance(String filename) {
-        return new DataXmlPeakListWriter(filename);
+        return new DataXmlPeakListWriter(filename, streaming);
+    }
+    
+    public PeakListWriter newInstance(OutputStream out, String name) {
+        return new DataXmlPeakListWriter(out, name, streaming);
+    }
+    
+    public static boolean isStreaming() {
+        return streaming;
+    }
+    
+    /**
+     * Sets if new writers write each spectrum as it is given instead of marshalling the whole document on close.
+     */
+    public static void setStreaming(boolean streaming) {
+        DataXmlPeakListWriterFactory.streaming = streaming;
     }
 
     public String getName() {
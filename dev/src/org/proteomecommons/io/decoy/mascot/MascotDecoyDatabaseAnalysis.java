@@ -18,6 +18,7 @@ package org.proteomecommons.io.decoy.mascot;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -30,6 +31,7 @@ import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.UnknownFileFormatException;
 import org.proteomecommons.io.decoy.GenericDecoyDatabaseAnalysis;
 import org.proteomecommons.io.decoy.GenericScoredPeptide;
+import org.proteomecommons.io.mgf.MascotGenericFormatIndex;
 import org.proteomecommons.jaf.Atom;
 import org.proteomecommons.jaf.Peptide;
 
@@ -53,18 +55,31 @@ public class MascotDecoyDatabaseAnalysis extends GenericDecoyDatabaseAnalysis {
         // keep track of the sorted mappings
         ArrayList<Mapping> mappings = new ArrayList();
         try {
-            // read in all the peak lsits
-            PeakListReader plr = GenericPeakListReader.getPeakListReader(peakListFile.getAbsolutePath());
-            int index = 0;
-            for (PeakList pl = plr.getPeakList();pl!=null;pl = plr.getPeakList()) {
-                index++;
-                Mapping m = new Mapping();
-                m.index = index;
-                m.mz = pl.getParentPeak().getMassOverCharge();
-                mappings.add(m);
+            if (MascotGenericFormatIndex.canIndex(peakListFile)) {
+                // use the MGF's index instead of reading all the peak lists
+                MascotGenericFormatIndex index = MascotGenericFormatIndex.getIndex(peakListFile);
+                for (int i=0;i<index.size();i++) {
+                    Mapping m = new Mapping();
+                    m.index = i+1;
+                    m.mz = index.getPepmass(i);
+                    mappings.add(m);
+                }
+            } else {
+                // read in all the peak lsits
+                PeakListReader plr = GenericPeakListReader.getPeakListReader(peakListFile.getAbsolutePath());
+                int index = 0;
+                for (PeakList pl = plr.getPeakList();pl!=null;pl = plr.getPeakList()) {
+                    index++;
+                    Mapping m = new Mapping();
+                    m.index = index;
+                    m.mz = pl.getParentPeak().getMassOverCharge();
+                    mappings.add(m);
+                }
             }
         } catch (UnknownFileFormatException ex) {
             throw new RuntimeException("Peak list reading issues.", ex);
+        } catch (IOException ex) {
+            throw new RuntimeException("Peak list reading issues.", ex);
         }
         
         // sort to get the order mascot expects
@@ -18,6 +18,7 @@ package org.proteomecommons.io.decoy.mascot;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -28,6 +29,7 @@ import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.UnknownFileFormatException;
 import org.proteomecommons.io.decoy.GenericDecoyDatabaseAnalysis;
 import org.proteomecommons.io.decoy.GenericScoredPeptide;
+import org.proteomecommons.io.mgf.MascotGenericFormatIndex;
 import org.proteomecommons.io.mgf.MascotGenericFormatPeakList;
 import org.proteomecommons.jaf.Atom;
 import org.proteomecommons.jaf.Peptide;
@@ -54,16 +56,26 @@ public class TitleIdentifiedMascotDecoyDatabaseAnalysis extends GenericDecoyData
         
         // map titles to peak list index
         try {
-            // read in all the peak lsits
-            PeakListReader plr = GenericPeakListReader.getPeakListReader(peakListFile.getAbsolutePath());
-            int index = 0;
-            for (PeakList pl = plr.getPeakList();pl!=null;pl = plr.getPeakList()) {
-                index++;
-                MascotGenericFormatPeakList mgfpl = (MascotGenericFormatPeakList)pl;
-                titleToIndex.put(mgfpl.getTitle(), index);
+            if (MascotGenericFormatIndex.canIndex(peakListFile)) {
+                // use the MGF's index instead of reading all the peak lists
+                MascotGenericFormatIndex index = MascotGenericFormatIndex.getIndex(peakListFile);
+                for (int i=0;i<index.size();i++) {
+                    titleToIndex.put(index.getTitle(i), i+1);
+                }
+            } else {
+                // read in all the peak lsits
+                PeakListReader plr = GenericPeakListReader.getPeakListReader(peakListFile.getAbsolutePath());
+                int index = 0;
+                for (PeakList pl = plr.getPeakList();pl!=null;pl = plr.getPeakList()) {
+                    index++;
+                    MascotGenericFormatPeakList mgfpl = (MascotGenericFormatPeakList)pl;
+                    titleToIndex.put(mgfpl.getTitle(), index);
+                }
             }
         } catch (UnknownFileFormatException ex) {
             throw new RuntimeException("Peak list reading issues.", ex);
+        } catch (IOException ex) {
+            throw new RuntimeException("Peak list reading issues.", ex);
         }
         
         // do a parse through the file to get the query/title matches
@@ -19,6 +19,7 @@ import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
@@ -30,6 +31,7 @@ import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.UnknownFileFormatException;
 import org.proteomecommons.io.decoy.GenericDecoyDatabaseAnalysis;
 import org.proteomecommons.io.decoy.GenericScoredPeptide;
+import org.proteomecommons.io.mgf.MascotGenericFormatIndex;
 import org.proteomecommons.io.mgf.MascotGenericFormatPeakList;
 import org.proteomecommons.jaf.Peptide;
 
@@ -48,17 +50,26 @@ public class SequestDecoyDatabaseAnalysis extends GenericDecoyDatabaseAnalysis {
         // parse the MGF file
         HashMap<String, Integer> mappings = new HashMap();
         try {
-            // read in all the peak lsits
-            PeakListReader plr = GenericPeakListReader.getPeakListReader(peakListFile.getAbsolutePath());
-            int index = 0;
-            for (PeakList pl = plr.getPeakList();pl!=null;pl = plr.getPeakList()) {
-                index++;
-                MascotGenericFormatPeakList mgfpl = (MascotGenericFormatPeakList)pl;
-                String id = mgfpl.getTitle();
-                mappings.put(id, index);
+            if (MascotGenericFormatIndex.canIndex(peakListFile)) {
+                // use the MGF's index instead of reading all the peak lists
+                MascotGenericFormatIndex index = MascotGenericFormatIndex.getIndex(peakListFile);
+                for (int i=0;i<index.size();i++) {
+                    mappings.put(index.getTitle(i), i+1);
+                }
+            } else {
+                // read in all the peak lsits
+                PeakListReader plr = GenericPeakListReader.getPeakListReader(peakListFile.getAbsolutePath());
+                int index = 0;
+                for (PeakList pl = plr.getPeakList();pl!=null;pl = plr.getPeakList()) {
+                    index++;
+                    MascotGenericFormatPeakList mgfpl = (MascotGenericFormatPeakList)pl;
+                    mappings.put(mgfpl.getTitle(), index);
+                }
             }
         } catch (UnknownFileFormatException ex) {
             throw new RuntimeException("Peak list reading issues.", ex);
+        } catch (IOException ex) {
+            throw new RuntimeException("Peak list reading issues.", ex);
         }
         
         
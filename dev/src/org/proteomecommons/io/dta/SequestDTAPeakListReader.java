@@ -19,7 +19,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
 import org.proteomecommons.io.GenericPeakListReader;
 import org.proteomecommons.io.*;
@@ -32,7 +33,7 @@ import org.proteomecommons.jaf.Atom;
  * @author Jayson Falkner - jfalkner@umich.edu
  *
  */
-public class SequestDTAPeakListReader extends GenericPeakListReader {
+public class SequestDTAPeakListReader extends GenericPeakListReader implements ReusablePeakListReader {
     FileReader fr;
     BufferedReader br;
     
@@ -68,10 +69,35 @@ public class SequestDTAPeakListReader extends GenericPeakListReader {
         }
     }
     
+    /**
+     * Make a reader for DTA peak lists in a stream.
+     *
+     * @param in The stream to read, closed when the reader is closed.
+     * @param name The name of the stream, usually the name of the file it came from.
+     */
+    public SequestDTAPeakListReader(InputStream in, String name) {
+        super(name);
+        br = new BufferedReader(new InputStreamReader(in));
+    }
+    
     /**
      * @see org.proteomecommons.io.PeakListReader#next()
      */
     public PeakList getPeakList() {
+        // make a new TandemPeakList
+        ArrayPeakList gtpl = new ArrayPeakList();
+        if (!readInto(gtpl)) {
+            return null;
+        }
+        // free up any unused space
+        gtpl.trimToSize();
+        return gtpl;
+    }
+    
+    /**
+     * @see org.proteomecommons.io.ReusablePeakListReader#readInto(MutablePeakList)
+     */
+    public boolean readInto(MutablePeakList gtpl) {
         // inc number of peak lists read
         peakListsRead++;
         
@@ -84,8 +110,8 @@ public class SequestDTAPeakListReader extends GenericPeakListReader {
             
             // check for null
             if (line == null) {
-                // conditionally open the next file
-                if (peakListsRead > 1) {
+                // conditionally open the next file, streams have no next file
+                if (peakListsRead > 1 && fr != null) {
                     File file = new File(this.getName().split("\\.dta")[0]+"."+peakListsRead+".dta");
                     if (file.exists()) {
                         // close the old readers
@@ -102,17 +128,17 @@ public class SequestDTAPeakListReader extends GenericPeakListReader {
                         // flag the use of unknown charge
                         useUnknownCharge = true;
                     } else {
-                        return null;
+                        return false;
                     }
                 } else {
                     // check for a new peak list
-                    return null;
+                    return false;
                 }
             }
             
             // if the line is blank, return a new one
             if (line.trim().equals("")) {
-                return getPeakList();
+                return readInto(gtpl);
             }
             
             // split by whitespace
@@ -121,8 +147,9 @@ public class SequestDTAPeakListReader extends GenericPeakListReader {
                 throw new InvalidFileFormatException("The first line of a DTA file must include a m/z and charge pair.");
             }
             
-            // make a new TandemPeakList
-            GenericPeakList gtpl = new GenericPeakList();
+            // reset the peak list
+            gtpl.clear();
+            gtpl.setTandemCount(PeakList.UNKNOWN_TANDEM_COUNT);
             
             // set the parent peak
             DTAPeak parent = new DTAPeak();
@@ -147,7 +174,6 @@ public class SequestDTAPeakListReader extends GenericPeakListReader {
             
             
             // set all the other peaks
-            LinkedList<Peak> peaks = new LinkedList();
             for (line = br.readLine(); line != null; line = br.readLine()) {
                 // read a line
                 if (line == null || line.trim().equals("")) {
@@ -175,18 +201,12 @@ public class SequestDTAPeakListReader extends GenericPeakListReader {
                     throw new InvalidFileFormatException("Expected a number but found the value '"+parts[1]+"'");
                 }
                 
-                // return the appropriate fragment
-                GenericPeak p = new GenericPeak();
-                p.setMassOverCharge(massOverChargeInDaltons);
-                p.setIntensity(intensity);
-                peaks.add(p);
+                // add the peak
+                gtpl.addPeak(massOverChargeInDaltons, intensity);
             }
             
-            // set the peaks
-            gtpl.setPeaks(peaks.toArray(new Peak[0]));
-            
-            // return the peak list
-            return gtpl;
+            // flag that a peak list was read
+            return true;
         } catch (IOException e) {
             throw new InvalidFileFormatException("Invalid DTA file format!", e);
         }
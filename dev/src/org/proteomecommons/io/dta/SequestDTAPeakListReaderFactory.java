@@ -15,16 +15,17 @@
  */
 package org.proteomecommons.io.dta;
 
+import java.io.InputStream;
 
 import org.proteomecommons.io.PeakListReader;
-import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 
 /**
  * Factory for creating SEQUEST peak list readers.
  * @author Jayson Falkner - jfalkner@umich.edu
  *
  */
-public class SequestDTAPeakListReaderFactory implements PeakListReaderFactory {
+public class SequestDTAPeakListReaderFactory implements StreamPeakListReaderFactory {
     public PeakListReader newInstance(String filename) {
         try {
             return new SequestDTAPeakListReader(filename);
@@ -32,4 +33,8 @@ public class SequestDTAPeakListReaderFactory implements PeakListReaderFactory {
             throw new RuntimeException(e);
         }
     }
+    
+    public PeakListReader newInstance(InputStream in, String name) {
+        return new SequestDTAPeakListReader(in, name);
+    }
 }
\ No newline at end of file
@@ -120,7 +120,7 @@ public class AssignChargePeakListFilter implements PeakListFilter {
 //		if (true){
 //			throw new RuntimeException("Can't assign charge states.");
 //		}
-        ((GenericPeakList)peaklist).setPeaks(acs);
+        ((AbstractPeakList)peaklist).setPeaks(acs);
         return peaklist;
     }
     // helper method to assign charge states
@@ -66,7 +66,7 @@ public class MergeSamePeakListFilter implements PeakListFilter {
 		}
 
 		// dupe the peak list
-		((GenericPeakList)peaklist).setPeaks((Peak[]) peaksToKeep.toArray(new Peak[0]));
+		((AbstractPeakList)peaklist).setPeaks((Peak[]) peaksToKeep.toArray(new Peak[0]));
 
 		return peaklist;
 	}
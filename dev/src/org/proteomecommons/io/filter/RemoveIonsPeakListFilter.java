@@ -131,8 +131,8 @@ public class RemoveIonsPeakListFilter implements PeakListFilter {
 		}
 
 		// construct the finished peak list
-		if(peaklist instanceof GenericPeakList) {
-		 ((GenericPeakList)peaklist).setPeaks((Peak[]) peaks.toArray(new Peak[peaks.size()]));
+		if(peaklist instanceof AbstractPeakList) {
+		 ((AbstractPeakList)peaklist).setPeaks((Peak[]) peaks.toArray(new Peak[peaks.size()]));
 		}
 
 		// return the new peaklist
@@ -53,8 +53,10 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 import org.proteomecommons.io.GenericPeakListReader;
 import org.proteomecommons.io.GenericPeakListWriter;
 import org.proteomecommons.io.IntermediateFilePeakListReader;
@@ -138,6 +140,7 @@ public class ConvertPeakListGUIPanel extends JPanel {
     private JComboBox writerFormats;
     private JCheckBox merge = null;
     private JCheckBox keepIntermediateFile = null;
+    private JSpinner threads = null;
     // output directory
     private OutputDirectoryField outputDirectoryField;
     
@@ -440,6 +443,10 @@ public class ConvertPeakListGUIPanel extends JPanel {
                                     IntermediateFilePeakListReader ifplr = (IntermediateFilePeakListReader)reader;
                                     // save the file
                                     File intermediateFile = ifplr.getIntermediateFile();
+                                    if (intermediateFile == null) {
+                                        JOptionPane.showMessageDialog(ConvertPeakListGUIPanel.this, "The converter's output was streamed, there is no intermediate file to save. Read the converter's output from a file to keep it.");
+                                        return;
+                                    }
                                     File saveAs = new File(ConvertPeakListGUIPanel.this.outputDirectory, inputFiles[i].getName()+ifplr.getIntermediateExtension());
                                     // copy over the file
                                     FileOutputStream fos = null;
@@ -469,17 +476,20 @@ public class ConvertPeakListGUIPanel extends JPanel {
                         
                         // make the converter
                         ConvertPeakList cpl = new ConvertPeakList();
+                        cpl.setThreads(((Integer) threads.getValue()).intValue());
                         // catch RAW exceptions/Bruker
                         try {
                             
                             // if no merge, write each file
                             if (!ConvertPeakListGUIPanel.this.merge.isSelected()) {
+                                // make something for each file, converting several at once
+                                String[] names = new String[ConvertPeakListGUIPanel.this.inputFiles.length];
+                                String[] outputs = new String[names.length];
                                 for (int i = 0; i < ConvertPeakListGUIPanel.this.inputFiles.length; i++) {
-                                    // if no merge, make something for each file
-                                    if (!ConvertPeakListGUIPanel.this.merge.isSelected()) {
-                                        cpl.convertPeakList(inputFiles[i].getAbsolutePath(), ConvertPeakListGUIPanel.this.outputDirectory.getAbsolutePath()+File.separatorChar+ ConvertPeakListGUIPanel.this.inputFiles[i].getName() + extension);
-                                    }
+                                    names[i] = inputFiles[i].getAbsolutePath();
+                                    outputs[i] = ConvertPeakListGUIPanel.this.outputDirectory.getAbsolutePath()+File.separatorChar+ ConvertPeakListGUIPanel.this.inputFiles[i].getName() + extension;
                                 }
+                                cpl.convertPeakLists(names, outputs);
                             } else {
                                 // get all the input files
                                 String[] names = new String[ConvertPeakListGUIPanel.this.inputFiles.length];
@@ -649,6 +659,16 @@ public class ConvertPeakListGUIPanel extends JPanel {
             keepIntermediateFile.setOpaque(false);
             add(keepIntermediateFile, gbc);
             
+            // add the number of threads that filter peak lists
+            JPanel threadsPanel = new JPanel();
+            threadsPanel.setOpaque(false);
+            threadsPanel.add(new JLabel("Threads"));
+            threads = new JSpinner(new SpinnerNumberModel(1, 1, 256, 1));
+            threads.setToolTipText("The threads shared by the files being converted and their filters.");
+            threadsPanel.add(threads);
+            gbc.gridwidth = gbc.REMAINDER;
+            add(threadsPanel, gbc);
+            
             // show behind
             setOpaque(false);
         }
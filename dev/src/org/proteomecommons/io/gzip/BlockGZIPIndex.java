@@ -0,0 +1,144 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.gzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * The blocks of a block GZIP file, which maps offsets in the uncompressed data to virtual offsets that BlockGZIPInputStream can seek to. This is what lets an index of the uncompressed data, e.g. the offsets of a mzXML scan index, be used on the compressed file.
+ *
+ * The index is made by reading each block's header and footer, no data is inflated.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class BlockGZIPIndex {
+    // the address of each block that has data, and the uncompressed offset its data starts at
+    private long[] addresses = new long[16];
+    private long[] starts = new long[16];
+    private int count = 0;
+    // the size of all the uncompressed data
+    private long size = 0;
+    
+    // use the static methods
+    private BlockGZIPIndex() {
+    }
+    
+    /**
+     * Makes the index of a block GZIP file.
+     */
+    public static BlockGZIPIndex build(File file) throws IOException {
+        BlockGZIPIndex index = new BlockGZIPIndex();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            byte[] header = new byte[12];
+            byte[] footer = new byte[4];
+            for (long address = 0; address < length; ) {
+                raf.seek(address);
+                raf.readFully(header);
+                byte[] extra = new byte[BlockGZIPInputStream.readShort(header, 10)];
+                raf.readFully(extra);
+                int blockSize = BlockGZIPInputStream.getBlockSize(header, extra);
+                if (blockSize == -1) {
+                    throw new IOException(file + " isn't a block GZIP file, the block at " + address + " has no size.");
+                }
+                // the uncompressed size is the last 4 bytes of the block
+                raf.seek(address + blockSize - 4);
+                raf.readFully(footer);
+                int uncompressed = BlockGZIPInputStream.readInt(footer, 0);
+                if (uncompressed > 0) {
+                    index.add(address, index.size);
+                    index.size += uncompressed;
+                }
+                address += blockSize;
+            }
+        } finally {
+            raf.close();
+        }
+        return index;
+    }
+    
+    // helper to add a block
+    private void add(long address, long start) {
+        if (count == addresses.length) {
+            long[] biggerAddresses = new long[count * 2];
+            long[] biggerStarts = new long[count * 2];
+            System.arraycopy(addresses, 0, biggerAddresses, 0, count);
+            System.arraycopy(starts, 0, biggerStarts, 0, count);
+            addresses = biggerAddresses;
+            starts = biggerStarts;
+        }
+        addresses[count] = address;
+        starts[count] = start;
+        count++;
+    }
+    
+    /**
+     * Returns the virtual offset of an offset in the uncompressed data, or -1 if the offset isn't in the data.
+     */
+    public long getVirtualOffset(long offset) {
+        if (offset < 0 || offset >= size) {
+            return -1;
+        }
+        // find the last block that starts at or before the offset
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return (addresses[low] << 16) | (offset - starts[low]);
+    }
+    
+    /**
+     * Opens a block GZIP file at an offset in the uncompressed data.
+     * @param threads The number of threads inflating blocks.
+     */
+    public BlockGZIPInputStream open(File file, long offset, int threads) throws IOException {
+        long virtualOffset = getVirtualOffset(offset);
+        if (virtualOffset == -1) {
+            throw new IOException("Offset " + offset + " isn't in " + file);
+        }
+        BlockGZIPInputStream in = new BlockGZIPInputStream(file, threads);
+        try {
+            in.seek(virtualOffset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+    
+    /**
+     * Returns the number of blocks that have data.
+     */
+    public int getBlockCount() {
+        return count;
+    }
+    
+    /**
+     * Returns the size of the uncompressed data.
+     */
+    public long getUncompressedSize() {
+        return size;
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.gzip;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads block GZIP (BGZF), e.g. as written by BlockGZIPOutputStream. The compressed blocks are read in order and inflated by several threads at once, a few blocks ahead of the reader.
+ *
+ * Positions in the file are virtual offsets: the address of a block in the compressed file shifted left 16 bits, plus the offset in the block's uncompressed data. A stream made from a File can seek to a virtual offset, and BlockGZIPIndex turns uncompressed offsets in to virtual offsets.
+ *
+ * Members that aren't block GZIP, e.g. a plain gzip file appended with cat, are inflated in order on the reader's thread. Virtual offsets inside such a member don't point at anything.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class BlockGZIPInputStream extends InputStream {
+    // the compressed data
+    private FileInputStream file = null;
+    private PushbackInputStream in;
+    
+    // the threads and the blocks they are inflating, in file order
+    private ExecutorService pool;
+    private LinkedList<Block> pending = new LinkedList();
+    private int maxPending;
+    // the address of the next block to read
+    private long nextAddress = 0;
+    private boolean noMoreBlocks = false;
+    
+    // the block being read
+    private byte[] current = null;
+    private long currentAddress = 0;
+    private int position = 0;
+    
+    // a member that isn't block GZIP, inflated on the reader's thread
+    private static final int INPUT_SIZE = 64 * 1024;
+    private Inflater member = null;
+    private CRC32 memberCRC = null;
+    private long memberSize = 0;
+    private int memberHeaderSize = 0;
+    private byte[] memberInput = null;
+    private int memberInputLength = 0;
+    
+    /**
+     * Make a stream that inflates with a thread per processor.
+     */
+    public BlockGZIPInputStream(InputStream in) {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Make a new stream. Streams that aren't made from a file can't seek.
+     * @param threads The number of threads inflating blocks.
+     */
+    public BlockGZIPInputStream(InputStream in, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+        this.in = new PushbackInputStream(in, INPUT_SIZE);
+        this.maxPending = threads * 2;
+        // daemon threads so that an unclosed stream doesn't keep the JVM running
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BGZF inflater");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+    
+    /**
+     * Make a stream for a file, which can seek.
+     * @param threads The number of threads inflating blocks.
+     */
+    public BlockGZIPInputStream(File file, int threads) throws IOException {
+        this(new FileInputStream(file), threads);
+    }
+    
+    private BlockGZIPInputStream(FileInputStream file, int threads) {
+        this(new BufferedInputStream(file, BlockGZIPOutputStream.MAX_BLOCK_SIZE), threads);
+        this.file = file;
+    }
+    
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+    
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+    
+    public int available() {
+        if (current == null) {
+            return 0;
+        }
+        return current.length - position;
+    }
+    
+    /**
+     * Returns the virtual offset of the next byte to be read.
+     */
+    public long getVirtualOffset() {
+        if (current != null && position < current.length) {
+            return (currentAddress << 16) | position;
+        }
+        if (!pending.isEmpty()) {
+            return pending.getFirst().address << 16;
+        }
+        return nextAddress << 16;
+    }
+    
+    /**
+     * Moves to a virtual offset. Only streams made from a File can seek.
+     */
+    public void seek(long virtualOffset) throws IOException {
+        if (file == null) {
+            throw new IOException("Can't seek, the stream isn't from a file.");
+        }
+        // throw away the blocks read ahead
+        for (Block block : pending) {
+            block.data.cancel(true);
+        }
+        pending.clear();
+        current = null;
+        noMoreBlocks = false;
+        endMember();
+        
+        // move to the block
+        nextAddress = virtualOffset >>> 16;
+        file.getChannel().position(nextAddress);
+        in = new PushbackInputStream(new BufferedInputStream(file, BlockGZIPOutputStream.MAX_BLOCK_SIZE), INPUT_SIZE);
+        int offset = (int) (virtualOffset & 0xffff);
+        if (!nextBlock() || offset > current.length) {
+            throw new IOException("Can't seek to " + virtualOffset + ", it isn't in the file.");
+        }
+        position = offset;
+    }
+    
+    public void close() throws IOException {
+        pool.shutdownNow();
+        pending.clear();
+        current = null;
+        endMember();
+        in.close();
+    }
+    
+    // helper to make sure there is data left in the current block, false at the end of the data
+    private boolean nextBlock() throws IOException {
+        while (current == null || position >= current.length) {
+            readAhead();
+            if (pending.isEmpty()) {
+                if (member == null) {
+                    return false;
+                }
+                // the blocks before the member are all read, inflate it in order
+                current = inflateMember();
+                position = 0;
+                continue;
+            }
+            Block block = pending.removeFirst();
+            try {
+                current = block.data.get();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted inflating a block.");
+            } catch (ExecutionException e) {
+                IOException ioe = new IOException("Can't inflate the block at " + block.address + ".");
+                ioe.initCause(e.getCause());
+                throw ioe;
+            }
+            currentAddress = block.address;
+            position = 0;
+        }
+        // keep the threads busy
+        readAhead();
+        return true;
+    }
+    
+    // helper to queue up blocks to inflate
+    private void readAhead() throws IOException {
+        while (!noMoreBlocks && member == null && pending.size() < maxPending) {
+            final byte[] raw = readRawBlock();
+            if (raw == null) {
+                return;
+            }
+            Block block = new Block();
+            block.address = nextAddress;
+            block.data = pool.submit(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return inflate(raw);
+                }
+            });
+            pending.add(block);
+            nextAddress += raw.length;
+        }
+    }
+    
+    // helper to read a whole compressed block, header and footer included. Returns null at the end of the stream, or at a member that isn't block GZIP, which is then started.
+    private byte[] readRawBlock() throws IOException {
+        byte[] header = new byte[12];
+        int first = in.read();
+        if (first == -1) {
+            noMoreBlocks = true;
+            return null;
+        }
+        header[0] = (byte) first;
+        readFully(in, header, 1, 9);
+        if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8) {
+            throw new IOException("Not a GZIP file.");
+        }
+        byte[] extra = new byte[0];
+        if ((header[3] & 4) != 0) {
+            readFully(in, header, 10, 2);
+            extra = new byte[readShort(header, 10)];
+            readFully(in, extra, 0, extra.length);
+        }
+        int blockSize = getBlockSize(header, extra);
+        if (blockSize == -1) {
+            startMember(header[3], (header[3] & 4) == 0 ? 10 : header.length + extra.length);
+            return null;
+        }
+        if (blockSize < header.length + extra.length + BlockGZIPOutputStream.FOOTER_SIZE) {
+            throw new IOException("Not a block GZIP file.");
+        }
+        byte[] raw = new byte[blockSize];
+        System.arraycopy(header, 0, raw, 0, header.length);
+        System.arraycopy(extra, 0, raw, header.length, extra.length);
+        readFully(in, raw, header.length + extra.length, raw.length - header.length - extra.length);
+        return raw;
+    }
+    
+    // helper to skip the rest of a plain gzip member's header and get ready to inflate it
+    private void startMember(int flags, int headerSize) throws IOException {
+        // the file name and comment
+        for (int flag = 8; flag <= 16; flag += 8) {
+            if ((flags & flag) != 0) {
+                for (int b = in.read(); b != 0; b = in.read()) {
+                    if (b == -1) {
+                        throw new EOFException("GZIP file ends in the middle of a header.");
+                    }
+                    headerSize++;
+                }
+                headerSize++;
+            }
+        }
+        // the header CRC
+        if ((flags & 2) != 0) {
+            readFully(in, new byte[2], 0, 2);
+            headerSize += 2;
+        }
+        member = new Inflater(true);
+        memberCRC = new CRC32();
+        memberSize = 0;
+        memberHeaderSize = headerSize;
+        if (memberInput == null) {
+            memberInput = new byte[INPUT_SIZE];
+        }
+        memberInputLength = 0;
+    }
+    
+    // helper to inflate the next piece of the plain member, an empty array at the end of the member
+    private byte[] inflateMember() throws IOException {
+        byte[] data = new byte[BlockGZIPOutputStream.MAX_BLOCK_SIZE];
+        int count = 0;
+        currentAddress = nextAddress;
+        try {
+            while (count == 0 && !member.finished()) {
+                if (member.needsInput()) {
+                    memberInputLength = in.read(memberInput);
+                    if (memberInputLength == -1) {
+                        throw new EOFException("GZIP file ends in the middle of a member.");
+                    }
+                    member.setInput(memberInput, 0, memberInputLength);
+                } else if (member.needsDictionary()) {
+                    throw new IOException("Can't inflate a GZIP member that needs a dictionary.");
+                }
+                count = member.inflate(data);
+            }
+        } catch (DataFormatException e) {
+            IOException ioe = new IOException("Can't inflate the GZIP member at " + currentAddress + ".");
+            ioe.initCause(e);
+            throw ioe;
+        }
+        if (count > 0) {
+            memberCRC.update(data, 0, count);
+            memberSize += count;
+            byte[] inflated = new byte[count];
+            System.arraycopy(data, 0, inflated, 0, count);
+            return inflated;
+        }
+        
+        // put back what follows the member and check its footer
+        in.unread(memberInput, memberInputLength - member.getRemaining(), member.getRemaining());
+        byte[] footer = new byte[BlockGZIPOutputStream.FOOTER_SIZE];
+        readFully(in, footer, 0, footer.length);
+        if ((int) memberCRC.getValue() != readInt(footer, 0)) {
+            throw new IOException("GZIP member CRC-32 doesn't match.");
+        }
+        if ((int) memberSize != readInt(footer, 4)) {
+            throw new IOException("GZIP member size doesn't match.");
+        }
+        nextAddress += memberHeaderSize + member.getBytesRead() + footer.length;
+        endMember();
+        return new byte[0];
+    }
+    
+    // helper to let go of the plain member
+    private void endMember() {
+        if (member != null) {
+            member.end();
+            member = null;
+        }
+    }
+    
+    /**
+     * Returns the size of a block from its first 12 bytes and extra field, or -1 if it isn't a block GZIP block.
+     */
+    static int getBlockSize(byte[] header, byte[] extra) {
+        if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8 || (header[3] & 4) == 0) {
+            return -1;
+        }
+        // look for the "BC" subfield
+        for (int i = 0; i + 4 <= extra.length; i += 4 + readShort(extra, i + 2)) {
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && readShort(extra, i + 2) == 2 && i + 6 <= extra.length) {
+                return readShort(extra, i + 4) + 1;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Checks if the start of a file is block GZIP.
+     * @param start At least the first 18 bytes of the file.
+     */
+    public static boolean isBlockGZIP(byte[] start, int length) {
+        if (length < 12) {
+            return false;
+        }
+        int extraLength = readShort(start, 10);
+        if (length < 12 + extraLength) {
+            return false;
+        }
+        byte[] extra = new byte[extraLength];
+        System.arraycopy(start, 12, extra, 0, extraLength);
+        return getBlockSize(start, extra) != -1;
+    }
+    
+    /**
+     * Inflates a whole compressed block.
+     */
+    public static byte[] inflate(byte[] raw) throws IOException {
+        int dataStart = 12 + readShort(raw, 10);
+        int dataLength = raw.length - dataStart - BlockGZIPOutputStream.FOOTER_SIZE;
+        byte[] data = new byte[readInt(raw, raw.length - 4)];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw, dataStart, dataLength);
+            int inflated = 0;
+            while (inflated < data.length) {
+                int count = inflater.inflate(data, inflated, data.length - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Block is shorter than its stated size.");
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            IOException ioe = new IOException("Can't inflate a block.");
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            inflater.end();
+        }
+        // check the data
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != readInt(raw, raw.length - 8)) {
+            throw new IOException("Block CRC-32 doesn't match.");
+        }
+        return data;
+    }
+    
+    // helpers to read little endian values
+    static int readShort(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+    }
+    
+    static int readInt(byte[] b, int off) {
+        return readShort(b, off) | (readShort(b, off + 2) << 16);
+    }
+    
+    private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int read = in.read(b, off, len);
+            if (read == -1) {
+                throw new EOFException("Block GZIP file ends in the middle of a block.");
+            }
+            off += read;
+            len -= read;
+        }
+    }
+    
+    // a block being inflated
+    private static class Block {
+        long address;
+        Future<byte[]> data;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.gzip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes block GZIP (BGZF), the format made popular by samtools. The data is split in to blocks of at most 64KB and each block is deflated as its own gzip member, so the blocks can be deflated by several threads at once. The file is still a valid, multi-member gzip file that any gzip tool can read. Each member's header holds its compressed size, which lets BlockGZIPInputStream find the blocks without inflating them, inflate them in parallel and seek to a virtual offset.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class BlockGZIPOutputStream extends OutputStream {
+    /**
+     * The most uncompressed bytes in a block. Deflating never grows this many bytes past the 64KB a block can hold.
+     */
+    public static final int BLOCK_SIZE = 0xff00;
+    /**
+     * The most bytes in a compressed block, header and footer included.
+     */
+    public static final int MAX_BLOCK_SIZE = 0x10000;
+    
+    // the header of a block, with "BC" extra field whose last two bytes are the block size - 1
+    static final byte[] HEADER = new byte[] {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0
+    };
+    // header plus the block size
+    static final int HEADER_SIZE = HEADER.length + 2;
+    // CRC-32 and uncompressed size
+    static final int FOOTER_SIZE = 8;
+    // an empty block marks the end of the file
+    static final byte[] EOF_BLOCK = new byte[] {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+    
+    private OutputStream out;
+    private int level;
+    
+    // the block being filled
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int size = 0;
+    
+    // the threads and the blocks they are deflating, in file order
+    private ExecutorService pool;
+    private LinkedList<Future<byte[]>> pending = new LinkedList();
+    private int maxPending;
+    private boolean closed = false;
+    
+    /**
+     * Make a stream that deflates with a thread per processor.
+     */
+    public BlockGZIPOutputStream(OutputStream out) {
+        this(out, Runtime.getRuntime().availableProcessors(), Deflater.DEFAULT_COMPRESSION);
+    }
+    
+    /**
+     * Make a new stream.
+     * @param threads The number of threads deflating blocks.
+     * @param level The Deflater compression level.
+     */
+    public BlockGZIPOutputStream(OutputStream out, int threads, int level) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+        this.out = out;
+        this.level = level;
+        this.maxPending = threads * 2;
+        // daemon threads so that an unclosed stream doesn't keep the JVM running
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BGZF deflater");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+    
+    public void write(int b) throws IOException {
+        if (size == block.length) {
+            sendBlock();
+        }
+        block[size++] = (byte) b;
+    }
+    
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (size == block.length) {
+                sendBlock();
+            }
+            int count = Math.min(len, block.length - size);
+            System.arraycopy(b, off, block, size, count);
+            size += count;
+            off += count;
+            len -= count;
+        }
+    }
+    
+    /**
+     * Ends the current block and writes every block deflated so far.
+     */
+    public void flush() throws IOException {
+        sendBlock();
+        while (!pending.isEmpty()) {
+            writeBlock();
+        }
+        out.flush();
+    }
+    
+    /**
+     * Writes the rest of the blocks and the end of file marker, then closes the underlying stream.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            out.write(EOF_BLOCK);
+        } finally {
+            pool.shutdownNow();
+            out.close();
+        }
+    }
+    
+    // helper to hand the current block to the threads
+    private void sendBlock() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        final byte[] data = block;
+        final int length = size;
+        pending.add(pool.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                return deflate(data, length, level);
+            }
+        }));
+        block = new byte[BLOCK_SIZE];
+        size = 0;
+        // don't get too far ahead of the file
+        while (pending.size() >= maxPending) {
+            writeBlock();
+        }
+    }
+    
+    // helper to write the oldest deflated block
+    private void writeBlock() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted deflating a block.");
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Can't deflate a block.");
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+    
+    /**
+     * Deflates bytes as a complete block, header and footer included.
+     */
+    public static byte[] deflate(byte[] data, int length, int level) {
+        byte[] compressed = new byte[MAX_BLOCK_SIZE];
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            int deflated = deflater.deflate(compressed, HEADER_SIZE, MAX_BLOCK_SIZE - HEADER_SIZE - FOOTER_SIZE);
+            if (!deflater.finished()) {
+                // didn't fit, store the data instead
+                deflater.reset();
+                deflater.setLevel(Deflater.NO_COMPRESSION);
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                deflated = deflater.deflate(compressed, HEADER_SIZE, MAX_BLOCK_SIZE - HEADER_SIZE - FOOTER_SIZE);
+            }
+            int blockSize = HEADER_SIZE + deflated + FOOTER_SIZE;
+            System.arraycopy(HEADER, 0, compressed, 0, HEADER.length);
+            writeShort(compressed, HEADER.length, blockSize - 1);
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            writeInt(compressed, blockSize - 8, (int) crc.getValue());
+            writeInt(compressed, blockSize - 4, length);
+            byte[] result = new byte[blockSize];
+            System.arraycopy(compressed, 0, result, 0, blockSize);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    // helpers to write little endian values
+    private static void writeShort(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+    }
+    
+    private static void writeInt(byte[] b, int off, int value) {
+        writeShort(b, off, value);
+        writeShort(b, off + 2, value >> 16);
+    }
+}
@@ -15,75 +15,81 @@
  */
 package org.proteomecommons.io.gzip;
 
-import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 
 import org.proteomecommons.io.*;
-import org.proteomecommons.io.util.DeleteFilesPeakListReaderWrapper;
+import org.proteomecommons.io.util.ThreadedInputStream;
 
 /**
- * This is a helper PeakListReaderFactory class that knows how to automatically decompress GZIP encoded peak lists.
+ * This is a helper PeakListReaderFactory class that knows how to automatically decompress GZIP encoded peak lists. The data is inflated on its own thread and parsed as it is inflated, nothing is written to disk. Block GZIP files are inflated by several threads.
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class GZIPPeakListReaderFactory implements PeakListReaderFactory {
+public class GZIPPeakListReaderFactory implements StreamPeakListReaderFactory {
     
     /**
      * @see org.proteomecommons.io.PeakListReaderFactory#newInstance(java.io.InputStream)
      */
     public PeakListReader newInstance(String filename) {
-        // make a temp directory
-        File dir = new File("temp_gzip_wrapper");
-        for (int i=0;dir.exists();i++) {
-            dir = new File("temp_gzip_wrapper_"+i);
+        try {
+            return newInstance(new FileInputStream(filename), filename);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        dir.mkdirs();
-        
+    }
+    
+    /**
+     * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+     */
+    public PeakListReader newInstance(InputStream in, String name) {
         try {
-            // unzip the files to that directory
-            FileInputStream is = new FileInputStream(filename);
-            // read the input stream as ZIP
-            GZIPInputStream gis = new GZIPInputStream(is);
-            
             // figure our the real name
-            String realName = filename.split("\\.gz")[0];
-            // check for '.gzip'
-            if (filename.split("\\.gzip").length > 1) {
-                realName = filename.split("gzip")[0];
+            String realName = name;
+            if (name.toLowerCase().endsWith(".gzip")) {
+                realName = name.substring(0, name.length()-".gzip".length());
+            } else if (name.toLowerCase().endsWith(".gz")) {
+                realName = name.substring(0, name.length()-".gz".length());
+            } else if (name.toLowerCase().endsWith(".tgz")) {
+                realName = name.substring(0, name.length()-".tgz".length())+".tar";
             }
             
             // try to get a peak list reader factory
             PeakListReaderFactory plrf = GenericPeakListReader.getPeakListReaderFactory(realName);
-            if (plrf == null) {
-                throw new RuntimeException("Can't find the file format "+realName);
-            }
             
-            // extract the file
-            File file = new File(dir, realName.replaceAll("C:\\\\", ""));
-            // make any directories required
-            file.getParentFile().mkdirs();
-            // send the output to disk
-            FileOutputStream fos = new FileOutputStream(file);
-            byte[] buffer = new byte[10000];
-            for (int bytesRead = gis.read(buffer);bytesRead != -1;bytesRead = gis.read(buffer)) {
-                fos.write(buffer, 0, bytesRead);
+            // inflate in the background, block GZIP in parallel
+            in = new BufferedInputStream(in, 64*1024);
+            InputStream inflated = null;
+            if (isBlockGZIP(in)) {
+                inflated = new BlockGZIPInputStream(in);
+            } else {
+                inflated = ThreadedInputStream.readAhead("GZIP inflater", new GZIPInputStream(in));
             }
-            fos.flush();
-            fos.close();
-            
-            // return the peak list reader
-            PeakListReader plr = plrf.newInstance(file.getCanonicalPath());
-            DeleteFilesPeakListReaderWrapper plrw = new DeleteFilesPeakListReaderWrapper(plr, new File[]{dir});
-            
-            // return the wrapped peak list
-            return plrw;
+            return GenericPeakListReader.getPeakListReader(plrf, inflated, realName);
         } catch (Exception e) {
+            try { in.close(); } catch (Exception ex){}
             throw new RuntimeException(e);
         }
     }
     
+    // helper to check the start of a stream for a block GZIP header, the stream must support mark()
+    private static boolean isBlockGZIP(InputStream in) throws IOException {
+        byte[] start = new byte[64];
+        in.mark(start.length);
+        try {
+            int read = 0;
+            for (int r = 0; r != -1 && read < start.length; r = in.read(start, read, start.length - read)) {
+                read += r;
+            }
+            return BlockGZIPInputStream.isBlockGZIP(start, read);
+        } finally {
+            in.reset();
+        }
+    }
+    
     /**
      * Return the regular expression for what this reader can handle.
      *
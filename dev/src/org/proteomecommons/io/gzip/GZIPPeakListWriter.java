@@ -15,13 +15,12 @@
  */
 package org.proteomecommons.io.gzip;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 import org.proteomecommons.io.CompressedPeakListWriter;
-import org.proteomecommons.io.GenericPeakListWriter;
 
 /**
  *
@@ -34,7 +33,6 @@ public class GZIPPeakListWriter extends CompressedPeakListWriter {
         ".gz"
     };
     String extensionToUse = null;
-    File tempFile;
     
     public GZIPPeakListWriter(String filename) {
         super(filename);
@@ -55,54 +53,23 @@ public class GZIPPeakListWriter extends CompressedPeakListWriter {
         // trim the filename
         filename = filename.substring(0, filename.length()-extensionToUse.length());
 
-        // set up the temp file
-        File file = new File(filename);
-        File dir = file.getParentFile();
-        // make the temp file
-        tempFile = new File(dir, "_todelete."+file.getName());
-        tempFile.deleteOnExit();
-        
-        // get an embedded peak list writer
-        setEmbedded(GenericPeakListWriter.getPeakListWriter(tempFile.getAbsolutePath()));
+        // get an embedded peak list writer, which writes straight in to the compressor if it can
+        setEmbedded(filename);
     }
     
     /**
-     *Here is where the magic happens. This close() method saves the normal peak list file, makes a compressed form of it named with a new extension, then deletes the original.
+     * GZIPs the data in to the file. The file is block GZIP deflated by several threads unless GZIPPeakListWriterFactory is set to use none.
      */
-    public void close() {
-        // close the embedded
-        getEmbedded().close();
-        
-        // figure out where the compressed file should be
-        File compressedFile = new File(getFilename());
-        // write out the streams
-        FileOutputStream fos = null;
-        FileInputStream fis = null;
-        GZIPOutputStream out = null;
+    protected void compress(InputStream in) throws IOException {
+        int threads = GZIPPeakListWriterFactory.getThreads();
+        OutputStream out = threads > 0 ? new BlockGZIPOutputStream(openFile(), threads, Deflater.DEFAULT_COMPRESSION) : new GZIPOutputStream(openFile(), 64*1024);
         try {
-            // make the file
-            fos = new FileOutputStream(compressedFile);
-            fis = new FileInputStream(tempFile);
-            out = new GZIPOutputStream(fos);
-            
-            // copy all the bytes
-            byte[] buf = new byte[10000];
-            for (int bytesRead = fis.read(buf);bytesRead != -1;bytesRead = fis.read(buf)) {
+            byte[] buf = new byte[64*1024];
+            for (int bytesRead = in.read(buf);bytesRead != -1;bytesRead = in.read(buf)) {
                 out.write(buf, 0, bytesRead);
             }
-        } catch (IOException ex) {
-            throw new RuntimeException("Can't write compressed file "+compressedFile, ex);
         } finally {
-            try { out.flush(); } catch (Exception e){};
-            try { fos.flush(); } catch (Exception e){};
-            try { out.close(); } catch (Exception e){};
-            try { fos.close(); } catch (Exception e){};
-            try { fis.close(); } catch (Exception e){};
-            
-            // most importantly delete the file
-            if (!tempFile.delete()) {
-                tempFile.deleteOnExit();
-            }
+            out.close();
         }
     }
 }
@@ -23,10 +23,24 @@ import org.proteomecommons.io.PeakListWriterFactory;
  * @author Jayson Falkner - jfalkner@umich.edu
  */
 public class GZIPPeakListWriterFactory implements PeakListWriterFactory {
+    // threads deflating block GZIP, the "gzip.threads" system property or a thread per processor
+    private static int threads = Integer.getInteger("gzip.threads", Runtime.getRuntime().availableProcessors()).intValue();
+    
     public PeakListWriter newInstance(String filename) {
         return new GZIPPeakListWriter(filename);
     }
     
+    public static int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the number of threads that new writers deflate with. Less than 1 writes a plain, single member GZIP file on the writer's compression thread.
+     */
+    public static void setThreads(int threads) {
+        GZIPPeakListWriterFactory.threads = threads;
+    }
+    
     public String getName() {
         return "GZIP (Compression Format)";
     }
@@ -15,47 +15,114 @@
  */
 package org.proteomecommons.io.lzma;
 
-import SevenZip.LzmaAlone;
-import java.io.File;
+import SevenZip.Compression.LZMA.Decoder;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import org.proteomecommons.io.GenericPeakListReader;
 import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.PeakListReaderFactory;
-import org.proteomecommons.io.util.DeleteFilesPeakListReaderWrapper;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
+import org.proteomecommons.io.util.ThreadedInputStream;
 
 /**
+ * Reads LZMA compressed peak lists. The data is decoded on its own thread and parsed as it is decoded, nothing is written to disk. Files written by ParallelLZMAOutputStream are decoded a chunk per thread.
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class LZMAPeakListReaderFactory  implements PeakListReaderFactory {
+public class LZMAPeakListReaderFactory  implements StreamPeakListReaderFactory {
     /**
      * @see org.proteomecommons.io.PeakListReaderFactory#newInstance(java.io.InputStream)
      */
     public PeakListReader newInstance(String filename) {
+        try {
+            return newInstance(new FileInputStream(filename), filename);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+     */
+    public PeakListReader newInstance(InputStream in, String name) {
         try {
             // figure our the real name
-            String realName = filename.split("\\.lzma")[0];
+            String realName = name.split("\\.lzma")[0];
             
             // try to get a peak list reader factory
             PeakListReaderFactory plrf = GenericPeakListReader.getPeakListReaderFactory(realName);
-            if (plrf == null) {
-                throw new RuntimeException("Can't find the file format "+realName);
-            }
-                        
-            // do the extraction
-            LzmaAlone la = new LzmaAlone();
-            la.main(new String[]{"d", filename, realName});
-            
-            // return the peak list reader
-            PeakListReader plr = GenericPeakListReader.getPeakListReader(realName);
-            DeleteFilesPeakListReaderWrapper plrw = new DeleteFilesPeakListReaderWrapper(plr, new File[]{new File(realName)});
             
-            // return the wrapped peak list
-            return plrw;
+            // decode in the background, chunked LZMA in parallel
+            final InputStream compressed = new BufferedInputStream(in, 64*1024);
+            if (isParallelLZMA(compressed)) {
+                InputStream decoded = ThreadedInputStream.readAhead("LZMA reader", new ParallelLZMAInputStream(compressed));
+                return GenericPeakListReader.getPeakListReader(plrf, decoded, realName);
+            }
+            InputStream decoded = new ThreadedInputStream("LZMA decoder", new ThreadedInputStream.Producer() {
+                public void produce(OutputStream out) throws IOException {
+                    try {
+                        decode(compressed, out);
+                    } finally {
+                        compressed.close();
+                    }
+                }
+            });
+            return GenericPeakListReader.getPeakListReader(plrf, decoded, realName);
         } catch (Exception e) {
+            try { in.close(); } catch (Exception ex){}
             throw new RuntimeException(e);
         }
     }
     
+    // helper to check the start of a stream for the ParallelLZMAOutputStream magic number, the stream must support mark()
+    private static boolean isParallelLZMA(InputStream in) throws IOException {
+        byte[] start = new byte[ParallelLZMAOutputStream.MAGIC.length];
+        in.mark(start.length);
+        try {
+            int read = 0;
+            for (int r = 0; r != -1 && read < start.length; r = in.read(start, read, start.length - read)) {
+                read += r;
+            }
+            return ParallelLZMAInputStream.isParallelLZMA(start, read);
+        } finally {
+            in.reset();
+        }
+    }
+    
+    /**
+     * Decodes a stream in the format made by LzmaAlone: 5 bytes of properties, the 8 byte size and the compressed data.
+     */
+    public static void decode(InputStream in, OutputStream out) throws IOException {
+        // read the properties
+        byte[] properties = new byte[5];
+        for (int read = 0; read < properties.length; ) {
+            int r = in.read(properties, read, properties.length - read);
+            if (r == -1) {
+                throw new IOException("The LZMA data is too short.");
+            }
+            read += r;
+        }
+        Decoder decoder = new Decoder();
+        if (!decoder.SetDecoderProperties(properties)) {
+            throw new IOException("Incorrect LZMA stream properties.");
+        }
+        // read the size, -1 if it isn't known
+        long outSize = 0;
+        for (int i = 0; i < 8; i++) {
+            int v = in.read();
+            if (v < 0) {
+                throw new IOException("Can't read the LZMA stream size.");
+            }
+            outSize |= ((long)v) << (8 * i);
+        }
+        if (!decoder.Code(in, out, outSize)) {
+            throw new IOException("Error in the LZMA data stream.");
+        }
+    }
+    
     /**
      * Return the regular expression for what this reader can handle.
      *
@@ -15,10 +15,11 @@
  */
 package org.proteomecommons.io.lzma;
 
-import SevenZip.LzmaAlone;
-import java.io.File;
+import SevenZip.Compression.LZMA.Encoder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import org.proteomecommons.io.CompressedPeakListWriter;
-import org.proteomecommons.io.GenericPeakListWriter;
 
 /**
  *
@@ -30,7 +31,6 @@ public class LZMAPeakListWriter extends CompressedPeakListWriter {
         ".lzma"
     };
     String extensionToUse = null;
-    File tempFile;
     
     public LZMAPeakListWriter(String filename) {
         super(filename);
@@ -50,38 +50,61 @@ public class LZMAPeakListWriter extends CompressedPeakListWriter {
         
         // trim the filename
         filename = filename.substring(0, filename.length()-extensionToUse.length());
-        
-        // set up the temp file
-        File file = new File(filename);
-        File dir = file.getParentFile();
-        // make the temp file
-        tempFile = new File(dir, "_todelete."+file.getName());
-        tempFile.deleteOnExit();
-        
-        // get an embedded peak list writer
-        setEmbedded(GenericPeakListWriter.getPeakListWriter(tempFile.getAbsolutePath()));
-        
+
+        // get an embedded peak list writer, which writes straight in to the compressor if it can
+        setEmbedded(filename);
     }
     
     /**
-     *Here is where the magic happens. This close() method saves the normal peak list file, makes a compressed form of it named with a new extension, then deletes the original.
+     * Encodes the data in to the file with the same settings as LzmaAlone. If LZMAPeakListWriterFactory has threads the data is encoded in chunks by a ParallelLZMAOutputStream, otherwise, by default, as a single stream and, since the size isn't known ahead of time, with an end of stream marker.
      */
-    public void close() {
-        // close the embedded
-        getEmbedded().close();
-        
-        // figure out where the compressed file should be
-        File compressedFile = new File(getFilename());
+    protected void compress(InputStream in) throws IOException {
+        int threads = LZMAPeakListWriterFactory.getThreads();
+        if (threads < 1) {
+            OutputStream out = openFile();
+            try {
+                encode(in, out);
+            } finally {
+                out.close();
+            }
+            return;
+        }
+        OutputStream out = new ParallelLZMAOutputStream(openFile(), threads, ParallelLZMAOutputStream.DEFAULT_CHUNK_SIZE);
         try {
-            // use the lzma alone class for help
-            LzmaAlone.main(new String[] {"e", tempFile.getCanonicalPath(), compressedFile.getCanonicalPath()});
-        } catch (Exception ex) {
-            throw new RuntimeException("Can't perform LZMA compression.", ex);
+            byte[] buf = new byte[64*1024];
+            for (int bytesRead = in.read(buf);bytesRead != -1;bytesRead = in.read(buf)) {
+                out.write(buf, 0, bytesRead);
+            }
+        } finally {
+            out.close();
         }
-        
-        // most importantly delete the file
-        if (!tempFile.delete()) {
-            tempFile.deleteOnExit();
+    }
+    
+    /**
+     * Encodes a stream in the .lzma format read by LZMAPeakListReaderFactory.decode().
+     */
+    public static void encode(InputStream in, OutputStream out) throws IOException {
+        encode(in, out, -1, 1 << 23);
+    }
+    
+    /**
+     * Encodes a stream in the .lzma format read by LZMAPeakListReaderFactory.decode().
+     * @param size The number of bytes to encode, or -1 if it isn't known and an end of stream marker should be written.
+     * @param dictionarySize The LZMA dictionary size, there is no gain in it being bigger than the data.
+     */
+    public static void encode(InputStream in, OutputStream out, long size, int dictionarySize) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.SetAlgorithm(2);
+        encoder.SetDictionarySize(dictionarySize);
+        encoder.SeNumFastBytes(128);
+        encoder.SetMatchFinder(1);
+        encoder.SetLcLpPb(3, 0, 2);
+        encoder.SetEndMarkerMode(size == -1);
+        encoder.WriteCoderProperties(out);
+        // the size, all 1 bits if it isn't known
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (size >>> (8 * i)) & 0xFF);
         }
+        encoder.Code(in, out, -1, -1, null);
     }
 }
@@ -23,10 +23,24 @@ import org.proteomecommons.io.PeakListWriterFactory;
  * @author Jayson Falkner - jfalkner@umich.edu
  */
 public class LZMAPeakListWriterFactory implements PeakListWriterFactory {
+    // threads encoding chunks, the "lzma.threads" system property, 0 writes a single .lzma stream
+    private static int threads = Integer.getInteger("lzma.threads", 0).intValue();
+    
     public PeakListWriter newInstance(String filename) {
         return new LZMAPeakListWriter(filename);
     }
     
+    public static int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the number of threads that new writers encode with. Less than 1, the default, writes a single .lzma stream, the format LzmaAlone, 7-Zip and xz read, on the writer's compression thread. Otherwise chunks are written in the ParallelLZMAOutputStream format, which only this library reads.
+     */
+    public static void setThreads(int threads) {
+        LZMAPeakListWriterFactory.threads = threads;
+    }
+    
     public String getName() {
         return "LZMA (Compression Format)";
     }
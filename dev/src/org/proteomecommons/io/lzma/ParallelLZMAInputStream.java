@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.lzma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes LZMA written by ParallelLZMAOutputStream with several threads. Each chunk is a complete .lzma stream with a length in front of it, so the chunks are read in turn and decoded on a thread pool, a few chunks ahead of the reader.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelLZMAInputStream extends InputStream {
+    /**
+     * The biggest chunk that will be read, anything bigger is taken to be a corrupt file.
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 28;
+    
+    // the compressed data
+    private DataInputStream in;
+    private boolean endOfInput = false;
+    
+    // the threads and the chunks they are decoding, in file order
+    private ExecutorService pool;
+    private LinkedList<Future<byte[]>> pending = new LinkedList();
+    private int maxPending;
+    
+    // the data being read
+    private byte[] current = null;
+    private int position = 0;
+    
+    /**
+     * Make a stream that decodes with a thread per processor.
+     */
+    public ParallelLZMAInputStream(InputStream in) throws IOException {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Make a new stream and read the start of the container.
+     * @param threads The number of threads decoding chunks.
+     */
+    public ParallelLZMAInputStream(InputStream in, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+        this.in = new DataInputStream(in);
+        byte[] magic = new byte[ParallelLZMAOutputStream.MAGIC.length];
+        try {
+            this.in.readFully(magic);
+        } catch (EOFException e) {
+            throw new IOException("Not a parallel LZMA stream.");
+        }
+        if (!isParallelLZMA(magic, magic.length)) {
+            throw new IOException("Not a parallel LZMA stream.");
+        }
+        this.maxPending = threads * 2;
+        // daemon threads so that an unclosed stream doesn't keep the JVM running
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "LZMA decoder");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+    
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+    
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+    
+    public int available() {
+        if (current == null) {
+            return 0;
+        }
+        return current.length - position;
+    }
+    
+    public void close() throws IOException {
+        pool.shutdownNow();
+        pending.clear();
+        current = null;
+        in.close();
+    }
+    
+    // helper to make sure there is data left in the current chunk, false at the end of the data
+    private boolean nextChunk() throws IOException {
+        while (current == null || position >= current.length) {
+            position = 0;
+            readAhead();
+            if (pending.isEmpty()) {
+                return false;
+            }
+            try {
+                current = pending.removeFirst().get();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted decoding a chunk.");
+            } catch (ExecutionException e) {
+                IOException ioe = new IOException("Can't decode a chunk.");
+                ioe.initCause(e.getCause());
+                throw ioe;
+            }
+        }
+        return true;
+    }
+    
+    // helper to queue up chunks to decode
+    private void readAhead() throws IOException {
+        while (!endOfInput && pending.size() < maxPending) {
+            int length = in.readInt();
+            if (length == 0) {
+                endOfInput = true;
+                return;
+            }
+            if (length < 0 || length > MAX_CHUNK_SIZE) {
+                throw new IOException("Invalid LZMA chunk length " + length + ".");
+            }
+            final byte[] chunk = new byte[length];
+            in.readFully(chunk);
+            pending.add(pool.submit(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return decode(chunk);
+                }
+            }));
+        }
+    }
+    
+    /**
+     * Decodes a complete .lzma stream.
+     */
+    public static byte[] decode(byte[] chunk) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(chunk.length * 4);
+        LZMAPeakListReaderFactory.decode(new ByteArrayInputStream(chunk), data);
+        return data.toByteArray();
+    }
+    
+    /**
+     * Returns true if the bytes are the start of a stream written by ParallelLZMAOutputStream.
+     * @param len The number of bytes to check, at least the length of the magic number.
+     */
+    public static boolean isParallelLZMA(byte[] start, int len) {
+        byte[] magic = ParallelLZMAOutputStream.MAGIC;
+        if (len < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (start[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.lzma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Encodes LZMA with several threads. The data is split in to chunks and each chunk is encoded as its own .lzma stream, with its size in the header, on a thread pool. The streams are written in order in a simple container:
+ *
+ * <pre>
+ * 8 bytes   MAGIC
+ * for each chunk:
+ *   4 bytes   the length of the chunk's .lzma stream, big endian
+ *   n bytes   the .lzma stream, as read by LZMAPeakListReaderFactory.decode()
+ * 4 bytes   0, the end
+ * </pre>
+ *
+ * The first byte of MAGIC can't start a .lzma stream, so LZMAPeakListReaderFactory can tell the two apart. ParallelLZMAInputStream decodes the chunks in parallel.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelLZMAOutputStream extends OutputStream {
+    /**
+     * The start of the container. 0xFF is too big to be the properties byte of a .lzma stream.
+     */
+    public static final byte[] MAGIC = new byte[] {(byte) 0xFF, 'P', 'L', 'Z', 'M', 'A', 0, 1};
+    /**
+     * The default number of bytes in a chunk, which is also the dictionary size. Each encoding thread needs about ten times this much memory.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+    
+    private DataOutputStream out;
+    
+    // the chunk being filled
+    private byte[] chunk;
+    private int size = 0;
+    
+    // the threads and the chunks they are encoding, in file order
+    private ExecutorService pool;
+    private LinkedList<Future<byte[]>> pending = new LinkedList();
+    private int maxPending;
+    private boolean closed = false;
+    
+    /**
+     * Make a stream that encodes with a thread per processor.
+     */
+    public ParallelLZMAOutputStream(OutputStream out) throws IOException {
+        this(out, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * Make a new stream and write the start of the container.
+     * @param threads The number of threads encoding chunks.
+     * @param chunkSize The number of bytes in a chunk, at least 4KB.
+     */
+    public ParallelLZMAOutputStream(OutputStream out, int threads, int chunkSize) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+        if (chunkSize < 4096) {
+            throw new IllegalArgumentException("Chunks must be at least 4KB.");
+        }
+        this.out = new DataOutputStream(out);
+        this.chunk = new byte[chunkSize];
+        this.maxPending = threads * 2;
+        // daemon threads so that an unclosed stream doesn't keep the JVM running
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "LZMA encoder");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.out.write(MAGIC);
+    }
+    
+    public void write(int b) throws IOException {
+        if (size == chunk.length) {
+            sendChunk();
+        }
+        chunk[size++] = (byte) b;
+    }
+    
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (size == chunk.length) {
+                sendChunk();
+            }
+            int count = Math.min(len, chunk.length - size);
+            System.arraycopy(b, off, chunk, size, count);
+            size += count;
+            off += count;
+            len -= count;
+        }
+    }
+    
+    /**
+     * Does nothing, smaller chunks would encode worse. Everything is written by close().
+     */
+    public void flush() {
+    }
+    
+    /**
+     * Encodes the rest of the data and ends the container, then closes the underlying stream.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (size > 0) {
+                sendChunk();
+            }
+            while (!pending.isEmpty()) {
+                writeChunk();
+            }
+            out.writeInt(0);
+        } finally {
+            pool.shutdownNow();
+            out.close();
+        }
+    }
+    
+    // helper to hand the current chunk to the threads
+    private void sendChunk() throws IOException {
+        final byte[] data = chunk;
+        final int length = size;
+        pending.add(pool.submit(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                return encode(data, length);
+            }
+        }));
+        chunk = new byte[chunk.length];
+        size = 0;
+        // don't get too far ahead of the file
+        while (pending.size() >= maxPending) {
+            writeChunk();
+        }
+    }
+    
+    // helper to write the oldest encoded chunk
+    private void writeChunk() throws IOException {
+        try {
+            byte[] encoded = pending.removeFirst().get();
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted encoding a chunk.");
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Can't encode a chunk.");
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+    
+    /**
+     * Encodes bytes as a .lzma stream with a dictionary just big enough for them.
+     */
+    public static byte[] encode(byte[] data, int length) throws IOException {
+        int dictionarySize = 4096;
+        while (dictionarySize < length && dictionarySize < (1 << 28)) {
+            dictionarySize <<= 1;
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(length / 4 + 64);
+        LZMAPeakListWriter.encode(new ByteArrayInputStream(data, 0, length), encoded, length, dictionarySize);
+        return encoded.toByteArray();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mgf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.proteomecommons.io.MutablePeakList;
+
+/**
+ * A Mascot Generic Format reader that can jump straight to a peak list by its number in the file or by its TITLE, using a MascotGenericFormatIndex. The index is loaded from the MGF's sidecar file, or made if there isn't an up to date one. A new sidecar is only saved if the reader is asked to. Sequential reading with getPeakList() continues from the last peak list read.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class IndexedMascotGenericFormatPeakListReader extends MascotGenericFormatPeakListReader {
+    // the index of the file
+    private MascotGenericFormatIndex index;
+    // the underlying file, which is repositioned to seek
+    private FileInputStream fis;
+
+    public IndexedMascotGenericFormatPeakListReader(String filename) {
+        this(filename, false);
+    }
+
+    /**
+     * @param saveIndex True to save the index in a sidecar next to the MGF if there isn't an up to date one, so that the next reader doesn't have to make it.
+     */
+    public IndexedMascotGenericFormatPeakListReader(String filename, boolean saveIndex) {
+        super(filename, null);
+        try {
+            index = MascotGenericFormatIndex.getIndex(new File(filename), saveIndex);
+            fis = new FileInputStream(filename);
+            in = new BufferedReader(new InputStreamReader(fis));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the index of the file.
+     */
+    public MascotGenericFormatIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the number of peak lists in the file.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Moves to a peak list, the next call to getPeakList() returns it.
+     * @param ordinal The zero-based number of the peak list in the file.
+     */
+    public void seek(int ordinal) {
+        try {
+            fis.getChannel().position(index.getOffset(ordinal));
+            // drop anything that was buffered
+            in = new BufferedReader(new InputStreamReader(fis));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads a peak list by its number in the file.
+     * @param ordinal The zero-based number of the peak list in the file.
+     */
+    public MascotGenericFormatPeakList getPeakList(int ordinal) {
+        seek(ordinal);
+        return (MascotGenericFormatPeakList) getPeakList();
+    }
+
+    /**
+     * Reads the first peak list with the given title.
+     * @return The peak list or null if no peak list has the title.
+     */
+    public MascotGenericFormatPeakList getPeakList(String title) {
+        int ordinal = index.indexOf(title);
+        if (ordinal == -1) {
+            return null;
+        }
+        return getPeakList(ordinal);
+    }
+
+    /**
+     * Reads a peak list by its number in the file in to the given peak list.
+     * @param ordinal The zero-based number of the peak list in the file.
+     * @see org.proteomecommons.io.ReusablePeakListReader#readInto(MutablePeakList)
+     */
+    public boolean readInto(int ordinal, MutablePeakList peaklist) {
+        seek(ordinal);
+        return readInto(peaklist);
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mgf;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.MutablePeakList;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.ReusablePeakListReader;
+import org.proteomecommons.io.util.AsciiNumberParser;
+
+/**
+ * A Mascot Generic Format reader that memory maps the file and parses the ASCII bytes directly. No String is made for a peak line and the peaks go straight in to the peak list's arrays, which makes this reader much faster than MascotGenericFormatPeakListReader on large files. The file is mapped in windows so that files bigger than the address space can be read.
+ *
+ * Note that a memory mapped file stays open until the mapping is garbage collected, even after close() is called.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class MappedMascotGenericFormatPeakListReader extends GenericPeakListReader implements ReusablePeakListReader {
+    /**
+     * The default number of bytes mapped at once.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    // the keywords, as bytes
+    private static final byte[] PEPMASS = ascii("PEPMASS");
+    private static final byte[] CHARGE = ascii("CHARGE");
+    private static final byte[] TITLE = ascii("TITLE");
+    private static final byte[] BEGIN_IONS = ascii("BEGIN IONS");
+    private static final byte[] END_IONS = ascii("END IONS");
+
+    // the file
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long fileSize;
+
+    // the currently mapped part of the file
+    private int windowSize;
+    private ByteBuffer window = null;
+    // false if windows are read in to memory instead of being mapped
+    private boolean mapped = true;
+    private long windowStart = 0;
+    private int windowLength = 0;
+
+    // the next unread byte, relative to the window
+    private int position = 0;
+
+    // the current line, relative to the window
+    private int lineBegin = 0;
+    private int lineStart = 0;
+    private int lineEnd = 0;
+
+    // no peak list that starts at or after this offset is read, see setRange()
+    private long limit = Long.MAX_VALUE;
+
+    /**
+     * Make a new reader for the given file using the default window size.
+     */
+    public MappedMascotGenericFormatPeakListReader(String filename) {
+        this(filename, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Make a new reader for the given file.
+     * @param windowSize The number of bytes to map at once. Windows grow as needed to fit a whole line.
+     */
+    public MappedMascotGenericFormatPeakListReader(String filename, int windowSize) {
+        this(filename, windowSize, true);
+    }
+
+    // for readers that parse many small parts of a file, where reading is cheaper than mapping
+    MappedMascotGenericFormatPeakListReader(String filename, int windowSize, boolean mapped) {
+        super(filename);
+        this.mapped = mapped;
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive.");
+        }
+        this.windowSize = windowSize;
+        try {
+            raf = new RandomAccessFile(filename, "r");
+            channel = raf.getChannel();
+            fileSize = channel.size();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @see org.proteomecommons.io.PeakListReader#close()
+     */
+    public void close() {
+        try {
+            raf.close();
+        } catch (Exception e) {
+            // noop
+        } finally {
+            window = null;
+            channel = null;
+        }
+    }
+
+    public PeakList getPeakList() {
+        // make a new peak list
+        MascotGenericFormatPeakList peaklist = new MascotGenericFormatPeakList();
+        if (!readInto(peaklist)) {
+            return null;
+        }
+        // free up any unused space
+        peaklist.trimToSize();
+        return peaklist;
+    }
+
+    /**
+     * @see org.proteomecommons.io.ReusablePeakListReader#readInto(MutablePeakList)
+     */
+    public boolean readInto(MutablePeakList peaklist) {
+        try {
+            // reset the peak list
+            peaklist.clear();
+            peaklist.setParentPeak(null);
+            peaklist.setTandemCount(PeakList.UNKNOWN_TANDEM_COUNT);
+
+            // the preserved meta-info
+            String pepmass = null;
+            String charge = null;
+            String title = null;
+
+            boolean foundPeaks = false;
+
+            while (nextLine()) {
+                // skip blank lines
+                if (lineStart == lineEnd) {
+                    continue;
+                }
+
+                // try to find parent mass info
+                if (startsWith(PEPMASS)) {
+                    peaklist.setTandemCount(2);
+                    pepmass = toString(lineStart, lineEnd);
+                    continue;
+                }
+
+                // try to handle charge
+                if (startsWith(CHARGE)) {
+                    peaklist.setTandemCount(2);
+                    charge = toString(lineStart, lineEnd);
+                    continue;
+                }
+
+                // handle the title information
+                if (startsWith(TITLE)) {
+                    int equals = indexOf('=');
+                    title = toString(equals == -1 ? lineStart : equals + 1, lineEnd).trim();
+                    continue;
+                }
+
+                // handle peaks
+                if (startsWith(BEGIN_IONS)) {
+                    // stop at the end of the range, staying on this line
+                    if (windowStart + lineBegin >= limit) {
+                        position = lineBegin;
+                        break;
+                    }
+                    foundPeaks = true;
+                    continue;
+                }
+
+                // check for blank peak lists
+                if (startsWith(END_IONS)) {
+                    break;
+                }
+
+                // if the line starts with 1-9, parse all the peaks
+                byte first = window.get(lineStart);
+                if (first >= '1' && first <= '9') {
+                    while (true) {
+                        if (lineStart < lineEnd) {
+                            if (startsWith(END_IONS)) {
+                                break;
+                            }
+                            addPeak(peaklist);
+                        }
+                        if (!nextLine()) {
+                            break;
+                        }
+                    }
+                    // quit so that multiple peak lists aren't read at once
+                    break;
+                }
+            }
+
+            // if no peaks are found, exit
+            if (!foundPeaks) {
+                return false;
+            }
+
+            // finally, set the meta-info
+            if (peaklist instanceof MascotGenericFormatPeakList) {
+                MascotGenericFormatPeakList mgf = (MascotGenericFormatPeakList)peaklist;
+                mgf.setPepmass(pepmass);
+                mgf.setCharge(charge);
+                mgf.setTitle(title);
+            } else {
+                peaklist.setParentPeak(MascotGenericFormatPeakList.parseParentPeak(pepmass, charge));
+            }
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Limits the reader to the peak lists whose BEGIN IONS line starts in the range [start, limit) of the file. The reader moves to the first BEGIN IONS line at or after start. This lets a file be split in to parts that are read at the same time, see ParallelMascotGenericFormatPeakListReader.
+     */
+    void setRange(long start, long limit) {
+        try {
+            this.limit = limit;
+            if (start <= 0) {
+                return;
+            }
+            // skip the rest of the line that start is in, unless start begins a line
+            map(start - 1, windowSize);
+            nextLine();
+            // move to the next peak list
+            while (nextLine()) {
+                if (startsWith(BEGIN_IONS)) {
+                    position = lineBegin;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // helper to parse the current line as a peak, bad lines are skipped
+    private void addPeak(MutablePeakList peaklist) {
+        // find the m/z
+        int mzEnd = lineStart;
+        while (mzEnd < lineEnd && (window.get(mzEnd) & 0xff) > ' ') {
+            mzEnd++;
+        }
+        // find the intensity
+        int intensityStart = mzEnd;
+        while (intensityStart < lineEnd && (window.get(intensityStart) & 0xff) <= ' ') {
+            intensityStart++;
+        }
+        int intensityEnd = intensityStart;
+        while (intensityEnd < lineEnd && (window.get(intensityEnd) & 0xff) > ' ') {
+            intensityEnd++;
+        }
+        // skip lines without an intensity
+        if (intensityStart == intensityEnd) {
+            return;
+        }
+        try {
+            double mz = AsciiNumberParser.parseDouble(window, lineStart, mzEnd);
+            double intensity = AsciiNumberParser.parseDouble(window, intensityStart, intensityEnd);
+            peaklist.addPeak(mz, intensity);
+        } catch (NumberFormatException e) {
+            // noop
+        }
+    }
+
+    // helper to move to the next line, which is trimmed of white space
+    private boolean nextLine() throws IOException {
+        while (true) {
+            // look for the end of the line in the current window
+            for (int i = position; i < windowLength; i++) {
+                byte b = window.get(i);
+                if (b == '\n' || b == '\r') {
+                    setLine(position, i);
+                    position = i + 1;
+                    return true;
+                }
+            }
+            // the last line of the file may not have a line break
+            if (windowStart + windowLength >= fileSize) {
+                if (position >= windowLength) {
+                    return false;
+                }
+                setLine(position, windowLength);
+                position = windowLength;
+                return true;
+            }
+            // map the next window, starting at this line
+            long start = windowStart + position;
+            long size = windowSize;
+            // grow the window if the line doesn't fit
+            if (position == 0 && window != null) {
+                size = Math.min(Integer.MAX_VALUE, 2L * windowLength);
+            }
+            map(start, size);
+        }
+    }
+
+    // helper to map part of the file
+    private void map(long start, long size) throws IOException {
+        size = Math.min(size, fileSize - start);
+        if (mapped) {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        } else {
+            // reuse the buffer if it is big enough
+            if (window == null || window.capacity() < size) {
+                window = ByteBuffer.allocate((int) size);
+            }
+            window.clear();
+            window.limit((int) size);
+            while (window.hasRemaining()) {
+                if (channel.read(window, start + window.position()) == -1) {
+                    throw new IOException("Unexpected end of file " + getName());
+                }
+            }
+        }
+        windowStart = start;
+        windowLength = (int) size;
+        position = 0;
+    }
+
+    // helper to set the current line, without the leading and trailing white space
+    private void setLine(int start, int end) {
+        lineBegin = start;
+        while (start < end && (window.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (window.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+    }
+
+    // helper to make a String from part of the window, decoded like the line based reader does
+    private String toString(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = window.get(i);
+        }
+        return new String(bytes);
+    }
+
+    // helper to check the start of the current line
+    private boolean startsWith(byte[] prefix) {
+        if (lineEnd - lineStart < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (window.get(lineStart + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // helper to find a character in the current line
+    private int indexOf(char c) {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (window.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // helper to get the bytes of an ASCII string
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mgf;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import org.proteomecommons.io.ArrayPeakList;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.ReusablePeakListReader;
+
+/**
+ * A throughput benchmark that compares the line based MGF reader with the memory mapped and parallel ones. Pass an MGF file to time it, or nothing to time a generated file.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class MascotGenericFormatBench {
+
+    public static void main(String[] args) throws Exception {
+        File file = null;
+        int repeats = 3;
+        if (args.length > 0) {
+            file = new File(args[0]);
+        } else {
+            // make up a file, ~80MB
+            file = File.createTempFile("bench", ".mgf");
+            file.deleteOnExit();
+            System.out.println("Writing a test file to " + file + "...");
+            writeTestFile(file, 20000, 200);
+        }
+        if (args.length > 1) {
+            repeats = Integer.parseInt(args[1]);
+        }
+
+        System.out.println("File: " + file + ", " + file.length() + " bytes");
+        for (int i = 0; i < repeats; i++) {
+            System.out.println("Run " + (i + 1) + ":");
+            time("  line based, getPeakList()", file, new MascotGenericFormatPeakListReader(file.getPath()), false);
+            time("  line based, readInto()   ", file, new MascotGenericFormatPeakListReader(file.getPath()), true);
+            time("  mapped, getPeakList()    ", file, new MappedMascotGenericFormatPeakListReader(file.getPath()), false);
+            time("  mapped, readInto()       ", file, new MappedMascotGenericFormatPeakListReader(file.getPath()), true);
+            int threads = Runtime.getRuntime().availableProcessors();
+            time("  parallel, ordered        ", file, new ParallelMascotGenericFormatPeakListReader(file.getPath(), threads, true, ParallelMascotGenericFormatPeakListReader.DEFAULT_CHUNK_SIZE), false);
+            time("  parallel, unordered      ", file, new ParallelMascotGenericFormatPeakListReader(file.getPath(), threads, false, ParallelMascotGenericFormatPeakListReader.DEFAULT_CHUNK_SIZE), false);
+        }
+    }
+
+    // helper to time reading all of the peak lists
+    private static void time(String name, File file, PeakListReader reader, boolean reuse) {
+        long start = System.currentTimeMillis();
+        long peaklists = 0;
+        long peaks = 0;
+        try {
+            if (reuse) {
+                ArrayPeakList buffer = new ArrayPeakList();
+                while (((ReusablePeakListReader) reader).readInto(buffer)) {
+                    peaklists++;
+                    peaks += buffer.size();
+                }
+            } else {
+                for (PeakList pl = reader.getPeakList(); pl != null; pl = reader.getPeakList()) {
+                    peaklists++;
+                    peaks += ((ArrayPeakList) pl).size();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        double mbPerSecond = (file.length() / (1024.0 * 1024.0)) / (millis / 1000.0);
+        System.out.println(name + ": " + millis + " ms, " + Math.round(mbPerSecond) + " MB/s, " + Math.round(peaklists * 1000.0 / millis) + " peak lists/s (" + peaklists + " peak lists, " + peaks + " peaks)");
+    }
+
+    /**
+     * Helper method to write a made up MGF file.
+     */
+    public static void writeTestFile(File file, int peaklists, int peaksPerPeakList) throws Exception {
+        Random random = new Random(0);
+        BufferedWriter out = new BufferedWriter(new FileWriter(file));
+        try {
+            for (int i = 0; i < peaklists; i++) {
+                out.write("BEGIN IONS\n");
+                out.write("TITLE=Spectrum " + i + "\n");
+                out.write("PEPMASS=" + (400 + random.nextInt(160000) / 100.0) + "\n");
+                out.write("CHARGE=" + (1 + random.nextInt(3)) + "+\n");
+                double mz = 100;
+                for (int j = 0; j < peaksPerPeakList; j++) {
+                    mz += random.nextInt(1000) / 100.0;
+                    out.write(Math.round(mz * 10000) / 10000.0 + "\t" + random.nextInt(100000) / 10.0 + "\n");
+                }
+                out.write("END IONS\n\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mgf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.proteomecommons.io.Peak;
+
+/**
+ * An index of the peak lists in a Mascot Generic Format file. For every BEGIN IONS block the index keeps the byte offset of the block, the TITLE and the PEPMASS m/z, which is enough to map a Mascot query or a Sequest result back to a peak list without reading the whole file. Peak lists are found by ordinal in constant time and by title with a binary search.
+ *
+ * Indexes can be saved in a small binary sidecar file next to the MGF, see getIndexFile(). getIndex() uses a sidecar that is up to date, and only writes one if the caller asks for it.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class MascotGenericFormatIndex {
+    // identifies sidecar files, "MGFI"
+    private static final int MAGIC = 0x4D474649;
+    private static final int VERSION = 1;
+
+    // the size and time of the indexed MGF, used to check if the index is stale
+    private long mgfLength;
+    private long mgfLastModified;
+
+    // the entries, by ordinal
+    private int size = 0;
+    private long[] offsets = new long[1024];
+    private String[] titles = new String[1024];
+    private double[] pepmasses = new double[1024];
+
+    // ordinals sorted by title, made when first needed
+    private int[] titleOrder = null;
+
+    // use the static methods
+    private MascotGenericFormatIndex() {
+    }
+
+    /**
+     * Returns the sidecar file used for the given MGF file.
+     */
+    public static File getIndexFile(File mgf) {
+        return new File(mgf.getPath() + ".index");
+    }
+
+    /**
+     * Checks if a file is a plain MGF file that can be indexed, e.g. not a compressed one.
+     */
+    public static boolean canIndex(File file) {
+        return file.getName().toLowerCase().endsWith(".mgf") && file.isFile();
+    }
+
+    /**
+     * Gets the index for a MGF file. The sidecar file is used if it is up to date, otherwise the MGF is indexed. No sidecar is written.
+     */
+    public static MascotGenericFormatIndex getIndex(File mgf) throws IOException {
+        return getIndex(mgf, false);
+    }
+
+    /**
+     * Gets the index for a MGF file. The sidecar file is used if it is up to date, otherwise the MGF is indexed.
+     * @param save True to save a new sidecar next to the MGF when the MGF is indexed.
+     */
+    public static MascotGenericFormatIndex getIndex(File mgf, boolean save) throws IOException {
+        File indexFile = getIndexFile(mgf);
+        // try the existing sidecar
+        if (indexFile.exists()) {
+            try {
+                MascotGenericFormatIndex index = read(indexFile);
+                if (index.mgfLength == mgf.length() && index.mgfLastModified == mgf.lastModified()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // noop, the index is rebuilt
+            }
+        }
+        // index the file
+        MascotGenericFormatIndex index = build(mgf);
+        if (save) {
+            try {
+                index.write(indexFile);
+            } catch (IOException e) {
+                // don't leave half a sidecar
+                indexFile.delete();
+                throw e;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Indexes a MGF file by scanning its bytes.
+     */
+    public static MascotGenericFormatIndex build(File mgf) throws IOException {
+        MascotGenericFormatIndex index = new MascotGenericFormatIndex();
+        index.mgfLength = mgf.length();
+        index.mgfLastModified = mgf.lastModified();
+
+        InputStream in = new FileInputStream(mgf);
+        try {
+            // the current line
+            byte[] line = new byte[256];
+            int length = 0;
+            long lineOffset = 0;
+            long offset = 0;
+            // true if inside a BEGIN IONS block
+            boolean inBlock = false;
+            String pepmass = null;
+            byte[] buf = new byte[64 * 1024];
+            for (int read = in.read(buf); ; read = in.read(buf)) {
+                for (int i = 0; i < read || read == -1; i++) {
+                    int b = read == -1 ? -1 : buf[i] & 0xff;
+                    // buffer everything but line breaks
+                    if (b != -1 && b != '\n' && b != '\r') {
+                        if (length == line.length) {
+                            line = grow(line);
+                        }
+                        line[length++] = (byte) b;
+                        offset++;
+                        continue;
+                    }
+
+                    // trim the line
+                    int start = 0;
+                    int end = length;
+                    while (start < end && (line[start] & 0xff) <= ' ') {
+                        start++;
+                    }
+                    while (end > start && (line[end - 1] & 0xff) <= ' ') {
+                        end--;
+                    }
+                    if (startsWith(line, start, end, "BEGIN IONS")) {
+                        index.add(lineOffset);
+                        inBlock = true;
+                        pepmass = null;
+                    } else if (inBlock && startsWith(line, start, end, "END IONS")) {
+                        index.setPepmass(pepmass);
+                        inBlock = false;
+                    } else if (inBlock && index.titles[index.size - 1] == null && startsWith(line, start, end, "TITLE")) {
+                        String title = new String(line, start, end - start);
+                        index.titles[index.size - 1] = title.substring(title.indexOf("=") + 1).trim();
+                    } else if (inBlock && pepmass == null && startsWith(line, start, end, "PEPMASS")) {
+                        pepmass = new String(line, start, end - start);
+                    }
+
+                    // the end of the file
+                    if (b == -1) {
+                        break;
+                    }
+                    offset++;
+                    lineOffset = offset;
+                    length = 0;
+                }
+                if (read == -1) {
+                    break;
+                }
+            }
+            // handle a file that ends without END IONS
+            if (inBlock) {
+                index.setPepmass(pepmass);
+            }
+        } finally {
+            in.close();
+        }
+        return index;
+    }
+
+    /**
+     * Reads an index from a sidecar file.
+     */
+    public static MascotGenericFormatIndex read(File indexFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a MGF index: " + indexFile);
+            }
+            MascotGenericFormatIndex index = new MascotGenericFormatIndex();
+            index.mgfLength = in.readLong();
+            index.mgfLastModified = in.readLong();
+            int size = in.readInt();
+            index.offsets = new long[size];
+            index.titles = new String[size];
+            index.pepmasses = new double[size];
+            for (int i = 0; i < size; i++) {
+                index.offsets[i] = in.readLong();
+                index.pepmasses[i] = in.readDouble();
+                if (in.readBoolean()) {
+                    index.titles[i] = in.readUTF();
+                }
+            }
+            index.size = size;
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the index to a sidecar file.
+     */
+    public void write(File indexFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mgfLength);
+            out.writeLong(mgfLastModified);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(offsets[i]);
+                out.writeDouble(pepmasses[i]);
+                out.writeBoolean(titles[i] != null);
+                if (titles[i] != null) {
+                    out.writeUTF(titles[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the number of peak lists in the MGF file.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the byte offset of the BEGIN IONS line of a peak list.
+     * @param ordinal The zero-based number of the peak list in the file.
+     */
+    public long getOffset(int ordinal) {
+        checkOrdinal(ordinal);
+        return offsets[ordinal];
+    }
+
+    /**
+     * Returns the TITLE of a peak list, or null if it doesn't have one.
+     * @param ordinal The zero-based number of the peak list in the file.
+     */
+    public String getTitle(int ordinal) {
+        checkOrdinal(ordinal);
+        return titles[ordinal];
+    }
+
+    /**
+     * Returns the PEPMASS m/z of a peak list, or 0 if it doesn't have one.
+     * @param ordinal The zero-based number of the peak list in the file.
+     */
+    public double getPepmass(int ordinal) {
+        checkOrdinal(ordinal);
+        return pepmasses[ordinal];
+    }
+
+    /**
+     * Returns the ordinal of the first peak list with the given title, or -1 if there isn't one.
+     */
+    public synchronized int indexOf(String title) {
+        if (title == null) {
+            return -1;
+        }
+        // sort the ordinals by title the first time
+        if (titleOrder == null) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new TitleComparator(titles));
+            titleOrder = new int[size];
+            for (int i = 0; i < size; i++) {
+                titleOrder[i] = order[i];
+            }
+        }
+        // binary search for the first match, the sort is stable so it is the lowest ordinal
+        int low = 0;
+        int high = size - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            String midTitle = titles[titleOrder[mid]];
+            int compare = midTitle == null ? -1 : midTitle.compareTo(title);
+            if (compare < 0) {
+                low = mid + 1;
+            } else {
+                if (compare == 0) {
+                    found = titleOrder[mid];
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // helper to add an entry
+    private void add(long offset) {
+        if (size == offsets.length) {
+            int capacity = size * 3 / 2 + 1;
+            long[] newOffsets = new long[capacity];
+            System.arraycopy(offsets, 0, newOffsets, 0, size);
+            offsets = newOffsets;
+            String[] newTitles = new String[capacity];
+            System.arraycopy(titles, 0, newTitles, 0, size);
+            titles = newTitles;
+            double[] newPepmasses = new double[capacity];
+            System.arraycopy(pepmasses, 0, newPepmasses, 0, size);
+            pepmasses = newPepmasses;
+        }
+        offsets[size] = offset;
+        titles[size] = null;
+        pepmasses[size] = 0;
+        size++;
+    }
+
+    // helper to set the m/z of the last entry, parsed the same way as the peak list does
+    private void setPepmass(String pepmass) {
+        Peak parent = MascotGenericFormatPeakList.parseParentPeak(pepmass, null);
+        if (parent != null) {
+            pepmasses[size - 1] = parent.getMassOverCharge();
+        }
+    }
+
+    // helper to double the size of the line buffer
+    private static byte[] grow(byte[] line) {
+        byte[] bigger = new byte[line.length * 2];
+        System.arraycopy(line, 0, bigger, 0, line.length);
+        return bigger;
+    }
+
+    // helper to check an ordinal
+    private void checkOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("No peak list " + ordinal + ", there are " + size + ".");
+        }
+    }
+
+    // helper to check the start of a line
+    private static boolean startsWith(byte[] line, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+/**
+ * Sorts ordinals by title, peak lists without a title come first.
+ */
+class TitleComparator implements Comparator<Integer> {
+    private String[] titles;
+
+    TitleComparator(String[] titles) {
+        this.titles = titles;
+    }
+
+    public int compare(Integer a, Integer b) {
+        String ta = titles[a];
+        String tb = titles[b];
+        if (ta == null) {
+            return tb == null ? 0 : -1;
+        }
+        if (tb == null) {
+            return 1;
+        }
+        return ta.compareTo(tb);
+    }
+}
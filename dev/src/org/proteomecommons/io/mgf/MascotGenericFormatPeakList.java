@@ -23,7 +23,7 @@ import org.proteomecommons.io.*;
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class MascotGenericFormatPeakList extends GenericPeakList {
+public class MascotGenericFormatPeakList extends ArrayPeakList {
     private String pepmass = null;
     private String charge = null;
     private String title = null;
@@ -54,52 +54,63 @@ public class MascotGenericFormatPeakList extends GenericPeakList {
     
     public Peak getParentPeak() {
         if (pepmass != null) {
-            // fall back on making a generic peak
-            GenericPeak gp = new GenericPeak();
-            // check for known pepmass and intensity
-            if (getPepmass() != null) {
-                String[] split = getPepmass().split("=|\\s");
-                // first in the split would be the m/z
-                if (split.length > 1) {
-                    try {
-                        gp.setMassOverCharge(Double.parseDouble(split[1]));
-                    } catch (NumberFormatException ex) {
-                        // noop
-                    }
-                }
-                // second in the split would be the intensity
-                if (split.length > 2) {
-                    try {
-                        gp.setIntensity(Double.parseDouble(split[2]));
-                    } catch (NumberFormatException ex) {
-                        // noop
-                    }
-                }
+            return parseParentPeak(getPepmass(), getCharge());
+        }
+        return super.getParentPeak();
+    }
+    
+    /**
+     * Helper method to make a parent peak from the preserved PEPMASS and CHARGE lines.
+     * @param pepmass The PEPMASS line, e.g. "PEPMASS=1000.1 2000".
+     * @param charge The CHARGE line, e.g. "CHARGE=2+", or null if there isn't one.
+     * @return The parent peak or null if pepmass is null.
+     */
+    public static Peak parseParentPeak(String pepmass, String charge) {
+        if (pepmass == null) {
+            return null;
+        }
+        // fall back on making a generic peak
+        GenericPeak gp = new GenericPeak();
+        // check for known pepmass and intensity
+        String[] split = pepmass.split("=|\\s");
+        // first in the split would be the m/z
+        if (split.length > 1) {
+            try {
+                gp.setMassOverCharge(Double.parseDouble(split[1]));
+            } catch (NumberFormatException ex) {
+                // noop
+            }
+        }
+        // second in the split would be the intensity
+        if (split.length > 2) {
+            try {
+                gp.setIntensity(Double.parseDouble(split[2]));
+            } catch (NumberFormatException ex) {
+                // noop
             }
-            // check for charge
-            if (getCharge() != null && !getCharge().trim().equals("")) {
-                boolean negative = getCharge().indexOf("-") != -1;
-                if (negative) {
-                    try {
-                        String chargeString = getCharge().split("=")[1].trim();
-                        chargeString = chargeString.replace("-", "");
-                        gp.setCharge(-1 * Integer.parseInt(chargeString));
-                    } catch (NumberFormatException ex) {
-                        // noop
-                    }
-                } else {
-                    try {
-                        String chargeString = getCharge().split("=")[1].trim();
-                        chargeString = chargeString.replace("+", "");
-                        gp.setCharge(Integer.parseInt(chargeString));
-                    } catch (NumberFormatException ex) {
-                        // noop
-                    }
+        }
+        // check for charge
+        if (charge != null && !charge.trim().equals("")) {
+            boolean negative = charge.indexOf("-") != -1;
+            if (negative) {
+                try {
+                    String chargeString = charge.split("=")[1].trim();
+                    chargeString = chargeString.replace("-", "");
+                    gp.setCharge(-1 * Integer.parseInt(chargeString));
+                } catch (NumberFormatException ex) {
+                    // noop
+                }
+            } else {
+                try {
+                    String chargeString = charge.split("=")[1].trim();
+                    chargeString = chargeString.replace("+", "");
+                    gp.setCharge(Integer.parseInt(chargeString));
+                } catch (NumberFormatException ex) {
+                    // noop
                 }
-                
             }
-            return gp;
+            
         }
-        return super.getParentPeak();
+        return gp;
     }
 }
\ No newline at end of file
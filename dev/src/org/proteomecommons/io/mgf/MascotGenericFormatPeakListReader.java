@@ -18,7 +18,8 @@ package org.proteomecommons.io.mgf;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
 import org.proteomecommons.io.*;
 import org.proteomecommons.io.Peak;
@@ -32,7 +33,7 @@ import org.proteomecommons.io.PeakListReader;
  * @author Dominic Battre
  *
  */
-public class MascotGenericFormatPeakListReader extends GenericPeakListReader {
+public class MascotGenericFormatPeakListReader extends GenericPeakListReader implements ReusablePeakListReader {
     // buffered input for the peak list
     BufferedReader in;
     FileReader fr;
@@ -54,12 +55,30 @@ public class MascotGenericFormatPeakListReader extends GenericPeakListReader {
     }
     
     public PeakList getPeakList() {
+        // make a new peak list
+        MascotGenericFormatPeakList peaklist = new MascotGenericFormatPeakList();
+        if (!readInto(peaklist)) {
+            return null;
+        }
+        // free up any unused space
+        peaklist.trimToSize();
+        return peaklist;
+    }
+    
+    /**
+     * @see org.proteomecommons.io.ReusablePeakListReader#readInto(MutablePeakList)
+     */
+    public boolean readInto(MutablePeakList peaklist) {
         try {
-            // make a new peak list
-            MascotGenericFormatPeakList peaklist = new MascotGenericFormatPeakList();
+            // reset the peak list
+            peaklist.clear();
+            peaklist.setParentPeak(null);
+            peaklist.setTandemCount(PeakList.UNKNOWN_TANDEM_COUNT);
             
-            // ll of all the peaks
-            LinkedList<Peak> peaks = new LinkedList();
+            // the preserved meta-info
+            String pepmass = null;
+            String charge = null;
+            String title = null;
             
             boolean foundPeaks = false;
             
@@ -80,7 +99,7 @@ public class MascotGenericFormatPeakListReader extends GenericPeakListReader {
                     // flag as tandem
                     peaklist.setTandemCount(2);
                     // preserve the string
-                    peaklist.setPepmass(string);
+                    pepmass = string;
                     continue;
                 }
                 
@@ -89,7 +108,7 @@ public class MascotGenericFormatPeakListReader extends GenericPeakListReader {
                     // flag as tandem
                     peaklist.setTandemCount(2);
                     // preserve the string
-                    peaklist.setCharge(string);
+                    charge = string;
                 }
                 
 //            } else if (string.startsWith("SEQ")) {
@@ -108,7 +127,7 @@ public class MascotGenericFormatPeakListReader extends GenericPeakListReader {
                         tentativeTitle = tentativeTitle.trim();
                     }
                     // set the title
-                    peaklist.setTitle(tentativeTitle);
+                    title = tentativeTitle;
                     continue;
                 }
 //            }
@@ -244,14 +263,11 @@ public class MascotGenericFormatPeakListReader extends GenericPeakListReader {
                                 intens = Double.parseDouble(split[1]);
                             } catch (Exception e) { // Any non-Peak data will return null (e.g. END
                                 // IONS)
-                                return null;
+                                return false;
                             }
                             
-                            // return the appropriate fragment
-                            GenericPeak gp = new GenericPeak();
-                            gp.setMassOverCharge(massOverChargeInDaltons);
-                            gp.setIntensity(intens);
-                            peaks.add(gp);
+                            // add the peak
+                            peaklist.addPeak(massOverChargeInDaltons, intens);
                         } catch (Exception e) {
                             // noop
                         }
@@ -263,17 +279,30 @@ public class MascotGenericFormatPeakListReader extends GenericPeakListReader {
             
             // if no peaks are found, exit
             if (!foundPeaks) {
-                return null;
+                return false;
             }
             
-            // finally, add all the peaks
-            peaklist.setPeaks(peaks.toArray(new Peak[0]));
-            return peaklist;
+            // finally, set the meta-info
+            if (peaklist instanceof MascotGenericFormatPeakList) {
+                MascotGenericFormatPeakList mgf = (MascotGenericFormatPeakList)peaklist;
+                mgf.setPepmass(pepmass);
+                mgf.setCharge(charge);
+                mgf.setTitle(title);
+            } else {
+                peaklist.setParentPeak(MascotGenericFormatPeakList.parseParentPeak(pepmass, charge));
+            }
+            return true;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
     
+    // for subclasses that open the file themselves
+    MascotGenericFormatPeakListReader(String filename, BufferedReader in) {
+        super(filename);
+        this.in = in;
+    }
+    
     /**
      * Make a new PeakListReader designed to read Mascot Generic Format peak
      * list files and point the reader to the file with the specified name.
@@ -292,4 +321,14 @@ public class MascotGenericFormatPeakListReader extends GenericPeakListReader {
             throw new RuntimeException(e);
         }
     }
+    
+    /**
+     * Make a new PeakListReader that reads Mascot Generic Format peak lists from a stream.
+     *
+     * @param in The stream to read, closed when the reader is closed.
+     * @param name The name of the stream, usually the name of the file it came from.
+     */
+    public MascotGenericFormatPeakListReader(InputStream in, String name) {
+        this(name, new BufferedReader(new InputStreamReader(in)));
+    }
 }
\ No newline at end of file
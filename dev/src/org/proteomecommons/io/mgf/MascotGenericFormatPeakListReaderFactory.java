@@ -15,16 +15,23 @@
  */
 package org.proteomecommons.io.mgf;
 
+import java.io.InputStream;
 
 import org.proteomecommons.io.PeakListReader;
-import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 
 /**
  * A factory for creating readers that can handle MGF files.
  * 
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class MascotGenericFormatPeakListReaderFactory implements PeakListReaderFactory {
+public class MascotGenericFormatPeakListReaderFactory implements StreamPeakListReaderFactory {
+	// use the memory mapped reader, off unless the "mgf.memorymapped" system property is true
+	private static boolean memoryMapped = Boolean.getBoolean("mgf.memorymapped");
+	// threads to parse with, more than one uses the parallel reader, see the "mgf.threads" system property
+	private static int threads = Integer.getInteger("mgf.threads", 1).intValue();
+	// if the parallel reader keeps file order, off only if the "mgf.unordered" system property is true
+	private static boolean ordered = !Boolean.getBoolean("mgf.unordered");
 
 	/*
 	 * (non-Javadoc)
@@ -32,7 +39,54 @@ public class MascotGenericFormatPeakListReaderFactory implements PeakListReaderF
 	 * @see org.proteomecommons.io.PeakListReaderFactory#newInstance(java.io.InputStream)
 	 */
 	public PeakListReader newInstance(String filename) {
-		// TODO Auto-generated method stub
+		if (threads > 1) {
+			return new ParallelMascotGenericFormatPeakListReader(filename, threads, ordered, ParallelMascotGenericFormatPeakListReader.DEFAULT_CHUNK_SIZE);
+		}
+		if (memoryMapped) {
+			return new MappedMascotGenericFormatPeakListReader(filename);
+		}
 		return new MascotGenericFormatPeakListReader(filename);
 	}
+
+	/**
+	 * Streams can't be memory mapped or split in to chunks, so they are always read by the line based reader.
+	 * 
+	 * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+	 */
+	public PeakListReader newInstance(InputStream in, String name) {
+		return new MascotGenericFormatPeakListReader(in, name);
+	}
+
+	public static boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	/**
+	 * Sets if new readers should memory map MGF files, see MappedMascotGenericFormatPeakListReader.
+	 */
+	public static void setMemoryMapped(boolean memoryMapped) {
+		MascotGenericFormatPeakListReaderFactory.memoryMapped = memoryMapped;
+	}
+
+	public static int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of threads new readers parse with. More than one thread uses ParallelMascotGenericFormatPeakListReader.
+	 */
+	public static void setThreads(int threads) {
+		MascotGenericFormatPeakListReaderFactory.threads = threads;
+	}
+
+	public static boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Sets if parallel readers return peak lists in file order. Unordered is faster.
+	 */
+	public static void setOrdered(boolean ordered) {
+		MascotGenericFormatPeakListReaderFactory.ordered = ordered;
+	}
 }
\ No newline at end of file
@@ -20,6 +20,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import org.proteomecommons.io.ArrayPeakList;
 import org.proteomecommons.io.GenericPeakListWriter;
 import org.proteomecommons.io.Peak;
 import org.proteomecommons.io.PeakList;
@@ -38,7 +41,7 @@ public class MascotGenericFormatPeakListWriter extends GenericPeakListWriter {
     private boolean firstPeakList = true;
     
     // the writers
-    FileWriter fw;
+    Writer fw;
     BufferedWriter osw;
     
     public MascotGenericFormatPeakListWriter(String filename) {
@@ -56,6 +59,17 @@ public class MascotGenericFormatPeakListWriter extends GenericPeakListWriter {
         }
     }
     
+    /**
+     * Make a writer that writes to a stream.
+     * @param out The stream to write to, closed when the writer is closed.
+     * @param name The name of the data.
+     */
+    public MascotGenericFormatPeakListWriter(OutputStream out, String name) {
+        super(name);
+        fw = new OutputStreamWriter(out);
+        osw = new BufferedWriter(fw);
+    }
+    
     /**
      * Simple method to write a MGF file from a peak list. Added meta-data at
      * peaklist level (title, Tol, TOlU, SEQ and COMP)
@@ -132,11 +146,23 @@ public class MascotGenericFormatPeakListWriter extends GenericPeakListWriter {
                 }
             }
             
-            // write out the peaks
-            Peak[] peaks = peaklist.getPeaks();
-            for (int i = 0; i < peaks.length; i++) {
-                osw.write(peaks[i].getMassOverCharge() + "\t"
-                        + peaks[i].getIntensity() + "\n");
+            // write out the peaks, skip making Peak objects if possible
+            if (peaklist instanceof ArrayPeakList) {
+                ArrayPeakList apl = (ArrayPeakList) peaklist;
+                double[] mz = apl.getMassOverChargeArray();
+                double[] intensity = apl.getIntensityArray();
+                for (int i = 0; i < apl.size(); i++) {
+                    osw.write(Double.toString(mz[i]));
+                    osw.write('\t');
+                    osw.write(Double.toString(intensity[i]));
+                    osw.write('\n');
+                }
+            } else {
+                Peak[] peaks = peaklist.getPeaks();
+                for (int i = 0; i < peaks.length; i++) {
+                    osw.write(peaks[i].getMassOverCharge() + "\t"
+                            + peaks[i].getIntensity() + "\n");
+                }
             }
             
             // end the ions
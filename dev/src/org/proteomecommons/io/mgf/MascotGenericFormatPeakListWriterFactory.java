@@ -16,8 +16,9 @@
 package org.proteomecommons.io.mgf;
 
 
+import java.io.OutputStream;
 import org.proteomecommons.io.PeakListWriter;
-import org.proteomecommons.io.PeakListWriterFactory;
+import org.proteomecommons.io.StreamPeakListWriterFactory;
 
 /**
  * A PeakListWriterFactory instance for creating PeakListWriter objects that can
@@ -25,7 +26,7 @@ import org.proteomecommons.io.PeakListWriterFactory;
  * 
  * @author Jayon Falkner - jfalkner@umich.edu
  */
-public class MascotGenericFormatPeakListWriterFactory implements PeakListWriterFactory {
+public class MascotGenericFormatPeakListWriterFactory implements StreamPeakListWriterFactory {
 
 	/**
 	 * @see org.proteomecommons.io.PeakListWriterFactory#getFileExtension()
@@ -44,4 +45,11 @@ public class MascotGenericFormatPeakListWriterFactory implements PeakListWriterF
 	public PeakListWriter newInstance(String filename) {
 		return new MascotGenericFormatPeakListWriter(filename);
 	}
+
+	/**
+	 * @see org.proteomecommons.io.StreamPeakListWriterFactory#newInstance(java.io.OutputStream, java.lang.String)
+	 */
+	public PeakListWriter newInstance(OutputStream out, String name) {
+		return new MascotGenericFormatPeakListWriter(out, name);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mgf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+
+/**
+ * A Mascot Generic Format reader that parses a file with several threads. The file is split in to chunks of bytes, each chunk is moved up to its first BEGIN IONS line and the chunks are parsed at the same time by MappedMascotGenericFormatPeakListReader instances that read, rather than map, their part of the file. Peak lists are returned either in the order they are in the file, which means finished chunks may wait on earlier ones, or in whatever order the chunks finish, which is fastest.
+ *
+ * Only a few chunks are parsed ahead of the caller, so memory use stays bounded no matter how big the file is.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelMascotGenericFormatPeakListReader extends GenericPeakListReader {
+    /**
+     * The default number of bytes in a chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    // extra bytes read with a chunk, so that the last peak list usually fits
+    private static final int WINDOW_MARGIN = 64 * 1024;
+
+    // the file
+    private String filename;
+    private long fileSize;
+    private int chunkSize;
+    // the start of the next chunk to parse
+    private long nextChunk = 0;
+    // the most chunks parsed ahead of the caller
+    private int maxChunksAhead;
+
+    // true if peak lists must be returned in file order
+    private boolean ordered;
+
+    // the threads
+    private ExecutorService pool;
+    // chunks in file order, used when ordered
+    private LinkedList<Future<List<PeakList>>> pending = new LinkedList();
+    // chunks in the order they finish, used when not ordered
+    private CompletionService<List<PeakList>> finished;
+    private int chunksAhead = 0;
+
+    // the peak lists of the current chunk
+    private Iterator<PeakList> current = null;
+
+    /**
+     * Make a reader that uses a thread per processor and returns peak lists in file order.
+     */
+    public ParallelMascotGenericFormatPeakListReader(String filename) {
+        this(filename, Runtime.getRuntime().availableProcessors(), true, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Make a new reader.
+     * @param threads The number of threads parsing chunks.
+     * @param ordered True if peak lists should be returned in the order they are in the file.
+     * @param chunkSize The number of bytes in a chunk.
+     */
+    public ParallelMascotGenericFormatPeakListReader(String filename, int threads, boolean ordered, int chunkSize) {
+        super(filename);
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Threads and chunk size must be positive.");
+        }
+        this.filename = filename;
+        this.ordered = ordered;
+        this.chunkSize = chunkSize;
+        this.maxChunksAhead = threads * 2;
+        File file = new File(filename);
+        if (!file.exists()) {
+            throw new RuntimeException("Can't find file " + filename);
+        }
+        this.fileSize = file.length();
+
+        // daemon threads so that an unclosed reader doesn't keep the JVM running
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "MGF parser");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        finished = new ExecutorCompletionService(pool);
+
+        // start parsing
+        submitChunks();
+    }
+
+    public PeakList getPeakList() {
+        while (current == null || !current.hasNext()) {
+            // check if everything was read
+            if (chunksAhead == 0) {
+                current = null;
+                return null;
+            }
+            // get the next chunk
+            try {
+                Future<List<PeakList>> chunk = ordered ? pending.removeFirst() : finished.take();
+                current = chunk.get().iterator();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Can't parse " + filename, e.getCause());
+            }
+            chunksAhead--;
+            // keep the threads busy
+            submitChunks();
+        }
+        return current.next();
+    }
+
+    /**
+     * @see org.proteomecommons.io.PeakListReader#close()
+     */
+    public void close() {
+        pool.shutdownNow();
+        pending.clear();
+        current = null;
+    }
+
+    // helper to queue up chunks to parse
+    private void submitChunks() {
+        while (chunksAhead < maxChunksAhead && nextChunk < fileSize) {
+            final long start = nextChunk;
+            final long end = Math.min(fileSize, start + chunkSize);
+            nextChunk = end;
+            Callable<List<PeakList>> task = new Callable<List<PeakList>>() {
+                public List<PeakList> call() throws Exception {
+                    return parse(start, end);
+                }
+            };
+            if (ordered) {
+                pending.add(pool.submit(task));
+            } else {
+                finished.submit(task);
+            }
+            chunksAhead++;
+        }
+    }
+
+    // helper to parse all the peak lists that start in a chunk
+    private List<PeakList> parse(long start, long end) {
+        ArrayList<PeakList> peaklists = new ArrayList();
+        MappedMascotGenericFormatPeakListReader reader = new MappedMascotGenericFormatPeakListReader(filename, chunkSize + WINDOW_MARGIN, false);
+        try {
+            reader.setRange(start, end);
+            for (PeakList pl = reader.getPeakList(); pl != null; pl = reader.getPeakList()) {
+                peaklists.add(pl);
+            }
+        } finally {
+            reader.close();
+        }
+        return peaklists;
+    }
+}
@@ -18,6 +18,8 @@ package org.proteomecommons.io.msp;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -46,6 +48,17 @@ public class MSPPeakListReader extends GenericPeakListReader{
         }
     }
     
+    /**
+     * Make a reader for MSP peak lists in a stream.
+     *
+     * @param in The stream to read, closed when the reader is closed.
+     * @param name The name of the stream, usually the name of the file it came from.
+     */
+    public MSPPeakListReader(InputStream in, String name) {
+        super(name);
+        br = new BufferedReader(new InputStreamReader(in));
+    }
+    
     public void close() {
         try{ fr.close(); } catch (Exception e) {}
         try{ br.close(); } catch (Exception e) {}
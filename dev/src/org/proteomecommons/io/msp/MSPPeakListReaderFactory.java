@@ -9,18 +9,23 @@
 
 package org.proteomecommons.io.msp;
 
+import java.io.InputStream;
 import org.proteomecommons.io.PeakListReader;
-import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 
 /**
  *
  * @author Jarret - jar@cs.washington.edu
  */
-public class MSPPeakListReaderFactory implements PeakListReaderFactory {
+public class MSPPeakListReaderFactory implements StreamPeakListReaderFactory {
     public PeakListReader newInstance(String filename) {
         return new MSPPeakListReader(filename);
     }
     
+    public PeakListReader newInstance(InputStream in, String name) {
+        return new MSPPeakListReader(in, name);
+    }
+    
     public String endings(){
         return ".*.msp";
     }
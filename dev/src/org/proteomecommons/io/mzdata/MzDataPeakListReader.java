@@ -15,7 +15,9 @@
  */
 package org.proteomecommons.io.mzdata;
 
+import java.io.InputStream;
 import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.LazyPeakListReader;
 import org.proteomecommons.io.PeakList;
 import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.UnknownFileFormatException;
@@ -24,7 +26,7 @@ import org.proteomecommons.io.UnknownFileFormatException;
  *A mock reader that will properly read all versions of mzXML. This way wrapper code doesn't have to know what version of mzXML is being produced.
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class MzDataPeakListReader extends GenericPeakListReader {
+public class MzDataPeakListReader extends GenericPeakListReader implements LazyPeakListReader {
     private PeakListReader embedded;
     
     public MzDataPeakListReader(String filename) {
@@ -37,6 +39,19 @@ public class MzDataPeakListReader extends GenericPeakListReader {
         }
     }
     
+    /**
+     * Reads from a stream instead of a file. The name must match a reader, e.g. "example.xml".
+     */
+    public MzDataPeakListReader(InputStream in, String name) {
+        super(name);
+        try {
+            // set the embedded reader
+            embedded = GenericPeakListReader.getPeakListReader(in, name);
+        } catch (UnknownFileFormatException ex) {
+            throw new RuntimeException("Can't find a reader for "+name, ex);
+        }
+    }
+    
     public void close() {
         getEmbedded().close();
     }
@@ -45,6 +60,30 @@ public class MzDataPeakListReader extends GenericPeakListReader {
         return getEmbedded().getPeakList();
     }
     
+    public void setLazy(boolean lazy) {
+        getLazy().setLazy(lazy);
+    }
+    
+    public boolean isLazy() {
+        return getLazy().isLazy();
+    }
+    
+    public void setMsLevels(int[] msLevels) {
+        getLazy().setMsLevels(msLevels);
+    }
+    
+    public int[] getMsLevels() {
+        return getLazy().getMsLevels();
+    }
+    
+    // helper to get the embedded reader as one that can skip work
+    private LazyPeakListReader getLazy() {
+        if (!(embedded instanceof LazyPeakListReader)) {
+            throw new RuntimeException("Can't read lazily with "+embedded.getClass().getName());
+        }
+        return (LazyPeakListReader)embedded;
+    }
+    
     public PeakListReader getEmbedded() {
         return embedded;
     }
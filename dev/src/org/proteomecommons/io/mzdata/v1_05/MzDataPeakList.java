@@ -4,7 +4,7 @@
  */
 package org.proteomecommons.io.mzdata.v1_05;
 
-import org.proteomecommons.io.GenericPeakList;
+import org.proteomecommons.io.ArrayPeakList;
 
 /**
  * In addition to peak values, an MzDataPeakList encapsulates the metadata 
@@ -13,7 +13,7 @@ import org.proteomecommons.io.GenericPeakList;
  *
  * @author Jarret Falkner - jar@cs.washington.edu
  */
-public class MzDataPeakList extends GenericPeakList {
+public class MzDataPeakList extends ArrayPeakList {
 	private MzDataPeakListSpectrumSettings spectrumSettings = null;
 	private MzDataPeakListPrecursorList precursorList = null;
 	/**
@@ -15,7 +15,10 @@
  */
 package org.proteomecommons.io.mzdata.v1_05;
 
+import java.io.CharArrayWriter;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -38,7 +41,7 @@ import org.proteomecommons.io.util.UnicodeReader;
  * @author Jarret Falkner - jar@cs.washington.edu
  * @version for mzData 1.05
  */
-public class MzDataPeakListReader extends GenericPeakListReader {
+public class MzDataPeakListReader extends GenericPeakListReader implements ReusablePeakListReader, LazyPeakListReader {
     //parsing sources
     private XMLStreamReader parser;
 //    private FileInputStream in;
@@ -83,10 +86,23 @@ public class MzDataPeakListReader extends GenericPeakListReader {
     
     // handle the peaks
     private GenericPeak parent = null;
-    ArrayList<Peak> peaks = new ArrayList();
+    private MutablePeakList target = null;
     
     private int tandemCount = PeakList.UNKNOWN_TANDEM_COUNT;
     
+    // the encoded peaks of the current spectrum
+    private CharArrayWriter mzText = new CharArrayWriter();
+    private CharArrayWriter intensityText = new CharArrayWriter();
+    private boolean mzByteOrderIsBig = false;
+    private boolean intensityByteOrderIsBig = false;
+    
+    // true if peaks are kept encoded until they're used
+    private boolean lazy = false;
+    
+    // the ms levels to read, null for all
+    private int[] msLevels = null;
+    private boolean skipSpectrum = false;
+    
     /**
      * Create a reader for mzdata files
      *
@@ -94,10 +110,20 @@ public class MzDataPeakListReader extends GenericPeakListReader {
      *            the input stream to read
      */
     public MzDataPeakListReader(String filename) {
-        super(filename);
+        this(openFile(filename), filename);
+    }
+    
+    /**
+     * Create a reader for mzData peak lists in a stream.
+     *
+     * @param stream The stream to read, closed when the reader is closed.
+     * @param name The name of the stream, usually the name of the file it came from.
+     */
+    public MzDataPeakListReader(InputStream stream, String name) {
+        super(name);
         try {
 //            in = new UnicodeInputStream(new FileInputStream(filename), null);
-            in = new UnicodeReader(new FileInputStream(filename), null);
+            in = new UnicodeReader(stream, null);
             XMLInputFactory factory = XMLInputFactory.newInstance();
 //            factory.setProperty("javax.xml.stream.isNamespaceAware", Boolean.FALSE);
 //            factory.setProperty("javax.xml.stream.isValidating", Boolean.FALSE);
@@ -112,6 +138,15 @@ public class MzDataPeakListReader extends GenericPeakListReader {
         }
     }
     
+    // helper to open a file for the file constructor
+    private static InputStream openFile(String filename) {
+        try {
+            return new FileInputStream(filename);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
     /**
      * Parses the xml to update both the next mz and next intensity values.
      *
@@ -136,6 +171,7 @@ public class MzDataPeakListReader extends GenericPeakListReader {
                     // specified it
                     parent = null;
                     tandemCount = PeakList.UNKNOWN_TANDEM_COUNT;
+                    skipSpectrum = false;
                     // acqInstrument in mzData version 1.04, spectrumInstrument in 1.05
                 }
                 // handle acquisition information
@@ -143,6 +179,8 @@ public class MzDataPeakListReader extends GenericPeakListReader {
                         parser.getLocalName().equals("spectrumInstrument")) {
                     String msLevel = parser.getAttributeValue(null, "msLevel");
                     if (msLevel != null) tandemCount = Integer.parseInt(msLevel);
+                    // skip the peaks of unwanted levels
+                    skipSpectrum = !isWanted(tandemCount);
                     // handle the data
                     if (tandemCount > 1) {
                         parent = new GenericPeak();
@@ -178,6 +216,15 @@ public class MzDataPeakListReader extends GenericPeakListReader {
                         
                         String nextByteOrderText = parser.getAttributeValue(null, "endian");
                         currentByteOrderIsBig = nextByteOrderText.equals("big");
+                        // the text is kept until the end of the element
+                        if (inMzData) {
+                            mzText.reset();
+                            mzByteOrderIsBig = currentByteOrderIsBig;
+                        }
+                        if (inIntensityData) {
+                            intensityText.reset();
+                            intensityByteOrderIsBig = currentByteOrderIsBig;
+                        }
                     }
                 }
                 // handle information about the processing method
@@ -188,18 +235,13 @@ public class MzDataPeakListReader extends GenericPeakListReader {
             
             //process text between tags
             if (event == XMLStreamConstants.CHARACTERS) {
-                if (readyToDecodePeakData) {
+                // the text may come in several pieces
+                if (readyToDecodePeakData && !skipSpectrum) {
                     if (inMzData) {
-                        nextMzUpdated = updateMz(parser.getText());
+                        mzText.write(parser.getTextCharacters(), parser.getTextStart(), parser.getTextLength());
                     }
                     if (inIntensityData) {
-                        nextIntensityUpdated = updateIntensity(parser.getText());
-                    }
-                    if (nextMzUpdated && nextIntensityUpdated) {
-                        //we're done. Reset state and return
-                        nextMzUpdated = false;
-                        nextIntensityUpdated = false;
-//                        return true;
+                        intensityText.write(parser.getTextCharacters(), parser.getTextStart(), parser.getTextLength());
                     }
                 }
             }
@@ -208,14 +250,33 @@ public class MzDataPeakListReader extends GenericPeakListReader {
             if (event == XMLStreamConstants.END_ELEMENT) {
                 if (parser.getLocalName().equals("spectrum")) {
                     inSpectrum = false;
+                    // go on to the next spectrum if this one is skipped
+                    if (skipSpectrum) {
+                        continue;
+                    }
                     // parse all of the peaks
-                    peaks.clear();
-                    try {
-                        while (currentMzBytes.hasRemaining()) {
-                            peaks.add(next());
+                    if (target == null) {
+                        target = new ArrayPeakList();
+                    }
+                    target.clear();
+                    // the flags are the same for every peak
+                    int centroidedFlag = centroided ? Peak.CENTROIDED : Peak.UNKNOWN_CENTROIDED;
+                    int monoisotopicFlag = centroided && deisotoped ? Peak.MONOISOTOPIC : Peak.UNKNOWN_MONOISOTOPIC;
+                    if (lazy && target instanceof ArrayPeakList) {
+                        // keep the peaks encoded until they're used
+                        ((ArrayPeakList)target).setLazyPeaks(new MzDataPeaks(mzText.toString(), currentMzPrecision, mzByteOrderIsBig, intensityText.toString(), currentIntensityPrecision, intensityByteOrderIsBig, centroidedFlag, monoisotopicFlag));
+                    } else {
+                        if (lazy) {
+                            currentByteOrderIsBig = mzByteOrderIsBig;
+                            updateMz(mzText.toString());
+                            currentByteOrderIsBig = intensityByteOrderIsBig;
+                            updateIntensity(intensityText.toString());
+                        }
+                        try {
+                            addPeaks(target, currentMzBytes, currentMzPrecision, currentIntensityBytes, currentIntensityPrecision, centroidedFlag, monoisotopicFlag);
+                        } catch (Exception e) {
+                            int stop = 2;
                         }
-                    } catch (Exception e) {
-                        int stop = 2;
                     }
                     // return true
 //                    if (parent != null) {
@@ -229,6 +290,15 @@ public class MzDataPeakListReader extends GenericPeakListReader {
                 } else if (parser.getLocalName().equals("data")) {
                     if (inMzData || inIntensityData) {
                         readyToDecodePeakData = false;
+                        // decode the peaks now unless they're kept encoded
+                        if (!lazy && !skipSpectrum) {
+                            if (inMzData) {
+                                updateMz(mzText.toString());
+                            }
+                            if (inIntensityData) {
+                                updateIntensity(intensityText.toString());
+                            }
+                        }
                     }
                 } else if (parser.getLocalName().equals("processingMethod")) {
                     inProcessingMethod = false;
@@ -241,6 +311,17 @@ public class MzDataPeakListReader extends GenericPeakListReader {
         return false;
     }
     
+    /**
+     * Adds the peaks in decoded m/z and intensity arrays to a peak list.
+     */
+    static void addPeaks(MutablePeakList target, ByteBuffer mzBytes, int mzPrecision, ByteBuffer intensityBytes, int intensityPrecision, int centroidedFlag, int monoisotopicFlag) {
+        while (mzBytes.hasRemaining()) {
+            double mz = mzPrecision == 32 ? (double) mzBytes.getFloat() : mzBytes.getDouble();
+            double inten = intensityPrecision == 32 ? (double) intensityBytes.getFloat() : intensityBytes.getDouble();
+            target.addPeak(mz, inten, Peak.UNKNOWN_CHARGE, centroidedFlag, Peak.UNKNOWN_AVERAGED, monoisotopicFlag, Peak.UNKNOWN_DEISOTOPED);
+        }
+    }
+    
     /**
      * Process encoded mz values
      *
@@ -405,41 +486,100 @@ public class MzDataPeakListReader extends GenericPeakListReader {
      * TODO: refactor this to completely replace the old memory-efficient code.
      */
     public PeakList getPeakList() {
+        // decode the peaks straight in to a peak list
+        MzDataPeakList peaklist = new MzDataPeakList();
+        if (!readInto(peaklist)) {
+            return null;
+        }
+        // free up any unused space, unless the peaks aren't decoded yet
+        if (!peaklist.hasLazyPeaks()) {
+            peaklist.trimToSize();
+        }
+        return peaklist;
+    }
+    
+    /**
+     * @see org.proteomecommons.io.ReusablePeakListReader#readInto(MutablePeakList)
+     */
+    public boolean readInto(MutablePeakList target) {
         try {
-            // if there are no more peak lists, skip
-//            if (!isStartOfPeakList()) {
-//                return null;
-//            }
-            
+            // decode the next spectrum's peaks in to the target
+            this.target = target;
             if (!findMorePeaks()) {
-                return null;
+                return false;
             }
             
-            // get the current parent peak
-            Peak currentParent = getParent();
-            
-//            // load the peaks in to memory
-//            LinkedList temp = new LinkedList();
-//            // load first/null check
-//            Peak p = next();
-//            if (p != null) {
-//                // add the first peak
-//                temp.add(p);
-//            }
-//            // read all the peaks up to the next peak list
-//            while (hasNext() && !isStartOfPeakList()) {
-//                temp.add(next());
-//            }
-            
-            // fall back on a peaklist
-            GenericPeakList peaklist = new GenericPeakList();
-            peaklist.setTandemCount(tandemCount);
-            peaklist.setParentPeak(currentParent);
-            // convert to an array of peaks
-            peaklist.setPeaks(peaks.toArray(new Peak[0]));
-            return peaklist;
+            target.setTandemCount(tandemCount);
+            target.setParentPeak(getParent());
+            return true;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * @see org.proteomecommons.io.LazyPeakListReader#setLazy(boolean)
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    public boolean isLazy() {
+        return lazy;
+    }
+    
+    /**
+     * @see org.proteomecommons.io.LazyPeakListReader#setMsLevels(int[])
+     */
+    public void setMsLevels(int[] msLevels) {
+        this.msLevels = msLevels;
+    }
+    
+    public int[] getMsLevels() {
+        return msLevels;
+    }
+    
+    // helper to check if a spectrum's level should be read
+    private boolean isWanted(int msLevel) {
+        if (msLevels == null || msLevel == PeakList.UNKNOWN_TANDEM_COUNT) {
+            return true;
+        }
+        for (int i=0;i<msLevels.length;i++) {
+            if (msLevels[i] == msLevel) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+// the encoded peaks of a spectrum, decoded when they're used
+class MzDataPeaks implements LazyPeaks {
+    private String mzText;
+    private int mzPrecision;
+    private boolean mzByteOrderIsBig;
+    private String intensityText;
+    private int intensityPrecision;
+    private boolean intensityByteOrderIsBig;
+    private int centroidedFlag;
+    private int monoisotopicFlag;
+    
+    MzDataPeaks(String mzText, int mzPrecision, boolean mzByteOrderIsBig, String intensityText, int intensityPrecision, boolean intensityByteOrderIsBig, int centroidedFlag, int monoisotopicFlag) {
+        this.mzText = mzText;
+        this.mzPrecision = mzPrecision;
+        this.mzByteOrderIsBig = mzByteOrderIsBig;
+        this.intensityText = intensityText;
+        this.intensityPrecision = intensityPrecision;
+        this.intensityByteOrderIsBig = intensityByteOrderIsBig;
+        this.centroidedFlag = centroidedFlag;
+        this.monoisotopicFlag = monoisotopicFlag;
+    }
+    
+    public void addPeaksTo(MutablePeakList target) {
+        ByteBuffer mzBytes = ByteBuffer.wrap(Base64.decode(mzText));
+        mzBytes.order(mzByteOrderIsBig ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer intensityBytes = ByteBuffer.wrap(Base64.decode(intensityText));
+        intensityBytes.order(intensityByteOrderIsBig ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        MzDataPeakListReader.addPeaks(target, mzBytes, mzPrecision, intensityBytes, intensityPrecision, centroidedFlag, monoisotopicFlag);
+    }
+}
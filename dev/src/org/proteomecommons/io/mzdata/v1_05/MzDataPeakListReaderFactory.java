@@ -15,8 +15,10 @@
  */
 package org.proteomecommons.io.mzdata.v1_05;
 
+import java.io.InputStream;
 
 import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 import org.proteomecommons.io.xml.XMLPeakListReaderFactory;
 
 /**
@@ -25,7 +27,7 @@ import org.proteomecommons.io.xml.XMLPeakListReaderFactory;
  * @author Jayson Falkner - jfalkner@umich.edu
  * @author Jarret Falkner - jar@cs.washington.edu
  */
-public class MzDataPeakListReaderFactory implements XMLPeakListReaderFactory {
+public class MzDataPeakListReaderFactory implements XMLPeakListReaderFactory, StreamPeakListReaderFactory {
     
     /**
      * @see org.proteomecommons.io.PeakListReaderFactory#newInstance(java.io.InputStream)
@@ -34,6 +36,13 @@ public class MzDataPeakListReaderFactory implements XMLPeakListReaderFactory {
         return new MzDataPeakListReader(filename);
     }
     
+    /**
+     * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+     */
+    public PeakListReader newInstance(InputStream in, String name) {
+        return new MzDataPeakListReader(in, name);
+    }
+    
     public String getSchemaURIRegex() {
         return ".*http://psidev\\.sourceforge\\.net/ms/xml/mzdata/mzdata.xsd.*version=\"1\\.05\".*|.*mzData.*version=.1.05.*";
     }
@@ -4,9 +4,14 @@
  */
 package org.proteomecommons.io.mzdata.v1_05;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.*;
@@ -21,6 +26,8 @@ import org.proteomecommons.io.mzxml.Base64;
 /**
  * Writes PeakLists out to the specified output by following the mzData convention.
  *
+ * Each spectrum is written as soon as it is given to write(), so memory use doesn't grow with the number of spectra. The spectra go to a temporary file next to the output because the description and the spectrumList count, which come first in the file, aren't known until close(). close() writes the description and then copies the spectra after it.
+ *
  * @author Jarret Falkner - jar@cs.washington.edu
  * @author Jayson Falkner - jfalkner@umich.edu
  */
@@ -28,15 +35,19 @@ public class MzDataPeakListWriter extends GenericPeakListWriter {
     //a temporary list for usage of startPeakList and write(Peak)
     private ArrayList building = null;
     
-    //all of the lists that will end up in the xml
-    private ArrayList peaklists = new ArrayList();
-    
+    // the writer that the helper methods use
     private XMLStreamWriter xmlw;
     
     // make the writers
-    FileWriter fw;
+    OutputStreamWriter fw;
     BufferedWriter bw;
     
+    // the spectra, which are written before the description is known
+    private File spectraFile;
+    private BufferedWriter spectraWriter;
+    private XMLStreamWriter spectraXmlw;
+    private int spectrumCount = 0;
+    
     /**
      * Make an MzDataPeakListWriter that defaults to using Unnamed or Unspecified for all of the variable metadata in the document.
      * @param out the stream to write to
@@ -102,8 +113,14 @@ public class MzDataPeakListWriter extends GenericPeakListWriter {
             if (file.getParentFile() != null) {
                 file.getParentFile().mkdirs();
             }
-            fw = new FileWriter(file);
+            fw = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
             bw = new BufferedWriter(fw);
+            
+            // the spectra wait in a file in the same directory
+            spectraFile = File.createTempFile(file.getName(), ".spectra", file.getAbsoluteFile().getParentFile());
+            spectraFile.deleteOnExit();
+            spectraWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spectraFile), "UTF-8"));
+            spectraXmlw = XMLOutputFactory.newInstance().createXMLStreamWriter(spectraWriter);
         } catch (Exception e){
             throw new RuntimeException("Can't create file "+filename, e);
         }
@@ -409,7 +426,14 @@ public class MzDataPeakListWriter extends GenericPeakListWriter {
         for (int i=0;i<peaks.length;i++){
             checkProcessingParams(peaks[i]);
         }
-        peaklists.add(peaklist);
+        // write the spectrum now
+        try {
+            xmlw = spectraXmlw;
+            spectrumCount++;
+            encodeAPeakList(peaklist, spectrumCount);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Can't write peak list!", e);
+        }
     }
     
         /* (non-Javadoc)
@@ -455,6 +479,15 @@ public class MzDataPeakListWriter extends GenericPeakListWriter {
      * Finish writing the xml.
      */
     public void close() {
+        // finish the spectra
+        try {
+            spectraXmlw.flush();
+            spectraXmlw.close();
+            spectraWriter.close();
+        } catch (Exception e) {
+            throw new RuntimeException("Can't write the spectra.", e);
+        }
+        
         // first write out the meta-info
         try {
             writeMetaInfo();
@@ -468,12 +501,19 @@ public class MzDataPeakListWriter extends GenericPeakListWriter {
             xmlw.writeCharacters("\n\t");
             xmlw.writeStartElement("spectrumList");
             
-            xmlw.writeAttribute("count", new Integer(peaklists.size()).toString());
+            xmlw.writeAttribute("count", new Integer(spectrumCount).toString());
             
-            //Write each peak list
-            for(int spectrumId = 1; spectrumId <= peaklists.size(); spectrumId++){
-                if (peaklists.get(spectrumId -1) != null)
-                    encodeAPeakList((PeakList)peaklists.get(spectrumId -1), spectrumId);
+            // end the start tag, then copy in the spectra
+            xmlw.writeCharacters("");
+            xmlw.flush();
+            BufferedReader spectra = new BufferedReader(new InputStreamReader(new FileInputStream(spectraFile), "UTF-8"));
+            try {
+                char[] buf = new char[8192];
+                for (int read = spectra.read(buf); read != -1; read = spectra.read(buf)) {
+                    bw.write(buf, 0, read);
+                }
+            } finally {
+                spectra.close();
             }
             
             xmlw.writeCharacters("\n\t");
@@ -484,8 +524,13 @@ public class MzDataPeakListWriter extends GenericPeakListWriter {
             xmlw.writeEndDocument();
             // Close the writer to flush the output
             xmlw.close();
+            bw.close();
         } catch (XMLStreamException xse){
             throw new RuntimeException("Could not close the xml document", xse);
+        } catch (IOException e){
+            throw new RuntimeException("Could not close the xml document", e);
+        } finally {
+            spectraFile.delete();
         }
         
         // let the superclass close now
@@ -0,0 +1,181 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mzxml;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.proteomecommons.io.MutablePeakList;
+import org.proteomecommons.io.Peak;
+
+/**
+ * Decodes Base64 encoded peaks a piece at a time, as the XML parser hands out the text. The decoded bytes go in to a ByteBuffer that is kept between scans, and the peaks are read out of it in bulk as floats or doubles in either byte order. One decoder is shared by the readers of every mzXML version.
+ *
+ * A decoder isn't thread-safe. Use one per reader.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class Base64PeakDecoder {
+    // the 6-bit value of each character, -1 for white space and -2 for anything that isn't Base64
+    private static final byte[] DECODABET = new byte[128];
+    static {
+        for (int i = 0; i < DECODABET.length; i++) {
+            DECODABET[i] = -2;
+        }
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODABET[alphabet.charAt(i)] = (byte) i;
+        }
+        DECODABET[' '] = -1;
+        DECODABET['\t'] = -1;
+        DECODABET['\n'] = -1;
+        DECODABET['\r'] = -1;
+    }
+
+    // the decoded bytes
+    private ByteBuffer bytes = ByteBuffer.allocate(16 * 1024);
+
+    // bits of a partly decoded group of four characters
+    private int bits = 0;
+    private int bitCount = 0;
+    // true once padding is found
+    private boolean done = false;
+
+    // buffers for bulk reads, reused between scans
+    private float[] floats = new float[0];
+    private double[] doubles = new double[0];
+
+    /**
+     * Clears the decoded bytes so that the next scan can be decoded. Allocated space is kept.
+     */
+    public void reset() {
+        bytes.clear();
+        bits = 0;
+        bitCount = 0;
+        done = false;
+    }
+
+    /**
+     * Decodes part of the encoded text. White space is skipped and everything after padding is ignored.
+     * @param text The characters, e.g. from XMLStreamReader.getTextCharacters().
+     * @param start The first character to decode.
+     * @param length The number of characters to decode.
+     */
+    public void decode(char[] text, int start, int length) {
+        // every four characters are at most three bytes
+        ensureRemaining((length / 4 + 1) * 3);
+        int end = start + length;
+        for (int i = start; i < end && !done; i++) {
+            char c = text[i];
+            if (c == '=') {
+                done = true;
+                break;
+            }
+            int value = c < 128 ? DECODABET[c] : -2;
+            if (value == -1) {
+                continue;
+            }
+            if (value == -2) {
+                throw new RuntimeException("Invalid Base64 character '" + c + "'.");
+            }
+            // only the last 12 bits are ever needed
+            bits = ((bits << 6) | value) & 0xfff;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                bytes.put((byte) (bits >> bitCount));
+            }
+        }
+    }
+
+    /**
+     * Decodes part of the encoded text.
+     */
+    public void decode(String text) {
+        decode(text.toCharArray(), 0, text.length());
+    }
+
+    /**
+     * Returns the number of bytes decoded since the last reset.
+     */
+    public int size() {
+        return bytes.position();
+    }
+
+    /**
+     * Returns the bytes decoded since the last reset. The buffer is a read-only view that is only good until the next call to reset() or decode().
+     */
+    public ByteBuffer getBytes() {
+        ByteBuffer data = bytes.asReadOnlyBuffer();
+        data.flip();
+        return data;
+    }
+
+    /**
+     * Reads the decoded bytes as m/z and intensity pairs and adds them to a peak list. A partial pair at the end is ignored.
+     * @param precision "32" for floats or "64" for doubles, null means 32.
+     * @param byteOrder The byteOrder attribute, "little" for little endian and anything else, e.g. "network", for big endian.
+     */
+    public void addPeaks(MutablePeakList target, String precision, String byteOrder, int centroided, int monoisotopic, int deisotoped) {
+        ByteBuffer data = bytes.duplicate();
+        data.flip();
+        data.order(getByteOrder(byteOrder));
+        // each pair is either two 32-bit floats or two 64-bit doubles
+        boolean is32Bit = precision == null || precision.trim().equals("32");
+        if (is32Bit) {
+            int count = data.remaining() / 8 * 2;
+            if (floats.length < count) {
+                floats = new float[count];
+            }
+            data.asFloatBuffer().get(floats, 0, count);
+            target.ensureCapacity(count / 2);
+            for (int i = 0; i < count; i += 2) {
+                target.addPeak(floats[i], floats[i + 1], Peak.UNKNOWN_CHARGE, centroided, Peak.UNKNOWN_AVERAGED, monoisotopic, deisotoped);
+            }
+        } else {
+            int count = data.remaining() / 16 * 2;
+            if (doubles.length < count) {
+                doubles = new double[count];
+            }
+            data.asDoubleBuffer().get(doubles, 0, count);
+            target.ensureCapacity(count / 2);
+            for (int i = 0; i < count; i += 2) {
+                target.addPeak(doubles[i], doubles[i + 1], Peak.UNKNOWN_CHARGE, centroided, Peak.UNKNOWN_AVERAGED, monoisotopic, deisotoped);
+            }
+        }
+    }
+
+    /**
+     * Converts a byteOrder attribute to a ByteOrder. mzXML uses "network", which is big endian.
+     */
+    public static ByteOrder getByteOrder(String byteOrder) {
+        if (byteOrder != null && byteOrder.trim().toLowerCase().startsWith("little")) {
+            return ByteOrder.LITTLE_ENDIAN;
+        }
+        return ByteOrder.BIG_ENDIAN;
+    }
+
+    // helper to grow the byte buffer
+    private void ensureRemaining(int remaining) {
+        if (bytes.remaining() >= remaining) {
+            return;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + remaining));
+        bytes.flip();
+        bigger.put(bytes);
+        bytes = bigger;
+    }
+}
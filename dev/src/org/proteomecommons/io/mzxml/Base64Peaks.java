@@ -0,0 +1,54 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mzxml;
+
+import org.proteomecommons.io.LazyPeaks;
+import org.proteomecommons.io.MutablePeakList;
+
+/**
+ * The Base64 text of a scan's peaks, kept so that the peaks are decoded only when they're used.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class Base64Peaks implements LazyPeaks {
+    private char[] text;
+    private String precision;
+    private String byteOrder;
+    // the flags are the same for every peak
+    private int centroided;
+    private int monoisotopic;
+    private int deisotoped;
+    
+    /**
+     * @param text The encoded peaks.
+     * @param precision The precision attribute of the peaks element.
+     * @param byteOrder The byteOrder attribute of the peaks element.
+     */
+    public Base64Peaks(char[] text, String precision, String byteOrder, int centroided, int monoisotopic, int deisotoped) {
+        this.text = text;
+        this.precision = precision;
+        this.byteOrder = byteOrder;
+        this.centroided = centroided;
+        this.monoisotopic = monoisotopic;
+        this.deisotoped = deisotoped;
+    }
+    
+    public void addPeaksTo(MutablePeakList target) {
+        Base64PeakDecoder decoder = new Base64PeakDecoder();
+        decoder.decode(text, 0, text.length);
+        decoder.addPeaks(target, precision, byteOrder, centroided, monoisotopic, deisotoped);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mzxml;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * The stream that mzXML writers write through so that an indexed mzXML file can be made in one pass. Bytes are counted to know the offset of each scan element and the SHA-1 of the file is updated as bytes are written. finish() writes the scan index, the indexOffset and the sha1 elements that end the file.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class IndexingOutputStream extends FilterOutputStream {
+    // the number of bytes written
+    private long count = 0;
+    
+    // the SHA-1 of the bytes written
+    private MessageDigest sha1;
+    
+    // scan num to offset, in file order
+    private LinkedHashMap<String, Long> offsets = new LinkedHashMap();
+    
+    /**
+     * @param out The stream to write to, which should be buffered.
+     */
+    public IndexingOutputStream(OutputStream out) {
+        super(out);
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Can't make a SHA-1 digest!", e);
+        }
+    }
+    
+    public void write(int b) throws IOException {
+        out.write(b);
+        sha1.update((byte) b);
+        count++;
+    }
+    
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        sha1.update(b, off, len);
+        count += len;
+    }
+    
+    /**
+     * Does nothing. The XML writer is flushed before each scan to learn the scan's offset, and passing that on would write the underlying buffer for every scan. Everything is written by close().
+     */
+    public void flush() {
+        // noop
+    }
+    
+    /**
+     * Returns the number of bytes written so far.
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Notes that a scan element starts at the current offset. Flush the XML writer before calling this, and after anything that leaves a start tag open.
+     * @param num The num attribute of the scan.
+     */
+    public void addScan(String num) {
+        offsets.put(num, Long.valueOf(count));
+    }
+    
+    /**
+     * Writes the scan index, indexOffset and sha1 elements and the end of the mzXML element, then closes the stream. The msRun element must already be ended.
+     * @param xmlw The XML writer that has been writing to this stream.
+     */
+    public void finish(XMLStreamWriter xmlw) throws XMLStreamException, IOException {
+        xmlw.writeCharacters("\n");
+        xmlw.flush();
+        long indexOffset = count;
+        
+        // the scan index
+        xmlw.writeStartElement("index");
+        xmlw.writeAttribute("name", "scan");
+        for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+            xmlw.writeCharacters("\n");
+            xmlw.writeStartElement("offset");
+            xmlw.writeAttribute("id", entry.getKey());
+            xmlw.writeCharacters(entry.getValue().toString());
+            xmlw.writeEndElement();
+        }
+        xmlw.writeCharacters("\n");
+        xmlw.writeEndElement();
+        xmlw.writeCharacters("\n");
+        xmlw.writeStartElement("indexOffset");
+        xmlw.writeCharacters(Long.toString(indexOffset));
+        xmlw.writeEndElement();
+        xmlw.writeCharacters("\n");
+        xmlw.flush();
+        
+        // the SHA-1 is of everything up to and including the sha1 start tag
+        write("<sha1>".getBytes("UTF-8"));
+        write((toHex(sha1.digest()) + "</sha1>\n</mzXML>\n").getBytes("UTF-8"));
+        xmlw.close();
+        close();
+    }
+    
+    // helper to format the digest
+    private static String toHex(byte[] bytes) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < bytes.length; i++) {
+            String hex = Integer.toHexString(bytes[i] & 0xff);
+            if (hex.length() == 1) {
+                sb.append('0');
+            }
+            sb.append(hex);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mzxml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The scan index of a mzXML file, which maps scan numbers to the byte offset of their scan element. The index is read from the &lt;index name="scan"&gt; element that &lt;indexOffset&gt; points to at the end of the file. If the file has no index, or the index doesn't point at scan elements, the index is made by scanning the file once.
+ *
+ * The same index works for all versions of mzXML.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class MzXMLIndex {
+    // how much of the end of the file is searched for indexOffset
+    private static final int TAIL_SIZE = 4096;
+    // the biggest index that is read, bigger ones are made by scanning the file instead
+    private static final int MAX_INDEX_SIZE = 64 * 1024 * 1024;
+
+    private static final Pattern INDEX_OFFSET = Pattern.compile("<indexOffset>\\s*(\\d+)\\s*</indexOffset>");
+    private static final Pattern SCAN_INDEX = Pattern.compile("<index\\s+name\\s*=\\s*\"scan\"\\s*>(.*?)</index>", Pattern.DOTALL);
+    private static final Pattern OFFSET = Pattern.compile("<offset\\s+id\\s*=\\s*\"(\\d+)\"\\s*>\\s*(\\d+)\\s*</offset>");
+    private static final Pattern NUM = Pattern.compile("\\snum\\s*=\\s*\"(\\d+)\"");
+
+    // scan num to offset, in file order
+    private LinkedHashMap<String, Long> offsets = new LinkedHashMap();
+
+    // true if the index was made by scanning the file
+    private boolean built = false;
+
+    // use the static methods
+    private MzXMLIndex() {
+    }
+
+    /**
+     * Gets the index of a mzXML file, reading the file's own index if it has a valid one and otherwise making one.
+     */
+    public static MzXMLIndex getIndex(File file) throws IOException {
+        MzXMLIndex index = null;
+        try {
+            index = read(file);
+        } catch (Exception e) {
+            // noop, e.g. a corrupt index, make the index instead
+        }
+        if (index == null || !index.isValid(file)) {
+            index = build(file);
+        }
+        return index;
+    }
+
+    /**
+     * Reads the index that is written in a mzXML file.
+     * @return The index, or null if the file has no index or the index can't be used, e.g. indexOffset points outside of the file or at an index that is too big to read.
+     */
+    public static MzXMLIndex read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // find the indexOffset at the end of the file
+            long length = raf.length();
+            int tailSize = (int) Math.min(TAIL_SIZE, length);
+            String tail = readString(raf, length - tailSize, tailSize);
+            Matcher m = INDEX_OFFSET.matcher(tail);
+            if (!m.find()) {
+                return null;
+            }
+            long indexOffset = -1;
+            try {
+                indexOffset = Long.parseLong(m.group(1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (indexOffset <= 0 || indexOffset >= length || length - indexOffset > MAX_INDEX_SIZE) {
+                return null;
+            }
+
+            // the index runs from the offset to the tail
+            String indexText = readString(raf, indexOffset, (int) (length - indexOffset));
+            Matcher scanIndex = SCAN_INDEX.matcher(indexText);
+            if (!scanIndex.find()) {
+                return null;
+            }
+            MzXMLIndex index = new MzXMLIndex();
+            Matcher offset = OFFSET.matcher(scanIndex.group(1));
+            try {
+                while (offset.find()) {
+                    index.offsets.put(offset.group(1), Long.parseLong(offset.group(2)));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return index;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Makes an index by scanning the whole file for scan elements.
+     */
+    public static MzXMLIndex build(File file) throws IOException {
+        MzXMLIndex index = new MzXMLIndex();
+        index.built = true;
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            // the bytes of the tag being matched, e.g. "<scan num=..."
+            StringBuffer tag = null;
+            long tagOffset = 0;
+            // how much of "<scan" has been matched
+            int matched = 0;
+            long offset = 0;
+            for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                for (int i = 0; i < read; i++, offset++) {
+                    char c = (char) (buf[i] & 0xff);
+                    // buffer the rest of a scan tag
+                    if (tag != null) {
+                        tag.append(c);
+                        if (c == '>') {
+                            Matcher m = NUM.matcher(tag);
+                            if (m.find()) {
+                                index.offsets.put(m.group(1), tagOffset);
+                            }
+                            tag = null;
+                        }
+                        continue;
+                    }
+                    // match "<scan" followed by white space
+                    if (matched == 5) {
+                        matched = 0;
+                        if (Character.isWhitespace(c)) {
+                            tag = new StringBuffer(" ");
+                            tagOffset = offset - 5;
+                            continue;
+                        }
+                    }
+                    if (c == "<scan".charAt(matched)) {
+                        matched++;
+                    } else {
+                        matched = c == '<' ? 1 : 0;
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the byte offset of a scan element, or -1 if the scan isn't in the index.
+     */
+    public long getOffset(String scanNum) {
+        Long offset = offsets.get(scanNum);
+        if (offset == null) {
+            return -1;
+        }
+        return offset.longValue();
+    }
+
+    /**
+     * Opens a file at the start of a scan element.
+     * @return A stream positioned at the scan, or null if the scan isn't in the index or the offset doesn't point at a scan element.
+     */
+    public InputStream openScan(File file, String scanNum) throws IOException {
+        long offset = getOffset(scanNum);
+        if (offset == -1) {
+            return null;
+        }
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            fis.getChannel().position(offset);
+            // check the offset before handing out the stream
+            byte[] start = new byte[6];
+            int read = 0;
+            while (read < start.length) {
+                int r = fis.read(start, read, start.length - read);
+                if (r == -1) {
+                    break;
+                }
+                read += r;
+            }
+            String s = new String(start, 0, read, "ISO-8859-1");
+            if (read < start.length || !s.startsWith("<scan") || !Character.isWhitespace(s.charAt(5))) {
+                fis.close();
+                return null;
+            }
+            fis.getChannel().position(offset);
+            return new BufferedInputStream(fis);
+        } catch (IOException e) {
+            fis.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of scans in the index.
+     */
+    public int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Returns the scan numbers in file order.
+     */
+    public Iterator<String> getScanNums() {
+        return offsets.keySet().iterator();
+    }
+
+    /**
+     * Returns true if the index was made by scanning the file rather than read from it.
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Checks that the first and last offsets point at scan elements.
+     */
+    public boolean isValid(File file) throws IOException {
+        if (offsets.size() == 0) {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long first = -1;
+            long last = -1;
+            for (Long offset : offsets.values()) {
+                if (first == -1) {
+                    first = offset.longValue();
+                }
+                last = offset.longValue();
+            }
+            return isScan(raf, first) && isScan(raf, last);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns true if the given offset of a file is the start of a scan element.
+     */
+    public static boolean isScan(RandomAccessFile raf, long offset) throws IOException {
+        if (offset < 0 || offset + 6 > raf.length()) {
+            return false;
+        }
+        String s = readString(raf, offset, 6);
+        return s.startsWith("<scan") && Character.isWhitespace(s.charAt(5));
+    }
+
+    // helper to read part of a file as ISO-8859-1, which keeps byte offsets and character offsets the same
+    private static String readString(RandomAccessFile raf, long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        raf.seek(offset);
+        raf.readFully(bytes);
+        return new String(bytes, "ISO-8859-1");
+    }
+}
@@ -1,8 +1,9 @@
 package org.proteomecommons.io.mzxml;
 
 
+import java.io.OutputStream;
 import org.proteomecommons.io.PeakListWriter;
-import org.proteomecommons.io.PeakListWriterFactory;
+import org.proteomecommons.io.StreamPeakListWriterFactory;
 import org.proteomecommons.io.mzxml.v2_1.MzXMLPeakListWriter;
 
 /**
@@ -10,7 +11,7 @@ import org.proteomecommons.io.mzxml.v2_1.MzXMLPeakListWriter;
  * @author Jayson Falkner - jfalkner@umich.edu
  *
  */
-public class MzXMLPeakListWriterFactory implements PeakListWriterFactory {
+public class MzXMLPeakListWriterFactory implements StreamPeakListWriterFactory {
     
     public PeakListWriter newInstance(String filename) {
         // default to the MZXML 2.1 writer
@@ -19,6 +20,11 @@ public class MzXMLPeakListWriterFactory implements PeakListWriterFactory {
         return writer;
     }
     
+    public PeakListWriter newInstance(OutputStream out, String name) {
+        // default to the MZXML 2.1 writer
+        return new MzXMLPeakListWriter(out, name);
+    }
+    
     public String getFileExtension() {
         return ".mzxml.xml";
     }
@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mzxml;
+
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+
+/**
+ * A mzXML reader that can jump straight to a scan using the file's scan index.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public interface ScanIndexedPeakListReader extends PeakListReader {
+    /**
+     * Returns the scan index of the file, reading or making it if needed.
+     */
+    public MzXMLIndex getIndex();
+    
+    /**
+     * Reads the scan with the given number without reading the scans before it. Sequential reading with getPeakList() isn't affected.
+     * @return The scan or null if the file has no such scan.
+     */
+    public PeakList getPeakList(String scanNum);
+}
@@ -23,7 +23,10 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import org.proteomecommons.io.mzxml.Base64;
+import org.proteomecommons.io.mzxml.Base64PeakDecoder;
+import org.proteomecommons.io.mzxml.Base64Peaks;
+import org.proteomecommons.io.mzxml.MzXMLIndex;
+import org.proteomecommons.io.mzxml.ScanIndexedPeakListReader;
 import org.proteomecommons.io.xml.GenericXMLPeakListReaderFactory;
 
 /**
@@ -33,10 +36,10 @@ import org.proteomecommons.io.xml.GenericXMLPeakListReaderFactory;
  * @author Jarret Falkner - jar@cs.washington.edu
  *
  */
-public class MzXMLPeakListReader extends GenericPeakListReader {
+public class MzXMLPeakListReader extends GenericPeakListReader implements ReusablePeakListReader, ScanIndexedPeakListReader, LazyPeakListReader {
     //parsing sources
     private XMLStreamReader parser;
-    private FileInputStream fis;
+    private InputStream fis;
     
     // make a new msRun element
     private MsRun msRun = new MsRun();
@@ -44,8 +47,28 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
     // handle the events
     private int event = XMLStreamConstants.START_DOCUMENT;
     
-    // the list of parent scans
-    private LinkedList<MzXMLPeakList> stack = new LinkedList();
+    // the nums of the parent scans
+    private LinkedList<String> stack = new LinkedList();
+    
+    // the encoding of the file, used to parse scans read by number
+    private String encoding = null;
+    
+    // the scan index, made when first needed
+    private MzXMLIndex index = null;
+    
+    // the run info for scans read by number
+    private MsRun indexMsRun = null;
+    
+    // decodes the peaks, reused for every scan
+    private Base64PeakDecoder decoder = new Base64PeakDecoder();
+    
+    // true if peaks are kept encoded until they're used
+    private boolean lazy = false;
+    // the encoded peaks of the current scan, used when lazy
+    private CharArrayWriter encoded = new CharArrayWriter();
+    
+    // the ms levels to read, null for all
+    private int[] msLevels = null;
     
     /**
      * Create an reader for peak lists in mzXML format. This reader uses the
@@ -59,14 +82,40 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
         
         // build the XML parser
         try {
-            fis = new FileInputStream(filename);
-            XMLInputFactory factory = XMLInputFactory.newInstance();
-            parser = factory.createXMLStreamReader(fis);
+            openParser(new FileInputStream(filename));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Create a reader for peak lists in mzXML format that reads from a stream. Scans can't be read by number from a stream.
+     *
+     * @param in The stream to read, closed when the reader is closed.
+     * @param name The name of the stream, usually the name of the file it came from.
+     */
+    public MzXMLPeakListReader(InputStream in, String name) {
+        super(name);
+        
+        // build the XML parser
+        try {
+            openParser(in);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
     
+    // helper to make the XML parser
+    private void openParser(InputStream in) throws XMLStreamException {
+        fis = in;
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        parser = factory.createXMLStreamReader(fis);
+        encoding = parser.getCharacterEncodingScheme();
+        if (encoding == null) {
+            encoding = parser.getEncoding();
+        }
+    }
+    
     /**
      * (non-Javadoc)
      *
@@ -78,11 +127,114 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
     }
     
     public PeakList getPeakList() {
+        // make the peak list
+        MzXMLPeakList peaklist = new MzXMLPeakList();
+        if (!readInto(peaklist)) {
+            return null;
+        }
+        // free up any unused space, unless the peaks aren't decoded yet
+        if (!peaklist.hasLazyPeaks()) {
+            peaklist.trimToSize();
+        }
+        return peaklist;
+    }
+    
+    /**
+     * @see org.proteomecommons.io.mzxml.ScanIndexedPeakListReader#getIndex()
+     */
+    public synchronized MzXMLIndex getIndex() {
+        if (index == null) {
+            try {
+                index = MzXMLIndex.getIndex(new File(getName()));
+            } catch (IOException e) {
+                throw new RuntimeException("Can't index "+getName(), e);
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * Reads a scan by seeking to its offset in the scan index. A precursor scan number that is only implied by nesting scans isn't known this way.
+     *
+     * @see org.proteomecommons.io.mzxml.ScanIndexedPeakListReader#getPeakList(String)
+     */
+    public synchronized PeakList getPeakList(String scanNum) {
+        File file = new File(getName());
+        InputStream in = null;
+        try {
+            in = getIndex().openScan(file, scanNum);
+            // if the file's index is wrong, make one
+            if (in == null && !index.isBuilt() && index.getOffset(scanNum) != -1) {
+                index = MzXMLIndex.build(file);
+                in = index.openScan(file, scanNum);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can't seek to scan "+scanNum, e);
+        }
+        if (in == null) {
+            return null;
+        }
+        
+        // get the run info from the start of the file
+        if (indexMsRun == null) {
+            MzXMLPeakListReader header = new MzXMLPeakListReader(getName());
+            try {
+                header.readInto(new ArrayPeakList());
+            } finally {
+                header.close();
+            }
+            indexMsRun = header.getMsRun();
+        }
+        
+        // parse just the scan, keeping the state of the sequential parse
+        XMLStreamReader mainParser = parser;
+        int mainEvent = event;
+        LinkedList<String> mainStack = stack;
+        MsRun mainMsRun = msRun;
+        int[] mainMsLevels = msLevels;
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            parser = encoding == null ? factory.createXMLStreamReader(in) : factory.createXMLStreamReader(in, encoding);
+            event = XMLStreamConstants.START_DOCUMENT;
+            stack = new LinkedList();
+            msRun = indexMsRun;
+            // the scan asked for is read no matter its level
+            msLevels = null;
+            MzXMLPeakList peaklist = new MzXMLPeakList();
+            if (!readInto(peaklist)) {
+                return null;
+            }
+            if (!peaklist.hasLazyPeaks()) {
+                peaklist.trimToSize();
+            }
+            return peaklist;
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Invalid XML!", e);
+        } finally {
+            try { parser.close(); } catch (Exception e){}
+            try { in.close(); } catch (Exception e){}
+            parser = mainParser;
+            event = mainEvent;
+            stack = mainStack;
+            msRun = mainMsRun;
+            msLevels = mainMsLevels;
+        }
+    }
+    
+    /**
+     * @see org.proteomecommons.io.ReusablePeakListReader#readInto(MutablePeakList)
+     */
+    public boolean readInto(MutablePeakList target) {
         // if we're at the end, return so
         if (event == XMLStreamConstants.END_DOCUMENT) {
-            return null;
+            return false;
         }
         try {
+            // reset the target
+            target.clear();
+            target.setParentPeak(null);
+            target.setTandemCount(PeakList.UNKNOWN_TANDEM_COUNT);
+            
             
             // set the parse flag to on
             boolean keepParsing = true;
@@ -92,6 +244,7 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
             boolean inPeak = false;
             boolean inPrecursorMz = false;
             boolean foundScan = false;
+            boolean skipScan = false;
             
             // make the start of the peak list
             MzXMLPeakList peaklist = null;
@@ -100,7 +253,6 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
             String precision = null;
             String byteOrder = null;
             String pairOrder = null;
-            String base64EncodedValues = "";
             
             // precursor info
             String precursorIntensity = null;
@@ -117,8 +269,12 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
                             inScan = true;
                             // foundScane signifies that some data was found, i.e. return a peak list
                             foundScan = true;
-                            // reset peak list
-                            peaklist = new MzXMLPeakList();
+                            // reset peak list, using the target if it can hold the scan info
+                            if (target instanceof MzXMLPeakList) {
+                                peaklist = (MzXMLPeakList)target;
+                            } else {
+                                peaklist = new MzXMLPeakList();
+                            }
                             peaklist.setMsRun(msRun);
                             // get the known attributes
                             peaklist.setNum(parser.getAttributeValue(null, "num"));
@@ -137,7 +293,7 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
                             // if it is null, try the stack
                             if (peaklist.getPrecursorScanNum() == null || peaklist.getPrecursorScanNum().trim().equals("")) {
                                 if (stack.size() >0) {
-                                    peaklist.setPrecursorScanNum(stack.getFirst().getNum());
+                                    peaklist.setPrecursorScanNum(stack.getFirst());
                                 }
                             }
                             // try to set tandem count to be the ms level
@@ -156,14 +312,18 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
                                 }
                             }
                             
+                            // skip the peaks of unwanted levels
+                            skipScan = !isWanted(peaklist.getMsLevel());
+                            
                             // push to the stack
-                            stack.addFirst(peaklist);
+                            stack.addFirst(peaklist.getNum());
                         }
                         // handle peak information
                         else if (parser.getLocalName().equals("peaks")) {
                             inPeak = true;
                             // reset old peak data
-                            base64EncodedValues = "";
+                            decoder.reset();
+                            encoded.reset();
                             //find precision
                             precision = parser.getAttributeValue(null, "precision");
                             byteOrder = parser.getAttributeValue(null, "byteOrder");
@@ -274,6 +434,14 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
                         // handle end of peaks elements
                         if (parser.getLocalName().equals("peaks")) {
                             inPeak = false;
+                            // go on to the next scan if this one is skipped
+                            if (skipScan) {
+                                skipScan = false;
+                                foundScan = false;
+                                precursorMz = null;
+                                precursorIntensity = null;
+                                break;
+                            }
                             keepParsing = false;
                             break;
                         }
@@ -287,7 +455,13 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
                     case XMLStreamConstants.CHARACTERS:
                         // if this is peak information, add it to the batch
                         if (inPeak) {
-                            base64EncodedValues += parser.getText().trim();
+                            if (skipScan) {
+                                // noop
+                            } else if (lazy) {
+                                encoded.write(parser.getTextCharacters(), parser.getTextStart(), parser.getTextLength());
+                            } else {
+                                decoder.decode(parser.getTextCharacters(), parser.getTextStart(), parser.getTextLength());
+                            }
                         }
                         // if this is the precursor m/z handle it
                         else if (inPrecursorMz) {
@@ -297,17 +471,11 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
                 }
             }
             
-            // if no data was found, return null
+            // if no data was found, return false
             if (!foundScan) {
-                return null;
+                return false;
             }
             
-            // buffer all the peaks
-            List<Peak> peaks = new ArrayList();
-            // parse all the peaks
-            byte[] peakBytes = Base64.decode(base64EncodedValues);
-            // make a data input steram
-            DataInputStream peakStream = new DataInputStream(new ByteArrayInputStream(peakBytes));
             // find if the data is centroided
             boolean isCentroided = false;
             boolean isChargeDeconvoluted = false;
@@ -327,40 +495,18 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
             if (peaklist.isChargeDeconvolution()){
                 isChargeDeconvoluted = true;
             }
-            try {
-                while (true) {
-                    double massOverChargeInDaltons;
-                    double intensity;
-                    if (precision == null || precision.equals("32")) {
-                        massOverChargeInDaltons = (double) peakStream.readFloat();
-                        intensity = (double) peakStream.readFloat();
-                    } else {
-                        massOverChargeInDaltons = peakStream.readDouble();
-                        intensity = peakStream.readDouble();
-                    }
-                    
-                    // make a peak
-                    GenericPeak gmp = new GenericPeak();
-                    gmp.setMassOverCharge(massOverChargeInDaltons);
-                    gmp.setIntensity(intensity);
-                    // check for centroided data
-                    if (isCentroided){
-                        gmp.setCentroided(Peak.CENTROIDED);
-                    }
-                    // check for deisotoped
-                    if (isDeisotoped){
-                        gmp.setDeisotoped(Peak.DEISOTOPED);
-                    }
-                    // check for centroided data
-                    if (isChargeDeconvoluted){
-                        gmp.setMonoisotopic(Peak.MONOISOTOPIC);
-                    }
-                    // add the peak
-                    peaks.add(gmp);
+            // the flags are the same for every peak
+            int centroided = isCentroided ? Peak.CENTROIDED : Peak.UNKNOWN_CENTROIDED;
+            int deisotoped = isDeisotoped ? Peak.DEISOTOPED : Peak.UNKNOWN_DEISOTOPED;
+            int monoisotopic = isChargeDeconvoluted ? Peak.MONOISOTOPIC : Peak.UNKNOWN_MONOISOTOPIC;
+            // add all the peaks, or keep them encoded until they're used
+            if (lazy && target instanceof ArrayPeakList) {
+                ((ArrayPeakList)target).setLazyPeaks(new Base64Peaks(encoded.toCharArray(), precision, byteOrder, centroided, monoisotopic, deisotoped));
+            } else {
+                if (lazy) {
+                    decoder.decode(encoded.toCharArray(), 0, encoded.size());
                 }
-            } catch (EOFException eof) {
-                // close the data stream
-                try { peakStream.close(); } catch (Exception e){}
+                decoder.addPeaks(target, precision, byteOrder, centroided, monoisotopic, deisotoped);
             }
             
             // optionally make a tandem peak list
@@ -379,17 +525,56 @@ public class MzXMLPeakListReader extends GenericPeakListReader {
                     // noop
                 }
                 // set the parent peak
-                peaklist.setParentPeak(gp);
+                target.setParentPeak(gp);
             }
             
-            // set the peaks
-            peaklist.setPeaks(peaks.toArray(new Peak[0]));
-            // return the peak list
-            return peaklist;
+            // copy the ms level if the scan info was kept separately
+            if (peaklist != target) {
+                target.setTandemCount(peaklist.getTandemCount());
+            }
+            return true;
         } catch (XMLStreamException ex) {
             throw new RuntimeException("Invalid XML!", ex);
-        } catch (IOException ex) {
-            throw new RuntimeException("Premature end of file! Aborting.", ex);
+        }
+    }
+    
+    /**
+     * @see org.proteomecommons.io.LazyPeakListReader#setLazy(boolean)
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    public boolean isLazy() {
+        return lazy;
+    }
+    
+    /**
+     * @see org.proteomecommons.io.LazyPeakListReader#setMsLevels(int[])
+     */
+    public void setMsLevels(int[] msLevels) {
+        this.msLevels = msLevels;
+    }
+    
+    public int[] getMsLevels() {
+        return msLevels;
+    }
+    
+    // helper to check if a scan's level should be read
+    private boolean isWanted(String msLevel) {
+        if (msLevels == null || msLevel == null) {
+            return true;
+        }
+        try {
+            int level = Integer.parseInt(msLevel.trim());
+            for (int i=0;i<msLevels.length;i++) {
+                if (msLevels[i] == level) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (NumberFormatException e) {
+            return true;
         }
     }
     
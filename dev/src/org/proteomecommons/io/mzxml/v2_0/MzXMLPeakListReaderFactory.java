@@ -15,8 +15,10 @@
  */
 package org.proteomecommons.io.mzxml.v2_0;
 
+import java.io.InputStream;
 
 import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 import org.proteomecommons.io.xml.XMLPeakListReaderFactory;
 
 /**
@@ -24,7 +26,7 @@ import org.proteomecommons.io.xml.XMLPeakListReaderFactory;
  *
  * @author Jarret Falkner  - jar@cs.washington.edu
  */
-public class MzXMLPeakListReaderFactory implements XMLPeakListReaderFactory {
+public class MzXMLPeakListReaderFactory implements XMLPeakListReaderFactory, StreamPeakListReaderFactory {
     
     /**
      *
@@ -34,6 +36,13 @@ public class MzXMLPeakListReaderFactory implements XMLPeakListReaderFactory {
         return new MzXMLPeakListReader(filename);
     }
     
+    /**
+     * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+     */
+    public PeakListReader newInstance(InputStream in, String name) {
+        return new MzXMLPeakListReader(in, name);
+    }
+    
     /**
      * Returns the schema that identifies MZXML 2.0: "http://sashimi.sourceforge.net/schema_revision/mzXML_2.0"
      */
@@ -4,9 +4,11 @@
  */
 package org.proteomecommons.io.mzxml.v2_0;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -18,6 +20,7 @@ import org.proteomecommons.io.GenericPeakListWriter;
 import org.proteomecommons.io.Peak;
 import org.proteomecommons.io.PeakList;
 import org.proteomecommons.io.mzxml.Base64;
+import org.proteomecommons.io.mzxml.IndexingOutputStream;
 /**
  *<p>An implementation of a PeakListWriter class that saves data in the MZXML 2.0 schema format.</p>
  * @author Jayson Falkner - jfalkner@umich.edu
@@ -38,30 +41,32 @@ public class MzXMLPeakListWriter extends GenericPeakListWriter {
     
     private boolean use32BitPrecision = true;
     
-    // keep track of the writers
-    FileWriter fw;
-    BufferedWriter bw;
+    // keep track of the output, which counts bytes for the scan index
+    IndexingOutputStream out;
     
     public MzXMLPeakListWriter(String filename){
-        super(filename);
+        this(openFile(filename), filename);
+    }
+    
+    /**
+     * Make a writer that writes to a stream. The scan offsets are counted from the start of the stream.
+     * @param stream The stream to write to, closed when the writer is closed.
+     * @param name The name of the data.
+     */
+    public MzXMLPeakListWriter(OutputStream stream, String name){
+        super(name);
         
         // Create an output factory
         XMLOutputFactory xmlof = XMLOutputFactory.newInstance();
         
         // Create an XML stream writer
         try {
-            // make the file
-            File file = new File(filename);
-            if (file.getParentFile() != null) {
-                file.getParentFile().mkdirs();
-            }
-            fw = new FileWriter(file);
-            bw = new BufferedWriter(fw);
+            out = new IndexingOutputStream(new BufferedOutputStream(stream));
             
-            // make the XML writer using the BufferedWriter
-            xmlw = xmlof.createXMLStreamWriter(bw);
+            // make the XML writer, the encoding is set so that offsets are known
+            xmlw = xmlof.createXMLStreamWriter(out, "UTF-8");
             
-            xmlw.writeStartDocument();
+            xmlw.writeStartDocument("UTF-8", "1.0");
             
             //root element and required schema attributes
             xmlw.writeStartElement("mzXML");
@@ -73,6 +78,19 @@ public class MzXMLPeakListWriter extends GenericPeakListWriter {
             xmlw.writeStartElement("msRun");
             // skip scanCount, startTime, and endTime
         } catch (Exception e) {
+            throw new RuntimeException("Can't write XML for "+name, e);
+        }
+    }
+    
+    // helper to make the file for the file constructor
+    private static OutputStream openFile(String filename) {
+        try {
+            File file = new File(filename);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            return new FileOutputStream(file);
+        } catch (IOException e) {
             throw new RuntimeException("Can't write XML for "+filename, e);
         }
     }
@@ -122,6 +140,10 @@ public class MzXMLPeakListWriter extends GenericPeakListWriter {
             
             //finally, write out the xml
             try {
+                // end any open start tag, then note where the scan starts for the index
+                xmlw.writeCharacters("\n");
+                xmlw.flush();
+                out.addScan("" + scanNumber);
                 //setup scan element
                 xmlw.writeStartElement("scan");
                 
@@ -342,17 +364,12 @@ public class MzXMLPeakListWriter extends GenericPeakListWriter {
         try {
             xmlw.writeEndElement(); //msRun element
             
-            //declare the index does not exist
-            xmlw.writeEmptyElement("indexOffset");
-            xmlw.writeAttribute("xsi:nil", "1");
-            
-            xmlw.writeEndElement(); //mzXML element
-            
-            //close out the xml writer
-            xmlw.flush();
-            xmlw.close();
+            // write the scan index, indexOffset and sha1, which end the file
+            out.finish(xmlw);
         } catch (XMLStreamException e) {
             throw new RuntimeException("Can't write all of XML!",e);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't write all of XML!",e);
         } finally {
             super.close();
         }
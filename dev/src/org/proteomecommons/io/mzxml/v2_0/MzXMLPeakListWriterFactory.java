@@ -1,15 +1,16 @@
 package org.proteomecommons.io.mzxml.v2_0;
 
 
+import java.io.OutputStream;
 import org.proteomecommons.io.PeakListWriter;
-import org.proteomecommons.io.PeakListWriterFactory;
+import org.proteomecommons.io.StreamPeakListWriterFactory;
 
 /**
  * An MZXML 2.0 compatible writer. This is based off the 2.0 schema.
  * @author Jayson Falkner - jfalkner@umich.edu
  *
  */
-public class MzXMLPeakListWriterFactory implements PeakListWriterFactory {
+public class MzXMLPeakListWriterFactory implements StreamPeakListWriterFactory {
     
     public PeakListWriter newInstance(String filename) {
         // get the writer
@@ -18,6 +19,10 @@ public class MzXMLPeakListWriterFactory implements PeakListWriterFactory {
         return writer;
     }
     
+    public PeakListWriter newInstance(OutputStream out, String name) {
+        return new MzXMLPeakListWriter(out, name);
+    }
+    
     public String getFileExtension() {
         return ".mzxml.xml";
     }
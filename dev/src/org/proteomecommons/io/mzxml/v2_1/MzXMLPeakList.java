@@ -15,13 +15,13 @@
  */
 package org.proteomecommons.io.mzxml.v2_1;
 
-import org.proteomecommons.io.GenericPeakList;
+import org.proteomecommons.io.ArrayPeakList;
 
 /**
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class MzXMLPeakList extends GenericPeakList {
+public class MzXMLPeakList extends ArrayPeakList {
     // keep track of msRun information
     private MsRun msRun = null;
     
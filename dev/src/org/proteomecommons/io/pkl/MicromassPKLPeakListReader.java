@@ -18,7 +18,8 @@ package org.proteomecommons.io.pkl;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.*;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
 import org.proteomecommons.io.*;
 import org.proteomecommons.io.Peak;
@@ -28,7 +29,7 @@ import org.proteomecommons.io.Peak;
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class MicromassPKLPeakListReader extends GenericPeakListReader {
+public class MicromassPKLPeakListReader extends GenericPeakListReader implements ReusablePeakListReader {
     FileReader fr;
     BufferedReader br;
     
@@ -50,6 +51,17 @@ public class MicromassPKLPeakListReader extends GenericPeakListReader {
         }
     }
     
+    /**
+     * Make a reader for PKL peak lists in a stream.
+     *
+     * @param in The stream to read, closed when the reader is closed.
+     * @param name The name of the stream, usually the name of the file it came from.
+     */
+    public MicromassPKLPeakListReader(InputStream in, String name) {
+        super(name);
+        br = new BufferedReader(new InputStreamReader(in));
+    }
+    
     /**
      * @see org.proteomecommons.io.PeakListReader#close()
      */
@@ -62,6 +74,20 @@ public class MicromassPKLPeakListReader extends GenericPeakListReader {
      * @see org.proteomecommons.io.PeakListReader#getPeakList()
      */
     public PeakList getPeakList(){
+        // make the peak list
+        ArrayPeakList gpl = new ArrayPeakList();
+        if (!readInto(gpl)) {
+            return null;
+        }
+        // free up any unused space
+        gpl.trimToSize();
+        return gpl;
+    }
+    
+    /**
+     * @see org.proteomecommons.io.ReusablePeakListReader#readInto(MutablePeakList)
+     */
+    public boolean readInto(MutablePeakList gpl) {
         try {
             // parse the parent
             GenericPeak parent = new GenericPeak();
@@ -69,11 +95,11 @@ public class MicromassPKLPeakListReader extends GenericPeakListReader {
             // handle meta-information
             String string = br.readLine();
             if (string == null) {
-                return null;
+                return false;
             }
             // skip blank lines
             if (string.trim().equals("")) {
-                return getPeakList();
+                return readInto(gpl);
             }
             
             // split the string
@@ -87,7 +113,9 @@ public class MicromassPKLPeakListReader extends GenericPeakListReader {
             // try to handle charge
             parent.setCharge(Integer.parseInt(parts[2]));
             
-            LinkedList<Peak> peaks = new LinkedList<Peak>();
+            // reset the peak list
+            gpl.clear();
+            gpl.setTandemCount(PeakList.UNKNOWN_TANDEM_COUNT);
             for (String line = br.readLine();line != null; line = br.readLine()){
                 // stop on blank lines
                 if (line.trim().equals("")) {
@@ -113,20 +141,13 @@ public class MicromassPKLPeakListReader extends GenericPeakListReader {
                     throw new InvalidFileFormatException(split[1]+" is not a valid number.");
                 }
                 
-                // return the appropriate fragment
-                GenericPeak gp = new GenericPeak();
-                gp.setMassOverCharge(massOverChargeInDaltons);
-                gp.setIntensity(intens);
-                
                 // add to the list of peaks
-                peaks.add(gp);
+                gpl.addPeak(massOverChargeInDaltons, intens);
             }
             
-            // make the peak list
-            GenericPeakList gpl = new GenericPeakList();
+            // finish the peak list
             gpl.setParentPeak(parent);
-            gpl.setPeaks(peaks.toArray(new Peak[0]));
-            return gpl;
+            return true;
         } catch (Exception e) {
             throw new InvalidFileFormatException(e);
         }
@@ -15,14 +15,15 @@
  */
 package org.proteomecommons.io.pkl;
 
+import java.io.InputStream;
 
 import org.proteomecommons.io.PeakListReader;
-import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 
 /**
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class MicromassPKLPeakListReaderFactory implements PeakListReaderFactory {
+public class MicromassPKLPeakListReaderFactory implements StreamPeakListReaderFactory {
 
 	/**
 	 * @see org.proteomecommons.io.PeakListReaderFactory#newInstance(java.io.InputStream)
@@ -31,4 +32,11 @@ public class MicromassPKLPeakListReaderFactory implements PeakListReaderFactory
 		// TODO Auto-generated method stub
 		return new MicromassPKLPeakListReader(filename);
 	}
+
+	/**
+	 * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+	 */
+	public PeakListReader newInstance(InputStream in, String name) {
+		return new MicromassPKLPeakListReader(in, name);
+	}
 }
@@ -18,6 +18,9 @@ package org.proteomecommons.io.pkl;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import org.proteomecommons.io.*;
 import org.proteomecommons.io.PeakList;
 
@@ -34,7 +37,7 @@ public class MicromassPKLPeakListWriter extends GenericPeakListWriter implements
     private boolean used = false;
     
     // make the streams
-    FileWriter fw;
+    Writer fw;
     BufferedWriter bw;
     
     private boolean ignoreMS = true;
@@ -55,6 +58,17 @@ public class MicromassPKLPeakListWriter extends GenericPeakListWriter implements
         }
     }
     
+    /**
+     * Make a writer that writes to a stream.
+     * @param out The stream to write to, closed when the writer is closed.
+     * @param name The name of the data.
+     */
+    public MicromassPKLPeakListWriter(OutputStream out, String name) {
+        super(name);
+        fw = new OutputStreamWriter(out);
+        bw = new BufferedWriter(fw);
+    }
+    
     /**
      * This method does nothing. PKL files are always MSMS.
      */
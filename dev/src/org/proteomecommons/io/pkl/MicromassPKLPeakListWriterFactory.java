@@ -1,6 +1,7 @@
 package org.proteomecommons.io.pkl;
 
 
+import java.io.OutputStream;
 import org.proteomecommons.io.*;
 
 /**
@@ -9,7 +10,7 @@ import org.proteomecommons.io.*;
  * 
  * @author Jayon Falkner - jfalkner@umich.edu
  */
-public class MicromassPKLPeakListWriterFactory implements PeakListWriterFactory {
+public class MicromassPKLPeakListWriterFactory implements StreamPeakListWriterFactory {
 
 	/**
 	 * @see org.proteomecommons.io.PeakListWriterFactory#getFileExtension()
@@ -28,4 +29,11 @@ public class MicromassPKLPeakListWriterFactory implements PeakListWriterFactory
 	public PeakListWriter newInstance(String filename) {
 		return new MicromassPKLPeakListWriter(filename);
 	}
+
+	/**
+	 * @see org.proteomecommons.io.StreamPeakListWriterFactory#newInstance(java.io.OutputStream, java.lang.String)
+	 */
+	public PeakListWriter newInstance(OutputStream out, String name) {
+		return new MicromassPKLPeakListWriter(out, name);
+	}
 }
\ No newline at end of file
@@ -17,24 +17,33 @@ package org.proteomecommons.io.raw;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.util.ConversionCache;
+import org.proteomecommons.io.util.ConverterInputStream;
 
 /**
- * Factory for creating Thermo Finnigan .RAW file format readers.
+ * Factory for creating Thermo Finnigan .RAW file format readers. ReAdW's mzXML is either written to a file and read once ReAdW is done, or read from its standard output or a named pipe while it runs, see setOutput(). If there is a ConversionCache, RAW files that were converted before aren't converted again.
  * @author Jayson Falkner - jfalkner@umich.edu
  *
  */
 public class RawViaReadwFactory implements PeakListReaderFactory {
     // config for where the ReAdW.exe is
     private static File readwLocation = new File("C:/Program Files/ProteomeCommons.org/IO/ReAdW.exe");
+    // how ReAdW's output is read, the "readw.output" system property: "file", "stdout" or "pipe"
+    private static int output = ConverterInputStream.getMode("readw.output");
     
     public PeakListReader newInstance(String filename) {
         try {
             // save the IO to a file
             File inputFile = new File(filename);
             
+            // skip the conversion if it was done before
+            File cached = ConversionCache.get(inputFile);
+            if (cached != null) {
+                return new RawViaReadwPeakListReader(cached.getCanonicalPath(), new File[0]);
+            }
+            
             // pick a file for the conversion
             String path = inputFile.getCanonicalPath();
             // split on .raw to remove the extension
@@ -56,23 +65,15 @@ public class RawViaReadwFactory implements PeakListReaderFactory {
             }
             
             // use ReAdW to conver to mzXML
-            String[] commands = new String[]{getReadwLocation().getCanonicalPath(), inputFile.getCanonicalPath(), "c", outputFile.getCanonicalPath()};
-            // execute
-            Runtime r = Runtime.getRuntime();
-            Process p = r.exec(commands);
+            String[] commands = new String[]{getReadwLocation().getCanonicalPath(), inputFile.getCanonicalPath(), "c", ConverterInputStream.getOutputArgument(outputFile, getOutput())};
             
-//            // debug output
-//            InputStream pipeIn = p.getInputStream();
-//            try {
-//                for (int i=pipeIn.read();i!=-1;i=pipeIn.read()) {
-//                    System.out.print((char)i);
-//                }
-//            } finally {
-//                pipeIn.close();
-//            }
+            // parse the mzXML as ReAdW makes it
+            if (getOutput() != ConverterInputStream.FILE) {
+                return new RawViaReadwPeakListReader(ConversionCache.cacheWhileReading(inputFile, ConverterInputStream.open(commands, outputFile, getOutput())), outputFile.getName());
+            }
             
             // wait for it....
-            p.waitFor();
+            int exitCode = ConverterInputStream.run(commands);
             
             // check that the output file exists
             if (!outputFile.exists()) {
@@ -84,10 +85,14 @@ public class RawViaReadwFactory implements PeakListReaderFactory {
                 }
             }
             
+            // keep the mzXML for next time
+            if (exitCode == 0 && outputFile.exists() && ConversionCache.isEnabled()) {
+                cached = ConversionCache.put(inputFile, outputFile);
+                return new RawViaReadwPeakListReader(cached.getCanonicalPath(), new File[0]);
+            }
+            
             // send the resources and politely ask for them to be deleted
             return new RawViaReadwPeakListReader(outputFile.getCanonicalPath(), new File[]{outputFile});
-        } catch (InterruptedException ex) {
-            throw new RuntimeException("Conversion was prematurely ended!");
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
@@ -100,4 +105,16 @@ public class RawViaReadwFactory implements PeakListReaderFactory {
     public static void setReadwLocation(File aReadwLocation) {
         readwLocation = aReadwLocation;
     }
+    
+    public static int getOutput() {
+        return output;
+    }
+    
+    /**
+     * Sets how ReAdW's output is read by new readers.
+     * @param aOutput ConverterInputStream.FILE, STDOUT or NAMED_PIPE.
+     */
+    public static void setOutput(int aOutput) {
+        output = aOutput;
+    }
 }
\ No newline at end of file
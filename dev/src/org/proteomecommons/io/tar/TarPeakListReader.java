@@ -0,0 +1,104 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.tar;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.UnknownFileFormatException;
+
+/**
+ * Reads the peak lists of every entry in a TAR that is in a known format, in the order the entries are in the TAR, as if they were one file. Entries in unknown formats and directories are skipped. Each entry is parsed straight out of the TAR, nothing is written to disk unless the entry's format can only be read from a file.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class TarPeakListReader extends GenericPeakListReader {
+    // the TAR
+    private TarInputStream tis;
+    // the reader of the current entry
+    private PeakListReader current = null;
+    
+    /**
+     * Make a new reader.
+     * @param in The TAR, closed when the reader is closed.
+     * @param name The name of the TAR.
+     */
+    public TarPeakListReader(InputStream in, String name) {
+        super(name);
+        tis = new TarInputStream(in);
+        try {
+            if (!nextEntry()) {
+                throw new RuntimeException("Can't find any files to read!");
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    public PeakList getPeakList() {
+        while (current != null) {
+            PeakList peaklist = current.getPeakList();
+            if (peaklist != null) {
+                return peaklist;
+            }
+            current.close();
+            current = null;
+            nextEntry();
+        }
+        return null;
+    }
+    
+    // helper to start reading the next entry in a known format, false if there are no more
+    private boolean nextEntry() {
+        try {
+            for (TarEntry te = tis.getNextEntry(); te != null; te = tis.getNextEntry()) {
+                if (te.isDirectory()) {
+                    continue;
+                }
+                try {
+                    PeakListReaderFactory plrf = GenericPeakListReader.getPeakListReaderFactory(te.getName());
+                    // readers close their stream when they are done, which mustn't close the TAR, the rest of the entry is skipped by getNextEntry()
+                    InputStream entry = new FilterInputStream(tis) {
+                        public void close() {
+                        }
+                    };
+                    current = GenericPeakListReader.getPeakListReader(plrf, entry, te.getName());
+                    return true;
+                } catch (UnknownFileFormatException ufe) {
+                    // noop, skip it
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read "+getName(), e);
+        }
+    }
+    
+    public void close() {
+        if (current != null) {
+            try { current.close(); } catch (Exception e){}
+            current = null;
+        }
+        try { tis.close(); } catch (Exception e){}
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.tar;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
+
+/**
+ * A factory for reading peak lists in a TAR. Every entry in a known format is read, in TAR order, as one stream of peak lists by a TarPeakListReader. Compressed TARs such as ".tar.gz", ".tgz" or ".tar.bzip2" are handled by the compression's factory, which hands the TAR to this one as a stream.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class TarPeakListReaderFactory implements StreamPeakListReaderFactory {
+    /**
+     * @see org.proteomecommons.io.PeakListReaderFactory#newInstance(java.lang.String)
+     */
+    public PeakListReader newInstance(String filename) {
+        try {
+            return newInstance(new FileInputStream(filename), filename);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+     */
+    public PeakListReader newInstance(InputStream in, String name) {
+        return new TarPeakListReader(in, name);
+    }
+    
+    /**
+     * Return the regular expression for what this reader can handle.
+     *
+     * @return
+     */
+    public String getRegularExpression() {
+        return ".*\\.tar";
+    }
+}
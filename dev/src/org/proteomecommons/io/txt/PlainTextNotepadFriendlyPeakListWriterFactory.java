@@ -16,6 +16,7 @@
 package org.proteomecommons.io.txt;
 
 
+import java.io.OutputStream;
 import org.proteomecommons.io.*;
 
 /**
@@ -26,7 +27,7 @@ import org.proteomecommons.io.*;
  *  
  */
 public class PlainTextNotepadFriendlyPeakListWriterFactory implements
-		PeakListWriterFactory {
+		StreamPeakListWriterFactory {
 
 	/**
 	 * @see org.proteomecommons.io.PeakListWriterFactory#getFileExtension()
@@ -50,4 +51,13 @@ public class PlainTextNotepadFriendlyPeakListWriterFactory implements
 		writer.setNewline("\r\n");
 		return writer;
 	}
+
+	/**
+	 * @see org.proteomecommons.io.StreamPeakListWriterFactory#newInstance(java.io.OutputStream, java.lang.String)
+	 */
+	public PeakListWriter newInstance(OutputStream out, String name) {
+		PlainTextPeakListWriter writer = new PlainTextPeakListWriter(out, name);
+		writer.setNewline("\r\n");
+		return writer;
+	}
 }
\ No newline at end of file
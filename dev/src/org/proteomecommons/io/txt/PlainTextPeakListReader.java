@@ -18,19 +18,21 @@ package org.proteomecommons.io.txt;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import org.proteomecommons.io.ArrayPeakList;
 import org.proteomecommons.io.GenericPeak;
-import org.proteomecommons.io.GenericPeakList;
 import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.MutablePeakList;
 import org.proteomecommons.io.Peak;
 import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.ReusablePeakListReader;
 
 /**
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class PlainTextPeakListReader extends GenericPeakListReader {
+public class PlainTextPeakListReader extends GenericPeakListReader implements ReusablePeakListReader {
     FileReader fr;
     BufferedReader br;
     public PlainTextPeakListReader(String filename) {
@@ -44,6 +46,17 @@ public class PlainTextPeakListReader extends GenericPeakListReader {
         }
     }
     
+    /**
+     * Make a reader for plain text peak lists in a stream.
+     *
+     * @param in The stream to read, closed when the reader is closed.
+     * @param name The name of the stream, usually the name of the file it came from.
+     */
+    public PlainTextPeakListReader(InputStream in, String name) {
+        super(name);
+        br = new BufferedReader(new InputStreamReader(in));
+    }
+    
     public void close() {
         try { br.close(); } catch (Exception e){}
         try { fr.close(); } catch (Exception e){}
@@ -51,21 +64,32 @@ public class PlainTextPeakListReader extends GenericPeakListReader {
     
     public PeakList getPeakList() {
         // make a new peak list
-        GenericPeakList peaklist = new GenericPeakList();
-        // keep the peaks around
-        List<Peak> peaks = new LinkedList();
-        
+        ArrayPeakList peaklist = new ArrayPeakList();
+        if (!readInto(peaklist)) {
+            return null;
+        }
+        // free up any unused space
+        peaklist.trimToSize();
+        return peaklist;
+    }
+    
+    public boolean readInto(MutablePeakList peaklist) {
         try {
             String line = br.readLine();
             while(line != null && line.trim().equals("")) {
                 line = br.readLine();
             }
             
-            // return null if null
+            // return false if null
             if (line == null) {
-                return null;
+                return false;
             }
             
+            // reset the peak list
+            peaklist.clear();
+            peaklist.setParentPeak(null);
+            peaklist.setTandemCount(PeakList.UNKNOWN_TANDEM_COUNT);
+            
             // parse the first line as parent ion information
             String[] parts = line.split("\\s");
             if (parts.length > 2) {
@@ -99,13 +123,14 @@ public class PlainTextPeakListReader extends GenericPeakListReader {
                 }
                 
                 // else, parse the peak
-                GenericPeak peak = new GenericPeak();
-                peaks.add(peak);
+                double mz = 0;
+                double intensity = 0;
+                int charge = Peak.UNKNOWN_CHARGE;
                 String[] split = line.split("\\s");
                 // conditionally take the first as m/z
                 if (split.length > 0) {
                     try {
-                        peak.setMassOverCharge(Double.parseDouble(split[0]));
+                        mz = Double.parseDouble(split[0]);
                     } catch (Exception e){
                         // noop
                     }
@@ -113,7 +138,7 @@ public class PlainTextPeakListReader extends GenericPeakListReader {
                 // conditionally take the first as intensity
                 if (split.length > 1) {
                     try {
-                        peak.setIntensity(Double.parseDouble(split[1]));
+                        intensity = Double.parseDouble(split[1]);
                     } catch (Exception e){
                         // noop
                     }
@@ -121,16 +146,21 @@ public class PlainTextPeakListReader extends GenericPeakListReader {
                 // conditionally take the first as charge
                 if (split.length > 2) {
                     try {
-                        peak.setCharge(Integer.parseInt(split[2]));
+                        charge = Integer.parseInt(split[2]);
                     } catch (Exception e){
                         // noop
                     }
                 }
+                // add the peak, a known charge implies centroided
+                if (charge != Peak.UNKNOWN_CHARGE) {
+                    peaklist.addPeak(mz, intensity, charge, Peak.CENTROIDED, Peak.NOT_AVERAGED, Peak.UNKNOWN_MONOISOTOPIC, Peak.UNKNOWN_DEISOTOPED);
+                } else {
+                    peaklist.addPeak(mz, intensity);
+                }
             }
             
-            // return the peak lsit
-            peaklist.setPeaks(peaks.toArray(new Peak[0]));
-            return peaklist;
+            // flag that a peak list was read
+            return true;
         } catch (IOException ex) {
             throw new RuntimeException("File prematurely closed. Can't read peak list.");
         }
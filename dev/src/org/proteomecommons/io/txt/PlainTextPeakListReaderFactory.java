@@ -15,18 +15,23 @@
  */
 package org.proteomecommons.io.txt;
 
+import java.io.InputStream;
 import org.proteomecommons.io.PeakListReader;
-import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 
 /**
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class PlainTextPeakListReaderFactory implements PeakListReaderFactory {
+public class PlainTextPeakListReaderFactory implements StreamPeakListReaderFactory {
     public PeakListReader newInstance(String filename) {
         return new PlainTextPeakListReader(filename);
     }
     
+    public PeakListReader newInstance(InputStream in, String name) {
+        return new PlainTextPeakListReader(in, name);
+    }
+    
     public String getRegularExpression() {
         return ".*\\.txt";
     }
@@ -31,7 +31,7 @@ public class PlainTextPeakListWriter extends GenericPeakListWriter {
     
     private String spacer = "\t";
     
-    FileWriter fw;
+    Writer fw;
     BufferedWriter bw;
     
     public void setNewline(String newline) {
@@ -56,6 +56,17 @@ public class PlainTextPeakListWriter extends GenericPeakListWriter {
         }
     }
     
+    /**
+     * Make a writer that writes to a stream.
+     * @param out The stream to write to, closed when the writer is closed.
+     * @param name The name of the data.
+     */
+    public PlainTextPeakListWriter(OutputStream out, String name) {
+        super(name);
+        fw = new OutputStreamWriter(out);
+        bw = new BufferedWriter(fw);
+    }
+    
     public void write(PeakList peaklist) {
         try {
             // space between peak lists
@@ -89,10 +100,22 @@ public class PlainTextPeakListWriter extends GenericPeakListWriter {
                 bw.write(newline);
             }
             
-            // write out all the peaks
-            Peak[] peaks = peaklist.getPeaks();
-            for (Peak p : peaks) {
-                bw.write(p.getMassOverCharge()+spacer+p.getIntensity()+newline);
+            // write out all the peaks, skip making Peak objects if possible
+            if (peaklist instanceof ArrayPeakList) {
+                ArrayPeakList apl = (ArrayPeakList)peaklist;
+                double[] mz = apl.getMassOverChargeArray();
+                double[] intensity = apl.getIntensityArray();
+                for (int i=0;i<apl.size();i++) {
+                    bw.write(Double.toString(mz[i]));
+                    bw.write(spacer);
+                    bw.write(Double.toString(intensity[i]));
+                    bw.write(newline);
+                }
+            } else {
+                Peak[] peaks = peaklist.getPeaks();
+                for (Peak p : peaks) {
+                    bw.write(p.getMassOverCharge()+spacer+p.getIntensity()+newline);
+                }
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -15,12 +15,13 @@
  */
 package org.proteomecommons.io.txt;
 
+import java.io.OutputStream;
 import org.proteomecommons.io.*;
 /**
  * @author Jayson Falkner - jfalkner@umich.edu
  *
  */
-public class PlainTextPeakListWriterFactory implements PeakListWriterFactory{
+public class PlainTextPeakListWriterFactory implements StreamPeakListWriterFactory{
 
 	/**
 	 * @see org.proteomecommons.io.PeakListWriterFactory#getFileExtension()
@@ -40,4 +41,10 @@ public class PlainTextPeakListWriterFactory implements PeakListWriterFactory{
 	public PeakListWriter newInstance(String filename) {
 		return new PlainTextPeakListWriter(filename);
 	}
+	/**
+	 * @see org.proteomecommons.io.StreamPeakListWriterFactory#newInstance(java.io.OutputStream, java.lang.String)
+	 */
+	public PeakListWriter newInstance(OutputStream out, String name) {
+		return new PlainTextPeakListWriter(out, name);
+	}
 }
@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses numbers directly from ASCII bytes, avoiding the String that Double.parseDouble() needs. Plain decimals whose digits fit exactly in a double and that have a small exponent, which is nearly every m/z and intensity in a peak list, are parsed with exact arithmetic and give the same double as Double.parseDouble(). Anything else falls back to Double.parseDouble().
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class AsciiNumberParser {
+    // powers of ten that are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+
+    // the largest mantissa that is exactly representable as a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Parses a double from the bytes in the range [start, end) of the buffer. The buffer's position isn't changed.
+     * @throws NumberFormatException If the bytes aren't a number.
+     */
+    public static double parseDouble(ByteBuffer buffer, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty number.");
+        }
+        int i = start;
+        // check for a sign
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean overflow = false;
+        boolean foundDigit = false;
+
+        // the whole part
+        for (; i < end; i++) {
+            b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            foundDigit = true;
+            // skip leading zeros
+            if (mantissa == 0 && b == '0') {
+                continue;
+            }
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+            } else {
+                overflow = true;
+            }
+        }
+        // the fractional part
+        if (i < end && buffer.get(i) == '.') {
+            for (i++; i < end; i++) {
+                b = buffer.get(i);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                foundDigit = true;
+                if (mantissa == 0 && b == '0') {
+                    exponent--;
+                    continue;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    exponent--;
+                } else {
+                    overflow = true;
+                }
+            }
+        }
+        // the exponent
+        if (foundDigit && i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            int e = 0;
+            boolean foundExponentDigit = false;
+            for (; i < end; i++) {
+                b = buffer.get(i);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                foundExponentDigit = true;
+                if (e < 10000) {
+                    e = e * 10 + (b - '0');
+                }
+            }
+            if (!foundExponentDigit) {
+                return slowParseDouble(buffer, start, end);
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+
+        // anything odd, e.g. "NaN" or trailing characters, is left to the JDK
+        if (!foundDigit || i != end) {
+            return slowParseDouble(buffer, start, end);
+        }
+        // zero is zero no matter the exponent
+        if (mantissa == 0 && !overflow) {
+            return negative ? -0.0 : 0.0;
+        }
+        // too many digits or too big an exponent to be exact
+        if (overflow || mantissa > MAX_EXACT_MANTISSA || exponent > 22 || exponent < -22) {
+            return slowParseDouble(buffer, start, end);
+        }
+
+        // both values are exact, so one operation rounds correctly
+        double value = mantissa;
+        if (exponent < 0) {
+            value = value / POWERS_OF_TEN[-exponent];
+        } else {
+            value = value * POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses an int from the bytes in the range [start, end) of the buffer.
+     * @throws NumberFormatException If the bytes aren't an int.
+     */
+    public static int parseInt(ByteBuffer buffer, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty number.");
+        }
+        int i = start;
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(toString(buffer, start, end));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("Not an int: " + toString(buffer, start, end));
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Helper method to make a String from ASCII bytes in the range [start, end) of the buffer.
+     */
+    public static String toString(ByteBuffer buffer, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) (buffer.get(i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    // the fallback, which is correct for anything Java can parse
+    private static double slowParseDouble(ByteBuffer buffer, int start, int end) {
+        return Double.parseDouble(toString(buffer, start, end));
+    }
+}
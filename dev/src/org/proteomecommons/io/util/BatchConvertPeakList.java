@@ -0,0 +1,342 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Converts a batch of peak list files, each to its own output file, several at once. The largest files are started first so that a big file doesn't start last and keep the batch running long after everything else is done.
+ *
+ * The batch has a thread budget and a memory budget. The thread budget is split between the files converted at once and the filter threads of each file, e.g. 8 threads convert 8 files with one thread each, or 2 files with 4 filter threads each. External converters, e.g. ReAdW.exe, aren't part of the budget: every file in the batch shares the ConverterScheduler's limit, so no more than ConverterScheduler.getThreads() run at once however many files are converted. Neither are the threads of compressing writers, which use their factory's setting, e.g. "gzip.threads", for every file; set those to 1 when many files are converted at once. Each conversion is assumed to need about as much memory as its input file, and a file isn't started until the files already running leave room for it. A file bigger than the whole budget runs alone.
+ *
+ * Nothing is printed, subclasses can override finished() to report each file as it is done.
+ *
+ * Optionally a manifest file, UTF-8 text, records every file that is done. Running the same batch with the same manifest skips those files, so a batch that was stopped part way can be picked up where it left off.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class BatchConvertPeakList {
+    // the converter whose settings and filters are used
+    private ConvertPeakList converter;
+    // the threads for the whole batch
+    private int threads;
+    // the bytes of memory the running conversions may use
+    private long memory = Runtime.getRuntime().maxMemory() / 2;
+    // the files that are done, null for no manifest
+    private File manifest = null;
+    
+    // if files that haven't started are left once one fails
+    private boolean stopOnFailure = false;
+    
+    // the memory reserved by the running conversions
+    private long reserved = 0;
+    // the first file that failed
+    private Result failure = null;
+    
+    /**
+     * Makes a batch that converts files with the given converter's filters and settings. The thread budget defaults to the converter's number of threads.
+     */
+    public BatchConvertPeakList(ConvertPeakList converter) {
+        this.converter = converter;
+        this.threads = converter.getThreads();
+    }
+    
+    /**
+     * Converts each input file to the matching output file. A file that can't be converted doesn't stop the batch, its result has the exception, unless the batch is set to stop on a failure.
+     * @param in
+     *            The files to convert.
+     * @param out
+     *            The files to write, one for each input file.
+     * @return The result of each file, in the same order as the files.
+     */
+    public Result[] convert(String[] in, String[] out) throws IOException {
+        final Result[] results = new Result[in.length];
+        HashSet done = readManifest();
+        LinkedList<Result> todo = new LinkedList();
+        for (int i = 0; i < in.length; i++) {
+            results[i] = new Result(in[i], out[i]);
+            if (done.contains(in[i]+"\t"+out[i]) && new File(out[i]).exists()) {
+                results[i].skipped = true;
+                finished(results[i]);
+                continue;
+            }
+            todo.add(results[i]);
+        }
+        if (todo.isEmpty()) {
+            return results;
+        }
+        
+        // biggest first
+        Result[] ordered = todo.toArray(new Result[0]);
+        Arrays.sort(ordered, new Comparator<Result>() {
+            public int compare(Result a, Result b) {
+                return a.bytes < b.bytes ? 1 : (a.bytes > b.bytes ? -1 : 0);
+            }
+        });
+        
+        // split the threads between the files and their filters
+        int files = Math.max(1, Math.min(threads, ordered.length));
+        final ConvertPeakList perFile = converter.copy(Math.max(1, threads / files));
+        ExecutorService executor = Executors.newFixedThreadPool(files, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "batch conversion");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            LinkedList<Future> pending = new LinkedList();
+            for (final Result result : ordered) {
+                pending.add(executor.submit(new Runnable() {
+                    public void run() {
+                        convert(perFile, result);
+                    }
+                }));
+            }
+            for (Future future : pending) {
+                future.get();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Batch conversion was prematurely ended!", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+    
+    // helper to convert one file once there is memory for it
+    private void convert(ConvertPeakList perFile, Result result) {
+        long needed = Math.min(result.bytes, memory);
+        try {
+            reserve(needed);
+        } catch (InterruptedException e) {
+            result.exception = e;
+            finished(result);
+            return;
+        }
+        try {
+            Result failed = getFailure();
+            if (stopOnFailure && failed != null) {
+                result.exception = new IOException("Not converted, "+failed.input+" failed first.");
+            } else {
+                long start = System.currentTimeMillis();
+                perFile.convertPeakList(result.input, result.output);
+                result.millis = System.currentTimeMillis() - start;
+                writeManifest(result);
+            }
+        } catch (Exception e) {
+            result.exception = e;
+            synchronized (this) {
+                if (failure == null) {
+                    failure = result;
+                }
+            }
+        } finally {
+            release(needed);
+        }
+        finished(result);
+    }
+    
+    /**
+     * Called from the converting threads with the result of each file as soon as it is done, skipped or failed. Does nothing, override it to report progress.
+     */
+    protected void finished(Result result) {
+    }
+    
+    // helper to wait for memory, a conversion always starts if nothing else is running
+    private synchronized void reserve(long bytes) throws InterruptedException {
+        while (reserved > 0 && reserved + bytes > memory) {
+            wait();
+        }
+        reserved += bytes;
+    }
+    
+    // helper to free memory
+    private synchronized void release(long bytes) {
+        reserved -= bytes;
+        notifyAll();
+    }
+    
+    // helper to read the input and output of each file that is done
+    private HashSet readManifest() throws IOException {
+        HashSet done = new HashSet();
+        if (manifest == null || !manifest.exists()) {
+            return done;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] parts = line.split("\t");
+                if (parts.length >= 2) {
+                    done.add(parts[0]+"\t"+parts[1]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return done;
+    }
+    
+    // helper to add a file that is done to the manifest, right away so that it isn't lost if the batch is stopped
+    private synchronized void writeManifest(Result result) throws IOException {
+        if (manifest == null) {
+            return;
+        }
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(manifest, true), "UTF-8"));
+        try {
+            writer.println(result.input+"\t"+result.output+"\t"+result.bytes+"\t"+result.millis);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the threads used by the whole batch.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+    
+    public boolean isStopOnFailure() {
+        return stopOnFailure;
+    }
+    
+    /**
+     * Sets if files that haven't started are left unconverted once a file fails. They get an exception saying so. Files that are already running finish.
+     */
+    public void setStopOnFailure(boolean stopOnFailure) {
+        this.stopOnFailure = stopOnFailure;
+    }
+    
+    /**
+     * Returns the result of the first file that failed, or null if none has.
+     */
+    public synchronized Result getFailure() {
+        return failure;
+    }
+    
+    public long getMemory() {
+        return memory;
+    }
+    
+    /**
+     * Sets the bytes of memory the conversions running at once may use. Each conversion is assumed to need about as much as its input file.
+     */
+    public void setMemory(long memory) {
+        this.memory = memory;
+    }
+    
+    public File getManifest() {
+        return manifest;
+    }
+    
+    /**
+     * Sets the file that lists the files that are done, null for none. Files already in the manifest are skipped if their output still exists.
+     */
+    public void setManifest(File manifest) {
+        this.manifest = manifest;
+    }
+    
+    /**
+     * How the conversion of one file went.
+     */
+    public static class Result {
+        private String input;
+        private String output;
+        private long bytes;
+        private long millis = 0;
+        private boolean skipped = false;
+        private Exception exception = null;
+        
+        Result(String input, String output) {
+            this.input = input;
+            this.output = output;
+            this.bytes = new File(input).length();
+        }
+        
+        public String getInput() {
+            return input;
+        }
+        
+        public String getOutput() {
+            return output;
+        }
+        
+        /**
+         * Returns the size of the input file.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+        
+        /**
+         * Returns how long the conversion took.
+         */
+        public long getMillis() {
+            return millis;
+        }
+        
+        /**
+         * Returns true if the file was skipped because the manifest says it is done.
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+        
+        /**
+         * Returns why the file couldn't be converted, or null if it was.
+         */
+        public Exception getException() {
+            return exception;
+        }
+        
+        /**
+         * Returns the MB of input converted a second.
+         */
+        public double getMegabytesPerSecond() {
+            return (bytes / (1024.0 * 1024.0)) / (Math.max(1, millis) / 1000.0);
+        }
+        
+        public String toString() {
+            if (exception != null) {
+                return "Can't convert "+input+": "+exception.getMessage();
+            }
+            if (skipped) {
+                return "Skipped "+input+", it is in the manifest.";
+            }
+            return "Converted "+input+" to "+output+": "+bytes+" bytes in "+millis+" ms, "+Math.round(getMegabytesPerSecond() * 100) / 100.0+" MB/s";
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A cache of the mzXML that external converters, e.g. ReAdW.exe, make from vendor files. Entries are keyed by the content of the vendor file, its size, modification time and a SHA-1 digest of samples spread through it, so opening the same file again skips the conversion no matter where the file is. The cache lives in a directory, so it is shared by every JVM that uses the same one.
+ *
+ * The cache is least recently used: reading an entry touches it, and once the cache is bigger than its budget the entries that were used longest ago are deleted. Entries handed out by get() or put() are never deleted until they are given back with release(), so the cache can go over its budget while many entries are being read. Entries can optionally be stored GZIP compressed, mzXML usually shrinks to a third or less.
+ *
+ * Sharing a cache directory between JVMs isn't safe. Each JVM only knows about the entries it is reading, so one JVM can delete an entry that another just got from get() and hasn't opened yet. Give each JVM its own directory, or a budget big enough that nothing is deleted.
+ *
+ * The cache is off unless a directory is set, either with setDirectory() or the "conversion.cache" system property.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ConversionCache {
+    // the number and size of the samples digested
+    private static final int SAMPLES = 16;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    
+    // the cache directory, null if there is no cache
+    private static File directory = System.getProperty("conversion.cache") != null ? new File(System.getProperty("conversion.cache")) : null;
+    // the most bytes the cache holds, the "conversion.cache.size" system property or 10GB
+    private static long maxSize = Long.getLong("conversion.cache.size", 10L * 1024 * 1024 * 1024).longValue();
+    // true if new entries are compressed, the "conversion.cache.compress" system property
+    private static boolean compressed = Boolean.getBoolean("conversion.cache.compress");
+    
+    // the names of the entries being read and how many times, they aren't deleted
+    private static final HashMap<String, Integer> inUse = new HashMap();
+    // the temporary files being streamed to
+    private static final HashSet<String> streaming = new HashSet();
+    
+    // use the static methods
+    private ConversionCache() {
+    }
+    
+    public static File getDirectory() {
+        return directory;
+    }
+    
+    /**
+     * Sets the cache directory, null turns the cache off.
+     */
+    public static void setDirectory(File directory) {
+        ConversionCache.directory = directory;
+    }
+    
+    public static long getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Sets the most bytes the entries can take up before the least recently used ones are deleted.
+     */
+    public static void setMaxSize(long maxSize) {
+        ConversionCache.maxSize = maxSize;
+    }
+    
+    public static boolean isCompressed() {
+        return compressed;
+    }
+    
+    /**
+     * Sets if new entries are GZIP compressed.
+     */
+    public static void setCompressed(boolean compressed) {
+        ConversionCache.compressed = compressed;
+    }
+    
+    /**
+     * Returns true if there is a cache directory.
+     */
+    public static boolean isEnabled() {
+        return directory != null;
+    }
+    
+    /**
+     * Gets the converted mzXML of a vendor file and marks it as used. The entry isn't deleted until it is passed to release().
+     * @return The cached file, e.g. "&lt;key&gt;.mzXML" or "&lt;key&gt;.mzXML.gz", or null if it isn't cached or there is no cache.
+     */
+    public static File get(File vendorFile) throws IOException {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = getKey(vendorFile);
+        File[] candidates = new File[]{new File(directory, key+".mzXML"), new File(directory, key+".mzXML.gz")};
+        for (File cached : candidates) {
+            if (cached.exists()) {
+                acquire(cached);
+                cached.setLastModified(System.currentTimeMillis());
+                return cached;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Adds the converted mzXML of a vendor file to the cache and deletes the least recently used entries if the cache is too big. The new entry isn't deleted until it is passed to release().
+     * @param converted The mzXML, which is moved in to the cache.
+     * @return The cached file, or the converted file if there is no cache.
+     */
+    public static File put(File vendorFile, File converted) throws IOException {
+        if (!isEnabled()) {
+            return converted;
+        }
+        directory.mkdirs();
+        String key = getKey(vendorFile);
+        File cached = new File(directory, key+(compressed ? ".mzXML.gz" : ".mzXML"));
+        
+        // write the entry under a temporary name so that readers never see part of it
+        File temp = File.createTempFile(key, ".tmp", directory);
+        try {
+            if (compressed) {
+                InputStream in = new BufferedInputStream(new FileInputStream(converted));
+                OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                try {
+                    byte[] buf = new byte[64 * 1024];
+                    for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                        out.write(buf, 0, read);
+                    }
+                } finally {
+                    in.close();
+                    out.close();
+                }
+                converted.delete();
+            } else if (!converted.renameTo(temp)) {
+                // e.g. on another disk
+                copy(converted, temp);
+                converted.delete();
+            }
+            acquire(cached);
+            cached.delete();
+            if (!temp.renameTo(cached)) {
+                release(cached);
+                throw new IOException("Can't add "+cached+" to the cache.");
+            }
+        } finally {
+            temp.delete();
+        }
+        evict();
+        return cached;
+    }
+    
+    /**
+     * Gives back an entry from get() or put() once it is read, so that it can be deleted to keep the cache in its budget. Files that aren't in use, e.g. ones that aren't in the cache, are ignored.
+     */
+    public static void release(File cached) {
+        synchronized (inUse) {
+            Integer count = inUse.get(cached.getName());
+            if (count == null) {
+                return;
+            }
+            if (count.intValue() > 1) {
+                inUse.put(cached.getName(), count.intValue() - 1);
+            } else {
+                inUse.remove(cached.getName());
+            }
+        }
+    }
+    
+    // helper to mark an entry as being read
+    private static void acquire(File cached) {
+        synchronized (inUse) {
+            Integer count = inUse.get(cached.getName());
+            inUse.put(cached.getName(), count == null ? 1 : count.intValue() + 1);
+        }
+    }
+    
+    // helper to check if an entry is being read
+    private static boolean isInUse(File cached) {
+        synchronized (inUse) {
+            return inUse.containsKey(cached.getName());
+        }
+    }
+    
+    /**
+     * Caches a converter's mzXML as it is read. The data is written to a temporary file, which is added to the cache if the whole stream is read without an error. Parsers often stop at the end of the root element, so closing the stream reads a little further to find the end. If there is no cache the stream is returned as is.
+     */
+    public static InputStream cacheWhileReading(final File vendorFile, InputStream in) throws IOException {
+        if (!isEnabled()) {
+            return in;
+        }
+        directory.mkdirs();
+        final File temp = File.createTempFile("stream", ".tmp", directory);
+        synchronized (streaming) {
+            streaming.add(temp.getName());
+        }
+        FileOutputStream fos = new FileOutputStream(temp);
+        // other JVMs don't clean up a temporary file that is locked, the lock goes with the stream
+        try {
+            fos.getChannel().tryLock();
+        } catch (IOException e) {
+            // noop, e.g. the file system can't lock
+        }
+        final OutputStream copy = new BufferedOutputStream(fos);
+        return new FilterInputStream(in) {
+            private boolean done = false;
+            
+            public int read() throws IOException {
+                int b = super.read();
+                if (b == -1) {
+                    finish();
+                } else {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+                return b;
+            }
+            
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read == -1) {
+                    finish();
+                } else {
+                    write(b, off, read);
+                }
+                return read;
+            }
+            
+            public long skip(long n) throws IOException {
+                // read what is skipped so that it is cached too
+                byte[] buf = new byte[(int) Math.min(n, 8192)];
+                int read = read(buf, 0, buf.length);
+                return read == -1 ? 0 : read;
+            }
+            
+            public boolean markSupported() {
+                return false;
+            }
+            
+            public void close() throws IOException {
+                try {
+                    // anything after the data is usually just white space
+                    byte[] buf = new byte[8192];
+                    for (int i = 0; i < 8 && !done; i++) {
+                        read(buf, 0, buf.length);
+                    }
+                } catch (IOException e) {
+                    // noop, it isn't cached
+                } finally {
+                    try {
+                        super.close();
+                    } finally {
+                        abandon();
+                    }
+                }
+            }
+            
+            // helper to copy data, a failed copy only means nothing is cached
+            private void write(byte[] b, int off, int len) {
+                if (done) {
+                    return;
+                }
+                try {
+                    copy.write(b, off, len);
+                } catch (IOException e) {
+                    abandon();
+                }
+            }
+            
+            // helper to add the copy to the cache at the end of the data
+            private void finish() {
+                if (done) {
+                    return;
+                }
+                done = true;
+                try {
+                    copy.close();
+                    release(put(vendorFile, temp));
+                } catch (IOException e) {
+                    // noop, it isn't cached
+                } finally {
+                    temp.delete();
+                    synchronized (streaming) {
+                        streaming.remove(temp.getName());
+                    }
+                }
+            }
+            
+            // helper to throw away the copy
+            private void abandon() {
+                if (done) {
+                    return;
+                }
+                done = true;
+                try { copy.close(); } catch (Exception e){}
+                temp.delete();
+                synchronized (streaming) {
+                    streaming.remove(temp.getName());
+                }
+            }
+        };
+    }
+    
+    /**
+     * Gets the key of a vendor file: a SHA-1 digest, in hex, of its size, modification time and samples of its content.
+     */
+    public static String getKey(File vendorFile) throws IOException {
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        long size = vendorFile.length();
+        digest.update((size+":"+vendorFile.lastModified()+":").getBytes("UTF-8"));
+        RandomAccessFile raf = new RandomAccessFile(vendorFile, "r");
+        try {
+            byte[] sample = new byte[SAMPLE_SIZE];
+            if (size <= (long) SAMPLES * SAMPLE_SIZE) {
+                // small files are digested whole
+                for (int read = raf.read(sample); read != -1; read = raf.read(sample)) {
+                    digest.update(sample, 0, read);
+                }
+            } else {
+                // evenly spaced samples, including the start and the end
+                for (int i = 0; i < SAMPLES; i++) {
+                    raf.seek((size - SAMPLE_SIZE) * i / (SAMPLES - 1));
+                    raf.readFully(sample);
+                    digest.update(sample);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        StringBuffer key = new StringBuffer();
+        for (byte b : digest.digest()) {
+            key.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        return key.toString();
+    }
+    
+    // helper to delete the least recently used entries that aren't in use until the cache fits its budget
+    private static void evict() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // the entries and when they were last used, temporary files left by crashes are cleaned up
+        ArrayList<File> entries = new ArrayList();
+        final HashMap<File, Long> lastUsed = new HashMap();
+        long size = 0;
+        for (File file : files) {
+            if (isEntry(file)) {
+                entries.add(file);
+                lastUsed.put(file, file.lastModified());
+                size += file.length();
+            } else if (file.getName().endsWith(".tmp") && file.lastModified() < System.currentTimeMillis() - 24 * 60 * 60 * 1000L && !isStreaming(file)) {
+                file.delete();
+            }
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        // oldest first
+        Collections.sort(entries, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return lastUsed.get(a).compareTo(lastUsed.get(b));
+            }
+        });
+        for (int i = 0; i < entries.size() && size > maxSize; i++) {
+            File entry = entries.get(i);
+            if (isInUse(entry)) {
+                continue;
+            }
+            long length = entry.length();
+            if (entry.delete()) {
+                size -= length;
+            }
+        }
+    }
+    
+    // helper to check if a temporary file is still being written, here or by another JVM that holds its lock
+    private static boolean isStreaming(File temp) {
+        synchronized (streaming) {
+            // never opened here, closing it would drop this JVM's lock
+            if (streaming.contains(temp.getName())) {
+                return true;
+            }
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+            try {
+                FileLock lock = raf.getChannel().tryLock();
+                if (lock == null) {
+                    return true;
+                }
+                lock.release();
+                return false;
+            } finally {
+                raf.close();
+            }
+        } catch (Exception e) {
+            // e.g. it was just deleted
+            return true;
+        }
+    }
+    
+    // helper to tell entries from temporary files
+    private static boolean isEntry(File file) {
+        String name = file.getName();
+        return name.endsWith(".mzXML") || name.endsWith(".mzXML.gz");
+    }
+    
+    // helper to copy a file
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        OutputStream out = new FileOutputStream(to);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                out.write(buf, 0, read);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
@@ -15,16 +15,30 @@
  */
 package org.proteomecommons.io.util;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.ArrayPeakList;
 import org.proteomecommons.io.GenericPeakListWriter;
 import org.proteomecommons.io.OnlyTandemPeakListWriter;
 import org.proteomecommons.io.PeakList;
 import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.PeakListWriter;
+import org.proteomecommons.io.ReusablePeakListReader;
+import org.proteomecommons.io.mgf.MascotGenericFormatPeakListReaderFactory;
 import org.proteomecommons.io.filter.PeakListFilter;
 
 /**
@@ -35,6 +49,12 @@ import org.proteomecommons.io.filter.PeakListFilter;
  * ensure order. Additionally, any custom PeakListFilter instance may be used
  * with this class, simply register it using the addPeakListFilter() method.
  * PeakListFilter objects are applied in the order which they are registered.
+ * 
+ * With more than one thread, see setThreads(), peak lists are read, filtered
+ * and written at the same time: one thread reads, a pool of threads applies
+ * the filters and another thread writes the peak lists in the order they were
+ * read. Only a few peak lists per thread are held at once, the reader waits
+ * for the writer if it falls behind.
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  *
@@ -44,6 +64,12 @@ public class ConvertPeakList {
     
     private boolean skipEmptyPeakLists = true;
     
+    // read all peak lists in to the same buffer
+    private boolean reusePeakLists = false;
+    
+    // the number of threads that filter peak lists, 1 does everything on the calling thread
+    private int threads = 1;
+    
     // keep track of filters to use
     private LinkedList filters = new LinkedList();
     
@@ -92,6 +118,62 @@ public class ConvertPeakList {
         mergePeakLists(new String[]{in},  out);
     }
     
+    /**
+     * Converts each input peak list file to the matching output file. With one thread, the default, vendor files are converted by up to ConverterScheduler.getThreads() external converters at once and each file is written as soon as its conversion is done. With more threads the files are converted several at once, see BatchConvertPeakList. Either way the first file that can't be converted stops the rest.
+     * @param in
+     *            The files to convert.
+     * @param out
+     *            The files to write, one for each input file.
+     */
+    public void convertPeakLists(String[] in, String[] out) {
+        if (threads > 1) {
+            BatchConvertPeakList batch = new BatchConvertPeakList(this);
+            batch.setStopOnFailure(true);
+            try {
+                batch.convert(in, out);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (batch.getFailure() != null) {
+                throw new RuntimeException("Can't handle peak list "+batch.getFailure().getInput(), batch.getFailure().getException());
+            }
+            return;
+        }
+        
+        ConverterScheduler scheduler = new ConverterScheduler(in, ConverterScheduler.getThreads(), false);
+        try {
+            while (scheduler.hasNext()) {
+                ConverterScheduler.Conversion conversion = scheduler.next();
+                String output = out[conversion.getIndex()];
+                PeakListWriter writer = GenericPeakListWriter.getPeakListWriter(output);
+                System.out.println("Making writer: "+output);
+                try {
+                    write(conversion.getReader(), writer);
+                } catch (Exception e){
+                    throw new RuntimeException("Can't handle peak list "+conversion.getFilename(), e);
+                } finally {
+                    conversion.close();
+                }
+                writer.close();
+            }
+        } finally {
+            scheduler.close();
+        }
+    }
+    
+    /**
+     * Makes a converter with the same settings and filters but a different number of threads.
+     */
+    ConvertPeakList copy(int threads) {
+        ConvertPeakList copy = new ConvertPeakList();
+        copy.split = split;
+        copy.skipEmptyPeakLists = skipEmptyPeakLists;
+        copy.reusePeakLists = reusePeakLists;
+        copy.filters.addAll(filters);
+        copy.threads = threads;
+        return copy;
+    }
+    
     /**
      * Merges the given peak lists.
      *
@@ -103,35 +185,167 @@ public class ConvertPeakList {
     public void mergePeakLists(String[] in, String output) {
         PeakListWriter writer = GenericPeakListWriter.getPeakListWriter(output);
         System.out.println("Making writer: "+output);
-        for (int i = 0; i < in.length; i++) {
-            try {
-                PeakListReader reader = GenericPeakListReader.getPeakListReader(in[i]);
-                for (PeakList pl = reader.getPeakList(); pl != null; pl = reader.getPeakList()) {
-                    // conditionally skip blank peak lists
-                    if (this.isSkipEmptyPeakLists() && pl.getPeaks().length == 0) {
-                        continue;
-                    }
-                    // conditionally skip non-MSMS data 
-                    if (pl.getParentPeak() == null && writer instanceof OnlyTandemPeakListWriter) {
-                        OnlyTandemPeakListWriter otplw = (OnlyTandemPeakListWriter)writer;
-                        if (otplw.isIgnoreMS()) {
+        // convert the next files while the current one is written
+        ConverterScheduler scheduler = new ConverterScheduler(in);
+        try {
+            while (scheduler.hasNext()) {
+                ConverterScheduler.Conversion conversion = scheduler.next();
+                try {
+                    write(conversion.getReader(), writer);
+                } catch (Exception e){
+                    throw new RuntimeException("Can't handle peak list "+conversion.getFilename(), e);
+                } finally {
+                    conversion.close();
+                }
+            }
+        } finally {
+            scheduler.close();
+        }
+        writer.close();
+    }
+    
+    // helper to filter and write all of a reader's peak lists
+    private void write(PeakListReader reader, PeakListWriter writer) {
+        if (getThreads() > 1) {
+            writeInParallel(reader, writer);
+            return;
+        }
+        // optionally recycle one buffer for all of the peak lists
+        ArrayPeakList buffer = null;
+        if (isReusePeakLists() && reader instanceof ReusablePeakListReader) {
+            buffer = new ArrayPeakList();
+        }
+        for (PeakList pl = nextPeakList(reader, buffer); pl != null; pl = nextPeakList(reader, buffer)) {
+            // conditionally skip blank peak lists
+            if (this.isSkipEmptyPeakLists() && countPeaks(pl) == 0) {
+                continue;
+            }
+            // conditionally skip non-MSMS data 
+            if (pl.getParentPeak() == null && writer instanceof OnlyTandemPeakListWriter) {
+                OnlyTandemPeakListWriter otplw = (OnlyTandemPeakListWriter)writer;
+                if (otplw.isIgnoreMS()) {
+                    continue;
+                }
+            }
+            // filter
+            pl = filter(pl);
+            // skip bad peak lists
+            if (pl == null) {
+                System.err.println("Bad peak list, skipping.");
+                continue;
+            }
+            // write the results
+            writer.write(pl);
+        }
+    }
+    
+    // helper to read, filter and write peak lists on different threads, keeping their order
+    private void writeInParallel(PeakListReader reader, final PeakListWriter writer) {
+        ExecutorService filterThreads = Executors.newFixedThreadPool(getThreads(), new NamedThreadFactory("peak list filter"));
+        ExecutorService writerThread = Executors.newSingleThreadExecutor(new NamedThreadFactory("peak list writer"));
+        // the peak lists being filtered in the order they were read, the capacity bounds how far reading gets ahead of writing
+        final BlockingQueue<Future<PeakList>> ordered = new ArrayBlockingQueue(getThreads() * 2);
+        // marks the end of the peak lists
+        final Future<PeakList> end = new FutureTask(new Callable<PeakList>() {
+            public PeakList call() {
+                return null;
+            }
+        });
+        try {
+            // write the peak lists as their filtering is done
+            Future writing = writerThread.submit(new Callable() {
+                public Object call() throws Exception {
+                    for (Future<PeakList> next = ordered.take(); next != end; next = ordered.take()) {
+                        PeakList pl = next.get();
+                        // skip bad peak lists
+                        if (pl == null) {
+                            System.err.println("Bad peak list, skipping.");
                             continue;
                         }
+                        writer.write(pl);
                     }
-                    // filter
-                    pl = filter(pl);
-                    // skip bad peak lists
-                    if (pl == null) {
-                        System.err.println("Bad peak list, skipping.");
+                    return null;
+                }
+            });
+            
+            // read the peak lists, a buffer can't be reused because several are filtered at once
+            for (PeakList pl = reader.getPeakList(); pl != null; pl = reader.getPeakList()) {
+                // conditionally skip blank peak lists
+                if (this.isSkipEmptyPeakLists() && countPeaks(pl) == 0) {
+                    continue;
+                }
+                // conditionally skip non-MSMS data 
+                if (pl.getParentPeak() == null && writer instanceof OnlyTandemPeakListWriter) {
+                    OnlyTandemPeakListWriter otplw = (OnlyTandemPeakListWriter)writer;
+                    if (otplw.isIgnoreMS()) {
+                        continue;
                     }
-                    // write the results
-                    writer.write(pl);
                 }
-            } catch (Exception e){
-                throw new RuntimeException("Can't handle peak list "+in[i], e);
+                // filter
+                final PeakList toFilter = pl;
+                enqueue(ordered, filterThreads.submit(new Callable<PeakList>() {
+                    public PeakList call() {
+                        return filter(toFilter);
+                    }
+                }), writing);
             }
+            enqueue(ordered, end, writing);
+            
+            // wait for the writer
+            writing.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Can't write peak list.", e.getCause());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Conversion was prematurely ended!", e);
+        } finally {
+            filterThreads.shutdownNow();
+            writerThread.shutdownNow();
+        }
+    }
+    
+    // helper to wait for room in the queue, giving up if the writer stopped
+    private static void enqueue(BlockingQueue<Future<PeakList>> ordered, Future<PeakList> next, Future writing) throws ExecutionException, InterruptedException {
+        while (!ordered.offer(next, 100, TimeUnit.MILLISECONDS)) {
+            if (writing.isDone()) {
+                // throws whatever stopped the writer
+                writing.get();
+                throw new RuntimeException("The peak list writer stopped early.");
+            }
+        }
+    }
+    
+    // names the pipeline's threads, daemons so that they never keep the JVM running
+    private static class NamedThreadFactory implements ThreadFactory {
+        private String name;
+        
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+        
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
         }
-        writer.close();
+    }
+    
+    // helper to get the next peak list, reading in to the buffer if there is one
+    private static PeakList nextPeakList(PeakListReader reader, ArrayPeakList buffer) {
+        if (buffer == null) {
+            return reader.getPeakList();
+        }
+        if (((ReusablePeakListReader)reader).readInto(buffer)) {
+            return buffer;
+        }
+        return null;
+    }
+    
+    // helper to count peaks without making Peak objects when possible
+    private static int countPeaks(PeakList pl) {
+        if (pl instanceof ArrayPeakList) {
+            return ((ArrayPeakList)pl).size();
+        }
+        return pl.getPeaks().length;
     }
     
     /**
@@ -171,39 +385,120 @@ public class ConvertPeakList {
                     .println("usage: java ConvertPeakList -merge <input file> <input file 2> ... <output file>");
             System.out
                     .println(" e.g.: java ConvertPeakList -merge peaklist.mgf peaklist2.dta merge.mgf");
+            System.out
+                    .println("   or: java ConvertPeakList -batch <input file> <output file> <input file 2> <output file 2> ...");
             System.out
                     .println("\nThis program takes pairs of arguments and uses them to convert peak list files from one format to another. Odd arguments are treated as input. Even arguments are treated as output.");
             System.out.println("\nOptions:");
+            System.out.println("-reuse\tRead all peak lists in to one buffer. Format specific meta-info, e.g. MGF TITLE, isn't kept.");
+            System.out.println("-threads <n>\tFilter peak lists with n threads while they are read and written.");
+            System.out.println("-mgfthreads <n>\tParse MGF files with n threads.");
+            System.out.println("-converters <n>\tRun up to n external converters, e.g. ReAdW.exe, at once.");
+            System.out.println("-timeout <seconds>\tStop external converters that run longer than this.");
+            System.out.println("-manifest <file>\tWith -batch, list finished files here and skip the ones already listed.");
+            System.out.println("-memory <MB>\tWith -batch, only start files while their total size is below this.");
             //				System.out.println("--normalize\tNormalize intensities [0-1]");
             //				System.out.println("--sort\tSort m/z in ascending order");
             return;
         }
         
-        for (int argIndex = 0; argIndex < args.length-1; argIndex++) {
-            // skip non-directives
+        // the converter to use
+        ConvertPeakList cpl = new ConvertPeakList();
+        // batch settings
+        File manifest = null;
+        long memory = -1;
+        // -batch or -merge, and the files it is given
+        String command = null;
+        LinkedList<String> files = new LinkedList();
+        
+        // read all of the options before doing anything, so that their order doesn't matter
+        for (int argIndex = 0; argIndex < args.length; argIndex++) {
+            // keep the files
             if (!args[argIndex].startsWith("-")) {
-                System.out.println("Skipping argument "+args[argIndex]);
+                files.add(args[argIndex]);
                 continue;
             }
             // try all the known options
-            if (args[argIndex].equals("-merge")) {
-                LinkedList inputs = new LinkedList();
-                // assume the output is the last file
-                String output = args[args.length - 1];
-                for (int i = argIndex+1; i < args.length - 1; i++) {
-                    if (args[i].startsWith("-")){
-                        break;
+            if (args[argIndex].equals("-reuse")) {
+                cpl.setReusePeakLists(true);
+            }
+            else if (args[argIndex].equals("-threads")) {
+                argIndex++;
+                cpl.setThreads(Integer.parseInt(args[argIndex]));
+            }
+            else if (args[argIndex].equals("-mgfthreads")) {
+                argIndex++;
+                MascotGenericFormatPeakListReaderFactory.setThreads(Integer.parseInt(args[argIndex]));
+            }
+            else if (args[argIndex].equals("-converters")) {
+                argIndex++;
+                ConverterScheduler.setThreads(Integer.parseInt(args[argIndex]));
+            }
+            else if (args[argIndex].equals("-timeout")) {
+                argIndex++;
+                ConverterScheduler.setTimeout(Long.parseLong(args[argIndex]));
+            }
+            else if (args[argIndex].equals("-manifest")) {
+                argIndex++;
+                manifest = new File(args[argIndex]);
+            }
+            else if (args[argIndex].equals("-memory")) {
+                argIndex++;
+                memory = Long.parseLong(args[argIndex]) * 1024 * 1024;
+            }
+            else if (args[argIndex].equals("-batch") || args[argIndex].equals("-merge")) {
+                command = args[argIndex];
+            }
+            else {
+                System.out.println("Skipping argument "+args[argIndex]);
+            }
+        }
+        
+        if ("-batch".equals(command)) {
+            LinkedList inputs = new LinkedList();
+            LinkedList outputs = new LinkedList();
+            // the files are pairs of input and output
+            for (int i = 0; i < files.size() - 1; i += 2) {
+                inputs.add(files.get(i));
+                outputs.add(files.get(i+1));
+            }
+            
+            // do the batch, saying how each file went as it finishes
+            BatchConvertPeakList batch = new BatchConvertPeakList(cpl) {
+                protected void finished(Result result) {
+                    if (result.getException() != null) {
+                        System.err.println(result);
+                    } else {
+                        System.out.println(result);
                     }
-                    inputs.add(args[i]);
-                    argIndex++;
                 }
-                
-                // do the merge
-                ConvertPeakList cpl = new ConvertPeakList();
-                String[] ins = (String[]) inputs.toArray(new String[0]);
-                cpl.mergePeakLists(ins, output);
+            };
+            batch.setManifest(manifest);
+            if (memory > 0) {
+                batch.setMemory(memory);
+            }
+            BatchConvertPeakList.Result[] results = batch.convert((String[]) inputs.toArray(new String[0]), (String[]) outputs.toArray(new String[0]));
+            // say what failed
+            int failed = 0;
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].getException() != null) {
+                    failed++;
+                }
             }
+            System.out.println("Converted "+(results.length - failed)+" of "+results.length+" files.");
+        }
+        else if ("-merge".equals(command)) {
+            // assume the output is the last file
+            String output = files.removeLast();
             
+            // do the merge
+            String[] ins = (String[]) files.toArray(new String[0]);
+            cpl.mergePeakLists(ins, output);
+        }
+        else {
+            for (String file : files) {
+                System.out.println("Skipping argument "+file);
+            }
         }
     }
 
@@ -214,4 +509,26 @@ public class ConvertPeakList {
     public void setSkipEmptyPeakLists(boolean skipEmptyPeakLists) {
         this.skipEmptyPeakLists = skipEmptyPeakLists;
     }
+    
+    public boolean isReusePeakLists() {
+        return reusePeakLists;
+    }
+    
+    /**
+     * Sets if every peak list should be read in to the same buffer when the reader supports it, see ReusablePeakListReader. This avoids allocating new peak storage for every peak list, but only writers and filters that don't keep a reference to the peak list passed to them may be used, and format specific meta-information isn't preserved. Ignored with more than one thread.
+     */
+    public void setReusePeakLists(boolean reusePeakLists) {
+        this.reusePeakLists = reusePeakLists;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the number of threads that filter peak lists. With more than one, reading, filtering and writing overlap, and the filters must be safe to use from several threads at once. The peak lists are still written in the order they are read.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * The output of an external converter, e.g. ReAdW.exe, read while the converter runs. The converter either writes to its standard output or to a named pipe made where its output file would go, and the data is handed to the reader as it is made, so parsing overlaps the conversion and nothing is written to disk. Converters that have to write a file are run to completion with run().
+ *
+ * The converter's standard error, and its standard output when it isn't the data, are read on their own threads so that it never blocks on a full pipe. If the converter exits with an error, reading the stream throws an IOException with the end of its standard error once the data it did make has been read.
+ *
+ * Converters are started by the ConverterScheduler, which limits how many run at once and stops the ones that run too long.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ConverterInputStream extends FilterInputStream {
+    /**
+     * Run the converter to completion and read the file it writes.
+     */
+    public static final int FILE = 0;
+    /**
+     * Read the converter's standard output while it runs.
+     */
+    public static final int STDOUT = 1;
+    /**
+     * Make a named pipe where the converter writes its output file and read it while the converter runs. Needs mkfifo, i.e. not Windows.
+     */
+    public static final int NAMED_PIPE = 2;
+    
+    // how much of standard error is kept for error messages
+    private static final int MAX_ERROR_SIZE = 4096;
+    
+    // the converter and the named pipe, if there is one
+    private Process process;
+    private File pipe;
+    
+    private ConverterInputStream(InputStream in, Process process, File pipe) {
+        super(in);
+        this.process = process;
+        this.pipe = pipe;
+    }
+    
+    /**
+     * Gets a mode from a system property: "file", "stdout" or "pipe". Anything else means FILE.
+     */
+    public static int getMode(String property) {
+        String mode = System.getProperty(property, "file").trim().toLowerCase();
+        if (mode.equals("stdout")) {
+            return STDOUT;
+        }
+        if (mode.equals("pipe")) {
+            return NAMED_PIPE;
+        }
+        return FILE;
+    }
+    
+    /**
+     * Gets the argument that tells a converter where to write its output.
+     * @param output The file the converter would write.
+     * @param mode FILE, STDOUT or NAMED_PIPE.
+     * @return The path of the file or named pipe, or the "converter.stdout" system property, "-" by default, for STDOUT.
+     */
+    public static String getOutputArgument(File output, int mode) throws IOException {
+        if (mode == STDOUT) {
+            return System.getProperty("converter.stdout", "-");
+        }
+        return output.getCanonicalPath();
+    }
+    
+    /**
+     * Runs a converter to completion, e.g. one that writes a file.
+     * @return The converter's exit code.
+     * @throws IOException If the converter can't be started or was stopped for running longer than ConverterScheduler.getTimeout().
+     */
+    public static int run(String[] commands) throws IOException {
+        Process p = ConverterScheduler.start(commands);
+        try {
+            p.getOutputStream().close();
+            drain(p.getInputStream(), "converter output");
+            Drain errors = drain(p.getErrorStream(), "converter errors");
+            int exitCode = p.waitFor();
+            errors.join();
+            checkTimeout(p, new File(commands[0]).getName());
+            return exitCode;
+        } catch (InterruptedException e) {
+            p.destroy();
+            throw new InterruptedIOException("Conversion was prematurely ended!");
+        }
+    }
+    
+    /**
+     * Starts a converter and returns its output as it is made.
+     * @param commands The converter and its arguments, which must send the output where getOutputArgument() says.
+     * @param output The file the converter would write, made a named pipe for NAMED_PIPE.
+     * @param mode STDOUT or NAMED_PIPE.
+     */
+    public static ConverterInputStream open(String[] commands, final File output, int mode) throws IOException {
+        if (mode != STDOUT && mode != NAMED_PIPE) {
+            throw new IllegalArgumentException("The converter's output can only be read while it runs from standard output or a named pipe.");
+        }
+        if (mode == NAMED_PIPE) {
+            makeNamedPipe(output);
+        }
+        final Process p;
+        try {
+            p = ConverterScheduler.start(commands);
+        } catch (IOException e) {
+            if (mode == NAMED_PIPE) {
+                output.delete();
+            }
+            throw e;
+        }
+        p.getOutputStream().close();
+        final Drain errors = drain(p.getErrorStream(), "converter errors");
+        final String name = new File(commands[0]).getName();
+        
+        ThreadedInputStream.Producer producer = null;
+        if (mode == STDOUT) {
+            producer = new ThreadedInputStream.Producer() {
+                public void produce(OutputStream out) throws IOException {
+                    copy(p.getInputStream(), out);
+                    checkExitCode(p, errors, name);
+                }
+            };
+        } else {
+            drain(p.getInputStream(), "converter output");
+            // opening a named pipe blocks until it is opened for writing, which never happens if the converter fails first
+            final boolean[] opened = new boolean[1];
+            Thread watcher = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        p.waitFor();
+                        synchronized (opened) {
+                            if (opened[0]) {
+                                return;
+                            }
+                        }
+                        new FileOutputStream(output).close();
+                    } catch (Exception e) {
+                        // noop
+                    }
+                }
+            }, "converter watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+            producer = new ThreadedInputStream.Producer() {
+                public void produce(OutputStream out) throws IOException {
+                    InputStream in = new FileInputStream(output);
+                    synchronized (opened) {
+                        opened[0] = true;
+                    }
+                    copy(in, out);
+                    checkExitCode(p, errors, name);
+                }
+            };
+        }
+        return new ConverterInputStream(new ThreadedInputStream(name, producer), p, mode == NAMED_PIPE ? output : null);
+    }
+    
+    /**
+     * Stops the converter if it is still running and removes the named pipe.
+     */
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            process.destroy();
+            if (pipe != null) {
+                pipe.delete();
+            }
+        }
+    }
+    
+    /**
+     * Makes a named pipe with mkfifo, replacing any file that is already there.
+     */
+    public static void makeNamedPipe(File file) throws IOException {
+        file.delete();
+        Process p = Runtime.getRuntime().exec(new String[]{"mkfifo", file.getCanonicalPath()});
+        try {
+            if (p.waitFor() != 0 || !file.exists()) {
+                throw new IOException("Can't make a named pipe at "+file);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted making a named pipe.");
+        }
+    }
+    
+    // helper to copy the data and close its source
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        try {
+            byte[] buf = new byte[ThreadedInputStream.DEFAULT_CHUNK_SIZE];
+            for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                out.write(buf, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+    
+    // helper to throw an error if the converter failed
+    private static void checkExitCode(Process p, Drain errors, String name) throws IOException {
+        try {
+            int exitCode = p.waitFor();
+            errors.join();
+            checkTimeout(p, name);
+            if (exitCode != 0) {
+                throw new IOException(name+" failed with exit code "+exitCode+". "+errors.getTail());
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Conversion was prematurely ended!");
+        }
+    }
+    
+    // helper to throw an error if the converter was stopped for taking too long
+    private static void checkTimeout(Process p, String name) throws IOException {
+        if (ConverterScheduler.isTimedOut(p)) {
+            throw new IOException(name+" was stopped after running longer than "+ConverterScheduler.getTimeout()+" seconds.");
+        }
+    }
+    
+    // helper to read a stream on its own thread
+    private static Drain drain(InputStream in, String name) {
+        Drain drain = new Drain(in, name);
+        drain.start();
+        return drain;
+    }
+    
+    /**
+     * Reads a stream until it ends, keeping the last few KB, e.g. of a converter's standard error.
+     */
+    static class Drain extends Thread {
+        private InputStream in;
+        private ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        
+        Drain(InputStream in, String name) {
+            super(name);
+            this.in = in;
+            // daemon thread so that a hung converter doesn't keep the JVM running
+            setDaemon(true);
+        }
+        
+        public void run() {
+            try {
+                byte[] buf = new byte[1024];
+                for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                    synchronized (tail) {
+                        tail.write(buf, 0, read);
+                        // only keep the end
+                        if (tail.size() > 2 * MAX_ERROR_SIZE) {
+                            byte[] kept = tail.toByteArray();
+                            tail.reset();
+                            tail.write(kept, kept.length - MAX_ERROR_SIZE, MAX_ERROR_SIZE);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // noop, the process is gone
+            } finally {
+                try { in.close(); } catch (Exception e){}
+            }
+        }
+        
+        /**
+         * Returns the last few KB read.
+         */
+        String getTail() {
+            synchronized (tail) {
+                return tail.toString().trim();
+            }
+        }
+    }
+}
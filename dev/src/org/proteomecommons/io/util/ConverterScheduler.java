@@ -0,0 +1,345 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.UnknownFileFormatException;
+
+/**
+ * Schedules external converters, e.g. ReAdW.exe, so that several vendor files are converted at once. Every converter started with start() takes one of a fixed number of slots and waits for a free one if there isn't any, so at most getThreads() converters run at the same time no matter how many files are being read. A converter that runs longer than getTimeout() is stopped.
+ *
+ * An instance opens the readers of a batch of files on a pool of threads, so while one file is parsed the next ones are already being converted. Readers are handed out either in the order of the files or as soon as each one's conversion is done.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ConverterScheduler {
+    // the most converters that run at once, the "converter.threads" system property
+    private static int threads = Integer.getInteger("converter.threads", Runtime.getRuntime().availableProcessors()).intValue();
+    // seconds a converter may run, the "converter.timeout" system property, 0 for no limit
+    private static long timeout = Long.getLong("converter.timeout", 0).longValue();
+    
+    // the number of converters running
+    private static int running = 0;
+    private static final Object lock = new Object();
+    // converters that were stopped for taking too long
+    private static Map timedOut = Collections.synchronizedMap(new WeakHashMap());
+    // stops converters that take too long
+    private static ScheduledExecutorService timer = null;
+    
+    // the files to open and the readers being opened
+    private LinkedList<String> filenames = new LinkedList();
+    private LinkedList<Future<Conversion>> pending = new LinkedList();
+    private int submitted = 0;
+    // the readers that are open but not handed out, closed by close()
+    private LinkedList<Conversion> opened = new LinkedList();
+    private boolean closed = false;
+    private ExecutorService executor;
+    private CompletionService<Conversion> completed = null;
+    private int maxPending;
+    
+    /**
+     * Opens the readers of the given files with getThreads() threads, in the order of the files.
+     */
+    public ConverterScheduler(String[] filenames) {
+        this(filenames, getThreads(), true);
+    }
+    
+    /**
+     * Opens the readers of the given files.
+     * @param threads The number of readers opened at once.
+     * @param ordered True if the readers are handed out in the order of the files, false if they are handed out as soon as they are open.
+     */
+    public ConverterScheduler(String[] filenames, int threads, boolean ordered) {
+        for (int i = 0; i < filenames.length; i++) {
+            this.filenames.add(filenames[i]);
+        }
+        // there is no point in more threads than files, e.g. when a batch converts a file at a time
+        threads = Math.max(1, Math.min(threads, filenames.length));
+        // don't open too far ahead, every open reader may be holding a converted file
+        maxPending = threads * 2;
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "converter scheduler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        if (!ordered) {
+            completed = new ExecutorCompletionService(executor);
+        }
+        submit();
+    }
+    
+    /**
+     * Returns true if there are readers that haven't been handed out.
+     */
+    public boolean hasNext() {
+        return !pending.isEmpty();
+    }
+    
+    /**
+     * Waits for the next reader.
+     * @return The next file and its reader, or null if every reader was handed out.
+     */
+    public Conversion next() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        try {
+            Conversion conversion = null;
+            if (completed == null) {
+                conversion = pending.removeFirst().get();
+            } else {
+                Future<Conversion> done = completed.take();
+                pending.remove(done);
+                conversion = done.get();
+            }
+            synchronized (opened) {
+                opened.remove(conversion);
+            }
+            submit();
+            return conversion;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Conversion was prematurely ended!", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+    
+    /**
+     * Stops opening readers and closes the ones that weren't handed out.
+     */
+    public void close() {
+        filenames.clear();
+        // readers that are still being opened close themselves once this is set
+        synchronized (opened) {
+            closed = true;
+            for (Conversion conversion : opened) {
+                conversion.close();
+            }
+            opened.clear();
+        }
+        // don't wait for the rest, some may never have started
+        executor.shutdownNow();
+        for (Future<Conversion> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+    
+    // helper to keep up to maxPending readers opening
+    private void submit() {
+        while (pending.size() < maxPending && !filenames.isEmpty()) {
+            final String filename = filenames.removeFirst();
+            final int index = submitted++;
+            Callable<Conversion> task = new Callable<Conversion>() {
+                public Conversion call() {
+                    Conversion conversion = new Conversion(filename, index);
+                    try {
+                        conversion.reader = GenericPeakListReader.getPeakListReader(filename);
+                    } catch (Exception e) {
+                        conversion.exception = e;
+                    }
+                    synchronized (opened) {
+                        if (closed) {
+                            conversion.close();
+                        } else {
+                            opened.add(conversion);
+                        }
+                    }
+                    return conversion;
+                }
+            };
+            pending.add(completed == null ? executor.submit(task) : completed.submit(task));
+        }
+    }
+    
+    /**
+     * Starts a converter once there is a free slot. The slot is freed when the converter exits, and the converter is stopped if it runs longer than the timeout.
+     */
+    public static Process start(String[] commands) throws IOException {
+        synchronized (lock) {
+            try {
+                while (running >= Math.max(1, threads)) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted waiting to start a converter.");
+            }
+            running++;
+        }
+        final Process p;
+        try {
+            p = Runtime.getRuntime().exec(commands);
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+        // stop it if it takes too long
+        final Future stopper = timeout > 0 ? getTimer().schedule(new Runnable() {
+            public void run() {
+                timedOut.put(p, Boolean.TRUE);
+                p.destroy();
+            }
+        }, timeout, TimeUnit.SECONDS) : null;
+        // free the slot when it exits
+        Thread watcher = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    p.waitFor();
+                } catch (InterruptedException e) {
+                    p.destroy();
+                } finally {
+                    if (stopper != null) {
+                        stopper.cancel(false);
+                    }
+                    release();
+                }
+            }
+        }, "converter slot");
+        watcher.setDaemon(true);
+        watcher.start();
+        return p;
+    }
+    
+    /**
+     * Returns true if a converter was stopped because it ran longer than the timeout.
+     */
+    public static boolean isTimedOut(Process p) {
+        return timedOut.containsKey(p);
+    }
+    
+    /**
+     * Returns the number of converters running.
+     */
+    public static int getRunning() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+    
+    public static int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the most converters that run at once.
+     */
+    public static void setThreads(int aThreads) {
+        synchronized (lock) {
+            threads = aThreads;
+            lock.notifyAll();
+        }
+    }
+    
+    public static long getTimeout() {
+        return timeout;
+    }
+    
+    /**
+     * Sets the seconds a converter may run before it is stopped, 0 for no limit. Only converters started afterwards are affected.
+     */
+    public static void setTimeout(long aTimeout) {
+        timeout = aTimeout;
+    }
+    
+    // helper to free a slot
+    private static void release() {
+        synchronized (lock) {
+            running--;
+            lock.notifyAll();
+        }
+    }
+    
+    // helper to make the timer the first time it is needed
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "converter timeout");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return timer;
+    }
+    
+    /**
+     * A file and its reader, or the reason it couldn't be read.
+     */
+    public static class Conversion {
+        private String filename;
+        private int index;
+        private PeakListReader reader = null;
+        private Exception exception = null;
+        
+        Conversion(String filename, int index) {
+            this.filename = filename;
+            this.index = index;
+        }
+        
+        public String getFilename() {
+            return filename;
+        }
+        
+        /**
+         * Returns the index of the file in the files given to the scheduler.
+         */
+        public int getIndex() {
+            return index;
+        }
+        
+        /**
+         * Returns the reader, or throws the exception that opening it threw.
+         */
+        public PeakListReader getReader() throws UnknownFileFormatException {
+            if (exception instanceof UnknownFileFormatException) {
+                throw (UnknownFileFormatException) exception;
+            }
+            if (exception != null) {
+                throw (RuntimeException) exception;
+            }
+            return reader;
+        }
+        
+        /**
+         * Closes the reader, if it was opened.
+         */
+        public void close() {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An InputStream whose data is made by another thread, e.g. a decompressor, and handed over in chunks through a bounded buffer. Making the data and parsing it overlap, and the producer can only get a few chunks ahead of the reader, so memory use stays bounded.
+ *
+ * Errors thrown by the producer are thrown by read() once the data before the error has been read. Closing the stream stops the producer.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ThreadedInputStream extends InputStream {
+    /**
+     * The default number of bytes in a chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    /**
+     * The default number of chunks the producer can get ahead of the reader.
+     */
+    public static final int DEFAULT_CHUNKS = 16;
+    
+    // marks the end of the data
+    private static final byte[] END = new byte[0];
+    
+    /**
+     * Makes the data of a ThreadedInputStream. The producer is run by the stream's own thread.
+     */
+    public interface Producer {
+        /**
+         * Writes all of the data to the given stream. Implementations should close their own input when done, even if writing fails.
+         */
+        public void produce(OutputStream out) throws IOException;
+    }
+    
+    // the chunks made but not yet read
+    private BlockingQueue<byte[]> chunks;
+    private int chunkSize;
+    
+    // the chunk being read
+    private byte[] current = null;
+    private int position = 0;
+    private boolean ended = false;
+    
+    // the producer's error, if any
+    private volatile Throwable error = null;
+    private volatile boolean closed = false;
+    private Thread thread;
+    
+    /**
+     * Make a stream with the default buffer size.
+     * @param name The name of the producer's thread.
+     */
+    public ThreadedInputStream(String name, Producer producer) {
+        this(name, producer, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+    }
+    
+    /**
+     * Make a new stream and start the producer.
+     * @param name The name of the producer's thread.
+     * @param chunkSize The number of bytes in a chunk.
+     * @param maxChunks The most chunks the producer can get ahead of the reader.
+     */
+    public ThreadedInputStream(String name, final Producer producer, int chunkSize, int maxChunks) {
+        if (chunkSize < 1 || maxChunks < 1) {
+            throw new IllegalArgumentException("Chunk size and chunks must be positive.");
+        }
+        this.chunkSize = chunkSize;
+        this.chunks = new ArrayBlockingQueue(maxChunks);
+        
+        // daemon thread so that an unclosed stream doesn't keep the JVM running
+        thread = new Thread(new Runnable() {
+            public void run() {
+                ChunkOutputStream out = new ChunkOutputStream();
+                try {
+                    producer.produce(out);
+                    out.send();
+                } catch (Throwable t) {
+                    error = t;
+                    // hand over what was made before the error
+                    try {
+                        out.send();
+                    } catch (IOException e) {
+                        // noop, closed
+                    }
+                } finally {
+                    // always mark the end, unless no one is reading
+                    try {
+                        if (!closed) {
+                            chunks.put(END);
+                        }
+                    } catch (InterruptedException e) {
+                        // noop, closed
+                    }
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Makes a stream that reads another stream on its own thread, e.g. a GZIPInputStream so that inflating is done in the background. The other stream is closed when it is used up or this stream is closed.
+     */
+    public static ThreadedInputStream readAhead(String name, final InputStream in) {
+        return new ThreadedInputStream(name, new Producer() {
+            public void produce(OutputStream out) throws IOException {
+                try {
+                    byte[] buf = new byte[DEFAULT_CHUNK_SIZE];
+                    for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                        out.write(buf, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        });
+    }
+    
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+    
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+    
+    public int available() throws IOException {
+        if (current == null || ended) {
+            return 0;
+        }
+        return current.length - position;
+    }
+    
+    /**
+     * Stops the producer and throws away any data that hasn't been read.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current = null;
+        thread.interrupt();
+        chunks.clear();
+    }
+    
+    // helper to make sure there is data left in the current chunk, false at the end of the data
+    private boolean nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        while (!ended && (current == null || position >= current.length)) {
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted waiting for data.");
+            }
+            position = 0;
+            if (current == END) {
+                ended = true;
+            }
+        }
+        if (ended) {
+            // the data ended early if the producer failed
+            if (error != null) {
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                }
+                IOException e = new IOException("Can't make the data: " + error.getMessage());
+                e.initCause(error);
+                throw e;
+            }
+            return false;
+        }
+        return true;
+    }
+    
+    // collects what the producer writes in to chunks
+    private class ChunkOutputStream extends OutputStream {
+        private byte[] chunk = new byte[chunkSize];
+        private int size = 0;
+        
+        public void write(int b) throws IOException {
+            if (size == chunk.length) {
+                send();
+            }
+            chunk[size++] = (byte) b;
+        }
+        
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == chunk.length) {
+                    send();
+                }
+                int count = Math.min(len, chunk.length - size);
+                System.arraycopy(b, off, chunk, size, count);
+                size += count;
+                off += count;
+                len -= count;
+            }
+        }
+        
+        /**
+         * Does nothing, chunks are only handed over when full so that producers that flush often don't make lots of small chunks.
+         */
+        public void flush() {
+        }
+        
+        // helper to hand over the current chunk
+        void send() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed by the reader.");
+            }
+            if (size == 0) {
+                return;
+            }
+            byte[] full = chunk;
+            if (size < full.length) {
+                full = new byte[size];
+                System.arraycopy(chunk, 0, full, 0, size);
+            }
+            try {
+                chunks.put(full);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Stream closed by the reader.");
+            }
+            chunk = new byte[chunkSize];
+            size = 0;
+        }
+    }
+}
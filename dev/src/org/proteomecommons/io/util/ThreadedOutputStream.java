@@ -0,0 +1,265 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An OutputStream whose data is used by another thread, e.g. a compressor, and handed over in chunks through a bounded buffer. It is the other end of a ThreadedInputStream: writing the data and using it overlap, and the writer can only get a few chunks ahead of the consumer, so memory use stays bounded.
+ *
+ * Errors thrown by the consumer are thrown by the next write() or by close(). Closing the stream waits for the consumer to finish.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ThreadedOutputStream extends OutputStream {
+    // marks the end of the data
+    private static final byte[] END = new byte[0];
+    
+    /**
+     * Uses the data of a ThreadedOutputStream. The consumer is run by the stream's own thread.
+     */
+    public interface Consumer {
+        /**
+         * Reads all of the data from the given stream. Implementations should close their own output when done, even if reading fails.
+         */
+        public void consume(InputStream in) throws IOException;
+    }
+    
+    // the chunks written but not yet used
+    private BlockingQueue<byte[]> chunks;
+    private int chunkSize;
+    private byte[] chunk;
+    private int size = 0;
+    
+    // the consumer's error, if any
+    private volatile Throwable error = null;
+    private volatile boolean finished = false;
+    private boolean closed = false;
+    private Thread thread;
+    
+    /**
+     * Make a stream with the default buffer size.
+     * @param name The name of the consumer's thread.
+     */
+    public ThreadedOutputStream(String name, Consumer consumer) {
+        this(name, consumer, ThreadedInputStream.DEFAULT_CHUNK_SIZE, ThreadedInputStream.DEFAULT_CHUNKS);
+    }
+    
+    /**
+     * Make a new stream and start the consumer.
+     * @param name The name of the consumer's thread.
+     * @param chunkSize The number of bytes in a chunk.
+     * @param maxChunks The most chunks the writer can get ahead of the consumer.
+     */
+    public ThreadedOutputStream(String name, final Consumer consumer, int chunkSize, int maxChunks) {
+        if (chunkSize < 1 || maxChunks < 1) {
+            throw new IllegalArgumentException("Chunk size and chunks must be positive.");
+        }
+        this.chunkSize = chunkSize;
+        this.chunk = new byte[chunkSize];
+        this.chunks = new ArrayBlockingQueue(maxChunks);
+        
+        // daemon thread so that an unclosed stream doesn't keep the JVM running
+        thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    consumer.consume(new ChunkInputStream());
+                } catch (Throwable t) {
+                    error = t;
+                } finally {
+                    // let a waiting writer know that nothing else will be read
+                    finished = true;
+                    chunks.clear();
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Makes a stream that writes to another stream on its own thread, e.g. a GZIPOutputStream so that deflating is done in the background. The other stream is closed when this stream is closed.
+     */
+    public static ThreadedOutputStream writeBehind(String name, final OutputStream out) {
+        return new ThreadedOutputStream(name, new Consumer() {
+            public void consume(InputStream in) throws IOException {
+                try {
+                    byte[] buf = new byte[ThreadedInputStream.DEFAULT_CHUNK_SIZE];
+                    for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                        out.write(buf, 0, read);
+                    }
+                } finally {
+                    out.close();
+                }
+            }
+        });
+    }
+    
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (size == chunk.length) {
+            send();
+        }
+        chunk[size++] = (byte) b;
+    }
+    
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (size == chunk.length) {
+                send();
+            }
+            int count = Math.min(len, chunk.length - size);
+            System.arraycopy(b, off, chunk, size, count);
+            size += count;
+            off += count;
+            len -= count;
+        }
+    }
+    
+    /**
+     * Does nothing, chunks are only handed over when full so that writers that flush often don't make lots of small chunks. Everything is handed over by close().
+     */
+    public void flush() {
+    }
+    
+    /**
+     * Hands over the last of the data and waits for the consumer to finish.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            // the embedded stream may have been closed by a writer that ignores errors
+            checkError();
+            return;
+        }
+        closed = true;
+        try {
+            send();
+            put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the consumer.");
+        }
+        checkError();
+    }
+    
+    // helper to hand over the current chunk
+    private void send() throws IOException {
+        checkError();
+        if (size == 0) {
+            return;
+        }
+        byte[] full = chunk;
+        if (size < full.length) {
+            full = new byte[size];
+            System.arraycopy(chunk, 0, full, 0, size);
+        }
+        try {
+            put(full);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted waiting for the consumer.");
+        }
+        chunk = closed ? null : new byte[chunkSize];
+        size = 0;
+    }
+    
+    // helper to check that the stream can be written
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+    
+    // helper to queue a chunk, giving up if the consumer stops reading
+    private void put(byte[] full) throws IOException, InterruptedException {
+        while (!chunks.offer(full, 100, TimeUnit.MILLISECONDS)) {
+            if (finished) {
+                checkError();
+                throw new IOException("The consumer stopped reading.");
+            }
+        }
+    }
+    
+    // helper to throw the consumer's error
+    private void checkError() throws IOException {
+        if (error == null) {
+            return;
+        }
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        IOException e = new IOException("Can't use the data: " + error.getMessage());
+        e.initCause(error);
+        throw e;
+    }
+    
+    // reads the chunks for the consumer
+    private class ChunkInputStream extends InputStream {
+        private byte[] current = null;
+        private int position = 0;
+        private boolean ended = false;
+        
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            return current[position++] & 0xff;
+        }
+        
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+        
+        public int available() {
+            if (current == null || ended) {
+                return 0;
+            }
+            return current.length - position;
+        }
+        
+        // helper to make sure there is data left in the current chunk, false at the end of the data
+        private boolean nextChunk() throws IOException {
+            while (!ended && (current == null || position >= current.length)) {
+                try {
+                    current = chunks.take();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted waiting for data.");
+                }
+                position = 0;
+                if (current == END) {
+                    ended = true;
+                }
+            }
+            return !ended;
+        }
+    }
+}
@@ -17,20 +17,32 @@
 package org.proteomecommons.io.wiff;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import org.proteomecommons.io.PeakListReader;
 import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.util.ConversionCache;
+import org.proteomecommons.io.util.ConverterInputStream;
 
 /**
  *<p>A wrapping PeakListReader instance that will convert WIFF files using the wiff2dta tool.</p>
+ *<p>wiff2dta always writes its mzXML next to the WIFF file. The file is either read once wiff2dta is done, or it is made a named pipe and read while wiff2dta runs, see setOutput(). If there is a ConversionCache, WIFF files that were converted before aren't converted again.</p>
  * @author Jayson Falkner - jfalkner@umich.edu
  */
 public class WiffViaWiffToDtaFactory implements PeakListReaderFactory {
+    // how wiff2dta's output is read, the "wiff2dta.output" system property: "file" or "pipe"
+    private static int output = ConverterInputStream.getMode("wiff2dta.output");
+    
     public PeakListReader newInstance(String filename) {
         try {
             // save the IO to a file
             File inputFile = new File(filename);
             
+            // skip the conversion if it was done before
+            File cached = ConversionCache.get(inputFile);
+            if (cached != null) {
+                return new WiffViaWiffToDtaPeakListReader(cached.getCanonicalPath(), new File[0]);
+            }
+            
             // pick a file for the conversion
             String path = inputFile.getCanonicalPath();
             File outputFile = new File(path.substring(0, path.length()-5)+ ".mzXML");
@@ -62,27 +74,26 @@ public class WiffViaWiffToDtaFactory implements PeakListReaderFactory {
             
             // use wiff2dta to conver to mzxml
             String[] commands = new String[]{program.getCanonicalPath(), "/auto", "/wifffile", inputFile.getCanonicalPath(), "/outputmzxml", "1"};
-            // execute
-            Runtime r = Runtime.getRuntime();
-            Process p = r.exec(commands);
             
-//            // debug output
-//            InputStream pipeIn = p.getInputStream();
-//            try {
-//                for (int i=pipeIn.read();i!=-1;i=pipeIn.read()) {
-//                    System.out.print((char)i);
-//                }
-//            } finally {
-//                pipeIn.close();
-//            }
+            // parse the mzXML as wiff2dta makes it, it can't write to standard output
+            if (getOutput() != ConverterInputStream.FILE) {
+                return new WiffViaWiffToDtaPeakListReader(ConversionCache.cacheWhileReading(inputFile, ConverterInputStream.open(commands, outputFile, ConverterInputStream.NAMED_PIPE)), outputFile.getName());
+            }
             
             // wait for it....
-            p.waitFor();
+            int exitCode = ConverterInputStream.run(commands);
             
-            // return a mzXML reader
-            FileInputStream fis = new FileInputStream(outputFile);
+            // check that the output file exists
+            if (!outputFile.exists()) {
+                throw new FileNotFoundException(outputFile.getCanonicalPath());
+            }
+            // keep the mzXML for next time
+            if (exitCode == 0 && ConversionCache.isEnabled()) {
+                cached = ConversionCache.put(inputFile, outputFile);
+                return new WiffViaWiffToDtaPeakListReader(cached.getCanonicalPath(), new File[0]);
+            }
             // send the resources and politely ask for them to be deleted
-            return new WiffViaWiffToDtaPeakListReader(filename, new File[]{outputFile});
+            return new WiffViaWiffToDtaPeakListReader(outputFile.getCanonicalPath(), new File[]{outputFile});
             
         } catch (Exception e) {
             e.printStackTrace();
@@ -90,4 +101,16 @@ public class WiffViaWiffToDtaFactory implements PeakListReaderFactory {
         }
         
     }
+    
+    public static int getOutput() {
+        return output;
+    }
+    
+    /**
+     * Sets how wiff2dta's output is read by new readers.
+     * @param aOutput ConverterInputStream.FILE or NAMED_PIPE, STDOUT is read from a named pipe too.
+     */
+    public static void setOutput(int aOutput) {
+        output = aOutput;
+    }
 }
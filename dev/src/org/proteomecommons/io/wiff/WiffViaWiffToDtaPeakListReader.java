@@ -17,7 +17,9 @@
 package org.proteomecommons.io.wiff;
 
 import java.io.File;
+import java.io.InputStream;
 import org.proteomecommons.io.mzxml.MzXMLPeakListReader;
+import org.proteomecommons.io.util.ConversionCache;
 
 /**
  *<p>A custom WIFF file reader that uses the WIFFToDTA tool. See the documentation included with the IO framework about ensuring that you have the required native Windows libraries to use this code.</p>
@@ -26,10 +28,21 @@ import org.proteomecommons.io.mzxml.MzXMLPeakListReader;
  */
 public class WiffViaWiffToDtaPeakListReader extends MzXMLPeakListReader {
     private File[] toDeleteOnClose;
+    // the mzXML to give back to the conversion cache, null once it is or if it was streamed
+    private File cached = null;
     
     public WiffViaWiffToDtaPeakListReader(String filename, File[] toDeleteOnClose) {
         super(filename);
         this.toDeleteOnClose = toDeleteOnClose;
+        this.cached = new File(filename);
+    }
+    
+    /**
+     * Reads wiff2dta's output as it is made, there is no intermediate file.
+     */
+    public WiffViaWiffToDtaPeakListReader(InputStream in, String name) {
+        super(in, name);
+        this.toDeleteOnClose = new File[0];
     }
     
     public void close() {
@@ -39,5 +52,10 @@ public class WiffViaWiffToDtaPeakListReader extends MzXMLPeakListReader {
         for (File f : toDeleteOnClose) {
             try {f.delete(); } catch (Exception e){}
         }
+        // let the cache delete the mzXML if it came from there
+        if (cached != null) {
+            ConversionCache.release(cached);
+            cached = null;
+        }
     }
 }
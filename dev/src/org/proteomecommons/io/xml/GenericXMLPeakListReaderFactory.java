@@ -15,21 +15,30 @@
  */
 package org.proteomecommons.io.xml;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.proteomecommons.io.GenericPeakListReader;
 import org.proteomecommons.io.PeakListReader;
-import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.StreamPeakListReaderFactory;
 
 /**
  * A custom factory for generating MZXMLPeakListReader classes.
  *
  * @author Jarret Falkner  - jar@cs.washington.edu
  */
-public class GenericXMLPeakListReaderFactory implements PeakListReaderFactory {
+public class GenericXMLPeakListReaderFactory implements StreamPeakListReaderFactory {
+    // how much of a stream is buffered while looking for the schema
+    private static final int HEADER_SIZE = 64 * 1024;
+    
     // map of factories
     private static Set<XMLPeakListReaderFactory> xmlFactories = new HashSet();
     static {
@@ -101,4 +110,46 @@ public class GenericXMLPeakListReaderFactory implements PeakListReaderFactory {
         // throw a file format exception
         throw new RuntimeException("Can't file a reader for "+filename);
     }
+    
+    /**
+     * Looks for the schema in the start of the stream, then hands the whole stream to the matching reader.
+     *
+     * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+     */
+    public PeakListReader newInstance(InputStream in, String name) {
+        // buffer the start of the stream so that it can be read again
+        BufferedInputStream bis = new BufferedInputStream(in, HEADER_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        int length = 0;
+        try {
+            bis.mark(HEADER_SIZE);
+            for (int read = 0; read != -1 && length < header.length; read = bis.read(header, length, header.length - length)) {
+                length += read;
+            }
+            bis.reset();
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read "+name, e);
+        }
+        
+        // find the name that matches
+        for (XMLPeakListReaderFactory key : xmlFactories) {
+            Pattern p = Pattern.compile(key.getSchemaURIRegex());
+            try {
+                // schema URIs are ASCII
+                BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(header, 0, length), "ISO-8859-1"));
+                int lineCount = 0;
+                for (String line = br.readLine(); lineCount < 20 && line!= null; line = br.readLine()) {
+                    lineCount++;
+                    if (p.matcher(line).matches()) {
+                        return GenericPeakListReader.getPeakListReader(key, bis, name);
+                    }
+                }
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        
+        // throw a file format exception
+        throw new RuntimeException("Can't file a reader for "+name);
+    }
 }
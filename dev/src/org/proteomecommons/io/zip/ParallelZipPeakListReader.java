@@ -0,0 +1,211 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.zip;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.UnknownFileFormatException;
+import org.proteomecommons.io.util.ThreadedInputStream;
+
+/**
+ * Reads the peak lists of every entry in a ZIP file that is in a known format with several threads. The entries are opened with ZipFile, which can read any entry at any time, and each one is inflated and parsed on its own thread. Peak lists are returned in the order the entries are in the ZIP, as ZipPeakListReader would return them.
+ *
+ * Only a few entries are parsed ahead of the caller, but all of an entry's peak lists are held in memory until they are read. A ZIP with one entry in a known format is parsed as it is read instead.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelZipPeakListReader extends GenericPeakListReader {
+    // the ZIP and the entries left to submit
+    private ZipFile zip;
+    private Iterator<ZipEntry> entries;
+    // the reader of a ZIP with just one entry
+    private PeakListReader single = null;
+    
+    // the threads and the entries they are parsing, in ZIP order
+    private ExecutorService pool;
+    private LinkedList<Future<List<PeakList>>> pending = new LinkedList();
+    private int maxPending;
+    
+    // the peak lists of the current entry
+    private Iterator<PeakList> current = null;
+    
+    /**
+     * Make a reader that uses a thread per processor.
+     */
+    public ParallelZipPeakListReader(String filename) {
+        this(filename, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Make a new reader.
+     * @param threads The number of threads parsing entries.
+     */
+    public ParallelZipPeakListReader(String filename, int threads) {
+        super(filename);
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+        try {
+            zip = new ZipFile(filename);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read "+filename, e);
+        }
+        try {
+            List<ZipEntry> known = getEntries(zip);
+            if (known.size() == 0) {
+                throw new RuntimeException("Can't find any files to read!");
+            }
+            if (known.size() == 1) {
+                single = open(known.get(0));
+                return;
+            }
+            entries = known.iterator();
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        this.maxPending = threads * 2;
+        // daemon threads so that an unclosed reader doesn't keep the JVM running
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ZIP entry parser");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        submitEntries();
+    }
+    
+    /**
+     * Returns the entries of a ZIP that are in a known format, in ZIP order.
+     */
+    public static List<ZipEntry> getEntries(ZipFile zip) {
+        ArrayList<ZipEntry> known = new ArrayList();
+        for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+            ZipEntry ze = e.nextElement();
+            if (ze.isDirectory()) {
+                continue;
+            }
+            try {
+                GenericPeakListReader.getPeakListReaderFactory(ze.getName());
+                known.add(ze);
+            } catch (UnknownFileFormatException ufe) {
+                // noop, skip it
+            }
+        }
+        return known;
+    }
+    
+    public PeakList getPeakList() {
+        if (single != null || zip == null) {
+            return single != null ? single.getPeakList() : null;
+        }
+        while (current == null || !current.hasNext()) {
+            // check if everything was read
+            if (pending.isEmpty()) {
+                current = null;
+                return null;
+            }
+            // get the next entry
+            try {
+                current = pending.removeFirst().get().iterator();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Can't parse "+getName(), e.getCause());
+            }
+            // keep the threads busy
+            submitEntries();
+        }
+        return current.next();
+    }
+    
+    // helper to queue up entries to parse
+    private void submitEntries() {
+        while (pending.size() < maxPending && entries.hasNext()) {
+            final ZipEntry ze = entries.next();
+            pending.add(pool.submit(new Callable<List<PeakList>>() {
+                public List<PeakList> call() throws Exception {
+                    return parse(ze);
+                }
+            }));
+        }
+    }
+    
+    // helper to parse all the peak lists of an entry
+    private List<PeakList> parse(ZipEntry ze) throws IOException {
+        ArrayList<PeakList> peaklists = new ArrayList();
+        PeakListReader reader = GenericPeakListReader.getPeakListReader(getFactory(ze), zip.getInputStream(ze), ze.getName());
+        try {
+            for (PeakList pl = reader.getPeakList(); pl != null; pl = reader.getPeakList()) {
+                peaklists.add(pl);
+            }
+        } finally {
+            reader.close();
+        }
+        return peaklists;
+    }
+    
+    // helper to open an entry that is inflated in the background
+    private PeakListReader open(ZipEntry ze) {
+        try {
+            return GenericPeakListReader.getPeakListReader(getFactory(ze), ThreadedInputStream.readAhead("ZIP inflater", zip.getInputStream(ze)), ze.getName());
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read "+getName(), e);
+        }
+    }
+    
+    // helper to get the factory of an entry known to be in a known format
+    private static PeakListReaderFactory getFactory(ZipEntry ze) {
+        try {
+            return GenericPeakListReader.getPeakListReaderFactory(ze.getName());
+        } catch (UnknownFileFormatException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        pending.clear();
+        current = null;
+        if (single != null) {
+            try { single.close(); } catch (Exception e){}
+            single = null;
+        }
+        if (zip != null) {
+            try { zip.close(); } catch (Exception e){}
+            zip = null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.zip;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.PeakListReaderFactory;
+import org.proteomecommons.io.UnknownFileFormatException;
+
+/**
+ * Reads the peak lists of every entry in a ZIP that is in a known format, in the order the entries are in the ZIP, as if they were one file. Entries in unknown formats and directories are skipped. The ZIP is read as a stream, one entry at a time, so it works for ZIPs that aren't files. ParallelZipPeakListReader parses several entries at once when the ZIP is a file.
+ *
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ZipPeakListReader extends GenericPeakListReader {
+    // the ZIP
+    private ZipInputStream zis;
+    // the reader of the current entry
+    private PeakListReader current = null;
+    
+    /**
+     * Make a new reader.
+     * @param in The ZIP, closed when the reader is closed.
+     * @param name The name of the ZIP.
+     */
+    public ZipPeakListReader(InputStream in, String name) {
+        super(name);
+        zis = new ZipInputStream(in);
+        try {
+            if (!nextEntry()) {
+                throw new RuntimeException("Can't find any files to read!");
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    public PeakList getPeakList() {
+        while (current != null) {
+            PeakList peaklist = current.getPeakList();
+            if (peaklist != null) {
+                return peaklist;
+            }
+            current.close();
+            current = null;
+            nextEntry();
+        }
+        return null;
+    }
+    
+    // helper to start reading the next entry in a known format, false if there are no more
+    private boolean nextEntry() {
+        try {
+            for (ZipEntry ze = zis.getNextEntry(); ze != null; ze = zis.getNextEntry()) {
+                if (ze.isDirectory()) {
+                    continue;
+                }
+                try {
+                    PeakListReaderFactory plrf = GenericPeakListReader.getPeakListReaderFactory(ze.getName());
+                    // readers close their stream when they are done, which mustn't close the ZIP
+                    InputStream entry = new FilterInputStream(zis) {
+                        public void close() throws IOException {
+                            zis.closeEntry();
+                        }
+                    };
+                    current = GenericPeakListReader.getPeakListReader(plrf, entry, ze.getName());
+                    return true;
+                } catch (UnknownFileFormatException ufe) {
+                    // noop, skip it
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read "+getName(), e);
+        }
+    }
+    
+    public void close() {
+        if (current != null) {
+            try { current.close(); } catch (Exception e){}
+            current = null;
+        }
+        try { zis.close(); } catch (Exception e){}
+    }
+}
@@ -15,78 +15,59 @@
  */
 package org.proteomecommons.io.zip;
 
-import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 import org.proteomecommons.io.*;
-import org.proteomecommons.io.util.DeleteFilesPeakListReaderWrapper;
 
 /**
  * This is a factory for creating custom ZIP readers. The class is used to
  * provide seamless support for reading a known format that has been compressed
  * using ZIP format. Simply pass the compressed file and this class will take
  * care of uncompressing it and parsing the contents of the file using the
- * appropriate peak list reader object.
+ * appropriate peak list reader object. Every entry in a known format is read,
+ * in ZIP order, as one stream of peak lists, an entry at a time by a
+ * ZipPeakListReader. Optionally ZIP files are parsed with several threads by a
+ * ParallelZipPeakListReader, which holds all of the peak lists of the entries
+ * it parses ahead in memory, see setThreads().
  *
  * @author Jayson Falkner - jfalkner@umich.edu
  */
-public class ZipPeakListReaderFactory implements PeakListReaderFactory {
+public class ZipPeakListReaderFactory implements StreamPeakListReaderFactory {
+    // threads parsing entries, the "zip.threads" system property, 1 streams the entries
+    private static int threads = Integer.getInteger("zip.threads", 1).intValue();
+    
+    public static int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Sets the number of threads that new readers of ZIP files parse entries with. Less than 2, the default, streams the entries one at a time. More parses several entries at once, but every peak list of those entries is kept in memory until it is read, so only use it for ZIPs of many small entries.
+     */
+    public static void setThreads(int threads) {
+        ZipPeakListReaderFactory.threads = threads;
+    }
     
     /**
      * @see org.proteomecommons.io.PeakListReaderFactory#newInstance(java.io.InputStream)
      */
     public PeakListReader newInstance(String filename) {
+        if (threads > 1) {
+            return new ParallelZipPeakListReader(filename, threads);
+        }
         try {
-            // unzip the files to that directory
-            FileInputStream is = new FileInputStream(filename);
-            // read the input stream as ZIP
-            ZipInputStream zis = new ZipInputStream(is);
-            // get the appropriate file to handle it
-            for (ZipEntry ze = zis.getNextEntry();ze != null; ze = zis.getNextEntry()) {
-                try {
-                    // split to min
-                    String name = ze.getName();
-                    String[] split = name.split("/");
-                    if (split[0].equals(".")) {
-                        name = split[1];
-                    } else {
-                        name = split[0];
-                    }
-                    // extract the file
-                    File file = new File(name);
-                    
-                    // try to get a peak list reader factory
-                    PeakListReaderFactory plrf = GenericPeakListReader.getPeakListReaderFactory(ze.getName());
-                    
-                    // send the output to disk
-                    FileOutputStream fos = new FileOutputStream(file);
-                    byte[] buffer = new byte[10000];
-                    for (int bytesRead = zis.read(buffer);bytesRead != -1;bytesRead = zis.read(buffer)) {
-                        fos.write(buffer, 0, bytesRead);
-                    }
-                    fos.flush();
-                    fos.close();
-                    
-                    // return the peak list reader
-                    PeakListReader plr = plrf.newInstance(file.getCanonicalPath());
-                    DeleteFilesPeakListReaderWrapper plrw = new DeleteFilesPeakListReaderWrapper(plr, new File[]{file});
-                    
-                    // return the wrapped peak list
-                    return plrw;
-                }catch (UnknownFileFormatException ufe) {
-                    // noop
-                }
-            }
-            
-            
-            throw new RuntimeException("Can't find any files to read!");
-        } catch (Exception e) {
+            return newInstance(new FileInputStream(filename), filename);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        
+    }
+    
+    /**
+     * @see org.proteomecommons.io.StreamPeakListReaderFactory#newInstance(java.io.InputStream, java.lang.String)
+     */
+    public PeakListReader newInstance(InputStream in, String name) {
+        return new ZipPeakListReader(in, name);
     }
     
     /**
@@ -16,12 +16,11 @@
 package org.proteomecommons.io.zip;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.proteomecommons.io.CompressedPeakListWriter;
-import org.proteomecommons.io.GenericPeakListWriter;
 
 /**
  *
@@ -33,7 +32,8 @@ public class ZipPeakListWriter extends CompressedPeakListWriter {
         ".zip"
     };
     String extensionToUse = null;
-    File tempFile;
+    // the name of the zip entry
+    String entryName;
     
     public ZipPeakListWriter(String filename) {
         super(filename);
@@ -53,60 +53,31 @@ public class ZipPeakListWriter extends CompressedPeakListWriter {
         
         // trim the filename
         filename = filename.substring(0, filename.length()-extensionToUse.length());
-
-        // set up the temp file
-        File file = new File(filename);
-        File dir = file.getParentFile();
-        // make the temp file
-        tempFile = new File(dir, "_todelete."+file.getName());
-        tempFile.deleteOnExit();
+        // the entry is named after the uncompressed file
+        entryName = new File(filename).getName();
         
-        // get an embedded peak list writer
-        setEmbedded(GenericPeakListWriter.getPeakListWriter(tempFile.getAbsolutePath()));
+        // get an embedded peak list writer, which writes straight in to the compressor if it can
+        setEmbedded(filename);
     }
     
     /**
-     *Here is where the magic happens. This close() method saves the normal peak list file, makes a compressed form of it named with a new extension, then deletes the original.
+     * Writes the data as the only entry of the zip.
      */
-    public void close() {
-        // close the embedded
-        getEmbedded().close();
-        
-        // figure out where the compressed file should be
-        File compressedFile = new File(getFilename());
-        
-        // make a zip
-        FileOutputStream fos = null;
-        ZipOutputStream zos = null;
-        FileInputStream fis = null;
+    protected void compress(InputStream in) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(openFile());
         try {
-            fos = new FileOutputStream(compressedFile);
-            zos = new ZipOutputStream(fos);
-            fis = new FileInputStream(tempFile);
             // write the entry
-            ZipEntry ze = new ZipEntry(tempFile.getName().split("_todelete.")[1]);
-            ze.setSize(tempFile.length());
+            ZipEntry ze = new ZipEntry(entryName);
             ze.setComment("Created by the ProteomeCommons.org IO Framework - http://www.proteomecommons.org");
             zos.putNextEntry(ze);
-            byte[] buf = new byte[10000];
-            for (int bytesRead = fis.read(buf);bytesRead != -1; bytesRead = fis.read(buf)) {
+            byte[] buf = new byte[64*1024];
+            for (int bytesRead = in.read(buf);bytesRead != -1; bytesRead = in.read(buf)) {
                 zos.write(buf, 0, bytesRead);
             }
             zos.closeEntry();
             zos.finish();
-            zos.flush();
-            zos.close();
-        } catch (Exception e){
-            throw new RuntimeException("Can't create ZIP file "+compressedFile, e);
         } finally {
-            try { fos.flush(); } catch (Exception e){}
-            try { fis.close(); } catch (Exception e){}
-            try { fos.close(); } catch (Exception e){}
-            
-            // most importantly delete the file
-            if (!tempFile.delete()) {
-                tempFile.deleteOnExit();
-            }
+            zos.close();
         }
     }
 }
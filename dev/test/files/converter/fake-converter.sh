@@ -0,0 +1,44 @@
+#!/bin/sh
+# A stand in for ReAdW.exe, CompassXport.exe and wiff2dta.exe in tests. The
+# "vendor" file must already be mzXML, it is copied to the output in two
+# halves. An output of "-" means standard output.
+#
+# If <input>.gate exists the second half isn't written until <input>.go
+# exists, so that tests can check that peak lists are parsed before the
+# conversion is done.
+
+case "$1" in
+    # wiff2dta /auto /wifffile <input> /outputmzxml 1
+    /auto) in="$3"; out="${in%.*}.mzXML" ;;
+    # CompassXport "-log all" -a <input> -o <output>
+    -log*) in="$3"; out="$5" ;;
+    # ReAdW <input> c <output>
+    *) in="$1"; out="$3" ;;
+esac
+
+if [ ! -f "$in" ]; then
+    echo "Can't find $in" >&2
+    exit 2
+fi
+if [ "$out" = "-" ]; then
+    out=/dev/stdout
+fi
+echo "Converting $in" >&2
+
+lines=`wc -l < "$in"`
+half=`expr $lines / 2`
+{
+    head -n "$half" "$in"
+    if [ -f "$in.gate" ]; then
+        waited=0
+        while [ ! -f "$in.go" ]; do
+            waited=`expr $waited + 1`
+            if [ $waited -gt 100 ]; then
+                echo "Timed out waiting for $in.go" >&2
+                exit 3
+            fi
+            sleep 0.1
+        done
+    fi
+    tail -n +`expr $half + 1` "$in"
+} > "$out"
@@ -0,0 +1,209 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import junit.framework.TestCase;
+
+/**
+ * Tests that the array backed peak list behaves the same as the object backed one.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ArrayPeakListTest extends TestCase {
+
+    public void testAddAndGrow() throws Exception {
+        ArrayPeakList apl = new ArrayPeakList(1);
+        for (int i=0;i<100;i++) {
+            apl.addPeak(i, i*10);
+        }
+        assertEquals("Expected 100 peaks.", 100, apl.size());
+        assertEquals("Wrong m/z.", 42, apl.getMassOverChargeArray()[42], 0);
+        assertEquals("Wrong intensity.", 420, apl.getIntensityArray()[42], 0);
+        assertNull("No charges should be allocated.", apl.getChargeArray());
+
+        // trimming should make the arrays the same length as the list
+        apl.trimToSize();
+        assertEquals("Expected trimmed arrays.", 100, apl.getMassOverChargeArray().length);
+    }
+
+    public void testLazyPeaksFromManyThreads() throws Exception {
+        final ArrayPeakList apl = new ArrayPeakList();
+        // peaks that are slow to decode, so other threads ask while the decode is half done
+        apl.setLazyPeaks(new LazyPeaks() {
+            public void addPeaksTo(MutablePeakList target) {
+                for (int i=0;i<1000;i++) {
+                    target.addPeak(i, i*10);
+                    if (i % 100 == 0) {
+                        try { Thread.sleep(1); } catch (InterruptedException e) {}
+                    }
+                }
+            }
+        });
+        final CountDownLatch start = new CountDownLatch(1);
+        final int[] sizes = new int[4];
+        Thread[] threads = new Thread[sizes.length];
+        for (int i=0;i<threads.length;i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try { start.await(); } catch (InterruptedException e) {}
+                    sizes[index] = apl.getPeaks().length;
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        for (int size : sizes) {
+            assertEquals("Every thread should see all of the peaks.", 1000, size);
+        }
+        assertFalse("Expected the peaks to be decoded.", apl.hasLazyPeaks());
+    }
+
+    public void testPeaksAreCopies() throws Exception {
+        ArrayPeakList apl = new ArrayPeakList();
+        apl.addPeak(200, 20);
+        apl.addPeak(100, 10, 2);
+
+        // legacy peaks must be sortable and see the charge
+        Peak[] peaks = apl.getPeaks();
+        Arrays.sort(peaks);
+        assertEquals("Expected the lowest m/z first.", 100, peaks[0].getMassOverCharge(), 0);
+        assertEquals("Expected the charge.", 2, peaks[0].getCharge());
+        assertEquals("Expected an unknown charge.", Peak.UNKNOWN_CHARGE, peaks[1].getCharge());
+
+        // sorting the returned array must not change the list
+        assertEquals("List order should be unchanged.", 200, apl.getMassOverCharge(0), 0);
+
+        // changing a copy doesn't change the list
+        ((GenericPeak)peaks[0]).setIntensity(0);
+        assertEquals("Expected no change in the array.", 10, apl.getIntensity(1), 0);
+
+        // peaks held by a filter keep their values when the list shrinks or is reused
+        Peak[] orig = apl.getPeaks();
+        apl.setPeaks(new Peak[]{orig[1]});
+        assertEquals("Expected the old m/z.", 200, orig[0].getMassOverCharge(), 0);
+        assertEquals("Expected the old m/z.", 100, orig[1].getMassOverCharge(), 0);
+        apl.clear();
+        apl.addPeak(300, 30);
+        assertEquals("Expected the old m/z.", 200, orig[0].getMassOverCharge(), 0);
+        assertEquals("Expected the old charge.", 2, orig[1].getCharge());
+    }
+
+    public void testIsNotAGenericPeakList() throws Exception {
+        // the inherited information without the unused list of Peak objects
+        ArrayPeakList apl = new ArrayPeakList();
+        assertFalse("Didn't expect a GenericPeakList.", (Object)apl instanceof GenericPeakList);
+        apl.setTandemCount(2);
+        apl.setName("test");
+        assertEquals("Expected the tandem count.", 2, apl.getTandemCount());
+        assertEquals("Expected the name.", "test", apl.getName());
+
+        // filters that set peaks on a peak list they're given
+        GenericPeakList gpl = new GenericPeakList();
+        gpl.setPeaks(new Peak[]{new GenericPeak()});
+        GenericPeakList.copyPeakListInformation(gpl, apl);
+        assertEquals("Expected the copied peak.", 1, apl.size());
+    }
+
+    public void testSetPeaks() throws Exception {
+        // make a generic peak with all the flags
+        GenericPeak gp = new GenericPeak();
+        gp.setMassOverCharge(123.4);
+        gp.setIntensity(5);
+        gp.setCharge(3);
+        gp.setMonoisotopic(Peak.MONOISOTOPIC);
+        gp.setDeisotoped(Peak.NOT_DEISOTOPED);
+
+        ArrayPeakList apl = new ArrayPeakList();
+        apl.setPeaks(new Peak[]{gp});
+        Peak[] peaks = apl.getPeaks();
+        DevUtil.assertPeaksAreTheSame(gp, peaks[0]);
+        assertEquals("Expected the deisotoped flag.", Peak.NOT_DEISOTOPED, ((GenericPeak)peaks[0]).getDeisotoped());
+
+        // setting the list's own peaks must keep the values
+        apl.addPeak(1, 1);
+        apl.setPeaks(apl.getPeaks());
+        assertEquals("Expected two peaks.", 2, apl.size());
+        DevUtil.assertPeaksAreTheSame(gp, apl.getPeaks()[0]);
+    }
+
+    public void testReadersMakeArrayPeakLists() throws Exception {
+        File dir = new File("/todelete/IO/testReadersMakeArrayPeakLists");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+
+        // try each of the simple formats
+        String[] names = new String[]{"test.mgf", "test.dta", "test.pkl"};
+        for (String name : names) {
+            File file = new File(dir, name);
+            DevUtil.copyOver(name, ArrayPeakListTest.class, file);
+            PeakListReader plr = GenericPeakListReader.getPeakListReader(file.getCanonicalPath());
+            try {
+                PeakList pl = plr.getPeakList();
+                assertTrue("Expected an ArrayPeakList from "+name, pl instanceof ArrayPeakList);
+                ArrayPeakList apl = (ArrayPeakList)pl;
+                assertTrue("Expected peaks in "+name, apl.size() > 0);
+                assertEquals("Expected the same peaks.", apl.size(), apl.getPeaks().length);
+                assertEquals("Expected the same m/z.", apl.getMassOverCharge(0), apl.getPeaks()[0].getMassOverCharge(), 0);
+            } finally {
+                plr.close();
+            }
+        }
+    }
+
+    public void testReadIntoMatchesGetPeakList() throws Exception {
+        File dir = new File("/todelete/IO/testReadIntoMatchesGetPeakList");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+
+        String[] names = new String[]{"test.mgf", "test.dta", "test.pkl"};
+        for (String name : names) {
+            File file = new File(dir, name);
+            DevUtil.copyOver(name, ArrayPeakListTest.class, file);
+            PeakListReader a = GenericPeakListReader.getPeakListReader(file.getCanonicalPath());
+            PeakListReader b = GenericPeakListReader.getPeakListReader(file.getCanonicalPath());
+            try {
+                assertTrue("Expected a reusable reader for "+name, b instanceof ReusablePeakListReader);
+                ReusablePeakListReader rb = (ReusablePeakListReader)b;
+                // the same buffer is used for every peak list
+                ArrayPeakList buffer = new ArrayPeakList();
+                int count = 0;
+                for (PeakList pl = a.getPeakList(); pl != null; pl = a.getPeakList()) {
+                    assertTrue("Expected another peak list in "+name, rb.readInto(buffer));
+                    Peak[] expected = pl.getPeaks();
+                    assertEquals("Expected the same number of peaks.", expected.length, buffer.size());
+                    for (int i=0;i<expected.length;i++) {
+                        DevUtil.assertPeaksAreTheSame(expected[i], buffer.getPeaks()[i]);
+                    }
+                    if (pl.getParentPeak() != null) {
+                        DevUtil.assertPeaksAreTheSame(pl.getParentPeak(), buffer.getParentPeak());
+                    }
+                    count++;
+                }
+                assertFalse("Expected no more peak lists in "+name, rb.readInto(buffer));
+                assertTrue("Expected a peak list in "+name, count > 0);
+            } finally {
+                a.close();
+                b.close();
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.proteomecommons.io;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -22,6 +23,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /**
@@ -114,6 +117,71 @@ public class DevUtil extends TestCase {
         assertEquals("Same precursor info expected.",precursorA.getAveraged(), precursorB.getAveraged(), 0.01);
     }
     
+    /**
+     * Makes digits that are a bit compressible, the same ones every time.
+     */
+    public static byte[] makeData(int size) {
+        Random random = new Random(0);
+        byte[] data = new byte[size];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('0' + random.nextInt(10));
+        }
+        return data;
+    }
+    
+    /**
+     * Reads all of a stream, then closes it.
+     */
+    public static byte[] readBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[5000];
+        for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+            baos.write(buf, 0, read);
+        }
+        in.close();
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Reads all the peak lists of a file.
+     */
+    public static ArrayList<PeakList> readPeakLists(File file) throws Exception {
+        return readPeakLists(GenericPeakListReader.getPeakListReader(file.getCanonicalPath()));
+    }
+    
+    /**
+     * Reads all the peak lists a reader has left, then closes it.
+     */
+    public static ArrayList<PeakList> readPeakLists(PeakListReader plr) {
+        ArrayList<PeakList> all = new ArrayList();
+        try {
+            for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                all.add(pl);
+            }
+        } finally {
+            plr.close();
+        }
+        return all;
+    }
+    
+    /**
+     * Checks that there are peak lists and that they have the same peaks, in the same order.
+     * @param name The name to put in the failure messages.
+     */
+    public static void assertSamePeakLists(String name, ArrayList<PeakList> expected, ArrayList<PeakList> actual) {
+        assertTrue("Expected peak lists in "+name, expected.size() > 0);
+        assertEquals("Expected the same number of peak lists in "+name, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Peak[] e = expected.get(i).getPeaks();
+            Peak[] a = actual.get(i).getPeaks();
+            assertEquals("Expected the same number of peaks in "+name, e.length, a.length);
+            for (int j = 0; j < e.length; j++) {
+                assertEquals("Expected the same m/z in "+name, e[j].getMassOverCharge(), a[j].getMassOverCharge(), 0);
+                assertEquals("Expected the same intensity in "+name, e[j].getIntensity(), a[j].getIntensity(), 0);
+            }
+        }
+    }
+    
     // just to keep JUnit happy
     public void testNothing() throws Exception {
         // noop
@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import junit.framework.TestCase;
+import org.proteomecommons.io.mgf.MascotGenericFormatPeakListReader;
+
+/**
+ * Tests that reading peak lists from a stream gives the same peak lists as reading the file.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class StreamPeakListReaderFactoryTest extends TestCase {
+    File dir;
+    
+    public void setUp() throws Exception {
+        dir = new File("/todelete/IO/testStreamPeakListReader");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+    }
+    
+    public void testStreams() throws Exception {
+        File mgf = new File(dir, "test.mgf");
+        DevUtil.copyOver("test.mgf", StreamPeakListReaderFactoryTest.class, mgf);
+        File dta = new File(dir, "test.dta");
+        DevUtil.copyOver("test.dta", StreamPeakListReaderFactoryTest.class, dta);
+        File pkl = new File(dir, "test.pkl");
+        DevUtil.copyOver("test.pkl", StreamPeakListReaderFactoryTest.class, pkl);
+        File msp = new File(dir, "example.msp");
+        DevUtil.copyOver("files/nist-msp/example.msp", StreamPeakListReaderFactoryTest.class, msp);
+        File mzxml = new File(dir, "example.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", StreamPeakListReaderFactoryTest.class, mzxml);
+        
+        // make the other formats from the MGF file
+        File txt = convert(mgf, "test.txt");
+        File mzdata = convert(mgf, "test.mzdata");
+        File dataxml = convert(mgf, "test.dataxml");
+        // a name that has to be sniffed for its schema
+        File mzdataxml = new File(dir, "test.xml");
+        mzdata.renameTo(mzdataxml);
+        
+        File[] files = new File[]{mgf, dta, pkl, msp, mzxml, txt, mzdataxml, dataxml};
+        for (File file : files) {
+            PeakListReaderFactory factory = GenericPeakListReader.getPeakListReaderFactory(file.getName());
+            assertTrue("Expected a stream factory for "+file.getName(), factory instanceof StreamPeakListReaderFactory);
+            PeakListReader plr = GenericPeakListReader.getPeakListReader(new FileInputStream(file), file.getName());
+            assertEquals("Expected the stream's name.", file.getName(), plr.getName());
+            DevUtil.assertSamePeakLists(file.getName(), DevUtil.readPeakLists(file), DevUtil.readPeakLists(plr));
+        }
+    }
+    
+    public void testFallBackOnTempFile() throws Exception {
+        File mgf = new File(dir, "test.mgf");
+        DevUtil.copyOver("test.mgf", StreamPeakListReaderFactoryTest.class, mgf);
+        // a factory that only reads files
+        PeakListReaderFactory factory = new PeakListReaderFactory() {
+            public PeakListReader newInstance(String filename) {
+                return new MascotGenericFormatPeakListReader(filename);
+            }
+        };
+        PeakListReader plr = GenericPeakListReader.getPeakListReader(factory, new FileInputStream(mgf), mgf.getName());
+        assertEquals("Expected the stream's name.", mgf.getName(), plr.getName());
+        DevUtil.assertSamePeakLists(mgf.getName(), DevUtil.readPeakLists(new MascotGenericFormatPeakListReader(mgf.getCanonicalPath())), DevUtil.readPeakLists(plr));
+    }
+    
+    // helper to write a file in another format
+    private File convert(File from, String name) throws Exception {
+        File to = new File(dir, name);
+        PeakListWriter plw = GenericPeakListWriter.getPeakListWriter(to.getCanonicalPath());
+        PeakListReader plr = GenericPeakListReader.getPeakListReader(from.getCanonicalPath());
+        try {
+            for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                plw.write(pl);
+            }
+        } finally {
+            plr.close();
+            plw.close();
+        }
+        return to;
+    }
+}
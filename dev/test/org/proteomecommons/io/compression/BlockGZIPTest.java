@@ -0,0 +1,128 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.gzip.BlockGZIPIndex;
+import org.proteomecommons.io.gzip.BlockGZIPInputStream;
+import org.proteomecommons.io.gzip.BlockGZIPOutputStream;
+
+/**
+ * Tests writing, reading and seeking block GZIP.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class BlockGZIPTest extends TestCase {
+
+    // helper to make data that spans many blocks
+    private static byte[] makeData() {
+        return DevUtil.makeData(1000000);
+    }
+
+    // helper to compress data with several threads
+    private static byte[] compress(byte[] data) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        BlockGZIPOutputStream out = new BlockGZIPOutputStream(compressed, 4, Deflater.DEFAULT_COMPRESSION);
+        // odd sized writes so that blocks don't line up with them
+        for (int i = 0; i < data.length; i += 12345) {
+            out.write(data, i, Math.min(12345, data.length - i));
+        }
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    public void testRoundTrip() throws Exception {
+        byte[] data = makeData();
+        byte[] compressed = compress(data);
+        assertTrue("Expected block GZIP.", BlockGZIPInputStream.isBlockGZIP(compressed, compressed.length));
+        assertTrue("Expected the same bytes.", java.util.Arrays.equals(data, DevUtil.readBytes(new BlockGZIPInputStream(new ByteArrayInputStream(compressed), 4))));
+    }
+
+    public void testIsValidGZIP() throws Exception {
+        byte[] data = makeData();
+        // any gzip reader can read the blocks as members
+        assertTrue("Expected the same bytes.", java.util.Arrays.equals(data, DevUtil.readBytes(new GZIPInputStream(new ByteArrayInputStream(compress(data))))));
+
+        // plain gzip isn't block gzip
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(plain);
+        gzip.write(data);
+        gzip.close();
+        assertFalse("Plain GZIP isn't block GZIP.", BlockGZIPInputStream.isBlockGZIP(plain.toByteArray(), plain.size()));
+    }
+
+    public void testAppendedPlainGZIP() throws Exception {
+        byte[] data = makeData();
+        // a plain member with a file name in its header, as gzip makes
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(plain);
+        gzip.write(data, 0, 300000);
+        gzip.close();
+        byte[] member = plain.toByteArray();
+        member[3] |= 8;
+
+        // the same as: cat a.gz b.gz c.gz
+        ByteArrayOutputStream cat = new ByteArrayOutputStream();
+        cat.write(compress(data));
+        cat.write(member, 0, 10);
+        cat.write("b.txt\0".getBytes());
+        cat.write(member, 10, member.length - 10);
+        cat.write(compress(data));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data);
+        expected.write(data, 0, 300000);
+        expected.write(data);
+        assertTrue("Expected the same bytes.", java.util.Arrays.equals(expected.toByteArray(), DevUtil.readBytes(new BlockGZIPInputStream(new ByteArrayInputStream(cat.toByteArray()), 4))));
+    }
+
+    public void testSeek() throws Exception {
+        File dir = new File("/todelete/IO/testBlockGZIPSeek");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File file = new File(dir, "test.gz");
+        byte[] data = makeData();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(compress(data));
+        fos.close();
+
+        BlockGZIPIndex index = BlockGZIPIndex.build(file);
+        assertEquals(data.length, index.getUncompressedSize());
+        assertEquals((data.length + BlockGZIPOutputStream.BLOCK_SIZE - 1) / BlockGZIPOutputStream.BLOCK_SIZE, index.getBlockCount());
+        assertEquals(-1, index.getVirtualOffset(data.length));
+
+        // read a few bytes at offsets in the first, middle and last blocks
+        long[] offsets = new long[] {0, 100, BlockGZIPOutputStream.BLOCK_SIZE, 500000, data.length - 1};
+        for (long offset : offsets) {
+            BlockGZIPInputStream in = index.open(file, offset, 2);
+            try {
+                assertEquals("Expected the virtual offset.", index.getVirtualOffset(offset), in.getVirtualOffset());
+                for (int i = 0; i < 10 && offset + i < data.length; i++) {
+                    assertEquals("Expected the byte at " + (offset + i), data[(int) offset + i], (byte) in.read());
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
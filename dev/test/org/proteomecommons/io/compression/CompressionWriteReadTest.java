@@ -68,6 +68,8 @@ public class CompressionWriteReadTest extends TestCase {
                 for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
                     writeCount ++;
                     plw.write(pl);
+                    // MGF is written straight in to the compressor, not to a temp file
+                    assertFalse("Expected no uncompressed temp file.", new File(dir, "_todelete.test.compressed.mgf").exists());
                 }
                 assertEquals("Expected to write two peak lists.", 2, writeCount);
             } finally {
@@ -87,6 +89,8 @@ public class CompressionWriteReadTest extends TestCase {
             int readCount = 0;
             for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
                 readCount++;
+                // the data is decompressed on the fly, not to a temp file
+                assertEquals("Expected no decompressed files.", 2, dir.list().length);
             }
             assertEquals("Expected to read two peak lists.", 2, readCount);
         } finally {
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.bzip2.BZIP2PeakListWriterFactory;
+import org.proteomecommons.io.bzip2.ParallelBZip2InputStream;
+import org.proteomecommons.io.bzip2.ParallelBZip2OutputStream;
+
+/**
+ * Tests compressing and decompressing BZIP2 with several threads.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelBZip2Test extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        // small blocks so that there are lots of streams
+        byte[] data = DevUtil.makeData(1000000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelBZip2OutputStream out = new ParallelBZip2OutputStream(compressed, 4, 1);
+        out.write(data);
+        out.close();
+        assertTrue("Expected the same bytes.", Arrays.equals(data, DevUtil.readBytes(new ParallelBZip2InputStream(new ByteArrayInputStream(compressed.toByteArray()), 4))));
+    }
+
+    public void testSingleStreamByDefault() throws Exception {
+        // several streams are opt-in, CBZip2InputStream stops after the first
+        if (System.getProperty("bzip2.threads") == null) {
+            assertTrue("Expected a single stream by default.", BZIP2PeakListWriterFactory.getThreads() < 1);
+        }
+    }
+
+    public void testSingleStream() throws Exception {
+        // bigger than ParallelBZip2InputStream.MAX_STREAM_SIZE when compressed, so it is read on one thread
+        byte[] data = DevUtil.makeData(6000000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        CBZip2OutputStream out = new CBZip2OutputStream(compressed);
+        out.write(data);
+        out.close();
+        assertTrue("Expected one big stream.", compressed.size() > ParallelBZip2InputStream.MAX_STREAM_SIZE);
+        assertTrue("Expected the same bytes.", Arrays.equals(data, DevUtil.readBytes(new ParallelBZip2InputStream(new ByteArrayInputStream(compressed.toByteArray()), 4))));
+
+        // a small stream of several blocks is only split at the end of the stream
+        data = DevUtil.makeData(500000);
+        compressed = new ByteArrayOutputStream();
+        out = new CBZip2OutputStream(compressed, 1);
+        out.write(data);
+        out.close();
+        assertTrue("Expected one small stream.", compressed.size() < ParallelBZip2InputStream.MAX_STREAM_SIZE);
+        assertTrue("Expected the same bytes.", Arrays.equals(data, DevUtil.readBytes(new ParallelBZip2InputStream(new ByteArrayInputStream(compressed.toByteArray()), 4))));
+    }
+}
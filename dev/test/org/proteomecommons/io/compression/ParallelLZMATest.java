@@ -0,0 +1,69 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.lzma.LZMAPeakListReaderFactory;
+import org.proteomecommons.io.lzma.LZMAPeakListWriter;
+import org.proteomecommons.io.lzma.LZMAPeakListWriterFactory;
+import org.proteomecommons.io.lzma.ParallelLZMAInputStream;
+import org.proteomecommons.io.lzma.ParallelLZMAOutputStream;
+
+/**
+ * Tests encoding and decoding chunked LZMA with several threads.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelLZMATest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        // small chunks so that there are lots of them
+        byte[] data = DevUtil.makeData(300000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelLZMAOutputStream out = new ParallelLZMAOutputStream(compressed, 4, 32 * 1024);
+        out.write(data);
+        out.close();
+        assertTrue("Expected the magic number.", ParallelLZMAInputStream.isParallelLZMA(compressed.toByteArray(), compressed.size()));
+        assertTrue("Expected the same bytes.", Arrays.equals(data, DevUtil.readBytes(new ParallelLZMAInputStream(new ByteArrayInputStream(compressed.toByteArray()), 4))));
+    }
+
+    public void testEmpty() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelLZMAOutputStream(compressed, 2, 32 * 1024).close();
+        assertEquals(0, DevUtil.readBytes(new ParallelLZMAInputStream(new ByteArrayInputStream(compressed.toByteArray()), 2)).length);
+    }
+
+    public void testSingleStreamByDefault() throws Exception {
+        // chunks are opt-in, other tools can't read them
+        if (System.getProperty("lzma.threads") == null) {
+            assertTrue("Expected a single stream by default.", LZMAPeakListWriterFactory.getThreads() < 1);
+        }
+    }
+
+    public void testSingleStream() throws Exception {
+        // a plain .lzma stream isn't mistaken for chunks
+        byte[] data = DevUtil.makeData(100000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        LZMAPeakListWriter.encode(new ByteArrayInputStream(data), compressed);
+        assertFalse("Didn't expect the magic number.", ParallelLZMAInputStream.isParallelLZMA(compressed.toByteArray(), compressed.size()));
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        LZMAPeakListReaderFactory.decode(new ByteArrayInputStream(compressed.toByteArray()), decoded);
+        assertTrue("Expected the same bytes.", Arrays.equals(data, decoded.toByteArray()));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.compression;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarOutputStream;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.PeakList;
+
+/**
+ * Tests that every entry of a TAR in a known format is read, in order, whether or not the TAR is compressed.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class TarArchiveTest extends TestCase {
+    File dir;
+    File[] files;
+
+    public void setUp() throws Exception {
+        dir = new File("/todelete/IO/testTarArchive");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        
+        // a few peak lists files
+        File mgf = new File(dir, "test.mgf");
+        DevUtil.copyOver("test.mgf", DevUtil.class, mgf);
+        File dta = new File(dir, "test.dta");
+        DevUtil.copyOver("test.dta", DevUtil.class, dta);
+        File pkl = new File(dir, "test.pkl");
+        DevUtil.copyOver("test.pkl", DevUtil.class, pkl);
+        files = new File[]{dta, mgf, pkl, dta};
+    }
+
+    public void testTar() throws Exception {
+        File tar = new File(dir, "test.tar");
+        writeTar(new FileOutputStream(tar));
+        DevUtil.assertSamePeakLists(tar.getName(), expected(), DevUtil.readPeakLists(tar));
+        // the three peak list files and the TAR, nothing was unpacked
+        assertEquals(4, dir.list().length);
+    }
+
+    public void testCompressedTar() throws Exception {
+        File tgz = new File(dir, "test.tgz");
+        writeTar(new GZIPOutputStream(new FileOutputStream(tgz)));
+        DevUtil.assertSamePeakLists(tgz.getName(), expected(), DevUtil.readPeakLists(tgz));
+        File targz = new File(dir, "test.tar.gz");
+        writeTar(new GZIPOutputStream(new FileOutputStream(targz)));
+        DevUtil.assertSamePeakLists(targz.getName(), expected(), DevUtil.readPeakLists(targz));
+    }
+
+    // helper to TAR up the files with a directory and a file that isn't a peak list
+    private void writeTar(OutputStream os) throws Exception {
+        TarOutputStream out = new TarOutputStream(os);
+        try {
+            out.putNextEntry(new TarEntry("spectra/"));
+            out.closeEntry();
+            for (int i = 0; i < files.length; i++) {
+                TarEntry te = new TarEntry("spectra/"+i+"-"+files[i].getName());
+                te.setSize(files[i].length());
+                out.putNextEntry(te);
+                InputStream in = new FileInputStream(files[i]);
+                try {
+                    byte[] buf = new byte[8192];
+                    for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                        out.write(buf, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+                if (i == 1) {
+                    byte[] readme = "not peak lists".getBytes();
+                    te = new TarEntry("spectra/readme.doc");
+                    te.setSize(readme.length);
+                    out.putNextEntry(te);
+                    out.write(readme);
+                    out.closeEntry();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // helper to read the peak lists of each file, in order
+    private ArrayList<PeakList> expected() throws Exception {
+        ArrayList<PeakList> expected = new ArrayList();
+        for (File file : files) {
+            expected.addAll(DevUtil.readPeakLists(file));
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.compression;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.zip.ParallelZipPeakListReader;
+import org.proteomecommons.io.zip.ZipPeakListReader;
+
+/**
+ * Tests that every entry of a ZIP in a known format is read, in order, one at a time or with several threads.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ZipArchiveTest extends TestCase {
+    File dir;
+    File[] files;
+    File zip;
+
+    public void setUp() throws Exception {
+        dir = new File("/todelete/IO/testZipArchive");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        
+        // a few peak lists files
+        File mgf = new File(dir, "test.mgf");
+        DevUtil.copyOver("test.mgf", DevUtil.class, mgf);
+        File dta = new File(dir, "test.dta");
+        DevUtil.copyOver("test.dta", DevUtil.class, dta);
+        File pkl = new File(dir, "test.pkl");
+        DevUtil.copyOver("test.pkl", DevUtil.class, pkl);
+        files = new File[]{dta, mgf, pkl, dta};
+
+        // zip them up with a directory and a file that isn't a peak list
+        zip = new File(dir, "test.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            out.putNextEntry(new ZipEntry("spectra/"));
+            for (int i = 0; i < files.length; i++) {
+                out.putNextEntry(new ZipEntry("spectra/"+i+"-"+files[i].getName()));
+                InputStream in = new FileInputStream(files[i]);
+                try {
+                    byte[] buf = new byte[8192];
+                    for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                        out.write(buf, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+                if (i == 1) {
+                    out.putNextEntry(new ZipEntry("spectra/readme.doc"));
+                    out.write("not peak lists".getBytes());
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public void testEveryEntry() throws Exception {
+        // the peak lists of each file, in order
+        ArrayList<PeakList> expected = new ArrayList();
+        for (File file : files) {
+            expected.addAll(DevUtil.readPeakLists(file));
+        }
+        DevUtil.assertSamePeakLists("stream", expected, DevUtil.readPeakLists(new ZipPeakListReader(new FileInputStream(zip), zip.getName())));
+        DevUtil.assertSamePeakLists("parallel", expected, DevUtil.readPeakLists(new ParallelZipPeakListReader(zip.getCanonicalPath(), 3)));
+        DevUtil.assertSamePeakLists("factory", expected, DevUtil.readPeakLists(zip));
+    }
+
+    public void testNoKnownEntries() throws Exception {
+        File empty = new File(dir, "empty.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(empty));
+        out.putNextEntry(new ZipEntry("readme.doc"));
+        out.write("not peak lists".getBytes());
+        out.close();
+        try {
+            new ZipPeakListReader(new FileInputStream(empty), empty.getName());
+            fail("Expected no files to read.");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            new ParallelZipPeakListReader(empty.getCanonicalPath(), 2);
+            fail("Expected no files to read.");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2005-2007 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.dataxml;
+
+import java.io.File;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+import org.proteomecommons.io.ArrayPeakList;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.GenericPeak;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+
+/**
+ * Tests the streaming dataXML reader and writer. Spectra are read both straight off of the parser and unmarshalled with JAXB, from files written both streamed and buffered.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class DataXmlPeakListReaderTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        roundTrip("testDataXmlReader", true);
+    }
+
+    public void testRoundTripBuffered() throws Exception {
+        roundTrip("testDataXmlReaderBuffered", false);
+    }
+
+    // helper to write peak lists with either kind of writer and read them back
+    private void roundTrip(String name, boolean streaming) throws Exception {
+        File dir = new File("/todelete/IO/" + name);
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File file = new File(dir, "test.dataxml");
+
+        // write a few peak lists
+        ArrayList<ArrayPeakList> expected = new ArrayList();
+        DataXmlPeakListWriter writer = new DataXmlPeakListWriter(file.getCanonicalPath(), streaming);
+        for (int i = 0; i < 3; i++) {
+            ArrayPeakList pl = new ArrayPeakList();
+            GenericPeak parent = new GenericPeak();
+            parent.setMassOverCharge(500.25 + i);
+            parent.setIntensity(1000 * (i + 1));
+            parent.setCharge(i + 1);
+            pl.setParentPeak(parent);
+            for (int j = 0; j < 10 * i + 1; j++) {
+                pl.addPeak(100 + j * 1.5, j * 10.25 + i);
+            }
+            writer.write(pl);
+            expected.add(pl);
+        }
+        writer.close();
+
+        // both ways of reading must give the same peak lists
+        PeakListReader plr = GenericPeakListReader.getPeakListReader(file.getCanonicalPath());
+        assertTrue("Expected the dataXML reader.", plr instanceof DataXmlPeakListReader);
+        assertSame(expected, plr);
+        assertSame(expected, new DataXmlPeakListReader(file.getCanonicalPath(), true));
+
+        // reuse a peak list
+        DataXmlPeakListReader reader = new DataXmlPeakListReader(file.getCanonicalPath());
+        try {
+            ArrayPeakList buffer = new ArrayPeakList();
+            for (ArrayPeakList pl : expected) {
+                assertTrue("Expected another peak list.", reader.readInto(buffer));
+                assertEquals("Expected the same number of peaks.", pl.size(), buffer.size());
+                assertEquals("Expected the same last m/z.", pl.getMassOverCharge(pl.size() - 1), buffer.getMassOverCharge(buffer.size() - 1), 0);
+            }
+            assertFalse("Expected no more peak lists.", reader.readInto(buffer));
+        } finally {
+            reader.close();
+        }
+    }
+
+    // helper to check that a reader returns the expected peak lists
+    private static void assertSame(ArrayList<ArrayPeakList> expected, PeakListReader plr) {
+        try {
+            for (ArrayPeakList pl : expected) {
+                ArrayPeakList read = (ArrayPeakList) plr.getPeakList();
+                assertNotNull("Expected a peak list.", read);
+                assertEquals("Expected the same number of peaks.", pl.size(), read.size());
+                for (int i = 0; i < pl.size(); i++) {
+                    assertEquals("Expected the same m/z.", pl.getMassOverCharge(i), read.getMassOverCharge(i), 0);
+                    assertEquals("Expected the same intensity.", pl.getIntensity(i), read.getIntensity(i), 0);
+                }
+                assertNotNull("Expected a parent peak.", read.getParentPeak());
+                assertEquals("Expected the same parent m/z.", pl.getParentPeak().getMassOverCharge(), read.getParentPeak().getMassOverCharge(), 0);
+                assertEquals("Expected the same parent intensity.", pl.getParentPeak().getIntensity(), read.getParentPeak().getIntensity(), 0);
+                assertEquals("Expected the same parent charge.", pl.getParentPeak().getCharge(), read.getParentPeak().getCharge());
+            }
+            assertNull("Expected no more peak lists.", plr.getPeakList());
+        } finally {
+            plr.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mgf;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.Peak;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.util.AsciiNumberParser;
+
+/**
+ * Tests that the memory mapped MGF reader reads the same peak lists as the line based one.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class MappedMascotGenericFormatPeakListReaderTest extends TestCase {
+
+    public void testSameAsLineBasedReader() throws Exception {
+        File dir = new File("/todelete/IO/testMappedMGF");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+
+        File test = new File(dir, "test.mgf");
+        DevUtil.copyOver("test.mgf", MappedMascotGenericFormatPeakListReaderTest.class, test);
+        File made = new File(dir, "made.mgf");
+        MascotGenericFormatBench.writeTestFile(made, 50, 20);
+
+        // tiny windows make lines cross window boundaries
+        int[] windowSizes = new int[]{1, 7, 100, MappedMascotGenericFormatPeakListReader.DEFAULT_WINDOW_SIZE};
+        for (File file : new File[]{test, made}) {
+            for (int windowSize : windowSizes) {
+                assertSameAsLineBased(file, windowSize);
+            }
+        }
+    }
+
+    public void testFactorySetting() throws Exception {
+        File dir = new File("/todelete/IO/testMappedMGFFactory");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File test = new File(dir, "test.mgf");
+        DevUtil.copyOver("test.mgf", MappedMascotGenericFormatPeakListReaderTest.class, test);
+
+        boolean old = MascotGenericFormatPeakListReaderFactory.isMemoryMapped();
+        try {
+            MascotGenericFormatPeakListReaderFactory.setMemoryMapped(true);
+            PeakListReader plr = new MascotGenericFormatPeakListReaderFactory().newInstance(test.getCanonicalPath());
+            plr.close();
+            assertTrue("Expected the mapped reader.", plr instanceof MappedMascotGenericFormatPeakListReader);
+        } finally {
+            MascotGenericFormatPeakListReaderFactory.setMemoryMapped(old);
+        }
+    }
+
+    public void testNumberParser() throws Exception {
+        String[] numbers = new String[]{"0", "-0", "1", "+1", "123.456", "0.0001", ".5", "5.", "1e5", "1.5E-3", "-2.25e+2",
+                "1234567890123456789012", "0.1234567890123456789", "9007199254740993", "1e400", "1e-400", "NaN", "-Infinity"};
+        for (String number : numbers) {
+            assertEquals("Wrong value for " + number, Double.parseDouble(number), parse(number), 0);
+        }
+        // random m/z like values must be exactly the same as the JDK's
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            String number = Double.toString(random.nextInt(1000000) / 10000.0);
+            assertEquals("Wrong value for " + number, Double.parseDouble(number), parse(number), 0);
+        }
+        // junk is not a number
+        for (String junk : new String[]{"", "-", "1.2.3", "abc", "1e"}) {
+            try {
+                parse(junk);
+                fail("Expected a NumberFormatException for " + junk);
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    // helper to parse a number from the middle of a buffer
+    private static double parse(String number) {
+        ByteBuffer buffer = ByteBuffer.wrap((" " + number + " ").getBytes());
+        return AsciiNumberParser.parseDouble(buffer, 1, number.length() + 1);
+    }
+
+    // helper to compare both readers on a file
+    private static void assertSameAsLineBased(File file, int windowSize) throws Exception {
+        MascotGenericFormatPeakListReader a = new MascotGenericFormatPeakListReader(file.getCanonicalPath());
+        MappedMascotGenericFormatPeakListReader b = new MappedMascotGenericFormatPeakListReader(file.getCanonicalPath(), windowSize);
+        try {
+            int count = 0;
+            for (MascotGenericFormatPeakList pla = (MascotGenericFormatPeakList) a.getPeakList(); pla != null; pla = (MascotGenericFormatPeakList) a.getPeakList()) {
+                MascotGenericFormatPeakList plb = (MascotGenericFormatPeakList) b.getPeakList();
+                assertNotNull("Expected a peak list.", plb);
+                assertEquals("Expected the same title.", pla.getTitle(), plb.getTitle());
+                assertEquals("Expected the same pepmass.", pla.getPepmass(), plb.getPepmass());
+                assertEquals("Expected the same charge.", pla.getCharge(), plb.getCharge());
+                assertEquals("Expected the same tandem count.", pla.getTandemCount(), plb.getTandemCount());
+                Peak[] peaksA = pla.getPeaks();
+                assertEquals("Expected the same number of peaks.", peaksA.length, plb.size());
+                for (int i = 0; i < peaksA.length; i++) {
+                    assertEquals("Expected the same m/z.", peaksA[i].getMassOverCharge(), plb.getMassOverCharge(i), 0);
+                    assertEquals("Expected the same intensity.", peaksA[i].getIntensity(), plb.getIntensity(i), 0);
+                }
+                count++;
+            }
+            assertNull("Expected no more peak lists.", b.getPeakList());
+            assertTrue("Expected peak lists.", count > 0);
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mgf;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+
+/**
+ * Tests the MGF index and the reader that seeks with it.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class MascotGenericFormatIndexTest extends TestCase {
+
+    public void testSeekMatchesSequential() throws Exception {
+        File dir = new File("/todelete/IO/testMGFIndex");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File mgf = new File(dir, "made.mgf");
+        MascotGenericFormatBench.writeTestFile(mgf, 100, 10);
+
+        // read everything in order
+        ArrayList<MascotGenericFormatPeakList> all = new ArrayList();
+        MascotGenericFormatPeakListReader plr = new MascotGenericFormatPeakListReader(mgf.getCanonicalPath());
+        for (MascotGenericFormatPeakList pl = (MascotGenericFormatPeakList) plr.getPeakList(); pl != null; pl = (MascotGenericFormatPeakList) plr.getPeakList()) {
+            all.add(pl);
+        }
+        plr.close();
+
+        IndexedMascotGenericFormatPeakListReader reader = new IndexedMascotGenericFormatPeakListReader(mgf.getCanonicalPath(), true);
+        try {
+            assertTrue("Expected a sidecar file.", MascotGenericFormatIndex.getIndexFile(mgf).exists());
+            assertEquals("Expected all the peak lists.", all.size(), reader.size());
+            // go backwards to be sure seeking works
+            for (int i = all.size() - 1; i >= 0; i--) {
+                MascotGenericFormatPeakList expected = all.get(i);
+                assertSame(expected, reader.getPeakList(i));
+                assertSame(expected, reader.getPeakList(expected.getTitle()));
+                assertEquals("Expected the same title.", expected.getTitle(), reader.getIndex().getTitle(i));
+                assertEquals("Expected the same m/z.", expected.getParentPeak().getMassOverCharge(), reader.getIndex().getPepmass(i), 0);
+            }
+            assertNull("Expected no peak list.", reader.getPeakList("not a title"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testSidecarIsReusedUntilStale() throws Exception {
+        File dir = new File("/todelete/IO/testMGFIndexSidecar");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File mgf = new File(dir, "test.mgf");
+        DevUtil.copyOver("test.mgf", MascotGenericFormatIndexTest.class, mgf);
+
+        // no sidecar unless it is asked for
+        MascotGenericFormatIndex.getIndex(mgf);
+        File sidecar = MascotGenericFormatIndex.getIndexFile(mgf);
+        assertFalse("Didn't expect a sidecar file.", sidecar.exists());
+        assertTrue("Expected a plain MGF to be indexable.", MascotGenericFormatIndex.canIndex(mgf));
+        assertFalse("Didn't expect a compressed MGF to be indexable.", MascotGenericFormatIndex.canIndex(new File(dir, "test.mgf.gz")));
+
+        MascotGenericFormatIndex built = MascotGenericFormatIndex.getIndex(mgf, true);
+        MascotGenericFormatIndex read = MascotGenericFormatIndex.read(sidecar);
+        assertEquals("Expected the same size.", built.size(), read.size());
+        for (int i = 0; i < built.size(); i++) {
+            assertEquals("Expected the same offset.", built.getOffset(i), read.getOffset(i));
+            assertEquals("Expected the same title.", built.getTitle(i), read.getTitle(i));
+            assertEquals("Expected the same m/z.", built.getPepmass(i), read.getPepmass(i), 0);
+        }
+
+        // add a peak list, the index must be rebuilt
+        FileWriter fw = new FileWriter(mgf, true);
+        fw.write("\nBEGIN IONS\nTITLE=added\nPEPMASS=500.5\n100 1\nEND IONS\n");
+        fw.close();
+        mgf.setLastModified(mgf.lastModified() + 2000);
+        MascotGenericFormatIndex rebuilt = MascotGenericFormatIndex.getIndex(mgf);
+        assertEquals("Expected one more peak list.", built.size() + 1, rebuilt.size());
+        assertEquals("Expected the new title.", built.size(), rebuilt.indexOf("added"));
+        assertEquals("Expected the new m/z.", 500.5, rebuilt.getPepmass(built.size()), 0);
+    }
+
+    // helper to check two peak lists have the same content
+    private static void assertSame(MascotGenericFormatPeakList expected, MascotGenericFormatPeakList actual) {
+        assertNotNull("Expected a peak list.", actual);
+        assertEquals("Expected the same title.", expected.getTitle(), actual.getTitle());
+        assertEquals("Expected the same pepmass.", expected.getPepmass(), actual.getPepmass());
+        assertEquals("Expected the same number of peaks.", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Expected the same m/z.", expected.getMassOverCharge(i), actual.getMassOverCharge(i), 0);
+            assertEquals("Expected the same intensity.", expected.getIntensity(i), actual.getIntensity(i), 0);
+        }
+    }
+}
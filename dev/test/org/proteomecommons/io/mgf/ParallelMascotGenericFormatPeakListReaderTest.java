@@ -0,0 +1,112 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mgf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+
+/**
+ * Tests that reading a MGF file with several threads gives the same peak lists as reading it with one.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ParallelMascotGenericFormatPeakListReaderTest extends TestCase {
+
+    public void testOrderedAndUnordered() throws Exception {
+        File dir = new File("/todelete/IO/testParallelMGF");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File mgf = new File(dir, "made.mgf");
+        MascotGenericFormatBench.writeTestFile(mgf, 200, 10);
+        ArrayList<MascotGenericFormatPeakList> expected = readAll(new MascotGenericFormatPeakListReader(mgf.getCanonicalPath()));
+
+        // small chunks so that peak lists cross chunk boundaries
+        int[] chunkSizes = new int[]{1, 100, 1000, 100000};
+        for (int chunkSize : chunkSizes) {
+            // in order must be exactly the same
+            ArrayList<MascotGenericFormatPeakList> ordered = readAll(new ParallelMascotGenericFormatPeakListReader(mgf.getCanonicalPath(), 4, true, chunkSize));
+            assertEquals("Expected all the peak lists.", expected.size(), ordered.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame(expected.get(i), ordered.get(i));
+            }
+
+            // out of order must have the same peak lists
+            ArrayList<MascotGenericFormatPeakList> unordered = readAll(new ParallelMascotGenericFormatPeakListReader(mgf.getCanonicalPath(), 4, false, chunkSize));
+            assertEquals("Expected all the peak lists.", expected.size(), unordered.size());
+            HashMap<String, MascotGenericFormatPeakList> byTitle = new HashMap();
+            for (MascotGenericFormatPeakList pl : unordered) {
+                byTitle.put(pl.getTitle(), pl);
+            }
+            for (MascotGenericFormatPeakList pl : expected) {
+                assertSame(pl, byTitle.get(pl.getTitle()));
+            }
+        }
+    }
+
+    public void testRegistry() throws Exception {
+        File dir = new File("/todelete/IO/testParallelMGFRegistry");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File mgf = new File(dir, "test.mgf");
+        DevUtil.copyOver("test.mgf", ParallelMascotGenericFormatPeakListReaderTest.class, mgf);
+
+        int old = MascotGenericFormatPeakListReaderFactory.getThreads();
+        try {
+            MascotGenericFormatPeakListReaderFactory.setThreads(2);
+            PeakListReader plr = GenericPeakListReader.getPeakListReader(mgf.getCanonicalPath());
+            assertTrue("Expected the parallel reader.", plr instanceof ParallelMascotGenericFormatPeakListReader);
+            ArrayList<MascotGenericFormatPeakList> parallel = readAll(plr);
+            ArrayList<MascotGenericFormatPeakList> expected = readAll(new MascotGenericFormatPeakListReader(mgf.getCanonicalPath()));
+            assertEquals("Expected all the peak lists.", expected.size(), parallel.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame(expected.get(i), parallel.get(i));
+            }
+        } finally {
+            MascotGenericFormatPeakListReaderFactory.setThreads(old);
+        }
+    }
+
+    // helper to read all the peak lists
+    private static ArrayList<MascotGenericFormatPeakList> readAll(PeakListReader plr) {
+        ArrayList<MascotGenericFormatPeakList> all = new ArrayList();
+        try {
+            for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                all.add((MascotGenericFormatPeakList) pl);
+            }
+        } finally {
+            plr.close();
+        }
+        return all;
+    }
+
+    // helper to check two peak lists have the same content
+    private static void assertSame(MascotGenericFormatPeakList expected, MascotGenericFormatPeakList actual) {
+        assertNotNull("Expected a peak list.", actual);
+        assertEquals("Expected the same title.", expected.getTitle(), actual.getTitle());
+        assertEquals("Expected the same pepmass.", expected.getPepmass(), actual.getPepmass());
+        assertEquals("Expected the same charge.", expected.getCharge(), actual.getCharge());
+        assertEquals("Expected the same number of peaks.", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Expected the same m/z.", expected.getMassOverCharge(i), actual.getMassOverCharge(i), 0);
+            assertEquals("Expected the same intensity.", expected.getIntensity(i), actual.getIntensity(i), 0);
+        }
+    }
+}
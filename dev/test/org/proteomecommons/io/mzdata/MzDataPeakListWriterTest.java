@@ -209,4 +209,64 @@ public class MzDataPeakListWriterTest extends TestCase {
         writer.close();
     }
     
+    /**
+     * Tests that written peak lists read back the same, lazily or not, and that levels can be skipped.
+     */
+    public void testReadLazily() throws IOException {
+        File dir = new File("/todelete/mzdata/testReadLazily");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        
+        File f = new File(dir, "test3.mzData");
+        writer = new MzDataPeakListWriter(f.getCanonicalPath());
+        for (int i=0;i<3;i++) {
+            MzDataPeakList list = new MzDataPeakList();
+            GenericPeak[] peaks = new GenericPeak[10+i];
+            for (int j=0;j<peaks.length;j++) {
+                peaks[j] = new GenericPeak();
+                peaks[j].setMassOverCharge(100+j*1.5);
+                peaks[j].setIntensity(1000+i*j);
+            }
+            list.setPeaks(peaks);
+            // one MS scan then two MS/MS scans
+            list.setSpectrumSettings(new MzDataPeakListSpectrumSettings(i == 0 ? 1 : 2, 100, 200));
+            writer.write(list);
+        }
+        writer.close();
+        assertEquals("Expected the temporary spectra file to be gone.", 1, dir.listFiles().length);
+        
+        org.proteomecommons.io.mzdata.v1_05.MzDataPeakListReader all = new org.proteomecommons.io.mzdata.v1_05.MzDataPeakListReader(f.getCanonicalPath());
+        org.proteomecommons.io.mzdata.v1_05.MzDataPeakListReader lazy = new org.proteomecommons.io.mzdata.v1_05.MzDataPeakListReader(f.getCanonicalPath());
+        lazy.setLazy(true);
+        org.proteomecommons.io.mzdata.v1_05.MzDataPeakListReader tandem = new org.proteomecommons.io.mzdata.v1_05.MzDataPeakListReader(f.getCanonicalPath());
+        tandem.setMsLevels(new int[]{2});
+        try {
+            int count = 0;
+            for (PeakList pl = all.getPeakList(); pl != null; pl = all.getPeakList()) {
+                count++;
+                assertEquals("Expected all the peaks.", 9+count, pl.getPeaks().length);
+                
+                MzDataPeakList lazyPeakList = (MzDataPeakList)lazy.getPeakList();
+                assertTrue("Expected undecoded peaks.", lazyPeakList.hasLazyPeaks());
+                assertEquals("Expected the same level.", pl.getTandemCount(), lazyPeakList.getTandemCount());
+                Peak[] expected = pl.getPeaks();
+                Peak[] actual = lazyPeakList.getPeaks();
+                assertEquals("Expected the same number of peaks.", expected.length, actual.length);
+                for (int i=0;i<expected.length;i++) {
+                    DevUtil.assertPeaksAreTheSame(expected[i], actual[i]);
+                }
+                
+                if (pl.getTandemCount() == 2) {
+                    assertEquals("Expected the same peaks.", expected.length, tandem.getPeakList().getPeaks().length);
+                }
+            }
+            assertEquals("Expected three peak lists.", 3, count);
+            assertNull("Expected no more peak lists.", lazy.getPeakList());
+            assertNull("Expected no more peak lists.", tandem.getPeakList());
+        } finally {
+            all.close();
+            lazy.close();
+            tandem.close();
+        }
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mzxml;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import junit.framework.TestCase;
+import org.proteomecommons.io.ArrayPeakList;
+import org.proteomecommons.io.Peak;
+
+/**
+ * Tests decoding peaks that arrive in pieces.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class Base64PeakDecoderTest extends TestCase {
+    
+    public void testDecodesInPieces() throws Exception {
+        Base64PeakDecoder decoder = new Base64PeakDecoder();
+        // try a few peak counts so that every kind of padding is used
+        for (int peaks = 0; peaks < 50; peaks += 7) {
+            check(decoder, peaks, true, ByteOrder.BIG_ENDIAN, "network");
+            check(decoder, peaks, true, ByteOrder.LITTLE_ENDIAN, "little");
+            check(decoder, peaks, false, ByteOrder.BIG_ENDIAN, "network");
+            check(decoder, peaks, false, ByteOrder.LITTLE_ENDIAN, "little");
+        }
+    }
+    
+    // helper to encode peaks, decode them in small pieces and compare
+    private static void check(Base64PeakDecoder decoder, int peaks, boolean is32Bit, ByteOrder order, String byteOrder) {
+        ByteBuffer bb = ByteBuffer.allocate(peaks * (is32Bit ? 8 : 16));
+        bb.order(order);
+        for (int i = 0; i < peaks; i++) {
+            if (is32Bit) {
+                bb.putFloat(100.5f + i);
+                bb.putFloat(i * 3.25f);
+            } else {
+                bb.putDouble(100.123456789 + i);
+                bb.putDouble(i * 3.3333);
+            }
+        }
+        // line breaks to be sure white space is skipped
+        String encoded = Base64.encodeBytes(bb.array(), true);
+        
+        decoder.reset();
+        char[] chars = encoded.toCharArray();
+        for (int i = 0; i < chars.length; i += 5) {
+            decoder.decode(chars, i, Math.min(5, chars.length - i));
+        }
+        assertEquals("Expected all the bytes.", bb.capacity(), decoder.size());
+        
+        ArrayPeakList pl = new ArrayPeakList();
+        decoder.addPeaks(pl, is32Bit ? "32" : "64", byteOrder, Peak.CENTROIDED, Peak.UNKNOWN_MONOISOTOPIC, Peak.UNKNOWN_DEISOTOPED);
+        assertEquals("Expected all the peaks.", peaks, pl.size());
+        for (int i = 0; i < peaks; i++) {
+            if (is32Bit) {
+                assertEquals("Expected the same m/z.", 100.5f + i, pl.getMassOverCharge(i), 0);
+                assertEquals("Expected the same intensity.", i * 3.25f, pl.getIntensity(i), 0);
+            } else {
+                assertEquals("Expected the same m/z.", 100.123456789 + i, pl.getMassOverCharge(i), 0);
+                assertEquals("Expected the same intensity.", i * 3.3333, pl.getIntensity(i), 0);
+            }
+            assertEquals("Expected centroided peaks.", Peak.CENTROIDED, pl.getCentroided(i));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.mzxml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.PeakListWriter;
+
+/**
+ * Tests reading mzXML scans by number with the scan index.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class MzXMLIndexTest extends TestCase {
+    
+    public void testReadsIndex() throws Exception {
+        File dir = new File("/todelete/mzxml/testReadsIndex");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File file = new File(dir, "example.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", MzXMLIndexTest.class, file);
+        
+        // the file's own index
+        MzXMLIndex index = MzXMLIndex.getIndex(file);
+        assertFalse("Expected the file's index.", index.isBuilt());
+        assertEquals("Expected 1228 scans.", 1228, index.size());
+        
+        // the index made by scanning must be the same
+        MzXMLIndex built = MzXMLIndex.build(file);
+        assertTrue("Expected a made index.", built.isBuilt());
+        assertEquals("Expected 1228 scans.", 1228, built.size());
+        for (Iterator<String> it = index.getScanNums(); it.hasNext();) {
+            String num = it.next();
+            assertEquals("Expected the same offset.", index.getOffset(num), built.getOffset(num));
+        }
+        
+        checkRandomAccess(file);
+    }
+    
+    public void testMakesIndexIfMissing() throws Exception {
+        File dir = new File("/todelete/mzxml/testMakesIndexIfMissing");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File file = new File(dir, "example.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", MzXMLIndexTest.class, file);
+        
+        // point the first scan's offset at the wrong place
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            byte[] tail = new byte[128 * 1024];
+            raf.seek(raf.length() - tail.length);
+            raf.readFully(tail);
+            String s = new String(tail, "ISO-8859-1");
+            int start = s.indexOf("<offset id=\"1\">") + "<offset id=\"1\">".length();
+            raf.seek(raf.length() - tail.length + start);
+            raf.write('9');
+        } finally {
+            raf.close();
+        }
+        
+        MzXMLIndex index = MzXMLIndex.getIndex(file);
+        assertTrue("Expected a made index.", index.isBuilt());
+        assertEquals("Expected 1228 scans.", 1228, index.size());
+        
+        checkRandomAccess(file);
+    }
+    
+    public void testCorruptIndexOffset() throws Exception {
+        File dir = new File("/todelete/mzxml/testCorruptIndexOffset");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File file = new File(dir, "example.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", MzXMLIndexTest.class, file);
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            for (int read = 0; read < bytes.length; read += in.read(bytes, read, bytes.length - read));
+        } finally {
+            in.close();
+        }
+        String s = new String(bytes, "ISO-8859-1");
+        
+        // too big for a long, and past the end of the file
+        String[] offsets = new String[]{"99999999999999999999999999", "999999999999"};
+        for (int i = 0; i < offsets.length; i++) {
+            String corrupt = s.replaceAll("<indexOffset>\\s*\\d+\\s*</indexOffset>", "<indexOffset>"+offsets[i]+"</indexOffset>");
+            assertFalse("Expected the offset to change.", corrupt.equals(s));
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(corrupt.getBytes("ISO-8859-1"));
+            out.close();
+            
+            MzXMLIndex index = MzXMLIndex.getIndex(file);
+            assertTrue("Expected a made index.", index.isBuilt());
+            assertEquals("Expected 1228 scans.", 1228, index.size());
+        }
+    }
+    
+    public void testWritersIndex() throws Exception {
+        File dir = new File("/todelete/mzxml/testWritersIndex");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File file = new File(dir, "example.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", MzXMLIndexTest.class, file);
+        
+        // write a copy with each version
+        PeakListWriter[] writers = new PeakListWriter[]{
+            new org.proteomecommons.io.mzxml.v1_1_1.MzXMLPeakListWriter(new File(dir, "v1_1_1.mzXML").getCanonicalPath()),
+            new org.proteomecommons.io.mzxml.v2_0.MzXMLPeakListWriter(new File(dir, "v2_0.mzXML").getCanonicalPath()),
+            new org.proteomecommons.io.mzxml.v2_1.MzXMLPeakListWriter(new File(dir, "v2_1.mzXML").getCanonicalPath())
+        };
+        PeakListReader plr = GenericPeakListReader.getPeakListReader(file.getCanonicalPath());
+        try {
+            for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                for (int i = 0; i < writers.length; i++) {
+                    writers[i].write(pl);
+                }
+            }
+        } finally {
+            plr.close();
+            for (int i = 0; i < writers.length; i++) {
+                writers[i].close();
+            }
+        }
+        
+        String[] names = new String[]{"v1_1_1.mzXML", "v2_0.mzXML", "v2_1.mzXML"};
+        for (int i = 0; i < names.length; i++) {
+            File written = new File(dir, names[i]);
+            // the written index must be used as is
+            MzXMLIndex index = MzXMLIndex.read(written);
+            assertNotNull("Expected an index.", index);
+            assertEquals("Expected 1228 scans.", 1228, index.size());
+            assertTrue("Expected valid offsets.", index.isValid(written));
+            RandomAccessFile raf = new RandomAccessFile(written, "r");
+            try {
+                for (Iterator<String> it = index.getScanNums(); it.hasNext();) {
+                    assertTrue("Expected a scan.", MzXMLIndex.isScan(raf, index.getOffset(it.next())));
+                }
+            } finally {
+                raf.close();
+            }
+            
+            // check the SHA-1, which is of the file up to and including <sha1>
+            byte[] bytes = new byte[(int) written.length()];
+            FileInputStream fis = new FileInputStream(written);
+            try {
+                for (int read = 0; read < bytes.length;) {
+                    read += fis.read(bytes, read, bytes.length - read);
+                }
+            } finally {
+                fis.close();
+            }
+            String text = new String(bytes, "ISO-8859-1");
+            int end = text.indexOf("<sha1>") + "<sha1>".length();
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(bytes, 0, end);
+            byte[] digest = md.digest();
+            StringBuffer hex = new StringBuffer();
+            for (int j = 0; j < digest.length; j++) {
+                hex.append(Integer.toHexString((digest[j] & 0xff) | 0x100).substring(1));
+            }
+            assertEquals("Expected the file's SHA-1.", hex.toString(), text.substring(end, end + 40));
+        }
+        
+        checkRandomAccess(new File(dir, "v2_1.mzXML"));
+    }
+    
+    // helper to check that reading by number matches reading in order
+    private static void checkRandomAccess(File file) throws Exception {
+        ArrayList<PeakList> all = new ArrayList();
+        PeakListReader plr = GenericPeakListReader.getPeakListReader(file.getCanonicalPath());
+        try {
+            for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                all.add(pl);
+            }
+        } finally {
+            plr.close();
+        }
+        
+        MzXMLPeakListReader reader = new MzXMLPeakListReader(file.getCanonicalPath());
+        try {
+            // go backwards and skip around
+            for (int i = all.size() - 1; i >= 0; i -= 37) {
+                org.proteomecommons.io.mzxml.v2_1.MzXMLPeakList expected = (org.proteomecommons.io.mzxml.v2_1.MzXMLPeakList) all.get(i);
+                org.proteomecommons.io.mzxml.v2_1.MzXMLPeakList actual = (org.proteomecommons.io.mzxml.v2_1.MzXMLPeakList) reader.getPeakList(expected.getNum());
+                assertNotNull("Expected a scan.", actual);
+                assertEquals("Expected the same scan.", expected.getNum(), actual.getNum());
+                assertEquals("Expected the same ms level.", expected.getTandemCount(), actual.getTandemCount());
+                assertEquals("Expected the same run.", expected.getMsRun().getScanCount(), actual.getMsRun().getScanCount());
+                assertEquals("Expected the same number of peaks.", expected.getPeaks().length, actual.getPeaks().length);
+                for (int j = 0; j < expected.getPeaks().length; j++) {
+                    assertEquals("Expected the same m/z.", expected.getPeaks()[j].getMassOverCharge(), actual.getPeaks()[j].getMassOverCharge(), 0);
+                    assertEquals("Expected the same intensity.", expected.getPeaks()[j].getIntensity(), actual.getPeaks()[j].getIntensity(), 0);
+                }
+                // the sequential parse isn't affected
+                if (i == all.size() - 1) {
+                    assertEquals("Expected the first scan.", ((org.proteomecommons.io.mzxml.v2_1.MzXMLPeakList) all.get(0)).getNum(), ((org.proteomecommons.io.mzxml.v2_1.MzXMLPeakList) ((MzXMLPeakListReader) reader).getEmbedded().getPeakList()).getNum());
+                }
+            }
+            assertNull("Expected no scan.", reader.getPeakList("999999"));
+        } finally {
+            reader.close();
+        }
+    }
+}
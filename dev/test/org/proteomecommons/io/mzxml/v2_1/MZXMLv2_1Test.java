@@ -193,4 +193,54 @@ public class MZXMLv2_1Test extends TestCase {
             file.delete();
         }
     }
+    
+    /**
+     *Tests that lazy reading and skipping levels give the same peak lists as reading everything.
+     */
+    public void testLazyAndMsLevels() throws Exception {
+        File dir = new File("/todelete/mzxml/v2_1/testLazyAndMsLevels");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        File file = new File(dir, "example.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", MZXMLv2_1Test.class, file);
+        
+        MzXMLPeakListReader all = new MzXMLPeakListReader(file.getCanonicalPath());
+        MzXMLPeakListReader lazy = new MzXMLPeakListReader(file.getCanonicalPath());
+        lazy.setLazy(true);
+        MzXMLPeakListReader tandem = new MzXMLPeakListReader(file.getCanonicalPath());
+        tandem.setMsLevels(new int[]{2});
+        try {
+            int tandemCount = 0;
+            for (MzXMLPeakList pl = (MzXMLPeakList)all.getPeakList(); pl != null; pl = (MzXMLPeakList)all.getPeakList()) {
+                // lazy peak lists have their info but no decoded peaks
+                MzXMLPeakList lazyPeakList = (MzXMLPeakList)lazy.getPeakList();
+                assertEquals("Expected the same scan.", pl.getNum(), lazyPeakList.getNum());
+                assertTrue("Expected undecoded peaks.", lazyPeakList.hasLazyPeaks());
+                assertEquals("Expected the same level.", pl.getTandemCount(), lazyPeakList.getTandemCount());
+                // the peaks are the same once used
+                Peak[] expected = pl.getPeaks();
+                Peak[] actual = lazyPeakList.getPeaks();
+                assertFalse("Expected decoded peaks.", lazyPeakList.hasLazyPeaks());
+                assertEquals("Expected the same number of peaks.", expected.length, actual.length);
+                for (int i=0;i<expected.length;i++) {
+                    DevUtil.assertPeaksAreTheSame(expected[i], actual[i]);
+                }
+                
+                // only MS/MS scans are read
+                if (pl.getTandemCount() == 2) {
+                    tandemCount++;
+                    MzXMLPeakList tandemPeakList = (MzXMLPeakList)tandem.getPeakList();
+                    assertEquals("Expected the next MS/MS scan.", pl.getNum(), tandemPeakList.getNum());
+                    assertEquals("Expected the same number of peaks.", expected.length, tandemPeakList.getPeaks().length);
+                }
+            }
+            assertNull("Expected no more peak lists.", lazy.getPeakList());
+            assertNull("Expected no more peak lists.", tandem.getPeakList());
+            assertTrue("Expected MS/MS scans.", tandemCount > 0);
+        } finally {
+            all.close();
+            lazy.close();
+            tandem.close();
+        }
+    }
 }
@@ -0,0 +1,240 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.raw.RawViaReadwFactory;
+
+/**
+ * Tests converting a batch of files at once and picking a batch up from its manifest.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class BatchConvertPeakListTest extends TestCase {
+    File dir;
+    File big;
+    File small;
+    File manifest;
+
+    public void setUp() throws Exception {
+        dir = new File("/todelete/IO/testBatchConvertPeakList");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        big = new File(dir, "big.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", DevUtil.class, big);
+        small = new File(dir, "small.mgf");
+        FileWriter writer = new FileWriter(small);
+        writer.write("BEGIN IONS\nPEPMASS=500.5\nCHARGE=2+\n100.1\t10\n200.2\t20\nEND IONS\n");
+        writer.close();
+        manifest = new File(dir, "manifest.txt");
+    }
+
+    public void testLargestFirst() throws Exception {
+        ConvertPeakList cpl = new ConvertPeakList();
+        BatchConvertPeakList batch = new BatchConvertPeakList(cpl);
+        batch.setManifest(manifest);
+        String[] in = new String[]{small.getCanonicalPath(), big.getCanonicalPath()};
+        String[] out = new String[]{new File(dir, "small.pkl").getCanonicalPath(), new File(dir, "big.mgf").getCanonicalPath()};
+        BatchConvertPeakList.Result[] results = batch.convert(in, out);
+        
+        // results are in the order of the files
+        assertEquals(in[0], results[0].getInput());
+        for (int i = 0; i < results.length; i++) {
+            assertNull("Expected a conversion.", results[i].getException());
+            assertFalse(results[i].isSkipped());
+            assertTrue("Expected an output.", new File(out[i]).length() > 0);
+        }
+        // with one thread the big file is done first
+        ArrayList<String> lines = readManifest();
+        assertEquals(2, lines.size());
+        assertTrue("Expected the big file first.", lines.get(0).startsWith(in[1]+"\t"+out[1]+"\t"));
+    }
+
+    public void testResume() throws Exception {
+        String[] in = new String[]{small.getCanonicalPath(), big.getCanonicalPath(), new File(dir, "missing.mgf").getCanonicalPath()};
+        String[] out = new String[]{new File(dir, "small.pkl").getCanonicalPath(), new File(dir, "big.mgf").getCanonicalPath(), new File(dir, "missing.pkl").getCanonicalPath()};
+        // the big file was done before
+        FileWriter writer = new FileWriter(manifest);
+        writer.write(in[1]+"\t"+out[1]+"\t0\t0\n");
+        writer.close();
+        writer = new FileWriter(out[1]);
+        writer.write("done");
+        writer.close();
+        
+        ConvertPeakList cpl = new ConvertPeakList();
+        cpl.setThreads(3);
+        BatchConvertPeakList batch = new BatchConvertPeakList(cpl);
+        batch.setManifest(manifest);
+        BatchConvertPeakList.Result[] results = batch.convert(in, out);
+        assertNull(results[0].getException());
+        assertTrue("Expected the big file to be skipped.", results[1].isSkipped());
+        assertEquals("Expected the old output.", 4, new File(out[1]).length());
+        assertNotNull("Expected the missing file to fail.", results[2].getException());
+        
+        // the failed file is left out so that it is tried again
+        ArrayList<String> lines = readManifest();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).startsWith(in[0]+"\t"));
+    }
+
+    public void testStopOnFailure() throws Exception {
+        // bigger than the small file so that it is tried first
+        File junk = new File(dir, "junk.xyz");
+        FileWriter writer = new FileWriter(junk);
+        for (int i = 0; i < 2*small.length(); i++) {
+            writer.write('x');
+        }
+        writer.close();
+        String[] in = new String[]{small.getCanonicalPath(), junk.getCanonicalPath()};
+        String[] out = new String[]{new File(dir, "small.pkl").getCanonicalPath(), new File(dir, "junk.pkl").getCanonicalPath()};
+        
+        ConvertPeakList cpl = new ConvertPeakList();
+        cpl.setThreads(1);
+        final ArrayList<BatchConvertPeakList.Result> finished = new ArrayList<BatchConvertPeakList.Result>();
+        BatchConvertPeakList batch = new BatchConvertPeakList(cpl) {
+            protected void finished(Result result) {
+                synchronized (finished) {
+                    finished.add(result);
+                }
+            }
+        };
+        batch.setStopOnFailure(true);
+        BatchConvertPeakList.Result[] results = batch.convert(in, out);
+        assertNotNull("Expected the junk file to fail.", results[1].getException());
+        assertSame(results[1], batch.getFailure());
+        assertNotNull("Expected the small file to be left.", results[0].getException());
+        assertFalse(new File(out[0]).exists());
+        assertEquals("Expected every file to be reported.", 2, finished.size());
+    }
+    
+    public void testNonAsciiManifest() throws Exception {
+        // the manifest is UTF-8 whatever the platform's charset is
+        File input = new File(dir, "\u00e9chantillon.mgf");
+        FileWriter writer = new FileWriter(input);
+        writer.write("BEGIN IONS\nPEPMASS=500.5\nCHARGE=2+\n100.1\t10\nEND IONS\n");
+        writer.close();
+        String[] in = new String[]{input.getCanonicalPath()};
+        String[] out = new String[]{new File(dir, "\u00e9chantillon.pkl").getCanonicalPath()};
+        BatchConvertPeakList batch = new BatchConvertPeakList(new ConvertPeakList());
+        batch.setManifest(manifest);
+        assertFalse(batch.convert(in, out)[0].isSkipped());
+        
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+        try {
+            assertTrue("Expected a UTF-8 path.", reader.readLine().startsWith(in[0]+"\t"));
+        } finally {
+            reader.close();
+        }
+        assertTrue("Expected the file to be skipped.", batch.convert(in, out)[0].isSkipped());
+    }
+
+    public void testMemory() throws Exception {
+        // more files than fit in memory at once still all get done
+        String[] in = new String[4];
+        String[] out = new String[in.length];
+        for (int i = 0; i < in.length; i++) {
+            File file = new File(dir, "copy"+i+".mzXML");
+            DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", DevUtil.class, file);
+            in[i] = file.getCanonicalPath();
+            out[i] = new File(dir, "copy"+i+".mgf").getCanonicalPath();
+        }
+        ConvertPeakList cpl = new ConvertPeakList();
+        cpl.setThreads(4);
+        BatchConvertPeakList batch = new BatchConvertPeakList(cpl);
+        batch.setMemory(big.length() + 1);
+        BatchConvertPeakList.Result[] results = batch.convert(in, out);
+        for (int i = 0; i < results.length; i++) {
+            assertNull(results[i].getException());
+            assertTrue(results[i].getMegabytesPerSecond() > 0);
+            assertTrue(new File(out[i]).length() > 0);
+        }
+    }
+
+    public void testSharesConverterLimit() throws Exception {
+        File converter = new File(dir, "fake-converter.sh");
+        DevUtil.copyOver("files/converter/fake-converter.sh", DevUtil.class, converter);
+        converter.setExecutable(true);
+        File readwLocation = RawViaReadwFactory.getReadwLocation();
+        int converters = ConverterScheduler.getThreads();
+        RawViaReadwFactory.setReadwLocation(converter);
+        ConverterScheduler.setThreads(1);
+        try {
+            final String[] in = new String[3];
+            final String[] out = new String[in.length];
+            for (int i = 0; i < in.length; i++) {
+                File raw = new File(dir, "example"+i+".raw");
+                DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", DevUtil.class, raw);
+                // the converters wait for the go files half way through
+                new File(raw.getPath()+".gate").createNewFile();
+                in[i] = raw.getCanonicalPath();
+                out[i] = new File(dir, "example"+i+".mgf").getCanonicalPath();
+            }
+            ConvertPeakList cpl = new ConvertPeakList();
+            cpl.setThreads(3);
+            final BatchConvertPeakList batch = new BatchConvertPeakList(cpl);
+            final BatchConvertPeakList.Result[][] results = new BatchConvertPeakList.Result[1][];
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        results[0] = batch.convert(in, out);
+                    } catch (Exception e) {
+                        // noop, checked below
+                    }
+                }
+            };
+            thread.start();
+            
+            // three files at once, but only one converter
+            for (int i = 0; i < 100 && ConverterScheduler.getRunning() < 1; i++) {
+                Thread.sleep(50);
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals("Expected the converter limit to be shared.", 1, ConverterScheduler.getRunning());
+                Thread.sleep(50);
+            }
+            for (int i = 0; i < in.length; i++) {
+                new File(in[i]+".go").createNewFile();
+            }
+            thread.join(30000);
+            for (int i = 0; i < in.length; i++) {
+                assertNull(results[0][i].getException());
+            }
+        } finally {
+            RawViaReadwFactory.setReadwLocation(readwLocation);
+            ConverterScheduler.setThreads(converters);
+        }
+    }
+
+    // helper to read the lines of the manifest
+    private ArrayList<String> readManifest() throws Exception {
+        ArrayList<String> lines = new ArrayList();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
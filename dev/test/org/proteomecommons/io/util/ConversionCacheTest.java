@@ -0,0 +1,199 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.raw.RawViaReadwFactory;
+
+/**
+ * Tests caching converted vendor files, using files/converter/fake-converter.sh in place of ReAdW.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ConversionCacheTest extends TestCase {
+    File dir;
+    File cache;
+    File converter;
+    File raw;
+    File readwLocation;
+    long maxSize;
+
+    public void setUp() throws Exception {
+        dir = new File("/todelete/IO/testConversionCache");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        cache = new File(dir, "cache");
+        converter = new File(dir, "fake-converter.sh");
+        DevUtil.copyOver("files/converter/fake-converter.sh", DevUtil.class, converter);
+        Runtime.getRuntime().exec(new String[]{"chmod", "+x", converter.getCanonicalPath()}).waitFor();
+        // the fake converter expects the vendor file to be mzXML
+        raw = new File(dir, "example.raw");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", DevUtil.class, raw);
+        
+        readwLocation = RawViaReadwFactory.getReadwLocation();
+        maxSize = ConversionCache.getMaxSize();
+        ConversionCache.setDirectory(cache);
+    }
+
+    public void tearDown() {
+        ConversionCache.setDirectory(null);
+        ConversionCache.setCompressed(false);
+        ConversionCache.setMaxSize(maxSize);
+        RawViaReadwFactory.setReadwLocation(readwLocation);
+        RawViaReadwFactory.setOutput(ConverterInputStream.FILE);
+    }
+
+    public void testSkipsConversion() throws Exception {
+        RawViaReadwFactory.setReadwLocation(converter);
+        int count = count(new RawViaReadwFactory().newInstance(raw.getCanonicalPath()));
+        assertTrue("Expected peak lists.", count > 0);
+        assertEquals("Expected the mzXML in the cache.", 1, cache.list().length);
+        assertTrue(isCached(raw));
+        assertFalse("Expected the mzXML to be moved in to the cache.", new File(dir, "example.mzXML").exists());
+        
+        // no converter is needed the second time
+        RawViaReadwFactory.setReadwLocation(new File(dir, "missing.exe"));
+        assertEquals(count, count(new RawViaReadwFactory().newInstance(raw.getCanonicalPath())));
+    }
+
+    public void testCachedWhileStreaming() throws Exception {
+        RawViaReadwFactory.setReadwLocation(converter);
+        RawViaReadwFactory.setOutput(ConverterInputStream.STDOUT);
+        int count = count(new RawViaReadwFactory().newInstance(raw.getCanonicalPath()));
+        assertTrue("Expected the streamed mzXML to be cached.", isCached(raw));
+        assertEquals("Expected no temporary files.", 1, cache.list().length);
+        
+        RawViaReadwFactory.setReadwLocation(new File(dir, "missing.exe"));
+        assertEquals(count, count(new RawViaReadwFactory().newInstance(raw.getCanonicalPath())));
+    }
+
+    public void testCompressed() throws Exception {
+        ConversionCache.setCompressed(true);
+        RawViaReadwFactory.setReadwLocation(converter);
+        int count = count(new RawViaReadwFactory().newInstance(raw.getCanonicalPath()));
+        File cached = ConversionCache.get(raw);
+        assertTrue("Expected a compressed entry.", cached.getName().endsWith(".mzXML.gz"));
+        assertTrue("Expected a smaller entry.", cached.length() < raw.length());
+        ConversionCache.release(cached);
+        
+        RawViaReadwFactory.setReadwLocation(new File(dir, "missing.exe"));
+        assertEquals(count, count(new RawViaReadwFactory().newInstance(raw.getCanonicalPath())));
+    }
+
+    public void testKey() throws Exception {
+        String key = ConversionCache.getKey(raw);
+        assertEquals("Expected the same key.", key, ConversionCache.getKey(raw));
+        FileOutputStream out = new FileOutputStream(raw, true);
+        out.write(' ');
+        out.close();
+        assertFalse("Expected a new key.", key.equals(ConversionCache.getKey(raw)));
+    }
+
+    public void testLeastRecentlyUsed() throws Exception {
+        File[] vendor = new File[3];
+        for (int i = 0; i < vendor.length; i++) {
+            vendor[i] = write("vendor"+i+".raw", 10 + i);
+        }
+        ConversionCache.setMaxSize(2500);
+        File first = ConversionCache.put(vendor[0], write("first.mzXML", 1000));
+        ConversionCache.release(first);
+        File second = ConversionCache.put(vendor[1], write("second.mzXML", 1000));
+        ConversionCache.release(second);
+        first.setLastModified(System.currentTimeMillis() - 3000000);
+        second.setLastModified(System.currentTimeMillis() - 2000000);
+        // using the first makes the second the least recently used
+        assertEquals(first, ConversionCache.get(vendor[0]));
+        ConversionCache.release(first);
+        ConversionCache.release(ConversionCache.put(vendor[2], write("third.mzXML", 1000)));
+        assertTrue(isCached(vendor[0]));
+        assertFalse("Expected the least recently used to be deleted.", isCached(vendor[1]));
+        assertTrue(isCached(vendor[2]));
+    }
+
+    public void testInUseIsKept() throws Exception {
+        File[] vendor = new File[4];
+        for (int i = 0; i < vendor.length; i++) {
+            vendor[i] = write("vendor"+i+".raw", 20 + i);
+        }
+        ConversionCache.setMaxSize(2500);
+        // the first is still being read
+        File first = ConversionCache.put(vendor[0], write("first.mzXML", 1000));
+        File second = ConversionCache.put(vendor[1], write("second.mzXML", 1000));
+        ConversionCache.release(second);
+        first.setLastModified(System.currentTimeMillis() - 3000000);
+        second.setLastModified(System.currentTimeMillis() - 2000000);
+        ConversionCache.release(ConversionCache.put(vendor[2], write("third.mzXML", 1000)));
+        assertTrue("Expected the entry being read to be kept.", first.exists());
+        assertFalse("Expected the least recently used of the rest to be deleted.", second.exists());
+        
+        // once it is read it can go
+        ConversionCache.release(first);
+        ConversionCache.release(ConversionCache.put(vendor[3], write("fourth.mzXML", 1000)));
+        assertFalse("Expected the released entry to be deleted.", first.exists());
+    }
+
+    public void testReaderReleasesEntry() throws Exception {
+        RawViaReadwFactory.setReadwLocation(converter);
+        count(new RawViaReadwFactory().newInstance(raw.getCanonicalPath()));
+        File cached = ConversionCache.get(raw);
+        ConversionCache.release(cached);
+        
+        // everything else is over the budget, but the reader was closed
+        ConversionCache.setMaxSize(1);
+        ConversionCache.release(ConversionCache.put(write("vendor.raw", 10), write("other.mzXML", 1000)));
+        assertFalse("Expected the closed reader's entry to be deleted.", cached.exists());
+    }
+
+    // helper to check if a vendor file is cached without keeping the entry
+    private static boolean isCached(File vendorFile) throws Exception {
+        File cached = ConversionCache.get(vendorFile);
+        if (cached == null) {
+            return false;
+        }
+        ConversionCache.release(cached);
+        return true;
+    }
+
+    // helper to write a file of a given size
+    private File write(String name, int size) throws Exception {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        for (int i = 0; i < size; i++) {
+            out.write(name.charAt(i % name.length()));
+        }
+        out.close();
+        return file;
+    }
+
+    // helper to count the peak lists
+    private static int count(PeakListReader plr) {
+        int count = 0;
+        try {
+            for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                count++;
+            }
+        } finally {
+            plr.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.filter.DeisotopeAndReduceMultichargePeakListFilter;
+import org.proteomecommons.io.filter.PeakListFilter;
+
+/**
+ * Tests that converting with several threads gives the same peak lists, in the same order, as converting with one.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ConvertPeakListTest extends TestCase {
+    File dir;
+    File input;
+
+    public void setUp() throws Exception {
+        dir = new File("/todelete/IO/testConvertPeakList");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        input = new File(dir, "example.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", DevUtil.class, input);
+    }
+
+    public void testThreads() throws Exception {
+        File expected = convert(1, new DeisotopeAndReduceMultichargePeakListFilter(), "expected.mgf");
+        File actual = convert(3, new DeisotopeAndReduceMultichargePeakListFilter(), "actual.mgf");
+        assertTrue("Expected peak lists.", count(expected) > 0);
+        assertTrue("Expected the same file.", sameBytes(expected, actual));
+    }
+
+    public void testOrder() throws Exception {
+        // a filter that takes a random time and drops some of the peak lists
+        PeakListFilter slow = new PeakListFilter() {
+            private Random random = new Random(0);
+            public PeakList filter(PeakList pl) {
+                if (isDropped(pl)) {
+                    return null;
+                }
+                int sleep = 0;
+                synchronized (this) {
+                    sleep = random.nextInt(3);
+                }
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // noop
+                }
+                return pl;
+            }
+        };
+        File expected = convert(1, null, "expected.mgf");
+        File actual = convert(4, slow, "actual.mgf");
+        
+        // the ones that are left are in order
+        PeakListReader e = GenericPeakListReader.getPeakListReader(expected.getCanonicalPath());
+        PeakListReader a = GenericPeakListReader.getPeakListReader(actual.getCanonicalPath());
+        try {
+            int dropped = 0;
+            for (PeakList pl = e.getPeakList(); pl != null; pl = e.getPeakList()) {
+                if (isDropped(pl)) {
+                    dropped++;
+                    continue;
+                }
+                PeakList next = a.getPeakList();
+                assertEquals("Expected the same peaks.", pl.getPeaks().length, next.getPeaks().length);
+                assertEquals("Expected the same first peak.", pl.getPeaks()[0].getMassOverCharge(), next.getPeaks()[0].getMassOverCharge(), 0.0001);
+            }
+            assertNull("Expected no extra peak lists.", a.getPeakList());
+            assertTrue("Expected some peak lists to be dropped.", dropped > 0);
+        } finally {
+            e.close();
+            a.close();
+        }
+    }
+
+    // helper to pick the peak lists the slow filter drops
+    private static boolean isDropped(PeakList pl) {
+        return pl.getPeaks().length % 10 == 0;
+    }
+
+    // helper to convert the input with a filter
+    private File convert(int threads, PeakListFilter filter, String name) throws Exception {
+        File output = new File(dir, name);
+        ConvertPeakList cpl = new ConvertPeakList();
+        cpl.setThreads(threads);
+        if (filter != null) {
+            cpl.addFilter(filter);
+        }
+        cpl.convertPeakList(input.getCanonicalPath(), output.getCanonicalPath());
+        return output;
+    }
+
+    // helper to count the peak lists
+    private static int count(File file) throws Exception {
+        PeakListReader plr = GenericPeakListReader.getPeakListReader(file.getCanonicalPath());
+        int count = 0;
+        try {
+            for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                count++;
+            }
+        } finally {
+            plr.close();
+        }
+        return count;
+    }
+
+    // helper to compare files
+    private static boolean sameBytes(File a, File b) throws Exception {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        FileInputStream ina = new FileInputStream(a);
+        FileInputStream inb = new FileInputStream(b);
+        try {
+            for (int c = ina.read(); c != -1; c = ina.read()) {
+                if (c != inb.read()) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            ina.close();
+            inb.close();
+        }
+    }
+}
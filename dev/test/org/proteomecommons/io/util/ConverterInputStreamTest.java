@@ -0,0 +1,152 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.baf.BAFPeakListReaderFactory;
+import org.proteomecommons.io.bruker.CompassXportFactory;
+import org.proteomecommons.io.raw.RawViaReadwFactory;
+import org.proteomecommons.io.wiff.WiffViaWiffToDtaFactory;
+
+/**
+ * Tests reading the output of external converters while they run, using files/converter/fake-converter.sh in place of the real converters. Needs a Unix shell and mkfifo.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ConverterInputStreamTest extends TestCase {
+    File dir;
+    File converter;
+    File expected;
+
+    public void setUp() throws Exception {
+        dir = new File("/todelete/IO/testConverterInputStream");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        converter = new File(dir, "fake-converter.sh");
+        DevUtil.copyOver("files/converter/fake-converter.sh", DevUtil.class, converter);
+        Runtime.getRuntime().exec(new String[]{"chmod", "+x", converter.getCanonicalPath()}).waitFor();
+        expected = new File(dir, "expected.mzXML");
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", DevUtil.class, expected);
+    }
+
+    public void testReAdW() throws Exception {
+        File raw = vendorFile("example.raw");
+        RawViaReadwFactory.setReadwLocation(converter);
+        int[] modes = new int[]{ConverterInputStream.FILE, ConverterInputStream.STDOUT, ConverterInputStream.NAMED_PIPE};
+        try {
+            for (int mode : modes) {
+                RawViaReadwFactory.setOutput(mode);
+                DevUtil.assertSamePeakLists("ReAdW mode "+mode, DevUtil.readPeakLists(expected), DevUtil.readPeakLists(new RawViaReadwFactory().newInstance(raw.getCanonicalPath())));
+                assertFalse("Expected the mzXML to be cleaned up.", new File(dir, "example.mzXML").exists());
+            }
+        } finally {
+            RawViaReadwFactory.setOutput(ConverterInputStream.FILE);
+        }
+    }
+
+    public void testCompassXport() throws Exception {
+        File baf = vendorFile("example.baf");
+        File location = CompassXportFactory.getCompassXportLocation();
+        CompassXportFactory.setCompassXportLocation(converter);
+        try {
+            CompassXportFactory.setOutput(ConverterInputStream.STDOUT);
+            DevUtil.assertSamePeakLists("CompassXport", DevUtil.readPeakLists(expected), DevUtil.readPeakLists(new BAFPeakListReaderFactory().newInstance(baf.getCanonicalPath())));
+            CompassXportFactory.setOutput(ConverterInputStream.NAMED_PIPE);
+            DevUtil.assertSamePeakLists("CompassXport", DevUtil.readPeakLists(expected), DevUtil.readPeakLists(new BAFPeakListReaderFactory().newInstance(baf.getCanonicalPath())));
+        } finally {
+            CompassXportFactory.setOutput(ConverterInputStream.FILE);
+            CompassXportFactory.setCompassXportLocation(location);
+        }
+    }
+
+    public void testWiff2Dta() throws Exception {
+        File wiff = vendorFile("example.wiff");
+        System.setProperty("wiff2dta", converter.getCanonicalPath());
+        try {
+            WiffViaWiffToDtaFactory.setOutput(ConverterInputStream.NAMED_PIPE);
+            DevUtil.assertSamePeakLists("wiff2dta", DevUtil.readPeakLists(expected), DevUtil.readPeakLists(new WiffViaWiffToDtaFactory().newInstance(wiff.getCanonicalPath())));
+        } finally {
+            WiffViaWiffToDtaFactory.setOutput(ConverterInputStream.FILE);
+            System.getProperties().remove("wiff2dta");
+        }
+    }
+
+    public void testParsedWhileConverting() throws Exception {
+        File raw = vendorFile("example.raw");
+        // the converter waits for the go file half way through
+        new File(dir, "example.raw.gate").createNewFile();
+        RawViaReadwFactory.setReadwLocation(converter);
+        RawViaReadwFactory.setOutput(ConverterInputStream.STDOUT);
+        try {
+            PeakListReader plr = new RawViaReadwFactory().newInstance(raw.getCanonicalPath());
+            ArrayList<PeakList> actual = new ArrayList();
+            try {
+                actual.add(plr.getPeakList());
+                new File(dir, "example.raw.go").createNewFile();
+                for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                    actual.add(pl);
+                }
+            } finally {
+                plr.close();
+            }
+            DevUtil.assertSamePeakLists("gated", DevUtil.readPeakLists(expected), actual);
+        } finally {
+            RawViaReadwFactory.setOutput(ConverterInputStream.FILE);
+        }
+    }
+
+    public void testConverterFails() throws Exception {
+        File missing = new File(dir, "missing.raw");
+        File output = new File(dir, "missing.mzXML");
+        String[] commands = new String[]{converter.getCanonicalPath(), missing.getCanonicalPath(), "c", "-"};
+        InputStream in = ConverterInputStream.open(commands, output, ConverterInputStream.STDOUT);
+        try {
+            in.read();
+            fail("Expected the converter to fail.");
+        } catch (IOException e) {
+            assertTrue("Expected the exit code.", e.getMessage().indexOf("exit code 2") != -1);
+            assertTrue("Expected the converter's errors.", e.getMessage().indexOf("Can't find") != -1);
+        } finally {
+            in.close();
+        }
+        
+        // a named pipe that is never opened for writing
+        commands[3] = output.getCanonicalPath();
+        in = ConverterInputStream.open(commands, output, ConverterInputStream.NAMED_PIPE);
+        try {
+            in.read();
+            fail("Expected the converter to fail.");
+        } catch (IOException e) {
+            assertTrue("Expected the exit code.", e.getMessage().indexOf("exit code 2") != -1);
+        } finally {
+            in.close();
+        }
+        assertFalse("Expected the named pipe to be removed.", output.exists());
+    }
+
+    // helper to make a "vendor" file, which the fake converter expects to be mzXML
+    private File vendorFile(String name) throws Exception {
+        File file = new File(dir, name);
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", DevUtil.class, file);
+        return file;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.File;
+import junit.framework.TestCase;
+import org.proteomecommons.io.DevUtil;
+import org.proteomecommons.io.GenericPeakListReader;
+import org.proteomecommons.io.PeakList;
+import org.proteomecommons.io.PeakListReader;
+import org.proteomecommons.io.raw.RawViaReadwFactory;
+
+/**
+ * Tests running several external converters at once, using files/converter/fake-converter.sh in place of ReAdW.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ConverterSchedulerTest extends TestCase {
+    File dir;
+    File converter;
+    File readwLocation;
+    int threads;
+
+    public void setUp() throws Exception {
+        dir = new File("/todelete/IO/testConverterScheduler");
+        DevUtil.recursiveDelete(dir);
+        dir.mkdirs();
+        converter = new File(dir, "fake-converter.sh");
+        DevUtil.copyOver("files/converter/fake-converter.sh", DevUtil.class, converter);
+        Runtime.getRuntime().exec(new String[]{"chmod", "+x", converter.getCanonicalPath()}).waitFor();
+        readwLocation = RawViaReadwFactory.getReadwLocation();
+        RawViaReadwFactory.setReadwLocation(converter);
+        threads = ConverterScheduler.getThreads();
+    }
+
+    public void tearDown() {
+        RawViaReadwFactory.setReadwLocation(readwLocation);
+        ConverterScheduler.setThreads(threads);
+        ConverterScheduler.setTimeout(0);
+    }
+
+    public void testLimit() throws Exception {
+        String[] names = new String[3];
+        for (int i = 0; i < names.length; i++) {
+            File raw = vendorFile("example"+i+".raw");
+            // the converters wait for the go files half way through
+            new File(raw.getPath()+".gate").createNewFile();
+            names[i] = raw.getCanonicalPath();
+        }
+        ConverterScheduler.setThreads(2);
+        ConverterScheduler scheduler = new ConverterScheduler(names, names.length, false);
+        try {
+            for (int i = 0; i < 50 && ConverterScheduler.getRunning() < 2; i++) {
+                Thread.sleep(100);
+            }
+            Thread.sleep(500);
+            assertEquals("Expected two converters to run.", 2, ConverterScheduler.getRunning());
+            
+            // let them finish
+            for (int i = 0; i < names.length; i++) {
+                new File(names[i]+".go").createNewFile();
+            }
+            int expected = count(GenericPeakListReader.getPeakListReader(vendorFile("expected.mzXML").getCanonicalPath()));
+            boolean[] seen = new boolean[names.length];
+            while (scheduler.hasNext()) {
+                ConverterScheduler.Conversion conversion = scheduler.next();
+                assertEquals(names[conversion.getIndex()], conversion.getFilename());
+                seen[conversion.getIndex()] = true;
+                assertEquals(expected, count(conversion.getReader()));
+            }
+            for (int i = 0; i < seen.length; i++) {
+                assertTrue("Expected every file.", seen[i]);
+            }
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    public void testTimeout() throws Exception {
+        File raw = vendorFile("example.raw");
+        new File(dir, "example.raw.gate").createNewFile();
+        ConverterScheduler.setTimeout(1);
+        long start = System.currentTimeMillis();
+        try {
+            new RawViaReadwFactory().newInstance(raw.getCanonicalPath());
+            fail("Expected the converter to be stopped.");
+        } catch (RuntimeException e) {
+            assertTrue("Expected a timeout.", e.getMessage().indexOf("longer than 1 seconds") != -1);
+        }
+        assertTrue("Expected the converter to be stopped early.", System.currentTimeMillis() - start < 5000);
+    }
+
+    public void testFirstFails() throws Exception {
+        // the second file is still converting and the rest are queued when the first fails
+        File raw = vendorFile("example.raw");
+        new File(dir, "example.raw.gate").createNewFile();
+        final String[] names = new String[]{new File(dir, "missing.mzXML").getCanonicalPath(), raw.getCanonicalPath(), vendorFile("a.mzXML").getCanonicalPath(), vendorFile("b.mzXML").getCanonicalPath()};
+        ConverterScheduler.setThreads(1);
+        final Exception[] thrown = new Exception[1];
+        Thread merge = new Thread() {
+            public void run() {
+                try {
+                    new ConvertPeakList().mergePeakLists(names, new File(dir, "merge.mgf").getCanonicalPath());
+                } catch (Exception e) {
+                    thrown[0] = e;
+                }
+            }
+        };
+        merge.start();
+        merge.join(5000);
+        assertFalse("Expected the merge not to hang.", merge.isAlive());
+        assertNotNull("Expected the missing file to fail the merge.", thrown[0]);
+        assertTrue(thrown[0].getMessage().indexOf("missing.mzXML") != -1);
+    }
+
+    public void testConvertPeakLists() throws Exception {
+        String[] names = new String[]{vendorFile("a.raw").getCanonicalPath(), vendorFile("b.raw").getCanonicalPath()};
+        String[] outputs = new String[]{new File(dir, "a.mgf").getCanonicalPath(), new File(dir, "b.mgf").getCanonicalPath()};
+        new ConvertPeakList().convertPeakLists(names, outputs);
+        // empty peak lists are skipped the same way
+        File expectedFile = new File(dir, "expected.mgf");
+        new ConvertPeakList().convertPeakList(vendorFile("expected.mzXML").getCanonicalPath(), expectedFile.getCanonicalPath());
+        int expected = count(GenericPeakListReader.getPeakListReader(expectedFile.getCanonicalPath()));
+        for (int i = 0; i < outputs.length; i++) {
+            assertEquals(expected, count(GenericPeakListReader.getPeakListReader(outputs[i])));
+        }
+    }
+
+    // helper to make a "vendor" file, which the fake converter expects to be mzXML
+    private File vendorFile(String name) throws Exception {
+        File file = new File(dir, name);
+        DevUtil.copyOver("files/mzxml/v2_1/example.mzXML", DevUtil.class, file);
+        return file;
+    }
+
+    // helper to count the peak lists
+    private static int count(PeakListReader plr) {
+        int count = 0;
+        try {
+            for (PeakList pl = plr.getPeakList(); pl != null; pl = plr.getPeakList()) {
+                count++;
+            }
+        } finally {
+            plr.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests handing data from a producer thread to a reader.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ThreadedInputStreamTest extends TestCase {
+
+    public void testSameBytes() throws Exception {
+        final byte[] data = new byte[100000];
+        new Random(0).nextBytes(data);
+        // tiny chunks and buffer so that the producer has to wait on the reader
+        ThreadedInputStream in = new ThreadedInputStream("test", new ThreadedInputStream.Producer() {
+            public void produce(OutputStream out) throws IOException {
+                out.write(data[0]);
+                out.write(data, 1, data.length - 1);
+            }
+        }, 1000, 2);
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buf = new byte[777];
+        for (int r = in.read(buf); r != -1; r = in.read(buf)) {
+            read.write(buf, 0, r);
+        }
+        in.close();
+        byte[] bytes = read.toByteArray();
+        assertEquals("Expected all the bytes.", data.length, bytes.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals("Expected the same bytes.", data[i], bytes[i]);
+        }
+    }
+
+    public void testErrorAfterData() throws Exception {
+        ThreadedInputStream in = new ThreadedInputStream("test", new ThreadedInputStream.Producer() {
+            public void produce(OutputStream out) throws IOException {
+                out.write(new byte[]{1, 2, 3});
+                throw new IOException("Bad data.");
+            }
+        });
+        assertEquals(1, in.read());
+        assertEquals(2, in.read());
+        assertEquals(3, in.read());
+        try {
+            in.read();
+            fail("Expected the producer's error.");
+        } catch (IOException e) {
+            assertEquals("Bad data.", e.getMessage());
+        }
+        in.close();
+    }
+
+    public void testCloseStopsProducer() throws Exception {
+        final boolean[] stopped = new boolean[1];
+        ThreadedInputStream in = new ThreadedInputStream("test", new ThreadedInputStream.Producer() {
+            public void produce(OutputStream out) throws IOException {
+                try {
+                    // never ends on its own
+                    while (true) {
+                        out.write(new byte[1000]);
+                    }
+                } finally {
+                    synchronized (stopped) {
+                        stopped[0] = true;
+                        stopped.notifyAll();
+                    }
+                }
+            }
+        }, 1000, 2);
+        assertEquals(0, in.read());
+        in.close();
+        synchronized (stopped) {
+            long end = System.currentTimeMillis() + 10000;
+            while (!stopped[0] && System.currentTimeMillis() < end) {
+                stopped.wait(100);
+            }
+        }
+        assertTrue("Expected the producer to stop.", stopped[0]);
+    }
+
+    public void testReadAhead() throws Exception {
+        final boolean[] closed = new boolean[1];
+        InputStream source = new InputStream() {
+            int count = 0;
+            public int read() {
+                return count < 10 ? count++ : -1;
+            }
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        ThreadedInputStream in = ThreadedInputStream.readAhead("test", source);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+        assertTrue("Expected the source to be closed.", closed[0]);
+    }
+}
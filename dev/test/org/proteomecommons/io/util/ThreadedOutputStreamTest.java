@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2005 The Regents of the University of Michigan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.proteomecommons.io.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests handing data from a writer to a consumer thread.
+ * @author Jayson Falkner - jfalkner@umich.edu
+ */
+public class ThreadedOutputStreamTest extends TestCase {
+
+    public void testSameBytes() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(0).nextBytes(data);
+        final ByteArrayOutputStream read = new ByteArrayOutputStream();
+        // tiny chunks and buffer so that the writer has to wait on the consumer
+        ThreadedOutputStream out = new ThreadedOutputStream("test", new ThreadedOutputStream.Consumer() {
+            public void consume(InputStream in) throws IOException {
+                byte[] buf = new byte[777];
+                for (int r = in.read(buf); r != -1; r = in.read(buf)) {
+                    read.write(buf, 0, r);
+                }
+            }
+        }, 1000, 2);
+        out.write(data[0]);
+        out.write(data, 1, data.length - 1);
+        out.close();
+        // close waits for the consumer
+        byte[] bytes = read.toByteArray();
+        assertEquals("Expected all the bytes.", data.length, bytes.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals("Expected the same bytes.", data[i], bytes[i]);
+        }
+    }
+
+    public void testConsumerError() throws Exception {
+        ThreadedOutputStream out = new ThreadedOutputStream("test", new ThreadedOutputStream.Consumer() {
+            public void consume(InputStream in) throws IOException {
+                in.read();
+                throw new IOException("Bad data.");
+            }
+        }, 1000, 2);
+        try {
+            // more than fits in the buffer
+            for (int i = 0; i < 100; i++) {
+                out.write(new byte[1000]);
+            }
+            out.close();
+            fail("Expected the consumer's error.");
+        } catch (IOException e) {
+            assertEquals("Bad data.", e.getMessage());
+        }
+    }
+
+    public void testConsumerStopsEarly() throws Exception {
+        ThreadedOutputStream out = new ThreadedOutputStream("test", new ThreadedOutputStream.Consumer() {
+            public void consume(InputStream in) throws IOException {
+                in.read();
+            }
+        }, 1000, 2);
+        try {
+            for (int i = 0; i < 100; i++) {
+                out.write(new byte[1000]);
+            }
+            out.close();
+            fail("Expected writing to fail.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testWriteBehind() throws Exception {
+        final boolean[] closed = new boolean[1];
+        final ByteArrayOutputStream target = new ByteArrayOutputStream() {
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        ThreadedOutputStream out = ThreadedOutputStream.writeBehind("test", target);
+        for (int i = 0; i < 10; i++) {
+            out.write(i);
+        }
+        out.close();
+        assertTrue("Expected the target to be closed.", closed[0]);
+        byte[] bytes = target.toByteArray();
+        assertEquals(10, bytes.length);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, bytes[i]);
+        }
+    }
+}